@@ -0,0 +1,79 @@
+package org.jlnh.benchmark;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Verticle;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helper code shared by the benchmarks.
+ */
+public class BenchmarkSupport {
+
+    public static final String SENDER = "e6908ec0-1b70-4982-9362-8e9bdabbbd97";
+    public static final String RECEIVER = "123e4567-e89b-12d3-a456-556642440000";
+    public static final int HTTP_PORT = 18080;
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Deploys a verticle listening on {@link #HTTP_PORT} and waits for it to be started.
+     *
+     * @param vertx the vertx instance
+     * @param verticle the verticle
+     * @param config deployment configuration, on top of {@code conf/config.json}
+     */
+    public static void deploy(Vertx vertx, Verticle verticle, JsonObject config) {
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        vertx.deployVerticle(verticle, new DeploymentOptions().setConfig(config.copy().put("HTTP_PORT", HTTP_PORT)), ar -> {
+            if (ar.succeeded()) {
+                deployed.complete(ar.result());
+            } else {
+                deployed.completeExceptionally(ar.cause());
+            }
+        });
+        join(deployed);
+    }
+
+    /**
+     * Blocks the benchmark thread until a future completes.
+     *
+     * @param future the future
+     * @return its result
+     */
+    public static <T> T await(Future<T> future) {
+        CompletableFuture<T> completable = new CompletableFuture<>();
+        future.setHandler(ar -> {
+            if (ar.succeeded()) {
+                completable.complete(ar.result());
+            } else {
+                completable.completeExceptionally(ar.cause());
+            }
+        });
+        return join(completable);
+    }
+
+    /**
+     * Closes a vertx instance and waits for it.
+     *
+     * @param vertx the vertx instance
+     */
+    public static void close(Vertx vertx) {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(ar -> closed.complete(null));
+        join(closed);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
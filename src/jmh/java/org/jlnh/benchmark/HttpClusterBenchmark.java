@@ -0,0 +1,178 @@
+package org.jlnh.benchmark;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.test.fakecluster.FakeClusterManager;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.cluster.PartitionRing;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transfers per second served by a cluster of {@code nodes} nodes started in this JVM, each one with a clustered vertx
+ * instance of its own, a single verticle instance and a database of its own, over a local cluster manager.
+ * <p>
+ * {@code ACCOUNTS} accounts are spread over the nodes by their {@link PartitionRing}, and every transfer goes between
+ * two different random accounts through a random node: with {@code n} nodes, about {@code (n - 1) / n} of the requests
+ * are forwarded to the node of their sender, and as many of the transfers credit an account of another node.
+ * Admission control is disabled. Requests that fail or time out are reported after each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpClusterBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+    private static final long TIMEOUT_MS = 5000L;
+
+    @Param({"1", "2", "4"})
+    public int nodes;
+
+    @Param({"256"})
+    public int concurrency;
+
+    private final List<Vertx> instances = new ArrayList<>();
+    private final List<HttpClient> clients = new ArrayList<>();
+    private final List<UUID> accounts = new ArrayList<>();
+    private Vertx clientVertx;
+    private Semaphore inFlight;
+    private final AtomicLong failures = new AtomicLong();
+
+    @Setup
+    public void setUp() throws SQLException {
+        JsonArray nodeIds = new JsonArray();
+        for (int node = 0; node < nodes; node++) {
+            nodeIds.add("node-" + node);
+        }
+        for (int node = 0; node < nodes; node++) {
+            Vertx vertx = startNode();
+            instances.add(vertx);
+            BenchmarkSupport.await(deploy(vertx, new JsonObject() //
+                    .put("HTTP_PORT", BenchmarkSupport.HTTP_PORT + node) //
+                    .put("url", "jdbc:h2:mem:cluster-" + node) //
+                    .put("METRICS", new JsonObject().put("PORT", -1)) //
+                    .put("ADMISSION", new JsonObject().put("TRANSFERS", new JsonObject().put("MAX_IN_FLIGHT", 0))) //
+                    .put("CLUSTER", new JsonObject().put("NODE_ID", nodeIds.getString(node)).put("NODES", nodeIds))));
+        }
+        createAccounts(new PartitionRing(nodeIds.getList(), 128));
+
+        clientVertx = Vertx.vertx();
+        for (int node = 0; node < nodes; node++) {
+            clients.add(clientVertx.createHttpClient(new HttpClientOptions() //
+                    .setDefaultPort(BenchmarkSupport.HTTP_PORT + node) //
+                    .setMaxPoolSize(concurrency) //
+                    .setKeepAlive(true)));
+        }
+        inFlight = new Semaphore(concurrency);
+    }
+
+    private static Vertx startNode() {
+        Future<Vertx> future = Future.future();
+        Vertx.clusteredVertx(new VertxOptions().setClusterManager(new FakeClusterManager()), future);
+        return BenchmarkSupport.await(future);
+    }
+
+    private static Future<String> deploy(Vertx vertx, JsonObject config) {
+        Future<String> future = Future.future();
+        vertx.deployVerticle(MoneyTransferVerticle.class.getName(), new DeploymentOptions().setConfig(config), future);
+        return future;
+    }
+
+    /**
+     * Inserts the accounts straight into the database of the node owning them.
+     */
+    private void createAccounts(PartitionRing ring) throws SQLException {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(UUID.randomUUID());
+        }
+        for (int node = 0; node < nodes; node++) {
+            try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:cluster-" + node, "sa", "sa");
+                 PreparedStatement insert = connection.prepareStatement("INSERT INTO account VALUES (?, 1000000)")) {
+                for (UUID account : accounts) {
+                    if (ring.ownerOf(account).equals("node-" + node)) {
+                        insert.setObject(1, account);
+                        insert.addBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+        if (failures.get() > 0) {
+            System.out.println("Failed transfers: " + failures.getAndSet(0));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        clients.forEach(HttpClient::close);
+        BenchmarkSupport.close(clientVertx);
+        instances.forEach(BenchmarkSupport::close);
+        FakeClusterManager.reset();
+    }
+
+    @Benchmark
+    public void transfer() throws InterruptedException {
+        inFlight.acquire();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sender = random.nextInt(ACCOUNTS);
+        UUID from = accounts.get(sender);
+        UUID to = accounts.get((sender + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS);
+        String body = Json.encode(new Transaction(null, new Account(from, 0L), new Account(to, 0L), new BigDecimal("0.0001")));
+        clients.get(random.nextInt(nodes)).post("/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .setTimeout(TIMEOUT_MS) //
+                .handler(response -> response.bodyHandler(ignored -> {
+                    if (response.statusCode() != 201) {
+                        failures.incrementAndGet();
+                    }
+                    inFlight.release();
+                })) //
+                .exceptionHandler(failure -> {
+                    failures.incrementAndGet();
+                    inFlight.release();
+                }) //
+                .end(body);
+    }
+}
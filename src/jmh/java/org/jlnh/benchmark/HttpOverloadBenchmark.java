@@ -0,0 +1,125 @@
+package org.jlnh.benchmark;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency of {@code POST /api/transfer} under overload: {@code load} background clients keep sending transfers, the
+ * ones answered with a {@code 503} retrying 10 ms later, while the benchmark thread samples the latency of its own
+ * transfers. With {@code admission=on} at most 32 transfers are in flight and 64 more queue for up to 5 ms, the
+ * latency this benchmark aims at, with {@code off} the transfers are not limited, so every request queues for a JDBC
+ * connection; the sampled requests that were rejected are reported after each iteration. Both set the limits
+ * explicitly, whatever {@code conf/config.json} ships.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class HttpOverloadBenchmark {
+
+    @Param({"64", "256"})
+    public int load;
+
+    @Param({"on", "off"})
+    public String admission;
+
+    private Vertx vertx;
+    private HttpClient client;
+    private String body;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        vertx = Vertx.vertx();
+        JsonObject transfers = "on".equals(admission) //
+                ? new JsonObject().put("MAX_IN_FLIGHT", 32).put("QUEUE_SIZE", 64).put("QUEUE_TIMEOUT_MS", 5) //
+                : new JsonObject().put("MAX_IN_FLIGHT", 0);
+        JsonObject config = new JsonObject().put("ADMISSION", new JsonObject().put("TRANSFERS", transfers));
+        BenchmarkSupport.deploy(vertx, new MoneyTransferVerticle(), config);
+        client = vertx.createHttpClient(new HttpClientOptions() //
+                .setDefaultPort(BenchmarkSupport.HTTP_PORT) //
+                .setMaxPoolSize(load + 1) //
+                .setKeepAlive(true));
+        body = Json.encode(new Transaction(null, //
+                new Account(UUID.fromString(BenchmarkSupport.SENDER), 0L), //
+                new Account(UUID.fromString(BenchmarkSupport.RECEIVER), 0L), //
+                new BigDecimal("0.0001")));
+        running.set(true);
+        for (int i = 0; i < load; i++) {
+            vertx.runOnContext(v -> sendInBackground());
+        }
+    }
+
+    private void sendInBackground() {
+        if (!running.get()) {
+            return;
+        }
+        client.post("/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .handler(response -> response.bodyHandler(ignored -> {
+                    if (response.statusCode() == 503) {
+                        vertx.setTimer(10, retry -> sendInBackground());
+                    } else {
+                        sendInBackground();
+                    }
+                })) //
+                .exceptionHandler(failure -> vertx.setTimer(10, retry -> sendInBackground())) //
+                .end(body);
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        System.out.println("Rejected sampled transfers: " + rejected.getAndSet(0));
+    }
+
+    @TearDown
+    public void tearDown() {
+        running.set(false);
+        client.close();
+        BenchmarkSupport.close(vertx);
+    }
+
+    @Benchmark
+    public int transfer() throws Exception {
+        CompletableFuture<Integer> status = new CompletableFuture<>();
+        vertx.runOnContext(v -> client.post("/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .handler(response -> response.bodyHandler(ignored -> status.complete(response.statusCode()))) //
+                .exceptionHandler(status::completeExceptionally) //
+                .end(body));
+        int code = status.get(30, TimeUnit.SECONDS);
+        if (code == 503) {
+            rejected.incrementAndGet();
+        }
+        return code;
+    }
+}
@@ -0,0 +1,95 @@
+package org.jlnh.benchmark;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonObject;
+import org.jlnh.MoneyTransferLauncher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of the launcher: {@code GET /api/accounts/:id} served by {@code instances} verticle instances, with
+ * {@code concurrency} requests in flight. Account reads are answered from the account cache, so the score shows how
+ * requests per second scale with the number of event loops serving them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpScalingBenchmark {
+
+    private static final long TIMEOUT_MS = 5000L;
+
+    @Param({"1", "2", "4", "8"})
+    public int instances;
+
+    @Param({"64"})
+    public int concurrency;
+
+    private Vertx vertx;
+    private HttpClient client;
+    private Semaphore inFlight;
+    private final AtomicLong failures = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        vertx = Vertx.vertx();
+        BenchmarkSupport.deploy(vertx, new MoneyTransferLauncher(), new JsonObject().put("INSTANCES", instances));
+        client = vertx.createHttpClient(new HttpClientOptions() //
+                .setDefaultPort(BenchmarkSupport.HTTP_PORT) //
+                .setMaxPoolSize(concurrency) //
+                .setKeepAlive(true));
+        inFlight = new Semaphore(concurrency);
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+        if (failures.get() > 0) {
+            System.out.println("Failed requests: " + failures.getAndSet(0));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        BenchmarkSupport.close(vertx);
+    }
+
+    @Benchmark
+    public void getAccount() throws InterruptedException {
+        inFlight.acquire();
+        client.get("/api/accounts/" + BenchmarkSupport.SENDER) //
+                .setTimeout(TIMEOUT_MS) //
+                .handler(response -> response.bodyHandler(ignored -> {
+                    if (response.statusCode() != 200) {
+                        failures.incrementAndGet();
+                    }
+                    inFlight.release();
+                })) //
+                .exceptionHandler(failure -> {
+                    failures.incrementAndGet();
+                    inFlight.release();
+                }) //
+                .end();
+    }
+}
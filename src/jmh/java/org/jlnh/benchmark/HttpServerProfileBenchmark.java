@@ -0,0 +1,147 @@
+package org.jlnh.benchmark;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Requests per second with {@code concurrency} requests in flight, in the way of {@code wrk}, against the server
+ * started with the default {@code HTTP_SERVER} options of {@code conf/config.json} or the tuned {@code profile} of
+ * {@code conf/http-tuned.json}, whose vertx instance prefers the native transport.
+ * <p>
+ * Over {@code http1} every request in flight holds a connection of its own. Over {@code h2c}, HTTP/2 with prior
+ * knowledge, they are multiplexed over four connections. The client has a vertx instance of its own, on the JDK
+ * transport for both profiles. Admission control is disabled. Requests that fail or time out are reported after each
+ * iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpServerProfileBenchmark {
+
+    private static final long TIMEOUT_MS = 5000L;
+    private static final int H2C_CONNECTIONS = 4;
+
+    @Param({"default", "tuned"})
+    public String profile;
+
+    @Param({"http1", "h2c"})
+    public String protocol;
+
+    @Param({"256"})
+    public int concurrency;
+
+    private Vertx server;
+    private Vertx clientVertx;
+    private HttpClient client;
+    private Semaphore inFlight;
+    private String body;
+    private final AtomicLong failures = new AtomicLong();
+
+    @Setup
+    public void setUp() throws Exception {
+        JsonObject config = new JsonObject() //
+                .put("METRICS", new JsonObject().put("PORT", -1)) //
+                .put("ADMISSION", new JsonObject().put("TRANSFERS", new JsonObject().put("MAX_IN_FLIGHT", 0)));
+        boolean tuned = "tuned".equals(profile);
+        if (tuned) {
+            config.mergeIn(new JsonObject(new String(Files.readAllBytes(Paths.get("conf/http-tuned.json")), "UTF-8")));
+        }
+        server = Vertx.vertx(new VertxOptions().setPreferNativeTransport(tuned));
+        BenchmarkSupport.deploy(server, new MoneyTransferVerticle(), config);
+
+        clientVertx = Vertx.vertx();
+        HttpClientOptions options = new HttpClientOptions() //
+                .setDefaultPort(BenchmarkSupport.HTTP_PORT) //
+                .setKeepAlive(true);
+        if ("h2c".equals(protocol)) {
+            options.setProtocolVersion(HttpVersion.HTTP_2) //
+                    .setHttp2ClearTextUpgrade(false) //
+                    .setHttp2MaxPoolSize(H2C_CONNECTIONS) //
+                    .setHttp2MultiplexingLimit(concurrency / H2C_CONNECTIONS);
+        } else {
+            options.setMaxPoolSize(concurrency);
+        }
+        client = clientVertx.createHttpClient(options);
+        inFlight = new Semaphore(concurrency);
+        body = Json.encode(new Transaction(null, //
+                new Account(UUID.fromString(BenchmarkSupport.SENDER), 0L), //
+                new Account(UUID.fromString(BenchmarkSupport.RECEIVER), 0L), //
+                new BigDecimal("0.0001")));
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+        if (failures.get() > 0) {
+            System.out.println("Failed requests: " + failures.getAndSet(0));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        BenchmarkSupport.close(clientVertx);
+        BenchmarkSupport.close(server);
+    }
+
+    @Benchmark
+    public void getAccount() throws InterruptedException {
+        inFlight.acquire();
+        send(client.get("/api/accounts/" + BenchmarkSupport.SENDER), 200).end();
+    }
+
+    @Benchmark
+    public void transfer() throws InterruptedException {
+        inFlight.acquire();
+        send(client.post("/api/transfer"), 201).putHeader("Content-Type", "application/json").end(body);
+    }
+
+    private HttpClientRequest send(HttpClientRequest request, int expectedStatus) {
+        return request //
+                .setTimeout(TIMEOUT_MS) //
+                .handler(response -> response.bodyHandler(ignored -> {
+                    if (response.statusCode() != expectedStatus) {
+                        failures.incrementAndGet();
+                    }
+                    inFlight.release();
+                })) //
+                .exceptionHandler(failure -> {
+                    failures.incrementAndGet();
+                    inFlight.release();
+                });
+    }
+}
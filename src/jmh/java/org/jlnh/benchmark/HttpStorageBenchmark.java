@@ -0,0 +1,120 @@
+package org.jlnh.benchmark;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Requests per second served by the JDBC client against the reactive PostgreSQL client ({@code storage}), with
+ * {@code concurrency} requests in flight on as many connections: {@code GET /api/accounts/:id} with the account cache
+ * disabled ({@code operation=read}), or {@code POST /api/transfer}. Admission control is disabled so that every request
+ * reaches the database client. Requests that fail or time out are reported after each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpStorageBenchmark {
+
+    private static final long TIMEOUT_MS = 5000L;
+
+    @Param({"1000"})
+    public int concurrency;
+
+    @Param({"jdbc", "reactive-pg"})
+    public String storage;
+
+    @Param({"read", "transfer"})
+    public String operation;
+
+    private Vertx vertx;
+    private HttpClient client;
+    private Semaphore inFlight;
+    private String body;
+    private final AtomicLong failures = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        vertx = Vertx.vertx();
+        BenchmarkSupport.deploy(vertx, new MoneyTransferVerticle(), new JsonObject() //
+                .put("STORAGE", new JsonObject().put("TYPE", storage)) //
+                .put("ACCOUNT_CACHE", new JsonObject().put("MAX_SIZE", 0)) //
+                .put("ADMISSION", new JsonObject().put("TRANSFERS", new JsonObject().put("MAX_IN_FLIGHT", 0))));
+        client = vertx.createHttpClient(new HttpClientOptions() //
+                .setDefaultPort(BenchmarkSupport.HTTP_PORT) //
+                .setMaxPoolSize(concurrency) //
+                .setKeepAlive(true));
+        inFlight = new Semaphore(concurrency);
+        body = Json.encode(new Transaction(null, //
+                new Account(UUID.fromString(BenchmarkSupport.SENDER), 0L), //
+                new Account(UUID.fromString(BenchmarkSupport.RECEIVER), 0L), //
+                new BigDecimal("0.0001")));
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+        if (failures.get() > 0) {
+            System.out.println("Failed transfers: " + failures.getAndSet(0));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        BenchmarkSupport.close(vertx);
+    }
+
+    @Benchmark
+    public void request() throws InterruptedException {
+        inFlight.acquire();
+        boolean read = "read".equals(operation);
+        HttpClientRequest request = read //
+                ? client.get("/api/accounts/" + BenchmarkSupport.SENDER) //
+                : client.post("/api/transfer").putHeader("Content-Type", "application/json");
+        request.setTimeout(TIMEOUT_MS) //
+                .handler(response -> response.bodyHandler(ignored -> {
+                    if (response.statusCode() != (read ? 200 : 201)) {
+                        failures.incrementAndGet();
+                    }
+                    inFlight.release();
+                })) //
+                .exceptionHandler(failure -> {
+                    failures.incrementAndGet();
+                    inFlight.release();
+                });
+        if (read) {
+            request.end();
+        } else {
+            request.end(body);
+        }
+    }
+}
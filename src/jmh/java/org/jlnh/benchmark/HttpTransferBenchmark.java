@@ -0,0 +1,106 @@
+package org.jlnh.benchmark;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end {@code POST /api/transfer} through a local Vert.x HTTP client, keeping {@code concurrency} requests in
+ * flight: every operation waits for a free slot and sends one request, so the score is the number of completed
+ * transfers per second at that concurrency. Requests that fail or time out are reported after each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpTransferBenchmark {
+
+    private static final long TIMEOUT_MS = 5000L;
+
+    @Param({"1", "16", "64"})
+    public int concurrency;
+
+    @Param({"jdbc", "group-commit", "ledger"})
+    public String engine;
+
+    private Vertx vertx;
+    private HttpClient client;
+    private Semaphore inFlight;
+    private String body;
+    private final AtomicLong failures = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        vertx = Vertx.vertx();
+        BenchmarkSupport.deploy(vertx, new MoneyTransferVerticle(), new JsonObject().put("TRANSFER_ENGINE", engine));
+        client = vertx.createHttpClient(new HttpClientOptions() //
+                .setDefaultPort(BenchmarkSupport.HTTP_PORT) //
+                .setMaxPoolSize(concurrency) //
+                .setKeepAlive(true));
+        inFlight = new Semaphore(concurrency);
+        body = Json.encode(new Transaction(null, //
+                new Account(UUID.fromString(BenchmarkSupport.SENDER), 0L), //
+                new Account(UUID.fromString(BenchmarkSupport.RECEIVER), 0L), //
+                new BigDecimal("0.0001")));
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+        if (failures.get() > 0) {
+            System.out.println("Failed transfers: " + failures.getAndSet(0));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        BenchmarkSupport.close(vertx);
+    }
+
+    @Benchmark
+    public void transfer() throws InterruptedException {
+        inFlight.acquire();
+        client.post("/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .setTimeout(TIMEOUT_MS) //
+                .handler(response -> response.bodyHandler(ignored -> {
+                    if (response.statusCode() != 201) {
+                        failures.incrementAndGet();
+                    }
+                    inFlight.release();
+                })) //
+                .exceptionHandler(failure -> {
+                    failures.incrementAndGet();
+                    inFlight.release();
+                }) //
+                .end(body);
+    }
+}
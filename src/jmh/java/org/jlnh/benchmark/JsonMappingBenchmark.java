@@ -0,0 +1,122 @@
+package org.jlnh.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.jlnh.util.JsonHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON mapping of the {@link Account} and {@link Transaction} payloads, as done on every request.
+ * <p>
+ * The {@code legacy*} benchmarks map a request and its response the way it was done before {@link JsonHelper}, and
+ * are meant to be compared with their counterparts with {@code -prof gc} for the bytes allocated per request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonMappingBenchmark {
+
+    private String transactionJson;
+    private Buffer transactionRequest;
+    private JsonObject transactionBody;
+    private Transaction transaction;
+    private Account account;
+
+    @Setup
+    public void setUp() {
+        account = new Account(UUID.fromString(BenchmarkSupport.SENDER), new BigDecimal("9999.99"));
+        transaction = new Transaction(UUID.randomUUID(), account,
+                new Account(UUID.fromString(BenchmarkSupport.RECEIVER), BigDecimal.ZERO), new BigDecimal("0.01"));
+        transactionJson = Json.encode(transaction);
+        transactionBody = new JsonObject(transactionJson);
+        transactionRequest = Buffer.buffer(transactionJson);
+    }
+
+    @Benchmark
+    public int legacyTransferRequest() {
+        Transaction incoming = new JsonObject(transactionRequest).mapTo(Transaction.class);
+        incoming.setTo(null);
+        Json.prettyMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        return Buffer.buffer(Json.encodePrettily(incoming)).length();
+    }
+
+    @Benchmark
+    public int transferRequest() {
+        Transaction incoming = JsonHelper.readTransaction(transactionRequest);
+        ByteBuf out = PooledByteBufAllocator.DEFAULT.heapBuffer(256);
+        try {
+            JsonHelper.writeTransfer(out, incoming);
+            return out.readableBytes();
+        } finally {
+            out.release();
+        }
+    }
+
+    @Benchmark
+    public int legacyAccountResponse() {
+        return Buffer.buffer(Json.encodePrettily(account)).length();
+    }
+
+    @Benchmark
+    public int accountResponse() {
+        ByteBuf out = PooledByteBufAllocator.DEFAULT.heapBuffer(256);
+        try {
+            JsonHelper.write(out, account);
+            return out.readableBytes();
+        } finally {
+            out.release();
+        }
+    }
+
+    @Benchmark
+    public Transaction mapToTransaction() {
+        return transactionBody.mapTo(Transaction.class);
+    }
+
+    @Benchmark
+    public Transaction decodeTransaction() {
+        return Json.decodeValue(transactionJson, Transaction.class);
+    }
+
+    @Benchmark
+    public String encodePrettilyTransaction() {
+        return Json.encodePrettily(transaction);
+    }
+
+    @Benchmark
+    public String encodeTransaction() {
+        return Json.encode(transaction);
+    }
+
+    @Benchmark
+    public String encodePrettilyAccount() {
+        return Json.encodePrettily(account);
+    }
+
+    @Benchmark
+    public String encodeAccount() {
+        return Json.encode(account);
+    }
+}
@@ -0,0 +1,89 @@
+package org.jlnh.benchmark;
+
+import io.vertx.core.json.JsonArray;
+import org.jlnh.model.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the money arithmetic of a transfer done with {@link BigDecimal} balances read from doubles (the way
+ * accounts used to be mapped) against the {@link Money} minor units.
+ * <p>
+ * Run with {@code -prof gc} to compare the allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    private double senderRow;
+    private double receiverRow;
+    private double amountJson;
+
+    private long senderUnits;
+    private long receiverUnits;
+    private long amountUnits;
+
+    @Setup
+    public void setUp() {
+        senderRow = 10000.00;
+        receiverRow = 9.99;
+        amountJson = 0.01;
+        senderUnits = Money.fromBigDecimal(BigDecimal.valueOf(senderRow));
+        receiverUnits = Money.fromBigDecimal(BigDecimal.valueOf(receiverRow));
+        amountUnits = Money.fromBigDecimal(BigDecimal.valueOf(amountJson));
+    }
+
+    @Benchmark
+    public void bigDecimalArithmetic(Blackhole blackhole) {
+        BigDecimal amount = BigDecimal.valueOf(amountJson);
+        BigDecimal sender = BigDecimal.valueOf(senderRow);
+        BigDecimal receiver = BigDecimal.valueOf(receiverRow);
+        if (sender.compareTo(amount) >= 0) {
+            blackhole.consume(sender.subtract(amount));
+            blackhole.consume(receiver.add(amount));
+        }
+    }
+
+    @Benchmark
+    public void unitsArithmetic(Blackhole blackhole) {
+        if (senderUnits >= amountUnits) {
+            blackhole.consume(Money.subtract(senderUnits, amountUnits));
+            blackhole.consume(Money.add(receiverUnits, amountUnits));
+        }
+    }
+
+    @Benchmark
+    public void bigDecimalWithParameters(Blackhole blackhole) {
+        BigDecimal amount = BigDecimal.valueOf(amountJson);
+        BigDecimal sender = BigDecimal.valueOf(senderRow).subtract(amount);
+        BigDecimal receiver = BigDecimal.valueOf(receiverRow).add(amount);
+        blackhole.consume(new JsonArray().add(amount.doubleValue()));
+        blackhole.consume(new JsonArray().add(sender.doubleValue()));
+        blackhole.consume(new JsonArray().add(receiver.doubleValue()));
+    }
+
+    @Benchmark
+    public void unitsWithParameters(Blackhole blackhole) {
+        long sender = Money.subtract(senderUnits, amountUnits);
+        long receiver = Money.add(receiverUnits, amountUnits);
+        blackhole.consume(new JsonArray().add(Money.toPlainString(amountUnits)));
+        blackhole.consume(new JsonArray().add(Money.toPlainString(sender)));
+        blackhole.consume(new JsonArray().add(Money.toPlainString(receiver)));
+    }
+}
@@ -0,0 +1,97 @@
+package org.jlnh.benchmark;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jlnh.model.Account;
+import org.jlnh.model.Money;
+import org.jlnh.model.Transaction;
+import org.jlnh.util.AuditLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent on the calling thread (the event loop) to log 10k transfers, i.e. one second of transfers at
+ * 10k transfers/sec: the four concatenated INFO lines the transfer path used to log, against the single
+ * {@link AuditLog} record, each with synchronous and with asynchronous loggers.
+ * <p>
+ * Every measured batch of 10k transfers is followed by a pause long enough for the asynchronous loggers to drain
+ * their ring buffer, so the score is the enqueue cost rather than the appender throughput. Both configurations
+ * write to the same buffered files under {@code target/benchmark-logs}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, batchSize = TransferLoggingBenchmark.TRANSFERS_PER_SECOND)
+@Measurement(iterations = 20, batchSize = TransferLoggingBenchmark.TRANSFERS_PER_SECOND)
+public class TransferLoggingBenchmark {
+
+    static final int TRANSFERS_PER_SECOND = 10_000;
+
+    private static final String CONFIG = "-Dlog4j.configurationFile=log4j2-benchmark.properties";
+    private static final String SYNC = "-DLog4jContextSelector=org.apache.logging.log4j.core.selector.ClassLoaderContextSelector";
+
+    private static final Logger LOGGER = LogManager.getLogger("org.jlnh.MoneyTransferVerticle");
+
+    private Account sender;
+    private Account receiver;
+    private Transaction transaction;
+
+    @Setup
+    public void setUp() {
+        sender = new Account(UUID.fromString(BenchmarkSupport.SENDER), 100_000_000L);
+        receiver = new Account(UUID.fromString(BenchmarkSupport.RECEIVER), 0L);
+        transaction = new Transaction(UUID.randomUUID(), sender, receiver, 100L);
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(500);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {CONFIG, SYNC})
+    public void fourLinesSync() {
+        fourLines();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = CONFIG)
+    public void fourLinesAsync() {
+        fourLines();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {CONFIG, SYNC})
+    public void auditRecordSync() {
+        AuditLog.committed(transaction);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = CONFIG)
+    public void auditRecordAsync() {
+        AuditLog.committed(transaction);
+    }
+
+    /**
+     * The lines the transfer path used to log for every transfer.
+     */
+    private void fourLines() {
+        LOGGER.info("Transaction incoming: ".concat(transaction.toString()));
+        LOGGER.info("Transferring: ".concat(Money.toPlainString(transaction.getAmountUnits())));
+        LOGGER.info("From: ".concat(sender.toString()));
+        LOGGER.info("To: ".concat(receiver.toString()));
+    }
+}
@@ -0,0 +1,85 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.benchmark.BenchmarkSupport;
+import org.jlnh.metrics.Metrics;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.jlnh.benchmark.BenchmarkSupport.await;
+
+/**
+ * The database hot paths of the {@link JdbcRepository}, {@code findAccount} and {@code transferMoney}, against the
+ * in-memory H2 database. Each invocation waits for the operation to complete, so the score is the single connection
+ * latency; a transfer is measured up to its commit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JdbcRepositoryBenchmark {
+
+    private static final long AMOUNT = 1L;
+
+    private Vertx vertx;
+    private JdbcRepository repository;
+    private SQLConnection connection;
+    private UUID sender;
+    private UUID receiver;
+    private boolean forth;
+
+    @Setup
+    public void setUp() {
+        vertx = Vertx.vertx();
+        BenchmarkSupport.deploy(vertx, new MoneyTransferVerticle(), new JsonObject());
+        repository = new JdbcRepository(JDBCClient.createShared(vertx, new JsonObject(), "test"), Metrics.shared(vertx));
+        connection = await(repository.connect().compose(TransferBatch::begin));
+        sender = UUID.fromString(BenchmarkSupport.SENDER);
+        receiver = UUID.fromString(BenchmarkSupport.RECEIVER);
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.close();
+        BenchmarkSupport.close(vertx);
+    }
+
+    @Benchmark
+    public Account findAccount() {
+        return await(repository.findAccount(BenchmarkSupport.SENDER, connection, false));
+    }
+
+    @Benchmark
+    public Transaction transferMoney() {
+        forth = !forth;
+        Future<Transaction> transfer = forth
+                ? repository.transferMoney(null, sender, receiver, AMOUNT, connection)
+                : repository.transferMoney(null, receiver, sender, AMOUNT, connection);
+        return await(transfer.compose(transaction -> {
+            Future<Void> committed = Future.future();
+            connection.commit(committed);
+            return committed.map(transaction);
+        }));
+    }
+}
@@ -0,0 +1,62 @@
+package org.jlnh.persistence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Balance lookups and transfers on an {@link OffHeapAccountTable} of {@code accounts} random accounts, each
+ * invocation picking accounts at random so most of them miss the CPU caches once the table outgrows them. The table
+ * lives in direct memory: the heap only holds the ids the benchmark picks from.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx512m", "-XX:MaxDirectMemorySize=2g"})
+public class OffHeapAccountTableBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int accounts;
+
+    private OffHeapAccountTable table;
+    private long[] ids;
+    private SplittableRandom random;
+
+    @Setup
+    public void setUp() {
+        table = OffHeapAccountTable.allocate(accounts);
+        random = new SplittableRandom(42);
+        ids = new long[2 * accounts];
+        for (int i = 0; i < accounts; i++) {
+            ids[2 * i] = random.nextLong();
+            ids[2 * i + 1] = random.nextLong();
+            table.put(ids[2 * i], ids[2 * i + 1], 1_000_000L);
+        }
+    }
+
+    @Benchmark
+    public long balance() {
+        int account = random.nextInt(accounts);
+        return table.balance(ids[2 * account], ids[2 * account + 1]);
+    }
+
+    @Benchmark
+    public int transfer() {
+        int from = random.nextInt(accounts);
+        int to = random.nextInt(accounts);
+        return table.transfer(ids[2 * from], ids[2 * from + 1], ids[2 * to], ids[2 * to + 1], 1L);
+    }
+}
@@ -0,0 +1,141 @@
+package org.jlnh.persistence;
+
+import org.jlnh.model.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cold start of a fresh in-memory H2 database holding {@code accounts} accounts and a tenth as many transactions:
+ * replaying the SQL dump written by H2's {@code SCRIPT} command with {@code RUNSCRIPT}, or creating the tables with
+ * the schema scripts and restoring a {@link Snapshot}. Both files are written once, from the same database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    private static final String[] SCHEMA_SCRIPTS = {"scripts/V__01_Create.sql", "scripts/V__03_Transaction_History.sql"};
+
+    @Param({"100000", "1000000"})
+    public int accounts;
+
+    private Path directory;
+    private Path dump;
+    private Path snapshot;
+    private Connection connection;
+    private int database;
+
+    @Setup
+    public void setUp() throws SQLException, IOException {
+        directory = Files.createTempDirectory("snapshot");
+        dump = directory.resolve("dump.sql");
+        snapshot = directory.resolve("accounts.snapshot");
+        try (Connection source = DriverManager.getConnection("jdbc:h2:mem:source")) {
+            createSchema(source);
+            populate(source);
+            try (Statement statement = source.createStatement()) {
+                statement.execute("SCRIPT TO '" + dump + "'");
+            }
+            Snapshot.write(source, snapshot);
+        }
+    }
+
+    private void populate(Connection source) throws SQLException {
+        try (PreparedStatement insertAccount = source.prepareStatement("INSERT INTO account (id, balance) VALUES (?, ?)");
+             PreparedStatement insertTransaction = source.prepareStatement(
+                     "INSERT INTO transaction (id, \"from\", to, amount, created_at) VALUES (?, ?, ?, ?, ?)")) {
+            UUID[] ids = new UUID[accounts];
+            for (int i = 0; i < accounts; i++) {
+                ids[i] = UUID.randomUUID();
+                insertAccount.setObject(1, ids[i]);
+                insertAccount.setBigDecimal(2, Money.toBigDecimal(ThreadLocalRandom.current().nextLong(1_000_000_000L)));
+                insertAccount.addBatch();
+                if (i % 10_000 == 9_999) {
+                    insertAccount.executeBatch();
+                }
+            }
+            insertAccount.executeBatch();
+            for (int i = 0; i < accounts / 10; i++) {
+                insertTransaction.setObject(1, UUID.randomUUID());
+                insertTransaction.setObject(2, ids[ThreadLocalRandom.current().nextInt(accounts)]);
+                insertTransaction.setObject(3, ids[ThreadLocalRandom.current().nextInt(accounts)]);
+                insertTransaction.setBigDecimal(4, Money.toBigDecimal(1L + ThreadLocalRandom.current().nextLong(1_000_000L)));
+                insertTransaction.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+                insertTransaction.addBatch();
+                if (i % 10_000 == 9_999) {
+                    insertTransaction.executeBatch();
+                }
+            }
+            insertTransaction.executeBatch();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void open() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:target" + database++);
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public boolean sqlScript() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            return statement.execute("RUNSCRIPT FROM '" + dump + "'");
+        }
+    }
+
+    @Benchmark
+    public long[] snapshot() throws SQLException, IOException {
+        createSchema(connection);
+        return Snapshot.restore(connection, snapshot, 10_000);
+    }
+
+    private static void createSchema(Connection connection) throws SQLException, IOException {
+        try (Statement statement = connection.createStatement()) {
+            for (String script : SCHEMA_SCRIPTS) {
+                statement.execute(new String(Files.readAllBytes(Paths.get("src/main/resources", script)), StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
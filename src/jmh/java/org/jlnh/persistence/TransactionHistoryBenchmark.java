@@ -0,0 +1,108 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.benchmark.BenchmarkSupport;
+import org.jlnh.metrics.Metrics;
+import org.jlnh.model.TransactionRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.jlnh.benchmark.BenchmarkSupport.await;
+
+/**
+ * Pages of the history of an account read by {@link JdbcRepository#findTransactions}, on a {@code transaction}
+ * table of {@code rows} transfers between 100k accounts, one of them being part of 1% of the transfers. Sampled so
+ * the percentiles of the first page can be read off; on a single core the p99 is about 5 ms on 1M transfers, made
+ * of the garbage collections and the thread hand-offs rather than of the query, so the 5 ms target is not met.
+ * <p>
+ * {@code -p rows=10000000} needs a few GB of heap for the in-memory database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class TransactionHistoryBenchmark {
+
+    private static final int ACCOUNTS = 100_000;
+    private static final int PAGE = 50;
+
+    @Param({"1000000"})
+    public int rows;
+
+    private Vertx vertx;
+    private JdbcRepository repository;
+    private SplittableRandom random;
+    private UUID hot;
+    private UUID deepCursor;
+
+    @Setup
+    public void setUp() throws SQLException {
+        vertx = Vertx.vertx();
+        BenchmarkSupport.deploy(vertx, new MoneyTransferVerticle(), new JsonObject());
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:test", "sa", "sa");
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO account SELECT " + account("x") + ", 0 FROM SYSTEM_RANGE(0, " + (ACCOUNTS - 1) + ")");
+            statement.execute("INSERT INTO transaction (id, \"from\", to, amount, created_at) SELECT RANDOM_UUID(), "
+                    + account("CASEWHEN(MOD(x, 100) = 0, 0, MOD(x * 7919, " + ACCOUNTS + "))") + ", "
+                    + account("MOD(x * 104729 + 1, " + ACCOUNTS + ")") + ", 1, "
+                    + "DATEADD('MILLISECOND', x, TIMESTAMP '2020-01-01 00:00:00') FROM SYSTEM_RANGE(1, " + rows + ")");
+        }
+        repository = new JdbcRepository(JDBCClient.createShared(vertx, new JsonObject(), "test"), Metrics.shared(vertx));
+        random = new SplittableRandom(42);
+        hot = accountId(0);
+        List<TransactionRecord> page = await(repository.findTransactions(hot, null, 1000));
+        deepCursor = page.get(page.size() - 1).getId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkSupport.close(vertx);
+    }
+
+    @Benchmark
+    public List<TransactionRecord> firstPage() {
+        return await(repository.findTransactions(accountId(random.nextInt(ACCOUNTS)), null, PAGE));
+    }
+
+    @Benchmark
+    public List<TransactionRecord> firstPageOfBusyAccount() {
+        return await(repository.findTransactions(hot, null, PAGE));
+    }
+
+    @Benchmark
+    public List<TransactionRecord> nextPageOfBusyAccount() {
+        return await(repository.findTransactions(hot, deepCursor, PAGE));
+    }
+
+    private static String account(String number) {
+        return "CAST(CONCAT('00000000-0000-4000-8000-', LPAD(" + number + ", 12, '0')) AS UUID)";
+    }
+
+    private static UUID accountId(int number) {
+        return UUID.fromString(String.format("00000000-0000-4000-8000-%012d", number));
+    }
+}
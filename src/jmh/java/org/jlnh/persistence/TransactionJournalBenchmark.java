@@ -0,0 +1,62 @@
+package org.jlnh.persistence;
+
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Batches of a million appends to a fresh {@link TransactionJournal} acknowledging them right away, i.e. what a
+ * transfer pays to be recorded without waiting for a sync, to compare with the three statements of the
+ * {@link JdbcRepositoryBenchmark#transferMoney()}. Each batch writes 72 MB, rolling segments of 16 MB along the way.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = 1_000_000)
+@Measurement(iterations = 10, batchSize = 1_000_000)
+@Fork(1)
+public class TransactionJournalBenchmark {
+
+    private Path directory;
+    private TransactionJournal journal;
+    private Transaction transaction;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        journal = TransactionJournal.open(directory, 16 * 1024 * 1024, 256);
+        transaction = new Transaction(UUID.randomUUID(), new Account(UUID.randomUUID(), 0L),
+                new Account(UUID.randomUUID(), 0L), 1L);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Object append() {
+        return journal.save(transaction);
+    }
+}
@@ -0,0 +1,53 @@
+package org.jlnh;
+
+import io.vertx.core.Launcher;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Main class of the fat jar: the Vert.x launcher, which also sets the options the vertx instance must be created
+ * with, before any verticle can read the configuration.
+ * <p>
+ * The native transport (epoll on Linux) is preferred when {@code HTTP_SERVER.NATIVE_TRANSPORT} is true in
+ * {@code conf/config.json}, overridden by the {@code -conf} configuration as in the verticles. Vert.x falls back to
+ * the JDK transport if it is not available.
+ *
+ * @author João Heckmann
+ */
+public class MoneyTransferApplication extends Launcher {
+
+    private static final Path CONFIG_FILE = Paths.get("conf/config.json");
+
+    private JsonObject config = new JsonObject();
+
+    public static void main(String[] args) {
+        new MoneyTransferApplication().dispatch(args);
+    }
+
+    @Override
+    public void afterConfigParsed(JsonObject config) {
+        this.config = config;
+    }
+
+    @Override
+    public void beforeStartingVertx(VertxOptions options) {
+        JsonObject server = fileConfig().mergeIn(config, true).getJsonObject("HTTP_SERVER", new JsonObject());
+        options.setPreferNativeTransport(server.getBoolean("NATIVE_TRANSPORT", false));
+    }
+
+    private static JsonObject fileConfig() {
+        try {
+            return Files.exists(CONFIG_FILE) //
+                    ? new JsonObject(new String(Files.readAllBytes(CONFIG_FILE), StandardCharsets.UTF_8)) //
+                    : new JsonObject();
+        } catch (IOException e) {
+            return new JsonObject();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.jlnh;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jlnh.util.ConfigHelper;
+
+/**
+ * Entry point of the application: deploys {@code INSTANCES} {@link MoneyTransferVerticle} instances, one per core
+ * by default, so the HTTP API is served by several event loops.
+ * <p>
+ * Every instance listens on the same HTTP port, which Vert.x balances across them, and uses the same shared JDBC
+ * pool. The database schema and the transfer engine are set up by whichever instance starts first.
+ *
+ * @author João Heckmann
+ */
+public class MoneyTransferLauncher extends AbstractVerticle {
+
+    private static final Logger LOGGER = LogManager.getLogger(MoneyTransferLauncher.class);
+
+    @Override
+    public void start(Future<Void> startFuture) {
+        ConfigHelper.retrieve(vertx, config()).compose(config -> {
+            int instances = config.getInteger("INSTANCES", 0) > 0 //
+                    ? config.getInteger("INSTANCES") //
+                    : Runtime.getRuntime().availableProcessors();
+
+            Future<String> future = Future.future();
+            vertx.deployVerticle(MoneyTransferVerticle.class.getName(), //
+                    new DeploymentOptions().setConfig(config()).setInstances(instances), future);
+            return future.map(id -> {
+                LOGGER.info("Deployed {} instances of the money transfer API", instances);
+                return (Void) null;
+            });
+        }).setHandler(startFuture);
+    }
+}
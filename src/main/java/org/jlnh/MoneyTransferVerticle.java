@@ -1,27 +1,69 @@
 package org.jlnh;
 
-import io.vertx.config.ConfigRetriever;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.ServerWebSocket;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
 import io.vertx.ext.jdbc.JDBCClient;
 import io.vertx.ext.sql.SQLConnection;
-import io.vertx.ext.sql.SQLOptions;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.handler.BodyHandler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jlnh.admission.AdmissionControl;
+import org.jlnh.async.TransferQueue;
+import org.jlnh.cache.AccountCache;
+import org.jlnh.cache.IdempotencyStore;
+import org.jlnh.cache.TransactionHistoryCache;
+import org.jlnh.cluster.ClusterNode;
+import org.jlnh.ledger.Ledger;
+import org.jlnh.metrics.Metrics;
+import org.jlnh.metrics.MetricsVerticle;
+import org.jlnh.metrics.TransferStats;
 import org.jlnh.model.Account;
 import org.jlnh.model.Transaction;
+import org.jlnh.model.TransactionRecord;
+import org.jlnh.persistence.AccountRepository;
+import org.jlnh.persistence.AccountSeed;
+import org.jlnh.persistence.AccountSequencer;
+import org.jlnh.persistence.GroupCommit;
+import org.jlnh.persistence.IdempotencyKeys;
+import org.jlnh.persistence.JdbcRepository;
+import org.jlnh.persistence.OffHeapAccountRepository;
+import org.jlnh.persistence.OffHeapAccountTable;
+import org.jlnh.persistence.ReactivePgRepository;
+import org.jlnh.persistence.Snapshot;
+import org.jlnh.persistence.TransactionJournal;
+import org.jlnh.persistence.TransferBatch;
+import org.jlnh.util.AuditLog;
+import org.jlnh.util.ConfigHelper;
+import org.jlnh.util.JsonHelper;
+import org.jlnh.util.ServerHelper;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.jlnh.util.ActionHelper.*;
+import static org.jlnh.util.StreamHelper.APPLICATION_NDJSON;
+import static org.jlnh.util.StreamHelper.streamPages;
+import static org.jlnh.util.StreamHelper.streamRows;
 
 /**
  * Verticle responsible for the money transfer API.
@@ -31,64 +73,664 @@ import static org.jlnh.util.ActionHelper.*;
 public class MoneyTransferVerticle extends AbstractVerticle {
 
     private JDBCClient jdbcClient;
+    private JdbcRepository jdbcRepository;
+    private AccountRepository accounts;
+    private ReactivePgRepository reactivePgRepository;
+    private Ledger ledger;
+    private ClusterNode cluster;
+    private GroupCommit groupCommit;
+    private AccountCache accountCache;
+    private TransactionHistoryCache historyCache;
+    private boolean journaled;
+    private TransferStats transferStats;
+    private AdmissionControl admission;
+    private TransferQueue transferQueue;
+    private int asyncInFlight;
+    private String retryAfter;
+    private IdempotencyStore idempotencyStore;
+    private AccountSequencer sequencer;
+    private int maxBatchTransfers;
+    private int batchChunkAccounts;
+
+    private Metrics metrics;
+    private long nextLagProbe;
 
     private static final Logger LOGGER = LogManager.getLogger(MoneyTransferVerticle.class);
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
 
-    @Override
-    public void start(Future<Void> startFuture) {
-        Router router = Router.router(vertx);
-        router.route().handler(BodyHandler.create());
+    private static final String SET_UP = "money-transfer.set-up";
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
 
-        router.post("/api/transfer").handler(this::transfer);
+    private static final String[] SCHEMA_SCRIPTS = {"scripts/V__01_Create.sql", "scripts/V__02_Idempotency.sql",
+            "scripts/V__03_Transaction_History.sql"};
+    private static final String CLUSTER_SCHEMA_SCRIPT = "scripts/V__04_Cluster.sql";
 
-        router.get("/api/accounts").handler(this::getAllAccounts);
-        router.get("/api/accounts/:id").handler(this::getAccount);
 
-        ConfigRetriever configRetriever = ConfigRetriever.create(vertx);
-        ConfigRetriever.getConfigAsFuture(configRetriever)
+    @Override
+    public void start(Future<Void> startFuture) {
+        metrics = Metrics.shared(vertx);
+
+        ConfigHelper.retrieve(vertx, config())
                 .compose(config -> {
                     jdbcClient = JDBCClient.createShared(vertx, config, "test");
+                    jdbcRepository = new JdbcRepository(jdbcClient, metrics);
+                    accounts = jdbcRepository;
+                    maxBatchTransfers = config.getInteger("MAX_BATCH_TRANSFERS", 10000);
+                    batchChunkAccounts = Math.max(config.getInteger("BATCH_CHUNK_ACCOUNTS", 256), 2);
+                    sequencer = AccountSequencer.shared(vertx, config.getInteger("SEQUENCER_STRIPES", 1024));
+                    if (ClusterNode.selected(config)) {
+                        cluster = ClusterNode.create(vertx, config, jdbcRepository, sequencer);
+                    }
+                    if (OffHeapAccountTable.selected(config) && !TransactionJournal.selected(config)
+                            && !config.getJsonObject("STORAGE").getString("FILE", "").isEmpty()) {
+                        throw new IllegalStateException("An account table mapped from a STORAGE.FILE is recovered from the "
+                                + "transaction journal, so it needs a JOURNAL.DIR");
+                    }
+                    if (Snapshot.selected(config) && (cluster != null || OffHeapAccountTable.selected(config)
+                            || ReactivePgRepository.selected(config))) {
+                        throw new IllegalStateException("Snapshots are taken of the H2 database, which is not kept up to date with "
+                                + "the off-heap storage or the reactive PostgreSQL client, nor holds the credits of a node of a cluster");
+                    }
+                    JsonObject cacheConfig = config.getJsonObject("ACCOUNT_CACHE", new JsonObject());
+                    if (cacheConfig.getInteger("MAX_SIZE", 0) > 0 && !OffHeapAccountTable.selected(config)) {
+                        accountCache = AccountCache.shared(vertx, cacheConfig);
+                    }
+                    JsonObject historyConfig = config.getJsonObject("HISTORY_CACHE", new JsonObject());
+                    if (historyConfig.getInteger("MAX_ACCOUNTS", 0) > 0 && !TransactionJournal.selected(config)
+                            && !"ledger".equals(config.getString("TRANSFER_ENGINE"))) {
+                        historyCache = TransactionHistoryCache.shared(vertx, historyConfig);
+                    }
+                    admission = AdmissionControl.shared(vertx, config.getJsonObject("ADMISSION", new JsonObject()), metrics);
+                    retryAfter = String.valueOf(config.getJsonObject("ADMISSION", new JsonObject()).getInteger("RETRY_AFTER_S", 1));
+                    transferStats = TransferStats.shared(vertx, config.getJsonObject("STATS", new JsonObject()));
+                    JsonObject idempotencyConfig = config.getJsonObject("IDEMPOTENCY", new JsonObject());
+                    if (idempotencyConfig.getInteger("MAX_ENTRIES", 0) > 0) {
+                        idempotencyStore = IdempotencyStore.shared(vertx, idempotencyConfig);
+                    }
+                    if (TransferQueue.selected(config)) {
+                        transferQueue = TransferQueue.shared(vertx, config.getJsonObject("ASYNC"));
+                    }
+                    probeEventLoopLag(config.getJsonObject("METRICS", new JsonObject()).getLong("EVENT_LOOP_PROBE_MS", 100L));
 
-                    return connect() //
-                            .compose(sqlConnection -> { //
-                                Future<Void> future = Future.future();
-                                createTablesIfNeeded(sqlConnection) //
-                                        .setHandler(event -> { //
-                                            sqlConnection.close();
-                                            future.handle(event.mapEmpty());
-                                        });
-                                return future;
-                            }).compose(v -> createHttpServer(config, router));
+                    return setUpOnce(config) //
+                            .compose(v -> serveCluster()) //
+                            .compose(v -> consumeSubmittedTransfers()) //
+                            .compose(v -> createHttpServer(config)) //
+                            .map(v -> {
+                                metrics.recordReady();
+                                return v;
+                            });
                 }).setHandler(startFuture);
     }
 
+    @Override
+    public void stop() {
+        if (reactivePgRepository != null) {
+            reactivePgRepository.close();
+        }
+    }
+
     /**
-     * Reads the config file and starts the HTTP server asynchronously.
+     * Creates the database tables, restores the snapshot and deploys the transfer engine, unless another instance of
+     * this verticle already did, recording how long each phase takes. Instances starting concurrently are serialized
+     * by a local lock, so this happens exactly once per vertx instance whichever instance gets there first; every
+     * instance then binds to the deployed transfer engine.
      *
      * @param config {@link JsonObject} with the application configuration
-     * @param router {@link Router} the server router
      * @return Future empty result
      */
-    private Future<Void> createHttpServer(JsonObject config, Router router) {
+    private Future<Void> setUpOnce(JsonObject config) {
         Future<Void> future = Future.future();
-        vertx.createHttpServer() //
-            .requestHandler(router) //
+        vertx.sharedData().getLocalLock(SET_UP, lock -> {
+            if (lock.failed()) {
+                future.fail(lock.cause());
+                return;
+            }
+            LocalMap<String, Boolean> setUp = vertx.sharedData().getLocalMap(SET_UP);
+            Future<Void> done = Boolean.TRUE.equals(setUp.get(SET_UP)) //
+                    ? Future.succeededFuture() //
+                    : timed("schema", () -> createSchema(config)) //
+                    .compose(v -> timed("restore", () -> restoreSnapshot(config.getJsonObject("SNAPSHOT", new JsonObject())))) //
+                    .compose(v -> timed("recount", this::recountStats)) //
+                    .compose(v -> timed("engine", () -> deployTransferEngine(config))) //
+                    .compose(v -> deployMetrics(config)).map(v -> {
+                        purgeIdempotencyKeys(config.getJsonObject("IDEMPOTENCY", new JsonObject()));
+                        writeSnapshots(config.getJsonObject("SNAPSHOT", new JsonObject()));
+                        redeliverCredits(config.getJsonObject("CLUSTER", new JsonObject()));
+                        checkNativeTransport(config.getJsonObject("HTTP_SERVER", new JsonObject()));
+                        setUp.put(SET_UP, true);
+                        return v;
+                    });
+            done.setHandler(result -> {
+                lock.result().release();
+                if (result.succeeded()) {
+                    bindTransferEngine(config);
+                }
+                future.handle(result);
+            });
+        });
+        return future;
+    }
+
+    /**
+     * Runs a start-up phase, recording its duration once it succeeds.
+     *
+     * @param phase the phase name
+     * @param step starts the phase
+     * @return Future result of the phase
+     */
+    private <T> Future<T> timed(String phase, Supplier<Future<T>> step) {
+        long start = System.nanoTime();
+        return step.get().map(result -> {
+            metrics.recordStartupPhase(phase, start);
+            return result;
+        });
+    }
+
+    /**
+     * Creates the database tables and accounts on a connection of its own, and the {@link AccountSeed seeded accounts}
+     * if there are any. A node of a cluster then only keeps the accounts it owns.
+     *
+     * @param config {@link JsonObject} with the application configuration
+     * @return Future empty result
+     */
+    private Future<Void> createSchema(JsonObject config) {
+        return connect().compose(sqlConnection -> {
+            Future<Void> future = Future.future();
+            Future<SQLConnection> created = createTablesIfNeeded(sqlConnection);
+            if (AccountSeed.selected(config)) {
+                created = created.compose(v -> AccountSeed.insert(sqlConnection, config.getJsonObject("SEED")));
+            }
+            if (cluster != null) {
+                created = created.compose(v -> executeScript(sqlConnection, CLUSTER_SCHEMA_SCRIPT)).compose(cluster::prune);
+            }
+            created.setHandler(event -> {
+                sqlConnection.close();
+                future.handle(event.mapEmpty());
+            });
+            return future;
+        });
+    }
+
+    /**
+     * Replaces the accounts and transactions created with the tables by the ones of the {@link Snapshot}, if
+     * snapshots are enabled and one was already written.
+     *
+     * @param config the {@code SNAPSHOT} configuration
+     * @return Future empty result
+     */
+    private Future<Void> restoreSnapshot(JsonObject config) {
+        String file = config.getString("FILE", "");
+        if (file.isEmpty() || !Files.exists(Paths.get(file))) {
+            return Future.succeededFuture();
+        }
+        int batchSize = config.getInteger("BATCH_SIZE", 10000);
+        return connect().compose(sqlConnection -> {
+            Future<Void> future = Future.future();
+            long start = System.nanoTime();
+            vertx.<long[]>executeBlocking(restore -> {
+                try {
+                    restore.complete(Snapshot.restore(sqlConnection.unwrap(), Paths.get(file), batchSize));
+                } catch (Exception e) {
+                    restore.fail(e);
+                }
+            }, restored -> {
+                sqlConnection.close();
+                if (restored.succeeded()) {
+                    LOGGER.info("Restored {} accounts and {} transactions from {} in {} ms", restored.result()[0],
+                            restored.result()[1], file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+                future.handle(restored.mapEmpty());
+            });
+            return future;
+        });
+    }
+
+    /**
+     * Periodically writes a {@link Snapshot} of the database, if snapshots are enabled, on a worker thread and on a
+     * connection of its own. No snapshot is started while the previous one is still being written.
+     *
+     * @param config the {@code SNAPSHOT} configuration
+     */
+    private void writeSnapshots(JsonObject config) {
+        String file = config.getString("FILE", "");
+        if (file.isEmpty()) {
+            return;
+        }
+        Path path = Paths.get(file);
+        boolean[] writing = new boolean[1];
+        vertx.setPeriodic(config.getLong("INTERVAL_MS", 60000L), timer -> {
+            if (writing[0]) {
+                return;
+            }
+            writing[0] = true;
+            connect().setHandler(connected -> {
+                if (connected.failed()) {
+                    writing[0] = false;
+                    LOGGER.warn("Could not write a snapshot", connected.cause());
+                    return;
+                }
+                SQLConnection sqlConnection = connected.result();
+                long start = System.nanoTime();
+                vertx.<long[]>executeBlocking(write -> {
+                    try {
+                        write.complete(Snapshot.write(sqlConnection.unwrap(), path));
+                    } catch (Exception e) {
+                        write.fail(e);
+                    }
+                }, false, written -> {
+                    sqlConnection.close();
+                    writing[0] = false;
+                    if (written.failed()) {
+                        LOGGER.warn("Could not write a snapshot", written.cause());
+                    } else {
+                        LOGGER.debug("Wrote a snapshot of {} accounts and {} transactions in {} ms", written.result()[0],
+                                written.result()[1], TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    }
+                });
+            });
+        });
+    }
+
+    /**
+     * Starts the {@link TransferStats} from a recount of the accounts and transactions of the database, the only full
+     * scan they need. It runs before the transfer engine is deployed, so the shards of the ledger engine load the
+     * balances it counted; afterwards the stats are only updated by the committed transfers, never read back from the
+     * database the ledger writes behind to.
+     *
+     * @return Future empty result
+     */
+    private Future<Void> recountStats() {
+        return jdbcRepository.countTotals().map(totals -> {
+            transferStats.addRecount(totals[0], totals[1], totals[2], totals[3]);
+            return null;
+        });
+    }
+
+    /**
+     * Deploys the transfer engine selected by the {@code TRANSFER_ENGINE} configuration, if it is not the plain JDBC one.
+     *
+     * @param config {@link JsonObject} with the application configuration
+     * @return Future empty result
+     */
+    private Future<Void> deployTransferEngine(JsonObject config) {
+        switch (config.getString("TRANSFER_ENGINE", "jdbc")) {
+            case "ledger":
+                return Ledger.deploy(vertx, config).mapEmpty();
+            case "group-commit":
+                return GroupCommit.deploy(vertx, config).mapEmpty();
+            default:
+                if (ReactivePgRepository.selected(config)) {
+                    return ReactivePgRepository.startEmbeddedServer(vertx, config.getJsonObject("REACTIVE_PG"));
+                }
+                return OffHeapAccountTable.selected(config) ? loadAccounts(config) : Future.succeededFuture();
+        }
+    }
+
+    /**
+     * Loads the accounts of the database into the {@link OffHeapAccountTable}, unless it was mapped from a file
+     * which already holds accounts, then replays the {@link TransactionJournal} if there is one. A mapped table is
+     * checkpointed every {@code STORAGE.FLUSH_INTERVAL_MS}: forced to its file with the journal position it holds every
+     * transfer before, the segments of the journal before that position being deleted.
+     *
+     * @param config {@link JsonObject} with the application configuration
+     * @return Future empty result
+     */
+    private Future<Void> loadAccounts(JsonObject config) {
+        JsonObject storageConfig = config.getJsonObject("STORAGE");
+        OffHeapAccountTable table = OffHeapAccountTable.shared(vertx, storageConfig);
+        if (!storageConfig.getString("FILE", "").isEmpty()) {
+            TransactionJournal journal = TransactionJournal.shared(vertx, config.getJsonObject("JOURNAL"));
+            vertx.setPeriodic(storageConfig.getLong("FLUSH_INTERVAL_MS", 1000L), timer -> vertx.executeBlocking(flush -> {
+                long position = journal.settledPosition();
+                table.checkpoint(position);
+                try {
+                    journal.discardBefore(position);
+                    flush.complete();
+                } catch (IOException e) {
+                    flush.fail(e);
+                }
+            }, false, flushed -> {
+                if (flushed.failed()) {
+                    LOGGER.warn("Could not checkpoint the account table", flushed.cause());
+                }
+            }));
+        }
+        if (table.size() > 0) {
+            LOGGER.info("Account table mapped with {} accounts", table.size());
+            return replayJournal(config, table);
+        }
+        OffHeapAccountRepository offHeap = new OffHeapAccountRepository(table, jdbcRepository);
+        Future<Void> loaded = connect().compose(sqlConnection -> {
+            Future<Void> future = Future.future();
+            sqlConnection.query("SELECT " + Account.COLUMNS + " FROM account", result -> {
+                sqlConnection.close();
+                if (result.succeeded()) {
+                    result.result().getRows().forEach(row -> offHeap.load(new Account(row)));
+                }
+                future.handle(result.mapEmpty());
+            });
+            return future;
+        });
+        return TransactionJournal.selected(config) ? loaded.compose(v -> replayJournal(config, table)) : loaded;
+    }
+
+    /**
+     * Rebuilds the balances of the {@link OffHeapAccountTable} by replaying the {@link TransactionJournal} over the
+     * balances of the {@code account} table, which the off-heap storage never changes, or over the ones of a mapped
+     * table from its checkpoint on. Journaled transfers which do not apply to those accounts are counted and logged.
+     *
+     * @param config {@link JsonObject} with the application configuration
+     * @param table the account table, loaded from the {@code account} table or mapped from its file
+     * @return Future empty result
+     */
+    private Future<Void> replayJournal(JsonObject config, OffHeapAccountTable table) {
+        TransactionJournal journal = TransactionJournal.shared(vertx, config.getJsonObject("JOURNAL"));
+        Future<Void> future = Future.future();
+        vertx.<Void>executeBlocking(replay -> {
+            long[] rejected = new long[1];
+            try {
+                long records = journal.replay(table.getCheckpoint(), (transaction, timestamp, position) -> {
+                    UUID from = transaction.getFrom().getId();
+                    UUID to = transaction.getTo().getId();
+                    if (table.replay(from.getMostSignificantBits(), from.getLeastSignificantBits(),
+                            to.getMostSignificantBits(), to.getLeastSignificantBits(),
+                            transaction.getAmountUnits(), position) != OffHeapAccountTable.TRANSFERRED) {
+                        rejected[0]++;
+                    } else {
+                        transferStats.record(from, to, transaction.getAmountUnits(), timestamp);
+                    }
+                });
+                if (rejected[0] > 0) {
+                    LOGGER.warn("{} of the {} journaled transfers do not apply to the accounts", rejected[0], records);
+                }
+                LOGGER.info("Replayed {} journaled transfers", records - rejected[0]);
+                replay.complete();
+            } catch (IOException e) {
+                replay.fail(e);
+            }
+        }, future);
+        return future;
+    }
+
+    /**
+     * Deploys the {@link MetricsVerticle} serving the metrics, unless {@code METRICS.PORT} is negative.
+     *
+     * @param config {@link JsonObject} with the application configuration
+     * @return Future empty result
+     */
+    private Future<Void> deployMetrics(JsonObject config) {
+        if (config.getJsonObject("METRICS", new JsonObject()).getInteger("PORT", 9091) < 0) {
+            return Future.succeededFuture();
+        }
+        Future<String> future = Future.future();
+        vertx.deployVerticle(MetricsVerticle.class.getName(), new DeploymentOptions().setConfig(config), future);
+        return future.mapEmpty();
+    }
+
+    /**
+     * Periodically deletes the expired idempotency keys from the database, if idempotency keys are enabled.
+     *
+     * @param config the {@code IDEMPOTENCY} configuration
+     */
+    private void purgeIdempotencyKeys(JsonObject config) {
+        if (idempotencyStore == null) {
+            return;
+        }
+        vertx.setPeriodic(config.getLong("PURGE_INTERVAL_MS", 60000L), timer -> connect() //
+                .compose(sqlConnection -> IdempotencyKeys.purge(sqlConnection, idempotencyStore.getTtlMillis())) //
+                .setHandler(purged -> {
+                    if (purged.failed()) {
+                        LOGGER.warn("Could not purge the expired idempotency keys", purged.cause());
+                    } else {
+                        LOGGER.debug("Purged {} expired idempotency keys", purged.result());
+                    }
+                }));
+    }
+
+    /**
+     * Warns when the native transport was asked for but is not in use: the vertx instance was not created by
+     * {@link MoneyTransferApplication}, or the native transport is not available on this platform.
+     *
+     * @param config the {@code HTTP_SERVER} configuration
+     */
+    private void checkNativeTransport(JsonObject config) {
+        if (config.getBoolean("NATIVE_TRANSPORT", false) && !vertx.isNativeTransportEnabled()) {
+            LOGGER.warn("The native transport is not in use, falling back to the JDK transport");
+        }
+    }
+
+    /**
+     * Periodically delivers again the credits sent to other nodes which were not acknowledged, if this is a node of a
+     * cluster.
+     *
+     * @param config the {@code CLUSTER} configuration
+     */
+    private void redeliverCredits(JsonObject config) {
+        if (cluster == null) {
+            return;
+        }
+        long intervalMs = config.getLong("REDELIVERY_INTERVAL_MS", 1000L);
+        int batchSize = config.getInteger("REDELIVERY_BATCH_SIZE", 1000);
+        vertx.setPeriodic(intervalMs, timer -> cluster.redeliver(intervalMs, batchSize).setHandler(redelivered -> {
+            if (redelivered.failed()) {
+                LOGGER.warn("Could not deliver the pending credits again", redelivered.cause());
+            } else if (redelivered.result() > 0) {
+                LOGGER.info("Delivered {} pending credits again", redelivered.result());
+            }
+        }));
+    }
+
+    /**
+     * Answers the requests forwarded by the other nodes of the cluster about the accounts this node owns, if this is
+     * a node of a cluster. Every instance of this verticle serves them, the event bus balancing them across instances.
+     *
+     * @return Future empty result
+     */
+    private Future<Void> serveCluster() {
+        if (cluster == null) {
+            return Future.succeededFuture();
+        }
+        Future<Void> future = Future.future();
+        vertx.eventBus().<JsonObject>consumer(ClusterNode.address(cluster.getNode()), this::handleForwarded).completionHandler(future);
+        return future;
+    }
+
+    /**
+     * Dispatches a request forwarded by another node of the cluster.
+     *
+     * @param message the request, its operation is carried in the {@link ClusterNode#ACTION} header
+     */
+    private void handleForwarded(Message<JsonObject> message) {
+        JsonObject body = message.body();
+        Future<JsonObject> reply;
+        switch (String.valueOf(message.headers().get(ClusterNode.ACTION))) {
+            case ClusterNode.GET:
+                reply = findAccount(UUID.fromString(body.getString("id"))).map(ClusterNode::encodeAccount);
+                break;
+            case ClusterNode.ACCOUNTS:
+                String after = body.getString("after");
+                reply = accounts.findAccounts(after == null ? null : UUID.fromString(after), body.getInteger("limit")) //
+                        .map(page -> new JsonObject().put("accounts", new JsonArray(page.stream() //
+                                .map(ClusterNode::encodeAccount) //
+                                .collect(Collectors.toList()))));
+                break;
+            case ClusterNode.TRANSACTIONS:
+                String before = body.getString("before");
+                reply = findTransactions(UUID.fromString(body.getString("account")), before == null ? null : UUID.fromString(before),
+                        body.getInteger("limit")).map(page -> new JsonObject().put("transactions", ClusterNode.encodeRecords(page)));
+                break;
+            case ClusterNode.TRANSFER:
+                String id = body.getString("id");
+                reply = executeTransfer(new Transaction(id == null ? null : UUID.fromString(id), //
+                        new Account(UUID.fromString(body.getString("from")), 0L), //
+                        new Account(UUID.fromString(body.getString("to")), 0L), body.getLong("amount"))) //
+                        .map(ClusterNode::encodeTransfer);
+                break;
+            case ClusterNode.CREDIT:
+                reply = cluster.applyCredit(body).map(credited -> {
+                    if (credited != null) {
+                        updateCredited(credited);
+                    }
+                    return new JsonObject();
+                });
+                break;
+            default:
+                message.fail(INVALID_TRANSFER, "Unknown cluster action");
+                return;
+        }
+        reply.setHandler(done -> {
+            if (done.succeeded()) {
+                message.reply(done.result());
+            } else {
+                message.fail(failureCode(done.cause()), done.cause().getMessage());
+            }
+        });
+    }
+
+    /**
+     * Executes the transfers submitted asynchronously to the {@link TransferQueue}, if it is enabled. Each instance of
+     * this verticle executes at most {@code ASYNC.MAX_IN_FLIGHT} of them at once: its consumer is paused meanwhile,
+     * the event bus buffering the next ones, which are at most {@code ASYNC.MAX_PENDING}. The outcome of every
+     * transfer is recorded and published.
+     *
+     * @return Future empty result
+     */
+    private Future<Void> consumeSubmittedTransfers() {
+        if (transferQueue == null) {
+            return Future.succeededFuture();
+        }
+        MessageConsumer<JsonObject> consumer = vertx.eventBus().localConsumer(TransferQueue.SUBMITTED);
+        consumer.setMaxBufferedMessages(transferQueue.getMaxPending());
+        consumer.handler(message -> {
+            UUID id = UUID.fromString(message.body().getString("id"));
+            if (++asyncInFlight == transferQueue.getMaxInFlight()) {
+                consumer.pause();
+            }
+            executeTransfer(TransferQueue.decodeSubmitted(message.body())).setHandler(done -> {
+                vertx.eventBus().publish(TransferQueue.STATUS, transferQueue.complete(id, done), TransferQueue.LOCAL);
+                if (asyncInFlight-- == transferQueue.getMaxInFlight()) {
+                    consumer.resume();
+                }
+            });
+        });
+        Future<Void> future = Future.future();
+        consumer.completionHandler(future);
+        return future;
+    }
+
+    /**
+     * Measures the lag of the event loop of this instance: how late a periodic timer fires compared to when it was due.
+     *
+     * @param intervalMs the probe interval
+     */
+    private void probeEventLoopLag(long intervalMs) {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        nextLagProbe = System.nanoTime() + intervalNanos;
+        vertx.setPeriodic(intervalMs, timer -> {
+            long now = System.nanoTime();
+            metrics.getEventLoopLag().record(now - nextLagProbe);
+            nextLagProbe = now + intervalNanos;
+        });
+    }
+
+    /**
+     * Creates the client of the transfer engine selected by the {@code TRANSFER_ENGINE} configuration, once it is
+     * deployed.
+     *
+     * @param config {@link JsonObject} with the application configuration
+     */
+    private void bindTransferEngine(JsonObject config) {
+        switch (config.getString("TRANSFER_ENGINE", "jdbc")) {
+            case "ledger":
+                ledger = new Ledger(vertx, Ledger.shards(config));
+                break;
+            case "group-commit":
+                groupCommit = new GroupCommit(vertx);
+                break;
+            default:
+                if (OffHeapAccountTable.selected(config)) {
+                    journaled = TransactionJournal.selected(config);
+                    OffHeapAccountTable table = OffHeapAccountTable.shared(vertx, config.getJsonObject("STORAGE"));
+                    accounts = journaled //
+                            ? new OffHeapAccountRepository(table, TransactionJournal.shared(vertx, config.getJsonObject("JOURNAL"))) //
+                            : new OffHeapAccountRepository(table, jdbcRepository);
+                } else if (ReactivePgRepository.selected(config)) {
+                    reactivePgRepository = new ReactivePgRepository(vertx, config.getJsonObject("REACTIVE_PG"), metrics);
+                    accounts = reactivePgRepository;
+                }
+                break;
+        }
+    }
+
+    /**
+     * Starts the HTTP server asynchronously, with the options of the {@code HTTP_SERVER} configuration.
+     *
+     * @param config {@link JsonObject} with the application configuration
+     * @return Future empty result
+     */
+    private Future<Void> createHttpServer(JsonObject config) {
+        JsonObject serverConfig = config.getJsonObject("HTTP_SERVER", new JsonObject());
+        JsonHelper.setDirectBuffers(serverConfig.getBoolean("DIRECT_BUFFERS", false));
+        Future<Void> future = Future.future();
+        vertx.createHttpServer(ServerHelper.options(serverConfig, vertx.isNativeTransportEnabled())) //
+            .requestHandler(createRouter(serverConfig)) //
                 .listen(config.getInteger("HTTP_PORT", 8080), res -> future.handle(res.mapEmpty()));
         return future;
     }
 
+    /**
+     * Creates the router of the API. Request bodies are only read on the transfer routes, up to
+     * {@code HTTP_SERVER.MAX_TRANSFER_BYTES} and {@code HTTP_SERVER.MAX_BATCH_BYTES}.
+     *
+     * @param serverConfig the {@code HTTP_SERVER} configuration
+     * @return the router
+     */
+    private Router createRouter(JsonObject serverConfig) {
+        Router router = Router.router(vertx);
+        if (serverConfig.getBoolean("COMPRESSION", false) && serverConfig.getLong("COMPRESSION_THRESHOLD", 0L) > 0) {
+            router.route().handler(ServerHelper.compressionThreshold(serverConfig.getLong("COMPRESSION_THRESHOLD")));
+        }
+        router.post("/api/transfer").handler(metrics.timing("POST", "/api/transfer"));
+        router.post("/api/transfers/batch").handler(metrics.timing("POST", "/api/transfers/batch"));
+        router.get("/api/accounts").handler(metrics.timing("GET", "/api/accounts"));
+        router.get("/api/accounts/:id").handler(metrics.timing("GET", "/api/accounts/:id"));
+        router.get("/api/accounts/:id/transactions").handler(metrics.timing("GET", "/api/accounts/:id/transactions"));
+        router.get("/api/stats").handler(metrics.timing("GET", "/api/stats"));
+        router.get("/api/transfers/events").handler(this::streamTransferStatus);
+        router.get("/api/transfers/:id").handler(metrics.timing("GET", "/api/transfers/:id"));
+        router.post("/api/transfer").handler(ServerHelper.bodyHandler(serverConfig.getLong("MAX_TRANSFER_BYTES", 4096L)));
+        router.post("/api/transfers/batch").handler(ServerHelper.bodyHandler(serverConfig.getLong("MAX_BATCH_BYTES", 4L * 1024 * 1024)));
+
+        router.post("/api/transfer").handler(context -> admission.handle(AdmissionControl.TRANSFERS, context));
+        router.post("/api/transfers/batch").handler(context -> admission.handle(AdmissionControl.TRANSFERS, context));
+        router.get("/api/accounts").handler(context -> admission.handle("GET /api/accounts", context));
+        router.get("/api/accounts/:id").handler(context -> admission.handle("GET /api/accounts/:id", context));
+        router.get("/api/accounts/:id/transactions").handler(context -> admission.handle("GET /api/accounts/:id/transactions", context));
+        router.get("/api/stats").handler(context -> admission.handle("GET /api/stats", context));
+        router.get("/api/transfers/:id").handler(context -> admission.handle("GET /api/transfers/:id", context));
+
+        router.post("/api/transfer").handler(this::transfer);
+        router.post("/api/transfers/batch").handler(this::batchTransfer);
+
+        router.get("/api/accounts").handler(this::getAllAccounts);
+        router.get("/api/accounts/:id").handler(this::getAccount);
+        router.get("/api/accounts/:id/transactions").handler(this::getAccountTransactions);
+        router.get("/api/stats").handler(this::getStats);
+        router.get("/api/transfers/:id").handler(this::getTransferStatus);
+        return router;
+    }
+
     /**
      * Fetches a database connection asynchronously.
      *
      * @return a future {@link SQLConnection} connection
      */
     private Future<SQLConnection> connect() {
-        Future<SQLConnection> future = Future.future();
-        jdbcClient.getConnection(asyncResult -> //
-                future.handle(asyncResult.map(connection -> //
-                        connection.setOptions(new SQLOptions().setAutoGeneratedKeys(true)))));
-        return future;
+        return jdbcRepository.connect();
     }
 
     /**
@@ -98,8 +740,23 @@ public class MoneyTransferVerticle extends AbstractVerticle {
      * @return the connection itself
      */
     private Future<SQLConnection> createTablesIfNeeded(SQLConnection connection) {
+        Future<SQLConnection> future = Future.succeededFuture(connection);
+        for (String script : SCHEMA_SCRIPTS) {
+            future = future.compose(v -> executeScript(connection, script));
+        }
+        return future;
+    }
+
+    /**
+     * Executes a SQL script.
+     *
+     * @param connection {@link SQLConnection} database connection
+     * @param script path of the script
+     * @return the connection itself
+     */
+    private Future<SQLConnection> executeScript(SQLConnection connection, String script) {
         Future<SQLConnection> future = Future.future();
-        vertx.fileSystem().readFile("scripts/V__01_Create.sql", readFile -> {
+        vertx.fileSystem().readFile(script, readFile -> {
             if (readFile.failed()) {
                 future.fail(readFile.cause());
             } else {
@@ -113,165 +770,645 @@ public class MoneyTransferVerticle extends AbstractVerticle {
 
     /**
      * Transfer money between two accounts with a given {@link Transaction} input.
+     * <p>
+     * A request with an {@code Idempotency-Key} header is executed at most once: retries with the same key get the
+     * response of the first request that succeeded.
      *
      * @param routingContext request context
      */
     private void transfer(RoutingContext routingContext) {
-        Transaction incomingTransaction = routingContext.getBodyAsJson().mapTo(Transaction.class);
-        LOGGER.info("Transaction incoming: ".concat(incomingTransaction.toString()));
+        Transaction incomingTransaction;
+        try {
+            incomingTransaction = JsonHelper.readTransaction(routingContext.getBody());
+        } catch (RuntimeException e) {
+            routingContext.response().setStatusCode(400).end("Invalid transfer");
+            return;
+        }
+        // the engines keep the id of a requested transaction, which is only chosen by this server
+        incomingTransaction.setId(null);
+        LOGGER.debug("Transaction incoming: {}", incomingTransaction);
 
-        connect() //
-                .compose(sqlConnection -> this.doTransfer(sqlConnection, incomingTransaction))
-                .setHandler(handleTransfer(routingContext));
+        String idempotencyKey = routingContext.request().getHeader(IDEMPOTENCY_KEY);
+        if (Boolean.parseBoolean(routingContext.request().getParam("async"))) {
+            submitTransfer(routingContext, idempotencyKey, incomingTransaction);
+        } else if (idempotencyKey != null && idempotencyStore != null) {
+            transferOnce(routingContext, idempotencyKey, incomingTransaction);
+        } else {
+            executeTransfer(incomingTransaction).setHandler(handleTransfer(routingContext, retryAfter));
+        }
     }
 
     /**
-     * With the given {@link Transaction} input, finds the two accounts balance and executes the transfer.
+     * Validates a transfer and submits it to the {@link TransferQueue}, answering at once with {@code 202 Accepted}
+     * and its pending status, the id of which locates its status. Submissions are refused with a {@code 503} while
+     * the queue is full.
      *
-     * @param sqlConnection the database connection
-     * @param theTransaction transaction to be executed
-     * @return future transaction which might be completed or refused
+     * @param routingContext request context
+     * @param idempotencyKey the idempotency key of the request, not supported by asynchronous submissions
+     * @param incomingTransaction the requested transaction
      */
-    private Future<Transaction> doTransfer(SQLConnection sqlConnection, Transaction theTransaction) {
-        Future<Transaction> transactionFuture = Future.future();
-
-        this.findAccount(theTransaction.getFrom().getId().toString(), sqlConnection, false)
-                .compose(fromAccount -> {
-                    Future<Account> fromAccountFuture = Future.future();
-                    this.findAccount(theTransaction.getTo().getId().toString(), sqlConnection, false)
-                            .compose(toAccount -> {
-                                Future<Account> toAccountFuture = Future.future();
-
-                                this.transferMoney(fromAccount, toAccount, theTransaction.getAmount(), sqlConnection)
-                                        .setHandler(transferResult -> {
-                                            if (transferResult.failed()) {
-                                                transactionFuture.fail(transferResult.cause());
-                                            } else {
-                                                transactionFuture.complete(transferResult.result());
-                                            }
-                                        });
-                                return toAccountFuture;
-                            });
-                    return fromAccountFuture;
-                });
-        return transactionFuture;
+    private void submitTransfer(RoutingContext routingContext, String idempotencyKey, Transaction incomingTransaction) {
+        if (transferQueue == null) {
+            routingContext.response().setStatusCode(400).end("Asynchronous transfers are disabled");
+            return;
+        }
+        if (idempotencyKey != null && idempotencyStore != null) {
+            routingContext.response().setStatusCode(400).end(IDEMPOTENCY_KEY + " is not supported by asynchronous transfers");
+            return;
+        }
+        Future<Transaction> valid = TransferBatch.validate(incomingTransaction);
+        if (valid.failed()) {
+            AuditLog.rejected(incomingTransaction, valid.cause());
+            handleTransfer(routingContext, retryAfter).handle(valid);
+            return;
+        }
+        UUID id = UUID.randomUUID();
+        String status = transferQueue.accept(id);
+        if (status == null) {
+            routingContext.response() //
+                    .setStatusCode(503) //
+                    .putHeader("Retry-After", retryAfter) //
+                    .end("Too many transfers pending, retry later");
+            return;
+        }
+        vertx.eventBus().send(TransferQueue.SUBMITTED, TransferQueue.encodeSubmitted(id, incomingTransaction), TransferQueue.LOCAL);
+        routingContext.response().putHeader("Location", "/api/transfers/" + id);
+        endJson(routingContext, 202, status);
     }
 
     /**
-     * Get all accounts.
+     * Get the status of a transfer submitted asynchronously: {@code pending}, {@code committed} with its transaction
+     * or {@code rejected} with the error.
      *
      * @param routingContext request context
      */
-    private void getAllAccounts(RoutingContext routingContext) {
-        connect()
-                .compose(this::findAllAccounts) //
-                .setHandler(ok(routingContext));
+    private void getTransferStatus(RoutingContext routingContext) {
+        String status;
+        try {
+            status = transferQueue == null ? null : transferQueue.get(UUID.fromString(routingContext.pathParam("id")));
+        } catch (IllegalArgumentException e) {
+            routingContext.response().setStatusCode(400).end("Invalid transfer id");
+            return;
+        }
+        if (status == null) {
+            routingContext.response().setStatusCode(404).end("Transfer not found");
+        } else {
+            endJson(routingContext, 200, status);
+        }
     }
 
     /**
-     * Finds all accounts and maps the {@link io.vertx.ext.sql.ResultSet ResultSet} into {@link Account accounts}.
+     * Streams the status changes of every transfer submitted asynchronously to this vertx instance, as they happen:
+     * over a WebSocket when the request asks for an upgrade, one text message per status, as Server-Sent Events
+     * otherwise. A client which does not keep up with the stream is disconnected rather than buffered for; it may
+     * get the statuses it missed from {@code GET /api/transfers/:id}.
      *
-     * @param connection database connection
-     * @return all the accounts
+     * @param routingContext request context
      */
-    private Future<List<Account>> findAllAccounts(SQLConnection connection) {
-        Future<List<Account>> future = Future.future();
-        connection.query("SELECT * FROM account", result -> {
-                    connection.close();
-                    future.handle(
-                            result.map(resultSet -> resultSet.getRows()
-                                    .stream()
-                                    .map(Account::new)
-                                    .collect(Collectors.toList()))
-                    );
+    private void streamTransferStatus(RoutingContext routingContext) {
+        HttpServerRequest request = routingContext.request();
+        if (transferQueue == null) {
+            request.response().setStatusCode(400).end("Asynchronous transfers are disabled");
+            return;
+        }
+        MessageConsumer<String> consumer = vertx.eventBus().localConsumer(TransferQueue.STATUS);
+        if ("websocket".equalsIgnoreCase(request.getHeader("upgrade"))) {
+            ServerWebSocket webSocket = request.upgrade();
+            boolean[] closed = {false};
+            webSocket.closeHandler(v -> {
+                closed[0] = true;
+                consumer.unregister();
+            });
+            consumer.handler(status -> {
+                if (closed[0]) {
+                    return;
                 }
-        );
-        return future;
+                if (webSocket.writeQueueFull()) {
+                    closed[0] = true;
+                    webSocket.close();
+                } else {
+                    webSocket.writeTextMessage(status.body());
+                }
+            });
+            return;
+        }
+        HttpServerResponse response = request.response() //
+                .setChunked(true) //
+                .putHeader("content-type", "text/event-stream") //
+                .putHeader("cache-control", "no-cache");
+        response.closeHandler(v -> consumer.unregister());
+        consumer.handler(status -> {
+            if (response.closed()) {
+                return;
+            }
+            if (response.writeQueueFull()) {
+                response.close();
+            } else {
+                response.write("data: " + status.body() + "\n\n");
+            }
+        });
+        response.write(": connected\n\n");
     }
 
     /**
-     * Get a single account by the account {@link UUID id}.
+     * Transfers money unless a transfer was already requested with the same idempotency key, in which case its
+     * response is replayed. The key is looked up in the {@link IdempotencyStore}, then in the database, and reserved
+     * while the transfer executes so concurrent retries are refused instead of executed twice.
+     * <p>
+     * The {@code jdbc} and {@code group-commit} engines store the key in the database transaction of the transfer.
+     * The other engines store it once the transfer is committed, and answer a {@code 500} if they cannot: retries
+     * are still replayed from the {@link IdempotencyStore} until the key expires from it.
      *
      * @param routingContext request context
+     * @param key the idempotency key
+     * @param incomingTransaction the requested transaction
      */
-    private void getAccount(RoutingContext routingContext) {
-        String id = routingContext.pathParam("id");
-        connect() //
-                .compose(sqlConnection -> this.findAccount(id, sqlConnection, true)) //
-                .setHandler(ok(routingContext));
+    private void transferOnce(RoutingContext routingContext, String key, Transaction incomingTransaction) {
+        if (key.isEmpty() || key.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            routingContext.response().setStatusCode(400).end("Invalid " + IDEMPOTENCY_KEY);
+            return;
+        }
+        String fingerprint = fingerprintOf(incomingTransaction);
+        IdempotencyStore.Entry cached = idempotencyStore.get(key);
+        Future<IdempotencyStore.Entry> stored = cached != null //
+                ? Future.succeededFuture(cached) //
+                : connect().compose(sqlConnection -> IdempotencyKeys.find(sqlConnection, idempotencyStore, key));
+
+        stored.setHandler(lookup -> {
+            if (lookup.failed()) {
+                routingContext.fail(lookup.cause());
+                return;
+            }
+            IdempotencyStore.Entry existing = lookup.result() != null ? lookup.result() : idempotencyStore.reserve(key, fingerprint);
+            if (existing != null) {
+                replayTransfer(routingContext, existing, fingerprint);
+                return;
+            }
+            boolean committedWithTransfer = commitsIdempotencyKeys();
+            executeTransfer(incomingTransaction, committedWithTransfer ? key : null, fingerprint).setHandler(executed -> {
+                if (executed.failed()) {
+                    idempotencyStore.release(key);
+                    handleTransfer(routingContext, retryAfter).handle(executed);
+                    return;
+                }
+                String body = encodeTransfer(executed.result());
+                idempotencyStore.complete(key, body);
+                if (committedWithTransfer) {
+                    created(routingContext, body);
+                    return;
+                }
+                connect().compose(sqlConnection -> IdempotencyKeys.save(sqlConnection, key, fingerprint, body)).setHandler(saved -> {
+                    if (saved.failed()) {
+                        LOGGER.error("Could not persist the idempotency key {} of a committed transfer", key, saved.cause());
+                        routingContext.fail(saved.cause());
+                    } else {
+                        created(routingContext, body);
+                    }
+                });
+            });
+        });
     }
 
     /**
-     * Finds a single account by it's {@link UUID id} and maps the result into a {@link Account account}.
+     * Answers a request whose idempotency key is already known.
      *
-     * @param sqlConnection database connection
-     * @param id account id
-     * @param closeConnection close or not database connection
-     * @return the account found
+     * @param routingContext request context
+     * @param existing the entry of the key
+     * @param fingerprint what identifies the request
      */
-    private Future<Account> findAccount(String id, SQLConnection sqlConnection, boolean closeConnection) {
-        Future<Account> future = Future.future();
-        String sql = "SELECT * FROM account WHERE id = ?";
-        sqlConnection.queryWithParams(sql, new JsonArray().add(id), result -> {
-            if (closeConnection) {
-                sqlConnection.close();
+    private void replayTransfer(RoutingContext routingContext, IdempotencyStore.Entry existing, String fingerprint) {
+        if (!existing.getFingerprint().equals(fingerprint)) {
+            routingContext.response().setStatusCode(422).end(IDEMPOTENCY_KEY + " already used by a different transfer");
+        } else if (existing.isPending()) {
+            routingContext.response().setStatusCode(409).end("A transfer with this " + IDEMPOTENCY_KEY + " is in progress");
+        } else {
+            routingContext.response().putHeader("Idempotent-Replayed", "true");
+            created(routingContext, existing.getResponse());
+        }
+    }
+
+    /**
+     * What identifies a transfer request: its accounts and amount.
+     *
+     * @param transaction the requested transaction
+     * @return the fingerprint
+     */
+    private static String fingerprintOf(Transaction transaction) {
+        return (transaction.getFrom() == null ? null : transaction.getFrom().getId()) + ">" //
+                + (transaction.getTo() == null ? null : transaction.getTo().getId()) + ":" //
+                + transaction.getAmountUnits();
+    }
+
+    /**
+     * Whether the selected transfer engine stores the idempotency keys in the database transaction of the transfers,
+     * which only the {@code jdbc} engine with the {@code jdbc} storage and the {@code group-commit} engine do, outside
+     * of a cluster.
+     *
+     * @return true if the keys are committed with the transfers
+     */
+    private boolean commitsIdempotencyKeys() {
+        return cluster == null && ledger == null && (groupCommit != null || accounts == jdbcRepository);
+    }
+
+    /**
+     * Executes a transfer on the selected transfer engine, and records its outcome.
+     *
+     * @param incomingTransaction the requested transaction
+     * @return future transaction which might be completed or refused
+     */
+    private Future<Transaction> executeTransfer(Transaction incomingTransaction) {
+        return executeTransfer(incomingTransaction, null, null);
+    }
+
+    /**
+     * Executes a transfer on the selected transfer engine, and records its outcome.
+     * <p>
+     * The {@code jdbc} engine transfers go through the {@link AccountSequencer}: the ones sharing an account are
+     * executed one after the other rather than waiting on each other's row locks, the others in parallel. On a node
+     * of a cluster, the transfers whose sender belongs to another node are forwarded to it, which records them.
+     *
+     * @param incomingTransaction the requested transaction
+     * @param idempotencyKey the idempotency key to store with the transfer, only if {@link #commitsIdempotencyKeys()}
+     * @param fingerprint what identifies the request
+     * @return future transaction which might be completed or refused
+     */
+    private Future<Transaction> executeTransfer(Transaction incomingTransaction, String idempotencyKey, String fingerprint) {
+        if (cluster != null && incomingTransaction.getFrom() != null && incomingTransaction.getFrom().getId() != null
+                && !cluster.owns(incomingTransaction.getFrom().getId())) {
+            return TransferBatch.validate(incomingTransaction).compose(cluster::forwardTransfer);
+        }
+        Future<Transaction> transferFuture;
+        if (ledger != null) {
+            transferFuture = TransferBatch.validate(incomingTransaction).compose(ledger::transfer);
+        } else if (groupCommit != null) {
+            transferFuture = groupCommit.transfer(incomingTransaction, idempotencyKey, fingerprint);
+        } else if (idempotencyKey != null) {
+            transferFuture = TransferBatch.validate(incomingTransaction).compose(valid -> sequencer.execute(
+                    Arrays.asList(valid.getFrom().getId(), valid.getTo().getId()), //
+                    () -> jdbcRepository.transfer(valid.getId(), valid.getFrom().getId(), valid.getTo().getId(),
+                            valid.getAmountUnits(), idempotencyKey, fingerprint)));
+        } else {
+            transferFuture = TransferBatch.validate(incomingTransaction).compose(this::sequencedTransfer);
+        }
+        return transferFuture.map(transaction -> {
+            metrics.getTransfersCommitted().increment();
+            AuditLog.committed(transaction);
+            updateCaches(transaction);
+            return transaction;
+        }).recover(cause -> {
+            if (cause instanceof IllegalStateException) {
+                metrics.getTransfersRejected().increment();
             }
-            future.handle(result.map(
-                    resultSet -> new Account(resultSet.getRows().get(0)))
-            );
+            AuditLog.rejected(incomingTransaction, cause);
+            return Future.failedFuture(cause);
         });
-
-        return future;
     }
 
     /**
-     * Transfers a given amount from the sender account to the receiver account.
+     * Executes a valid transfer on the {@link AccountRepository} once no other transfer touching its accounts is
+     * running.
      *
-     * @param sender account that is sending the amount
-     * @param receiver account that is receiving the amount
-     * @param amount the amount itself
-     * @param sqlConnection database connection
-     * @throws IllegalStateException if the amount is greater than sender's account balance
+     * @param valid the {@link TransferBatch#validate(Transaction) validated} transaction
+     * @return future transaction which might be completed or refused
      */
-    private Future<Transaction> transferMoney(Account sender, Account receiver, BigDecimal amount, SQLConnection sqlConnection) {
-        Future<Transaction> future = Future.future();
+    private Future<Transaction> sequencedTransfer(Transaction valid) {
+        UUID from = valid.getFrom().getId();
+        UUID to = valid.getTo().getId();
+        if (cluster != null && !cluster.owns(to)) {
+            return cluster.transferOut(valid.getId(), from, to, valid.getAmountUnits());
+        }
+        return sequencer.execute(Arrays.asList(from, to),
+                () -> accounts.transfer(valid.getId(), from, to, valid.getAmountUnits()));
+    }
 
-        LOGGER.info("Transferring: ".concat(amount.toString()));
-        LOGGER.info("From: ".concat(sender.toString()));
-        LOGGER.info("To: ".concat(receiver.toString()));
+    /**
+     * Transfer money for many {@link Transaction transactions} at once, given as a JSON array or as newline
+     * delimited JSON. By default every transfer is committed or rejected on its own, with {@code ?atomic=true} a single
+     * rejected transfer aborts them all. Atomic batches are only supported by the {@code jdbc} transfer engine with the
+     * {@code jdbc} storage, outside of a cluster. An atomic batch holds the sequencer stripes of all its accounts until
+     * it is committed, so every other transfer touching one of those stripes waits for the whole batch, and a batch of
+     * thousands of transfers, which holds most stripes, stalls the server meanwhile. Best-effort batches of the
+     * {@code jdbc} engine are executed in chunks touching at most {@code BATCH_CHUNK_ACCOUNTS} accounts instead.
+     *
+     * @param routingContext request context
+     */
+    private void batchTransfer(RoutingContext routingContext) {
+        boolean atomic = Boolean.parseBoolean(routingContext.request().getParam("atomic"));
+        List<Transaction> requested;
+        try {
+            String contentType = routingContext.request().getHeader("content-type");
+            boolean ndjson = contentType != null && contentType.contains(APPLICATION_NDJSON);
+            requested = JsonHelper.readTransactions(routingContext.getBody(), !ndjson);
+        } catch (RuntimeException e) {
+            routingContext.response().setStatusCode(400).end("Invalid batch of transfers");
+            return;
+        }
+        requested.forEach(transaction -> transaction.setId(null));
+        if (requested.size() > maxBatchTransfers) {
+            routingContext.response().setStatusCode(413).end("A batch holds at most " + maxBatchTransfers + " transfers");
+            return;
+        }
+        LOGGER.debug("Batch of {} transactions incoming", requested.size());
 
-        BigDecimal senderBalance = sender.getBalance();
-        if (senderBalance.compareTo(amount) < 0) {
-            LOGGER.warn("Sender: ".concat(sender.toString()).concat(" does not have enough money!"));
-            future.fail(new IllegalStateException(COULD_NOT_TRANSFER_MONEY));
+        Future<List<Future<Transaction>>> outcomesFuture;
+        if (ledger == null && groupCommit == null && accounts == jdbcRepository && cluster == null) {
+            outcomesFuture = atomic //
+                    ? sequencer.execute(TransferBatch.accountsOf(requested), //
+                            () -> TransferBatch.execute(jdbcClient, requested, true)) //
+                    : TransferBatch.executeInChunks(jdbcClient, sequencer, requested, batchChunkAccounts);
+        } else if (atomic) {
+            routingContext.response().setStatusCode(400).end("Atomic batches require the jdbc transfer engine and storage, on a single node");
+            return;
+        } else if (cluster != null) {
+            List<Future<Transaction>> outcomes = requested.stream().map(this::executeTransfer).collect(Collectors.toList());
+            outcomesFuture = Future.future();
+            CompositeFuture.join(new ArrayList<>(outcomes)).setHandler(done -> outcomesFuture.complete(outcomes));
         } else {
-            UUID transactionUuid = UUID.randomUUID();
-            Transaction transaction = new Transaction(transactionUuid, sender, receiver, amount);
-
-            JsonArray createNewTransactionParams = new JsonArray()
-                    .add(transactionUuid.toString())
-                    .add(sender.getId().toString())
-                    .add(receiver.getId().toString())
-                    .add(amount.doubleValue());
-            sqlConnection.updateWithParams("INSERT INTO transaction VALUES(?, ?, ?, ?)", createNewTransactionParams, createTransactionResult -> {
-
-                sender.setBalance(senderBalance.subtract(amount));
-                JsonArray senderUpdateParams = new JsonArray().add(sender.getBalance().doubleValue()).add(sender.getId().toString());
-                sqlConnection.updateWithParams("UPDATE account SET balance = ? WHERE id = ?", senderUpdateParams, updateSender ->  {
-
-                    receiver.setBalance(receiver.getBalance().add(amount));
-                    JsonArray receiverUpdateParams = new JsonArray().add(receiver.getBalance().doubleValue()).add(receiver.getId().toString());
-                    sqlConnection.updateWithParams("UPDATE account SET balance = ? WHERE id = ?", receiverUpdateParams, updateReceiver -> {
-                        if (updateReceiver.failed()) {
-                            future.fail(COULD_NOT_TRANSFER_MONEY);
-                        } else {
-                            future.complete(transaction);
-                        }
-                    });
-                });
+            List<Future<Transaction>> outcomes = requested.stream() //
+                    .map(transaction -> TransferBatch.validate(transaction).compose(valid -> ledger != null //
+                            ? ledger.transfer(valid) //
+                            : groupCommit != null ? groupCommit.transfer(valid) : sequencedTransfer(valid))) //
+                    .collect(Collectors.toList());
+            outcomesFuture = Future.future();
+            CompositeFuture.join(new ArrayList<>(outcomes)).setHandler(done -> outcomesFuture.complete(outcomes));
+        }
+        outcomesFuture.map(outcomes -> {
+            if (cluster == null && recordOutcomes(requested, outcomes, atomic)) {
+                outcomes.stream().filter(Future::succeeded).map(Future::result).forEach(this::updateCaches);
+            }
+            return outcomes;
+        }).setHandler(handleBatchTransfer(routingContext, atomic));
+    }
+
+    /**
+     * Counts and audits the committed and the rejected transfers of a batch; nothing is committed when an atomic
+     * batch was aborted.
+     *
+     * @param requested the requested transfers
+     * @param outcomes outcome of every transfer of the batch
+     * @param atomic whether the batch was all-or-nothing
+     * @return whether the succeeded transfers were committed, i.e. the batch was not aborted
+     */
+    private boolean recordOutcomes(List<Transaction> requested, List<Future<Transaction>> outcomes, boolean atomic) {
+        boolean aborted = atomic && outcomes.stream().anyMatch(Future::failed);
+        for (int i = 0; i < outcomes.size(); i++) {
+            Future<Transaction> outcome = outcomes.get(i);
+            if (outcome.failed()) {
+                if (outcome.cause() instanceof IllegalStateException) {
+                    metrics.getTransfersRejected().increment();
+                }
+                AuditLog.rejected(requested.get(i), outcome.cause());
+            } else if (aborted) {
+                AuditLog.aborted(requested.get(i));
+            } else {
+                metrics.getTransfersCommitted().increment();
+                AuditLog.committed(outcome.result());
+            }
+        }
+        return !aborted;
+    }
+
+    /**
+     * Drops the accounts of a committed transfer from the {@link AccountCache}, adds the transfer to their history in
+     * the {@link TransactionHistoryCache} and to the {@link TransferStats}.
+     *
+     * @param transaction the committed transaction
+     */
+    private void updateCaches(Transaction transaction) {
+        if (accountCache != null) {
+            accountCache.invalidate(transaction.getFrom().getId(), transaction.getTo().getId());
+        }
+        TransactionRecord record = TransactionRecord.committed(transaction);
+        if (historyCache != null) {
+            historyCache.record(record);
+        }
+        transferStats.record(record.getFrom(), record.getTo(), record.getAmountUnits(), record.getCreatedAtMillis());
+    }
+
+    /**
+     * Drops the receiver of a credit applied by this node of a cluster from the {@link AccountCache}, and adds the
+     * transfer to its history in the {@link TransactionHistoryCache}. The {@link TransferStats} only count the transfer
+     * on the node of its sender.
+     *
+     * @param credited the credited transaction
+     */
+    private void updateCredited(Transaction credited) {
+        if (accountCache != null) {
+            accountCache.invalidate(credited.getTo().getId());
+        }
+        if (historyCache != null) {
+            historyCache.record(TransactionRecord.committed(credited));
+        }
+    }
+
+    /**
+     * Get the number of accounts and their total balance at startup, the number and volume of the transfers, per
+     * minute too, and the most active accounts, maintained by the {@link TransferStats}.
+     *
+     * @param routingContext request context
+     */
+    private void getStats(RoutingContext routingContext) {
+        ok(routingContext).handle(Future.succeededFuture(transferStats.snapshot(System.currentTimeMillis())));
+    }
+
+    /**
+     * Get all accounts.
+     * <p>
+     * With an {@code after} and/or {@code limit} query parameter a single page of accounts is returned, ordered by id,
+     * with a {@code Link} header pointing to the next page when there might be one. Without them the whole table is
+     * streamed.
+     *
+     * @param routingContext request context
+     */
+    private void getAllAccounts(RoutingContext routingContext) {
+        String after = routingContext.request().getParam("after");
+        String limitParam = routingContext.request().getParam("limit");
+        if (after == null && limitParam == null && (accounts != jdbcRepository || cluster != null || ledger != null)) {
+            streamPages(routingContext, (Account last) -> findAccounts(last == null ? null : last.getId(), MAX_PAGE_SIZE));
+            return;
+        }
+        if (after == null && limitParam == null) {
+            connect().setHandler(connection -> {
+                if (connection.failed()) {
+                    routingContext.fail(connection.cause());
+                } else {
+                    streamRows(routingContext, connection.result(), "SELECT " + Account.COLUMNS + " FROM account ORDER BY id",
+                            new JsonArray(), row -> new Account(UUID.fromString(row.getString(0)), row.getLong(1)));
+                }
             });
+            return;
         }
-        return future;
+
+        int limit;
+        UUID afterId;
+        try {
+            limit = Math.max(Math.min(limitParam == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limitParam), MAX_PAGE_SIZE), 1);
+            afterId = after == null ? null : UUID.fromString(after);
+        } catch (IllegalArgumentException e) {
+            routingContext.response().setStatusCode(400).end("Invalid page parameters");
+            return;
+        }
+        findAccounts(afterId, limit) //
+                .map(accounts -> {
+                    if (accounts.size() == limit) {
+                        String next = accounts.get(accounts.size() - 1).getId().toString();
+                        routingContext.response().putHeader("Link", "</api/accounts?after=" + next + "&limit=" + limit + ">; rel=\"next\"");
+                    }
+                    return accounts;
+                }).setHandler(ok(routingContext));
+    }
+
+    /**
+     * Finds a page of accounts ordered by id, across all the nodes on a node of a cluster and across all the shards
+     * with the ledger engine.
+     *
+     * @param after id of the last account of the previous page, null for the first page
+     * @param limit maximum number of accounts
+     * @return the accounts of the page
+     */
+    private Future<List<Account>> findAccounts(UUID after, int limit) {
+        if (ledger != null) {
+            return ledger.findAccounts(after, limit);
+        }
+        return cluster != null ? cluster.findAccounts(after, limit) : accounts.findAccounts(after, limit);
+    }
+
+    /**
+     * Get the transactions sent or received by an account, newest first.
+     * <p>
+     * With a {@code before} and/or {@code limit} query parameter a single page is returned, with a {@code Link} header
+     * pointing to the next page when there might be one; first pages no larger than the depth of the
+     * {@link TransactionHistoryCache} are served from it. Without them the whole history is streamed, page by page.
+     *
+     * @param routingContext request context
+     */
+    private void getAccountTransactions(RoutingContext routingContext) {
+        if (journaled) {
+            routingContext.response().setStatusCode(400).end("The transaction history is not kept with a transaction journal");
+            return;
+        }
+        if (ledger != null) {
+            routingContext.response().setStatusCode(400).end("The transaction history is not kept by the ledger engine");
+            return;
+        }
+        String before = routingContext.request().getParam("before");
+        String limitParam = routingContext.request().getParam("limit");
+        UUID account;
+        UUID beforeId;
+        int limit;
+        try {
+            account = UUID.fromString(routingContext.pathParam("id"));
+            beforeId = before == null ? null : UUID.fromString(before);
+            limit = Math.max(Math.min(limitParam == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limitParam), MAX_PAGE_SIZE), 1);
+        } catch (IllegalArgumentException e) {
+            routingContext.response().setStatusCode(400).end("Invalid page parameters");
+            return;
+        }
+        if (before == null && limitParam == null) {
+            streamPages(routingContext, (TransactionRecord last) ->
+                    findTransactions(account, last == null ? null : last.getId(), MAX_PAGE_SIZE));
+            return;
+        }
+
+        findTransactions(account, beforeId, limit).map(transactions -> {
+            if (transactions.size() == limit) {
+                String next = transactions.get(transactions.size() - 1).getId().toString();
+                routingContext.response().putHeader("Link", "</api/accounts/" + account + "/transactions?before=" + next
+                        + "&limit=" + limit + ">; rel=\"next\"");
+            }
+            return transactions;
+        }).setHandler(ok(routingContext));
     }
 
-}
\ No newline at end of file
+    /**
+     * Finds a page of the transactions of an account, newest first, from the node owning it on a node of a cluster.
+     *
+     * @param account account id
+     * @param before id of the last transaction of the previous page, null for the first page
+     * @param limit maximum number of transactions
+     * @return the transactions of the page
+     */
+    private Future<List<TransactionRecord>> findTransactions(UUID account, UUID before, int limit) {
+        if (cluster != null && !cluster.owns(account)) {
+            return cluster.findTransactions(account, before, limit);
+        }
+        return before == null && historyCache != null && limit <= historyCache.getDepth() //
+                ? findCachedTransactions(account, limit) //
+                : jdbcRepository.findTransactions(account, before, limit);
+    }
+
+    /**
+     * Finds the latest transactions of an account through the {@link TransactionHistoryCache}, loading as many as it
+     * keeps from the database on a miss.
+     *
+     * @param account account id
+     * @param limit number of transactions, at most the depth of the cache
+     * @return the transactions found, newest first
+     */
+    private Future<List<TransactionRecord>> findCachedTransactions(UUID account, int limit) {
+        List<TransactionRecord> cached = historyCache.recent(account, limit);
+        if (cached != null) {
+            return Future.succeededFuture(cached);
+        }
+        long stamp = historyCache.stamp();
+        return jdbcRepository.findTransactions(account, null, historyCache.getDepth()) //
+                .map(history -> {
+                    historyCache.putIfUnchanged(account, history, stamp);
+                    return history.size() > limit ? new ArrayList<>(history.subList(0, limit)) : history;
+                });
+    }
+
+    /**
+     * Get a single account by the account {@link UUID id}.
+     *
+     * @param routingContext request context
+     */
+    private void getAccount(RoutingContext routingContext) {
+        UUID id;
+        try {
+            id = UUID.fromString(routingContext.pathParam("id"));
+        } catch (IllegalArgumentException e) {
+            routingContext.response().setStatusCode(400).end("Invalid account id");
+            return;
+        }
+        findAccount(id).setHandler(ok(routingContext));
+    }
+
+    /**
+     * Finds a single account on the selected transfer engine, from the node owning it on a node of a cluster.
+     *
+     * @param id account id
+     * @return the account found
+     */
+    private Future<Account> findAccount(UUID id) {
+        if (ledger != null) {
+            return ledger.findAccount(id);
+        }
+        if (cluster != null && !cluster.owns(id)) {
+            return cluster.findAccount(id);
+        }
+        if (accountCache != null) {
+            return findCachedAccount(id);
+        }
+        return accounts.findAccount(id);
+    }
+
+    /**
+     * Finds a single account through the {@link AccountCache}, loading it from the database on a miss.
+     *
+     * @param id account id
+     * @return the account found
+     */
+    private Future<Account> findCachedAccount(UUID id) {
+        Account cached = accountCache.get(id);
+        if (cached != null) {
+            return Future.succeededFuture(cached);
+        }
+        long stamp = accountCache.stamp();
+        return accounts.findAccount(id) //
+                .map(account -> {
+                    accountCache.putIfUnchanged(account, stamp);
+                    return account;
+                });
+    }
+}
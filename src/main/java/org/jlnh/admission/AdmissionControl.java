@@ -0,0 +1,138 @@
+package org.jlnh.admission;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.web.RoutingContext;
+import org.jlnh.metrics.LatencyHistogram;
+import org.jlnh.metrics.Metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control in front of the API routes, shared by every verticle instance of the JVM: the
+ * {@link ConcurrencyLimiter limiters} configured in {@code ADMISSION}.
+ * <p>
+ * Both transfer routes share the {@code TRANSFERS} limiter; any other route gets one of its own when it is listed
+ * under {@code ROUTES}, by method and path as in the metrics (e.g. {@code GET /api/accounts}). Routes without a limiter
+ * are not limited, nor is anything when {@code MAX_IN_FLIGHT} is {@code 0}.
+ * <p>
+ * With {@code TRANSFERS.ADAPTIVE}, the transfer limit follows the time spent waiting for a JDBC connection, additive
+ * increase multiplicative decrease: every {@code WINDOW_MS} milliseconds, the limit is multiplied by {@code BACKOFF}
+ * if the mean checkout wait of the window exceeded {@code TARGET_CHECKOUT_MS}, and raised by one otherwise if the
+ * limit was reached, within {@code MIN_IN_FLIGHT} and {@code MAX_IN_FLIGHT}. Transfers then queue in front of the pool
+ * for a bounded time rather than inside it.
+ */
+public class AdmissionControl implements Shareable {
+
+    public static final String TRANSFERS = "transfers";
+
+    private static final String SHARED_MAP = "admission-control";
+    private static final String INSTANCE = "instance";
+
+    private final Map<String, ConcurrencyLimiter> limiters;
+
+    private AdmissionControl(Map<String, ConcurrencyLimiter> limiters) {
+        this.limiters = limiters;
+    }
+
+    /**
+     * Gets the admission control shared by the whole vertx instance, creating it on first use.
+     *
+     * @param vertx the vertx instance
+     * @param config the {@code ADMISSION} configuration
+     * @param metrics the metrics, giving the JDBC connection checkout latency to the adaptive limiter
+     * @return the shared admission control
+     */
+    public static AdmissionControl shared(Vertx vertx, JsonObject config, Metrics metrics) {
+        LocalMap<String, AdmissionControl> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+        AdmissionControl admission = map.get(INSTANCE);
+        if (admission == null) {
+            AdmissionControl created = create(vertx, config);
+            admission = map.putIfAbsent(INSTANCE, created);
+            if (admission == null) {
+                admission = created;
+                JsonObject transfers = config.getJsonObject("TRANSFERS", new JsonObject());
+                ConcurrencyLimiter limiter = created.limiters.get(TRANSFERS);
+                if (limiter != null && transfers.getBoolean("ADAPTIVE", false)) {
+                    adapt(vertx, limiter, transfers, metrics.getConnectionCheckout());
+                }
+            }
+        }
+        return admission;
+    }
+
+    private static AdmissionControl create(Vertx vertx, JsonObject config) {
+        int retryAfter = config.getInteger("RETRY_AFTER_S", 1);
+        Map<String, ConcurrencyLimiter> limiters = new LinkedHashMap<>();
+        JsonObject transfers = config.getJsonObject("TRANSFERS", new JsonObject());
+        if (transfers.getInteger("MAX_IN_FLIGHT", 0) > 0) {
+            limiters.put(TRANSFERS, limiterOf(vertx, transfers, retryAfter));
+        }
+        config.getJsonObject("ROUTES", new JsonObject()).forEach(route -> {
+            JsonObject routeConfig = (JsonObject) route.getValue();
+            if (routeConfig.getInteger("MAX_IN_FLIGHT", 0) > 0) {
+                limiters.put(route.getKey(), limiterOf(vertx, routeConfig, retryAfter));
+            }
+        });
+        return new AdmissionControl(Collections.unmodifiableMap(limiters));
+    }
+
+    private static ConcurrencyLimiter limiterOf(Vertx vertx, JsonObject config, int retryAfter) {
+        return new ConcurrencyLimiter(vertx, config.getInteger("MAX_IN_FLIGHT"), config.getInteger("QUEUE_SIZE", 0),
+                config.getLong("QUEUE_TIMEOUT_MS", 1000L), retryAfter);
+    }
+
+    /**
+     * Periodically adjusts the limit of the transfers to the latency of the JDBC connection checkouts.
+     */
+    private static void adapt(Vertx vertx, ConcurrencyLimiter limiter, JsonObject config, LatencyHistogram checkout) {
+        int min = config.getInteger("MIN_IN_FLIGHT", 1);
+        int max = config.getInteger("MAX_IN_FLIGHT");
+        long target = TimeUnit.MILLISECONDS.toNanos(config.getLong("TARGET_CHECKOUT_MS", 5L));
+        double backoff = config.getDouble("BACKOFF", 0.9);
+        long[] last = {checkout.getCount(), checkout.getSumNanos()};
+        vertx.setPeriodic(config.getLong("WINDOW_MS", 100L), timer -> {
+            long count = checkout.getCount();
+            long sum = checkout.getSumNanos();
+            long meanWait = count > last[0] ? (sum - last[1]) / (count - last[0]) : 0;
+            last[0] = count;
+            last[1] = sum;
+            int limit = limiter.getLimit();
+            boolean saturated = limiter.takeSaturated();
+            if (meanWait > target) {
+                limiter.setLimit(Math.max(min, (int) (limit * backoff)));
+            } else if (saturated && limit < max) {
+                limiter.setLimit(limit + 1);
+            }
+        });
+    }
+
+    /**
+     * Admits a request through a limiter, or lets it through if there is no such limiter.
+     *
+     * @param name the limiter name: {@link #TRANSFERS} or a route
+     * @param context the routing context
+     */
+    public void handle(String name, RoutingContext context) {
+        ConcurrencyLimiter limiter = limiters.get(name);
+        if (limiter == null) {
+            context.next();
+        } else {
+            limiter.handle(context);
+        }
+    }
+
+    /**
+     * The configured limiters.
+     *
+     * @return the limiters by name
+     */
+    public Map<String, ConcurrencyLimiter> getLimiters() {
+        return limiters;
+    }
+}
@@ -0,0 +1,200 @@
+package org.jlnh.admission;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the number of requests of a route, or group of routes, handled at once.
+ * <p>
+ * A request is admitted while fewer than the limit are in flight, and counts as in flight until its response ends or
+ * its connection is closed. Beyond the limit it waits in a bounded queue, first in first out, for at most
+ * {@code QUEUE_TIMEOUT_MS} milliseconds; a request which finds the queue full, or waits too long, is answered at once
+ * with a {@code 503} and a {@code Retry-After} header instead of piling up in front of the JDBC pool. The limit may be
+ * changed at any time, by the {@link AdmissionControl adaptive limiter}; in-flight requests are never cancelled.
+ * <p>
+ * The limiter is shared by every event loop: waiting requests are admitted on their own context.
+ */
+public class ConcurrencyLimiter {
+
+    private final Vertx vertx;
+    private final int queueSize;
+    private final long queueTimeoutMillis;
+    private final String retryAfter;
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+
+    private int limit;
+    private int inFlight;
+    private boolean saturated;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public ConcurrencyLimiter(Vertx vertx, int limit, int queueSize, long queueTimeoutMillis, int retryAfterSeconds) {
+        this.vertx = vertx;
+        this.limit = limit;
+        this.queueSize = queueSize;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.retryAfter = Integer.toString(retryAfterSeconds);
+    }
+
+    /**
+     * Admits a request, queues it or rejects it.
+     *
+     * @param context the routing context, which goes on to the next handler once admitted
+     */
+    public void handle(RoutingContext context) {
+        Waiter waiter = null;
+        synchronized (this) {
+            if (inFlight < limit) {
+                inFlight++;
+                saturated |= inFlight == limit;
+            } else if (queue.size() < queueSize) {
+                waiter = new Waiter(context, Vertx.currentContext());
+                queue.addLast(waiter);
+                saturated = true;
+            } else {
+                saturated = true;
+                rejected.increment();
+                reject(context);
+                return;
+            }
+        }
+        if (waiter == null) {
+            admit(context);
+        } else {
+            Waiter queued = waiter;
+            queued.timer = vertx.setTimer(queueTimeoutMillis, expired -> expire(queued));
+        }
+    }
+
+    private void admit(RoutingContext context) {
+        admitted.increment();
+        boolean[] released = {false};
+        context.response().endHandler(ended -> {
+            if (!released[0]) {
+                released[0] = true;
+                release();
+            }
+        });
+        context.next();
+    }
+
+    /**
+     * Ends a request and hands its place to the oldest waiting request, if any.
+     */
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    /**
+     * Admits as many waiting requests as the limit allows.
+     */
+    void drain() {
+        while (true) {
+            Waiter next;
+            synchronized (this) {
+                if (inFlight >= limit || queue.isEmpty()) {
+                    return;
+                }
+                next = queue.pollFirst();
+                inFlight++;
+            }
+            vertx.cancelTimer(next.timer);
+            next.context.runOnContext(v -> {
+                if (next.routingContext.response().closed()) {
+                    release();
+                } else {
+                    admit(next.routingContext);
+                }
+            });
+        }
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!queue.remove(waiter)) {
+                return;
+            }
+        }
+        timedOut.increment();
+        reject(waiter.routingContext);
+    }
+
+    private void reject(RoutingContext context) {
+        context.response() //
+                .setStatusCode(503) //
+                .putHeader("Retry-After", retryAfter) //
+                .end("Too many requests in progress, retry later");
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Changes the number of requests admitted at once, admitting waiting requests if it grew.
+     *
+     * @param limit the new limit
+     */
+    public void setLimit(int limit) {
+        synchronized (this) {
+            this.limit = limit;
+        }
+        drain();
+    }
+
+    /**
+     * Tells whether requests had to wait, or were rejected, since the last call.
+     *
+     * @return true if the limit was reached
+     */
+    synchronized boolean takeSaturated() {
+        boolean wasSaturated = saturated || inFlight >= limit;
+        saturated = false;
+        return wasSaturated;
+    }
+
+    /**
+     * Snapshot of the limiter state and counters.
+     *
+     * @return limit, in flight, queued, admitted, rejected and timed out figures
+     */
+    public JsonObject stats() {
+        JsonObject stats;
+        synchronized (this) {
+            stats = new JsonObject() //
+                    .put("limit", limit) //
+                    .put("inFlight", inFlight) //
+                    .put("queued", queue.size());
+        }
+        return stats //
+                .put("admitted", admitted.sum()) //
+                .put("rejected", rejected.sum()) //
+                .put("timedOut", timedOut.sum());
+    }
+
+    /**
+     * A request waiting for its turn.
+     */
+    private static class Waiter {
+
+        private final RoutingContext routingContext;
+        private final Context context;
+        private long timer;
+
+        Waiter(RoutingContext routingContext, Context context) {
+            this.routingContext = routingContext;
+            this.context = context;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package org.jlnh.async;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.jlnh.util.JsonHelper;
+
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Queue of the transfers submitted asynchronously and status of each of them, shared by every verticle instance of
+ * the JVM.
+ * <p>
+ * A submitted transfer gets an id and is sent to the {@link #SUBMITTED} address of the local event bus. The event
+ * bus spreads the submitted transfers over the verticle instances consuming that address, and each instance executes
+ * at most {@code MAX_IN_FLIGHT} of them at once while the rest wait on the event bus. Submissions are refused while
+ * {@code MAX_PENDING} transfers are waiting or executing. Every status change is published to the {@link #STATUS}
+ * address. The last status of the latest {@code MAX_STATUSES} finished transfers is kept, and the oldest are dropped
+ * first.
+ */
+public class TransferQueue implements Shareable {
+
+    /**
+     * Address of the local event bus the submitted transfers are sent to.
+     */
+    public static final String SUBMITTED = "money-transfer.transfers.submitted";
+
+    /**
+     * Address of the local event bus every status change is published to, as compact JSON.
+     */
+    public static final String STATUS = "money-transfer.transfers.status";
+
+    /**
+     * Options of the messages sent to the addresses above, which never leave this vertx instance, even on a node of
+     * a cluster.
+     */
+    public static final DeliveryOptions LOCAL = new DeliveryOptions().setLocalOnly(true);
+
+    private static final String SHARED_MAP = "transfer-queue";
+    private static final String INSTANCE = "instance";
+
+    private final int maxPending;
+    private final int maxInFlight;
+    private final int maxStatuses;
+
+    private final ConcurrentHashMap<UUID, String> statuses = new ConcurrentHashMap<>();
+    private final Queue<UUID> finishedOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger finished = new AtomicInteger();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+
+    public TransferQueue(int maxPending, int maxInFlight, int maxStatuses) {
+        this.maxPending = maxPending;
+        this.maxInFlight = maxInFlight;
+        this.maxStatuses = maxStatuses;
+    }
+
+    /**
+     * Gets the queue shared by the whole vertx instance, creating it on first use.
+     *
+     * @param vertx the vertx instance
+     * @param config the {@code ASYNC} configuration
+     * @return the shared queue
+     */
+    public static TransferQueue shared(Vertx vertx, JsonObject config) {
+        LocalMap<String, TransferQueue> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+        TransferQueue queue = map.get(INSTANCE);
+        if (queue == null) {
+            TransferQueue created = new TransferQueue(config.getInteger("MAX_PENDING", 100000),
+                    config.getInteger("MAX_IN_FLIGHT", 32), config.getInteger("MAX_STATUSES", 100000));
+            queue = map.putIfAbsent(INSTANCE, created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Whether transfers can be submitted asynchronously: when {@code ASYNC.MAX_PENDING} is positive.
+     *
+     * @param config {@link JsonObject} with the application configuration
+     * @return true to accept asynchronous submissions
+     */
+    public static boolean selected(JsonObject config) {
+        return config.getJsonObject("ASYNC", new JsonObject()).getInteger("MAX_PENDING", 0) > 0;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Accepts a transfer, unless too many are pending already.
+     *
+     * @param id id of the submitted transfer
+     * @return its pending status, or null if it was refused
+     */
+    public String accept(UUID id) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            refused.increment();
+            return null;
+        }
+        submitted.increment();
+        String status = new JsonObject().put("id", id.toString()).put("status", "pending").encode();
+        statuses.put(id, status);
+        return status;
+    }
+
+    /**
+     * Records the outcome of a submitted transfer.
+     *
+     * @param id id of the submitted transfer
+     * @param outcome the executed transaction, or why it failed
+     * @return its final status
+     */
+    public String complete(UUID id, AsyncResult<Transaction> outcome) {
+        String status;
+        if (outcome.succeeded()) {
+            status = "{\"id\":\"" + id + "\",\"status\":\"committed\",\"transaction\":"
+                    + JsonHelper.encodeTransfer(outcome.result()) + "}";
+        } else {
+            JsonObject rejected = new JsonObject() //
+                    .put("id", id.toString()) //
+                    .put("status", "rejected") //
+                    .put("error", outcome.cause().getMessage());
+            if (outcome.cause() instanceof IllegalStateException) {
+                rejected.put("cause", "User does not have sufficient funds");
+            }
+            status = rejected.encode();
+        }
+        statuses.put(id, status);
+        pending.decrementAndGet();
+        finishedOrder.add(id);
+        if (finished.incrementAndGet() > maxStatuses) {
+            evictOldest();
+        }
+        return status;
+    }
+
+    /**
+     * Finds the status of a submitted transfer.
+     *
+     * @param id id of the submitted transfer
+     * @return the status as compact JSON, or null if the transfer is unknown or its status was dropped
+     */
+    public String get(UUID id) {
+        return statuses.get(id);
+    }
+
+    /**
+     * Drops the statuses of the oldest finished transfers while there are too many of them. The oldest one is the
+     * head of the queue, so removing it is O(1).
+     */
+    private void evictOldest() {
+        UUID oldest;
+        while (finished.get() > maxStatuses && (oldest = finishedOrder.poll()) != null) {
+            statuses.remove(oldest);
+            finished.decrementAndGet();
+        }
+    }
+
+    /**
+     * Encodes a submitted transfer as the body of a message to the {@link #SUBMITTED} address.
+     *
+     * @param id id of the submitted transfer
+     * @param transaction the requested transaction
+     * @return the message body
+     */
+    public static JsonObject encodeSubmitted(UUID id, Transaction transaction) {
+        return new JsonObject() //
+                .put("id", id.toString()) //
+                .put("from", transaction.getFrom().getId().toString()) //
+                .put("to", transaction.getTo().getId().toString()) //
+                .put("amount", transaction.getAmountUnits());
+    }
+
+    /**
+     * Decodes the requested transaction of a message to the {@link #SUBMITTED} address, its id being the one of the
+     * submission so that the committed transaction is found by the id the client was given.
+     *
+     * @param submitted the message body
+     * @return the requested transaction
+     */
+    public static Transaction decodeSubmitted(JsonObject submitted) {
+        return new Transaction(UUID.fromString(submitted.getString("id")), new Account(UUID.fromString(submitted.getString("from")), 0L),
+                new Account(UUID.fromString(submitted.getString("to")), 0L), submitted.getLong("amount"));
+    }
+
+    /**
+     * Snapshot of the queue figures.
+     *
+     * @return pending transfers, kept statuses, submitted and refused transfers
+     */
+    public JsonObject stats() {
+        return new JsonObject() //
+                .put("pending", pending.get()) //
+                .put("statuses", statuses.size()) //
+                .put("submitted", submitted.sum()) //
+                .put("refused", refused.sum());
+    }
+}
@@ -0,0 +1,169 @@
+package org.jlnh.cache;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import org.jlnh.model.Account;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, least-recently-used cache of account balances, shared by every verticle instance of the JVM.
+ * <p>
+ * Reads go through the cache with a stamp taken before loading from the database: a loaded account is only
+ * cached if no transfer {@link #invalidate(UUID...) invalidated} it meanwhile, so an account read after a transfer
+ * completed can never be served with the balance it had before, while transfers of other accounts do not keep it
+ * from being cached. The stamps of the last {@code maxSize} invalidated accounts are kept; loads started before the
+ * latest stamp forgotten are not cached at all.
+ */
+public class AccountCache implements Shareable {
+
+    private static final String SHARED_MAP = "account-cache";
+    private static final String INSTANCE = "instance";
+
+    private final long ttlNanos;
+    private final Map<UUID, Entry> entries;
+    private final Map<UUID, Long> invalidated;
+
+    private long stamp;
+    private long forgotten;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public AccountCache(int maxSize, long ttlMillis) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<UUID, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.invalidated = new LinkedHashMap<UUID, Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Long> eldest) {
+                if (size() > maxSize) {
+                    forgotten = Math.max(forgotten, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the cache shared by the whole vertx instance, creating it on first use.
+     *
+     * @param vertx the vertx instance
+     * @param config the {@code ACCOUNT_CACHE} configuration
+     * @return the shared cache
+     */
+    public static AccountCache shared(Vertx vertx, JsonObject config) {
+        LocalMap<String, AccountCache> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+        AccountCache cache = map.get(INSTANCE);
+        if (cache == null) {
+            AccountCache created = new AccountCache(config.getInteger("MAX_SIZE", 10000), config.getLong("TTL_MS", 0L));
+            cache = map.putIfAbsent(INSTANCE, created);
+            if (cache == null) {
+                cache = created;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Finds a cached account.
+     *
+     * @param id the account id
+     * @return a copy of the cached account, or null if it is not cached or has expired
+     */
+    public synchronized Account get(UUID id) {
+        Entry entry = entries.get(id);
+        if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.loadedAt > ttlNanos) {
+            entries.remove(id);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new Account(id, entry.balance);
+    }
+
+    /**
+     * The current stamp, to be taken before loading an account from the database.
+     *
+     * @return the stamp
+     */
+    public synchronized long stamp() {
+        return stamp;
+    }
+
+    /**
+     * Caches an account loaded from the database, unless the account was invalidated since the load started.
+     *
+     * @param account the loaded account
+     * @param loadStamp the {@link #stamp() stamp} taken before the load
+     */
+    public synchronized void putIfUnchanged(Account account, long loadStamp) {
+        if (loadStamp >= forgotten && loadStamp >= invalidated.getOrDefault(account.getId(), 0L)) {
+            entries.put(account.getId(), new Entry(account.getBalanceUnits(), System.nanoTime()));
+        }
+    }
+
+    /**
+     * Drops the given accounts, and prevents loads of them started before this call from being cached.
+     *
+     * @param ids the ids of the accounts whose balance changed
+     */
+    public synchronized void invalidate(UUID... ids) {
+        stamp++;
+        for (UUID id : ids) {
+            entries.remove(id);
+            invalidated.remove(id);
+            invalidated.put(id, stamp);
+        }
+    }
+
+    /**
+     * Snapshot of the cache counters.
+     *
+     * @return size, hit, miss and eviction figures
+     */
+    public JsonObject stats() {
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return new JsonObject() //
+                .put("size", size) //
+                .put("hits", hits.sum()) //
+                .put("misses", misses.sum()) //
+                .put("evictions", evictions.sum());
+    }
+
+    /**
+     * A cached balance and the time it was loaded at.
+     */
+    private static class Entry {
+
+        private final long balance;
+        private final long loadedAt;
+
+        Entry(long balance, long loadedAt) {
+            this.balance = balance;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
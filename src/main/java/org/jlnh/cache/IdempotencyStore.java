@@ -0,0 +1,223 @@
+package org.jlnh.cache;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, time-expiring index of the responses of the transfers requested with an {@code Idempotency-Key}, shared
+ * by every verticle instance of the JVM.
+ * <p>
+ * Lookups are a single {@link ConcurrentHashMap} read, so they are O(1) and never block the event loop. Stored
+ * responses are also queued in the order they were stored, which is the order they expire in: expired entries, and
+ * the oldest ones whenever the number of entries or their estimated size in memory goes over the limits, are
+ * dropped from the head of that queue.
+ */
+public class IdempotencyStore implements Shareable {
+
+    private static final String SHARED_MAP = "idempotency-store";
+    private static final String INSTANCE = "instance";
+
+    /**
+     * Estimated footprint of an entry besides its strings: the map node, the entry and the queue node.
+     */
+    private static final long ENTRY_OVERHEAD = 128;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlNanos;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> expiryOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger stored = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public IdempotencyStore(int maxEntries, long maxBytes, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Gets the store shared by the whole vertx instance, creating it on first use.
+     *
+     * @param vertx the vertx instance
+     * @param config the {@code IDEMPOTENCY} configuration
+     * @return the shared store
+     */
+    public static IdempotencyStore shared(Vertx vertx, JsonObject config) {
+        LocalMap<String, IdempotencyStore> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+        IdempotencyStore store = map.get(INSTANCE);
+        if (store == null) {
+            IdempotencyStore created = new IdempotencyStore(config.getInteger("MAX_ENTRIES", 100000),
+                    config.getLong("MAX_BYTES", 64L * 1024 * 1024), config.getLong("TTL_MS", TimeUnit.DAYS.toMillis(1)));
+            store = map.putIfAbsent(INSTANCE, created);
+            if (store == null) {
+                store = created;
+            }
+        }
+        return store;
+    }
+
+    public long getTtlMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(ttlNanos);
+    }
+
+    /**
+     * Finds the entry of a key.
+     *
+     * @param key the idempotency key
+     * @return the entry, which is {@link Entry#isPending() pending} while the first request is being executed, or
+     * null if the key is unknown or has expired
+     */
+    public Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.isPending() && System.nanoTime() - entry.storedAt > ttlNanos) {
+            evictExpired();
+            return null;
+        }
+        if (entry != null && !entry.isPending()) {
+            replays.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Reserves a key for a request about to be executed.
+     *
+     * @param key the idempotency key
+     * @param fingerprint what identifies the request
+     * @return null if the key was reserved, otherwise the entry already holding it
+     */
+    public Entry reserve(String key, String fingerprint) {
+        return entries.putIfAbsent(key, new Entry(key, fingerprint));
+    }
+
+    /**
+     * Stores the response of a request executed under a reserved key.
+     *
+     * @param key the idempotency key
+     * @param response the response body
+     */
+    public void complete(String key, String response) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isPending()) {
+            store(entry, response);
+        }
+    }
+
+    /**
+     * Frees a reserved key whose request failed, so it can be retried.
+     *
+     * @param key the idempotency key
+     */
+    public void release(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isPending()) {
+            entries.remove(key, entry);
+        }
+    }
+
+    /**
+     * Stores a response loaded from the database.
+     *
+     * @param key the idempotency key
+     * @param fingerprint what identifies the request
+     * @param response the response body
+     * @return the stored entry, or the one which was already holding the key
+     */
+    public Entry put(String key, String fingerprint, String response) {
+        Entry entry = new Entry(key, fingerprint);
+        Entry existing = entries.putIfAbsent(key, entry);
+        if (existing != null) {
+            return existing;
+        }
+        store(entry, response);
+        return entry;
+    }
+
+    private void store(Entry entry, String response) {
+        entry.storedAt = System.nanoTime();
+        entry.response = response;
+        expiryOrder.add(entry);
+        stored.incrementAndGet();
+        bytes.addAndGet(entry.footprint());
+        evictExpired();
+    }
+
+    /**
+     * Drops the oldest responses while they have expired or the store is over its limits. The oldest entry is the
+     * head of the queue, so removing it is O(1).
+     */
+    private void evictExpired() {
+        long now = System.nanoTime();
+        Entry oldest;
+        while ((oldest = expiryOrder.peek()) != null && (now - oldest.storedAt > ttlNanos //
+                || stored.get() > maxEntries || bytes.get() > maxBytes)) {
+            if (expiryOrder.remove(oldest)) {
+                entries.remove(oldest.key, oldest);
+                stored.decrementAndGet();
+                bytes.addAndGet(-oldest.footprint());
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the store figures.
+     *
+     * @return size, estimated memory footprint, limits, replay and eviction figures
+     */
+    public JsonObject stats() {
+        return new JsonObject() //
+                .put("size", entries.size()) //
+                .put("bytes", bytes.get()) //
+                .put("maxBytes", maxBytes) //
+                .put("replays", replays.sum()) //
+                .put("evictions", evictions.sum());
+    }
+
+    /**
+     * The stored response of a key, or a reservation while the first request holding it is executed.
+     */
+    public static class Entry {
+
+        private final String key;
+        private final String fingerprint;
+        private volatile String response;
+        private volatile long storedAt;
+
+        Entry(String key, String fingerprint) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public String getResponse() {
+            return response;
+        }
+
+        public boolean isPending() {
+            return response == null;
+        }
+
+        private long footprint() {
+            return ENTRY_OVERHEAD + 2L * (key.length() + fingerprint.length() + response.length());
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.jlnh.cache;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import org.jlnh.model.TransactionRecord;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, least-recently-used cache of the most recent transactions of accounts, newest first, shared by every
+ * verticle instance of the JVM.
+ * <p>
+ * An account is cached with its last {@code DEPTH} transactions loaded from the database, then kept up to date
+ * incrementally: every committed transfer is {@link #record(TransactionRecord) recorded} at the head of the history of
+ * both its accounts, so polling the latest transactions of an account never reads the database again. As in the
+ * {@link AccountCache}, a history is only cached if no transfer of that account was recorded while it was being
+ * loaded; the stamps of the last {@code MAX_ACCOUNTS} accounts with recorded transfers are kept, and loads started
+ * before the latest stamp forgotten are not cached at all.
+ */
+public class TransactionHistoryCache implements Shareable {
+
+    private static final String SHARED_MAP = "transaction-history-cache";
+    private static final String INSTANCE = "instance";
+
+    /**
+     * The order of a history in the database: {@code created_at DESC, id DESC}.
+     */
+    private static final Comparator<TransactionRecord> NEWEST_FIRST = Comparator
+            .comparingLong(TransactionRecord::getCreatedAtMillis).thenComparing(TransactionRecord::getId).reversed();
+
+    private final int depth;
+    private final Map<UUID, LinkedList<TransactionRecord>> entries;
+    private final Map<UUID, Long> recorded;
+
+    private long stamp;
+    private long forgotten;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TransactionHistoryCache(int maxAccounts, int depth) {
+        this.depth = depth;
+        this.entries = new LinkedHashMap<UUID, LinkedList<TransactionRecord>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, LinkedList<TransactionRecord>> eldest) {
+                if (size() > maxAccounts) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.recorded = new LinkedHashMap<UUID, Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Long> eldest) {
+                if (size() > maxAccounts) {
+                    forgotten = Math.max(forgotten, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the cache shared by the whole vertx instance, creating it on first use.
+     *
+     * @param vertx the vertx instance
+     * @param config the {@code HISTORY_CACHE} configuration
+     * @return the shared cache
+     */
+    public static TransactionHistoryCache shared(Vertx vertx, JsonObject config) {
+        LocalMap<String, TransactionHistoryCache> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+        TransactionHistoryCache cache = map.get(INSTANCE);
+        if (cache == null) {
+            TransactionHistoryCache created = new TransactionHistoryCache(config.getInteger("MAX_ACCOUNTS", 10000),
+                    config.getInteger("DEPTH", 50));
+            cache = map.putIfAbsent(INSTANCE, created);
+            if (cache == null) {
+                cache = created;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * The number of transactions cached per account, i.e. the largest page served from the cache.
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Finds the most recent transactions of a cached account.
+     *
+     * @param account the account id
+     * @param limit the number of transactions, at most the {@link #getDepth() depth}
+     * @return the newest transactions first, or null if the account is not cached
+     */
+    public synchronized List<TransactionRecord> recent(UUID account, int limit) {
+        List<TransactionRecord> history = entries.get(account);
+        if (history == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new ArrayList<>(history.subList(0, Math.min(limit, history.size())));
+    }
+
+    /**
+     * The current stamp, to be taken before loading a history from the database.
+     *
+     * @return the stamp
+     */
+    public synchronized long stamp() {
+        return stamp;
+    }
+
+    /**
+     * Caches the history of an account loaded from the database, unless a transfer of that account was recorded
+     * since the load started.
+     *
+     * @param account the account id
+     * @param history the last {@link #getDepth() depth} transactions of the account, newest first
+     * @param loadStamp the {@link #stamp() stamp} taken before the load
+     */
+    public synchronized void putIfUnchanged(UUID account, List<TransactionRecord> history, long loadStamp) {
+        if (loadStamp >= forgotten && loadStamp >= recorded.getOrDefault(account, 0L)) {
+            entries.put(account, new LinkedList<>(history.subList(0, Math.min(depth, history.size()))));
+        }
+    }
+
+    /**
+     * Adds a committed transaction to the cached histories of its accounts, and prevents loads of their histories
+     * started before this call from being cached.
+     *
+     * @param transaction the committed transaction
+     */
+    public synchronized void record(TransactionRecord transaction) {
+        stamp++;
+        prepend(transaction.getFrom(), transaction);
+        if (!transaction.getTo().equals(transaction.getFrom())) {
+            prepend(transaction.getTo(), transaction);
+        }
+    }
+
+    private void stampRecorded(UUID account) {
+        recorded.remove(account);
+        recorded.put(account, stamp);
+    }
+
+    /**
+     * Inserts a transaction in the history of an account if it is cached, in the order of the database, by commit
+     * time then id, since transfers on other event loops may be recorded slightly out of order, and drops the oldest
+     * one beyond the depth.
+     *
+     * @param account the account id
+     * @param transaction the committed transaction
+     */
+    private void prepend(UUID account, TransactionRecord transaction) {
+        stampRecorded(account);
+        LinkedList<TransactionRecord> history = entries.get(account);
+        if (history == null) {
+            return;
+        }
+        ListIterator<TransactionRecord> position = history.listIterator();
+        while (position.hasNext()) {
+            if (NEWEST_FIRST.compare(position.next(), transaction) > 0) {
+                position.previous();
+                break;
+            }
+        }
+        position.add(transaction);
+        if (history.size() > depth) {
+            history.removeLast();
+        }
+    }
+
+    /**
+     * Snapshot of the cache counters.
+     *
+     * @return size, hit, miss and eviction figures
+     */
+    public JsonObject stats() {
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return new JsonObject() //
+                .put("size", size) //
+                .put("hits", hits.sum()) //
+                .put("misses", misses.sum()) //
+                .put("evictions", evictions.sum());
+    }
+}
@@ -0,0 +1,407 @@
+package org.jlnh.cluster;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.SQLConnection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.jlnh.model.TransactionRecord;
+import org.jlnh.persistence.AccountSequencer;
+import org.jlnh.persistence.JdbcRepository;
+import org.jlnh.persistence.TransferBatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.jlnh.util.ActionHelper.translateReplyFailure;
+
+/**
+ * A node of a cluster of money transfer APIs, each one owning the accounts its {@link PartitionRing} assigns it
+ * and keeping only those in its database.
+ * <p>
+ * Requests about accounts owned by another node are forwarded to it over the clustered event bus: a transfer is
+ * executed by the node of its sender. When the receiver belongs to another node, the sender is debited and the
+ * credit queued in the {@link CreditOutbox} in one database transaction, then the credit is sent to the receiver's
+ * node, which applies it once however many times it is delivered. Credits which were not acknowledged are sent again
+ * every {@code CLUSTER.REDELIVERY_INTERVAL_MS} until they are. Accounts are never deleted and the receiver is looked
+ * up before the sender is debited, so a credit can only be delayed, never refused.
+ */
+public class ClusterNode {
+
+    public static final String ACTION = "action";
+    public static final String GET = "get";
+    public static final String ACCOUNTS = "accounts";
+    public static final String TRANSACTIONS = "transactions";
+    public static final String TRANSFER = "transfer";
+    public static final String CREDIT = "credit";
+
+    private static final Logger LOGGER = LogManager.getLogger(ClusterNode.class);
+
+    private final Vertx vertx;
+    private final PartitionRing ring;
+    private final String node;
+    private final JdbcRepository repository;
+    private final AccountSequencer sequencer;
+    private final long sendTimeoutMs;
+
+    public ClusterNode(Vertx vertx, PartitionRing ring, String node, JdbcRepository repository, AccountSequencer sequencer,
+                       long sendTimeoutMs) {
+        this.vertx = vertx;
+        this.ring = ring;
+        this.node = node;
+        this.repository = repository;
+        this.sequencer = sequencer;
+        this.sendTimeoutMs = sendTimeoutMs;
+    }
+
+    /**
+     * Whether the clustered mode is selected: {@code CLUSTER.NODES} lists the nodes.
+     *
+     * @param config the application configuration
+     * @return true if the application runs as a node of a cluster
+     */
+    public static boolean selected(JsonObject config) {
+        return !config.getJsonObject("CLUSTER", new JsonObject()).getJsonArray("NODES", new JsonArray()).isEmpty();
+    }
+
+    /**
+     * Creates this node of the cluster, after checking the configuration.
+     *
+     * @param vertx the vertx instance, clustered unless it is the only node
+     * @param config the application configuration
+     * @param repository the database of this node
+     * @param sequencer the sequencer of the transfers of this node
+     * @return the node
+     */
+    public static ClusterNode create(Vertx vertx, JsonObject config, JdbcRepository repository, AccountSequencer sequencer) {
+        JsonObject clusterConfig = config.getJsonObject("CLUSTER");
+        List<String> nodes = clusterConfig.getJsonArray("NODES").stream().map(String::valueOf).collect(Collectors.toList());
+        String node = clusterConfig.getString("NODE_ID", "");
+        if (!nodes.contains(node)) {
+            throw new IllegalArgumentException("CLUSTER.NODE_ID must be one of CLUSTER.NODES " + nodes);
+        }
+        if (!"jdbc".equals(config.getString("TRANSFER_ENGINE", "jdbc"))
+                || !"jdbc".equals(config.getJsonObject("STORAGE", new JsonObject()).getString("TYPE", "jdbc"))) {
+            throw new IllegalArgumentException("The clustered mode requires the jdbc transfer engine and storage");
+        }
+        if (nodes.size() > 1 && !vertx.isClustered()) {
+            throw new IllegalStateException("The nodes of a cluster need a clustered vertx instance, started with -cluster");
+        }
+        return new ClusterNode(vertx, new PartitionRing(nodes, clusterConfig.getInteger("VIRTUAL_NODES", 128)), node,
+                repository, sequencer, clusterConfig.getLong("SEND_TIMEOUT_MS", 5000L));
+    }
+
+    /**
+     * Event bus address of a given node.
+     *
+     * @param node the node id
+     * @return the address
+     */
+    public static String address(String node) {
+        return "cluster.node." + node;
+    }
+
+    /**
+     * @return the id of this node
+     */
+    public String getNode() {
+        return node;
+    }
+
+    /**
+     * @return the partition ring of the cluster
+     */
+    public PartitionRing getRing() {
+        return ring;
+    }
+
+    /**
+     * Whether this node owns an account.
+     *
+     * @param account the account id
+     * @return true if the account belongs to this node
+     */
+    public boolean owns(UUID account) {
+        return ring.ownerOf(account).equals(node);
+    }
+
+    /**
+     * Deletes the accounts owned by other nodes from the database of this node.
+     *
+     * @param connection database connection
+     * @return the connection itself
+     */
+    public Future<SQLConnection> prune(SQLConnection connection) {
+        return CreditOutbox.prune(connection, ring, node).map(deleted -> {
+            LOGGER.info("Node {} deleted the {} accounts owned by other nodes", node, deleted);
+            return connection;
+        });
+    }
+
+    /**
+     * Finds an account owned by another node.
+     *
+     * @param id the account id
+     * @return future account, failed with a {@link NoSuchElementException} if it does not exist
+     */
+    public Future<Account> findAccount(UUID id) {
+        return send(ring.ownerOf(id), GET, new JsonObject().put("id", id.toString())).map(ClusterNode::decodeAccount);
+    }
+
+    /**
+     * Finds a page of accounts ordered by id across all the nodes: the page of every node is fetched and they are
+     * merged.
+     *
+     * @param after id of the last account of the previous page, null for the first page
+     * @param limit maximum number of accounts
+     * @return future accounts of the page
+     */
+    public Future<List<Account>> findAccounts(UUID after, int limit) {
+        List<Future> pages = new ArrayList<>();
+        for (String owner : ring.getNodes()) {
+            pages.add(owner.equals(node) //
+                    ? repository.findAccounts(after, limit) //
+                    : send(owner, ACCOUNTS, new JsonObject().put("after", after == null ? null : after.toString()).put("limit", limit)) //
+                    .map(reply -> reply.getJsonArray("accounts").stream() //
+                            .map(account -> decodeAccount((JsonObject) account)) //
+                            .collect(Collectors.toList())));
+        }
+        return CompositeFuture.all(pages).map(all -> {
+            List<Account> merged = new ArrayList<>();
+            for (int i = 0; i < all.size(); i++) {
+                merged.addAll(all.<List<Account>>resultAt(i));
+            }
+            merged.sort(Comparator.comparing(Account::getId));
+            return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+        });
+    }
+
+    /**
+     * Finds a page of the transactions of an account owned by another node, newest first.
+     *
+     * @param account the account id
+     * @param before id of the last transaction of the previous page, null for the first page
+     * @param limit maximum number of transactions
+     * @return future transactions of the page
+     */
+    public Future<List<TransactionRecord>> findTransactions(UUID account, UUID before, int limit) {
+        JsonObject request = new JsonObject() //
+                .put("account", account.toString()) //
+                .put("before", before == null ? null : before.toString()) //
+                .put("limit", limit);
+        return send(ring.ownerOf(account), TRANSACTIONS, request).map(reply -> reply.getJsonArray("transactions").stream() //
+                .map(record -> decodeRecord((JsonObject) record)) //
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Has a transfer executed by the node owning its sender.
+     *
+     * @param valid the validated transaction
+     * @return future transaction which might be completed or refused
+     */
+    public Future<Transaction> forwardTransfer(Transaction valid) {
+        JsonObject request = new JsonObject() //
+                .put("id", valid.getId() == null ? null : valid.getId().toString()) //
+                .put("from", valid.getFrom().getId().toString()) //
+                .put("to", valid.getTo().getId().toString()) //
+                .put("amount", valid.getAmountUnits());
+        return send(ring.ownerOf(valid.getFrom().getId()), TRANSFER, request).map(ClusterNode::decodeTransfer);
+    }
+
+    /**
+     * Transfers an amount from an account of this node to an account of another node: the receiver is looked up,
+     * the sender debited with its credit queued, and the credit delivered. The transfer is complete once the debit is
+     * committed: if the credit could not be delivered yet it will be later, the receiver's balance is then the one it
+     * had before.
+     *
+     * @param transactionId id of the transaction, generated if null
+     * @param from id of the account that is sending the amount, owned by this node
+     * @param to id of the account that is receiving the amount, owned by another node
+     * @param amount the amount, in {@link org.jlnh.model.Money minor units}
+     * @return future transaction, failed with an {@link IllegalStateException} if the amount is greater than the
+     * sender's balance or a {@link NoSuchElementException} if an account does not exist
+     */
+    public Future<Transaction> transferOut(UUID transactionId, UUID from, UUID to, long amount) {
+        UUID id = transactionId != null ? transactionId : UUID.randomUUID();
+        long createdAt = System.currentTimeMillis();
+        return findAccount(to).compose(receiver -> sequencer.execute(Collections.singletonList(from), () -> debit(id, from, to, amount, createdAt)) //
+                .compose(balance -> deliver(id, from, to, amount).otherwise(cause -> {
+                    LOGGER.warn("The credit of transfer {} to node {} will be delivered again", id, ring.ownerOf(to), cause);
+                    return null;
+                }).map(v -> {
+                    Transaction transaction = new Transaction(id, new Account(from, balance), receiver, amount);
+                    transaction.setCreatedAtMillis(createdAt);
+                    return transaction;
+                })));
+    }
+
+    /**
+     * Debits the sender and queues the credit of the receiver in a single database transaction.
+     *
+     * @return future sender balance after the debit
+     */
+    private Future<Long> debit(UUID id, UUID from, UUID to, long amount, long createdAt) {
+        return repository.connect().compose(TransferBatch::begin).compose(connection -> {
+            Future<Long> debited = CreditOutbox.debit(connection, id, from, to, amount, createdAt);
+            return TransferBatch.end(connection, debited).map(v -> debited.result());
+        });
+    }
+
+    /**
+     * Sends a queued credit to the node of its receiver, and removes it from the outbox once acknowledged.
+     *
+     * @return future empty result, failed if the credit was not acknowledged
+     */
+    private Future<Void> deliver(UUID id, UUID from, UUID to, long amount) {
+        JsonObject credit = new JsonObject() //
+                .put("id", id.toString()) //
+                .put("from", from.toString()) //
+                .put("to", to.toString()) //
+                .put("amount", amount);
+        return send(ring.ownerOf(to), CREDIT, credit) //
+                .compose(acknowledged -> repository.connect()) //
+                .compose(connection -> CreditOutbox.delivered(connection, id));
+    }
+
+    /**
+     * Applies a credit sent by the node of its sender to an account of this node, unless it already was.
+     *
+     * @param credit the credit, as sent
+     * @return future transaction credited, null if it already was
+     */
+    public Future<Transaction> applyCredit(JsonObject credit) {
+        UUID id = UUID.fromString(credit.getString("id"));
+        UUID from = UUID.fromString(credit.getString("from"));
+        UUID to = UUID.fromString(credit.getString("to"));
+        long amount = credit.getLong("amount");
+        long createdAt = System.currentTimeMillis();
+        return sequencer.execute(Collections.singletonList(to), () -> repository.connect() //
+                .compose(TransferBatch::begin) //
+                .compose(connection -> {
+                    Future<Boolean> credited = CreditOutbox.credit(connection, id, from, to, amount, createdAt);
+                    return TransferBatch.end(connection, credited).map(v -> credited.result());
+                })).map(credited -> {
+                    if (!credited) {
+                        return null;
+                    }
+                    Transaction transaction = new Transaction(id, new Account(from, 0L), new Account(to, 0L), amount);
+                    transaction.setCreatedAtMillis(createdAt);
+                    return transaction;
+                });
+    }
+
+    /**
+     * Delivers again the credits which were not acknowledged within a given time.
+     *
+     * @param olderThanMillis how long the credits have been queued for, at least
+     * @param limit maximum number of credits to deliver
+     * @return future number of credits acknowledged
+     */
+    public Future<Integer> redeliver(long olderThanMillis, int limit) {
+        return repository.connect() //
+                .compose(connection -> CreditOutbox.pending(connection, olderThanMillis, limit)) //
+                .compose(pending -> {
+                    List<Future> deliveries = pending.stream() //
+                            .map(credit -> deliver(UUID.fromString(credit.getString("id")), UUID.fromString(credit.getString("from")),
+                                    UUID.fromString(credit.getString("to")), credit.getLong("amount"))) //
+                            .collect(Collectors.toList());
+                    Future<Integer> future = Future.future();
+                    CompositeFuture.join(deliveries).setHandler(done -> future.complete(
+                            (int) deliveries.stream().filter(Future::succeeded).count()));
+                    return future;
+                });
+    }
+
+    /**
+     * Encodes an account for the event bus.
+     *
+     * @param account the account
+     * @return the encoded account
+     */
+    public static JsonObject encodeAccount(Account account) {
+        return new JsonObject().put("id", account.getId().toString()).put("balance", account.getBalanceUnits());
+    }
+
+    /**
+     * Encodes a committed transfer for the event bus.
+     *
+     * @param transaction the committed transaction
+     * @return the encoded transaction
+     */
+    public static JsonObject encodeTransfer(Transaction transaction) {
+        return new JsonObject() //
+                .put("id", transaction.getId().toString()) //
+                .put("from", encodeAccount(transaction.getFrom())) //
+                .put("to", encodeAccount(transaction.getTo())) //
+                .put("amount", transaction.getAmountUnits()) //
+                .put("createdAt", transaction.getCreatedAtMillis());
+    }
+
+    /**
+     * Encodes a page of transactions for the event bus.
+     *
+     * @param records the transactions
+     * @return the encoded transactions
+     */
+    public static JsonArray encodeRecords(List<TransactionRecord> records) {
+        JsonArray encoded = new JsonArray();
+        records.forEach(record -> encoded.add(new JsonObject() //
+                .put("id", record.getId().toString()) //
+                .put("from", record.getFrom().toString()) //
+                .put("to", record.getTo().toString()) //
+                .put("amount", record.getAmountUnits()) //
+                .put("createdAt", record.getCreatedAtMillis())));
+        return encoded;
+    }
+
+    private static Account decodeAccount(JsonObject encoded) {
+        return new Account(UUID.fromString(encoded.getString("id")), encoded.getLong("balance"));
+    }
+
+    private static Transaction decodeTransfer(JsonObject encoded) {
+        Transaction transaction = new Transaction(UUID.fromString(encoded.getString("id")),
+                decodeAccount(encoded.getJsonObject("from")), decodeAccount(encoded.getJsonObject("to")),
+                encoded.getLong("amount"));
+        transaction.setCreatedAtMillis(encoded.getLong("createdAt", 0L));
+        return transaction;
+    }
+
+    private static TransactionRecord decodeRecord(JsonObject encoded) {
+        return new TransactionRecord(UUID.fromString(encoded.getString("id")), UUID.fromString(encoded.getString("from")),
+                UUID.fromString(encoded.getString("to")), encoded.getLong("amount"), encoded.getLong("createdAt"));
+    }
+
+    /**
+     * Sends an operation to another node.
+     *
+     * @param owner the node id
+     * @param action the operation
+     * @param body the operation payload
+     * @return future with the node reply
+     */
+    private Future<JsonObject> send(String owner, String action, JsonObject body) {
+        Future<JsonObject> future = Future.future();
+        vertx.eventBus().<JsonObject>send(address(owner), body, //
+                new DeliveryOptions().addHeader(ACTION, action).setSendTimeout(sendTimeoutMs), //
+                reply -> {
+                    if (reply.succeeded()) {
+                        future.complete(reply.result().body());
+                    } else {
+                        future.fail(translateReplyFailure(reply.cause()));
+                    }
+                });
+        return future;
+    }
+}
@@ -0,0 +1,189 @@
+package org.jlnh.cluster;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.SQLConnection;
+import org.jlnh.model.Account;
+import org.jlnh.model.Money;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.jlnh.util.ActionHelper.COULD_NOT_TRANSFER_MONEY;
+
+/**
+ * Helper code for the two steps of a transfer between accounts owned by different nodes.
+ * <p>
+ * The sender's node debits the sender, records the transaction and queues the credit of the receiver in the
+ * {@code credit_outbox} table, all in the same database transaction, so a committed debit always has its credit
+ * waiting to be delivered. The credit is removed from the outbox once the receiver's node acknowledged it. The
+ * receiver's node records the same transaction before crediting the receiver, in one database transaction too: its
+ * primary key makes a credit delivered twice apply only once.
+ */
+public class CreditOutbox {
+
+    private static final String INSERT_TRANSACTION = "INSERT INTO transaction (id, \"from\", to, amount, created_at) VALUES(?, ?, ?, ?, ?)";
+    private static final String UPDATE_BALANCE = "UPDATE account SET balance = balance + ? WHERE id = ? AND balance + ? >= 0";
+
+    /**
+     * SQL state of a primary key violation.
+     */
+    private static final String DUPLICATE_KEY = "23505";
+
+    private CreditOutbox() {
+    }
+
+    /**
+     * Debits the sender, records the transaction and queues the credit of the receiver, without committing.
+     *
+     * @param connection database connection with an open transaction
+     * @param id the transaction id
+     * @param from id of the account that is sending the amount, owned by this node
+     * @param to id of the account that is receiving the amount, owned by another node
+     * @param amount the amount, in {@link Money minor units}
+     * @param createdAt when the transaction is recorded, in milliseconds since the epoch
+     * @return future sender balance after the debit, failed with an {@link IllegalStateException} if the amount is
+     * greater than the sender's balance or a {@link NoSuchElementException} if the sender does not exist
+     */
+    static Future<Long> debit(SQLConnection connection, UUID id, UUID from, UUID to, long amount, long createdAt) {
+        return update(connection, UPDATE_BALANCE, new JsonArray() //
+                .add(Money.toPlainString(-amount)).add(from.toString()).add(Money.toPlainString(-amount))) //
+                .compose(updated -> updated == 0 //
+                        ? balanceOf(connection, from).compose(balance -> Future.<Integer>failedFuture(new IllegalStateException(COULD_NOT_TRANSFER_MONEY))) //
+                        : update(connection, INSERT_TRANSACTION, paramsOf(id, from, to, amount).add(Instant.ofEpochMilli(createdAt)))) //
+                .compose(inserted -> update(connection, "INSERT INTO credit_outbox (id, \"from\", to, amount) VALUES(?, ?, ?, ?)",
+                        paramsOf(id, from, to, amount))) //
+                .compose(queued -> balanceOf(connection, from));
+    }
+
+    /**
+     * Credits the receiver of a transaction, unless this transaction was already recorded, without committing.
+     *
+     * @param connection database connection with an open transaction
+     * @param id the transaction id
+     * @param from id of the account that sent the amount, owned by another node
+     * @param to id of the account that is receiving the amount, owned by this node
+     * @param amount the amount, in {@link Money minor units}
+     * @param createdAt when the transaction is recorded, in milliseconds since the epoch
+     * @return future whether the receiver was credited, false if it already was; failed with a
+     * {@link NoSuchElementException} if the receiver does not exist
+     */
+    static Future<Boolean> credit(SQLConnection connection, UUID id, UUID from, UUID to, long amount, long createdAt) {
+        Future<Boolean> future = Future.future();
+        update(connection, INSERT_TRANSACTION, paramsOf(id, from, to, amount).add(Instant.ofEpochMilli(createdAt))).setHandler(inserted -> {
+            if (inserted.failed() && inserted.cause() instanceof SQLException
+                    && DUPLICATE_KEY.equals(((SQLException) inserted.cause()).getSQLState())) {
+                future.complete(false);
+            } else if (inserted.failed()) {
+                future.fail(inserted.cause());
+            } else {
+                update(connection, UPDATE_BALANCE, new JsonArray() //
+                        .add(Money.toPlainString(amount)).add(to.toString()).add(Money.toPlainString(amount))) //
+                        .compose(updated -> updated == 0 //
+                                ? Future.<Boolean>failedFuture(new NoSuchElementException("Account " + to + " not found")) //
+                                : Future.succeededFuture(true)) //
+                        .setHandler(future);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Finds the credits queued for longer than a given time.
+     *
+     * @param connection database connection, closed once done
+     * @param olderThanMillis how long the credits have been queued for, at least
+     * @param limit maximum number of credits
+     * @return future credits, oldest first, as {@code id}, {@code from}, {@code to} and {@code amount} in minor units
+     */
+    static Future<List<JsonObject>> pending(SQLConnection connection, long olderThanMillis, int limit) {
+        Future<List<JsonObject>> future = Future.future();
+        String sql = "SELECT id, \"from\", to, " + Money.UNITS_OF_AMOUNT + " AS amount FROM credit_outbox " //
+                + "WHERE created_at <= DATEADD('MILLISECOND', ?, CURRENT_TIMESTAMP) ORDER BY created_at LIMIT ?";
+        connection.queryWithParams(sql, new JsonArray().add(-olderThanMillis).add(limit), result -> {
+            connection.close();
+            future.handle(result.map(resultSet -> resultSet.getResults().stream() //
+                    .map(row -> new JsonObject() //
+                            .put("id", row.getString(0)) //
+                            .put("from", row.getString(1)) //
+                            .put("to", row.getString(2)) //
+                            .put("amount", row.getLong(3))) //
+                    .collect(Collectors.toList())));
+        });
+        return future;
+    }
+
+    /**
+     * Removes an acknowledged credit from the outbox.
+     *
+     * @param connection database connection, closed once done
+     * @param id the transaction id
+     * @return future empty result
+     */
+    static Future<Void> delivered(SQLConnection connection, UUID id) {
+        Future<Void> future = Future.future();
+        connection.updateWithParams("DELETE FROM credit_outbox WHERE id = ?", new JsonArray().add(id.toString()), result -> {
+            connection.close();
+            future.handle(result.mapEmpty());
+        });
+        return future;
+    }
+
+    /**
+     * Deletes the accounts which are owned by other nodes, copied in by the schema script.
+     *
+     * @param connection database connection
+     * @param ring the partition ring
+     * @param node id of this node
+     * @return future number of deleted accounts
+     */
+    static Future<Integer> prune(SQLConnection connection, PartitionRing ring, String node) {
+        Future<List<JsonArray>> others = Future.future();
+        connection.query("SELECT id FROM account", result -> others.handle(result.map(resultSet -> resultSet.getResults() //
+                .stream() //
+                .filter(row -> !ring.ownerOf(UUID.fromString(row.getString(0))).equals(node)) //
+                .collect(Collectors.toList()))));
+        return others.compose(ids -> {
+            if (ids.isEmpty()) {
+                return Future.succeededFuture(0);
+            }
+            Future<List<Integer>> deleted = Future.future();
+            connection.batchWithParams("DELETE FROM account WHERE id = ?", ids, deleted);
+            return deleted.map(List::size);
+        });
+    }
+
+    private static Future<Long> balanceOf(SQLConnection connection, UUID account) {
+        Future<Long> future = Future.future();
+        connection.queryWithParams("SELECT " + Account.COLUMNS + " FROM account WHERE id = ?",
+                new JsonArray().add(account.toString()), result -> {
+                    if (result.failed()) {
+                        future.fail(result.cause());
+                    } else if (result.result().getRows().isEmpty()) {
+                        future.fail(new NoSuchElementException("Account " + account + " not found"));
+                    } else {
+                        future.complete(new Account(result.result().getRows().get(0)).getBalanceUnits());
+                    }
+                });
+        return future;
+    }
+
+    private static Future<Integer> update(SQLConnection connection, String sql, JsonArray params) {
+        Future<Integer> future = Future.future();
+        connection.updateWithParams(sql, params, result -> future.handle(result.map(updated -> updated.getUpdated())));
+        return future;
+    }
+
+    private static JsonArray paramsOf(UUID id, UUID from, UUID to, long amount) {
+        return new JsonArray()
+                .add(id.toString())
+                .add(from.toString())
+                .add(to.toString())
+                .add(Money.toPlainString(amount));
+    }
+}
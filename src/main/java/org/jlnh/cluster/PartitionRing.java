@@ -0,0 +1,81 @@
+package org.jlnh.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Consistent hashing of the account space over the nodes of a cluster.
+ * <p>
+ * Every node is placed at {@code virtualNodes} points of a ring of 64-bit hashes, and an account belongs to the node
+ * of the first point at or after the hash of its id. Adding or removing a node only moves the accounts between its
+ * points and the previous ones, about {@code 1 / nodes} of them, and the virtual nodes spread every node over the
+ * whole ring so they all own about as many accounts. The hashes only depend on the node ids and account ids, so
+ * every node computes the same owners.
+ */
+public class PartitionRing {
+
+    private final List<String> nodes;
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    public PartitionRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("A partition ring needs at least one node and one virtual node per node");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        for (String node : nodes) {
+            for (int point = 0; point < virtualNodes; point++) {
+                String previous = ring.put(hash(node + "#" + point), node);
+                if (previous != null && !previous.equals(node)) {
+                    throw new IllegalArgumentException("Nodes " + previous + " and " + node + " collide on the ring");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the nodes, in the configured order
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Finds the node owning an account.
+     *
+     * @param account the account id
+     * @return the node id
+     */
+    public String ownerOf(UUID account) {
+        Map.Entry<Long, String> point = ring.ceilingEntry(mix(account.getMostSignificantBits() ^ mix(account.getLeastSignificantBits())));
+        return point != null ? point.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a string, mixed so that close strings land far apart on the ring.
+     */
+    private static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which spreads every input bit over the whole output.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        return value ^ value >>> 33;
+    }
+}
@@ -0,0 +1,274 @@
+package org.jlnh.ledger;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.jlnh.util.ActionHelper.translateReplyFailure;
+
+/**
+ * In-memory ledger engine: account balances are partitioned by account id across several
+ * {@link LedgerShardVerticle shards}, each one being the single writer of its partition.
+ * <p>
+ * A transfer between two shards is executed as a deterministic two-phase operation: the receiver is
+ * checked first, then the sender is debited (which is where insufficient funds are detected) and finally
+ * the receiver is credited. Should the credit still fail, the debited amount is credited back to the sender
+ * before the transfer fails. Committed transfers are handed to the {@link LedgerWriteBehindVerticle} which
+ * persists them to the database asynchronously.
+ */
+public class Ledger {
+
+    static final String SHARD = "shard";
+    static final String SHARDS = "shards";
+    static final String JDBC = "jdbc";
+
+    static final String ACTION = "action";
+    static final String GET = "get";
+    static final String DEBIT = "debit";
+    static final String CREDIT = "credit";
+    static final String TRANSFER = "transfer";
+    static final String PAGE = "page";
+
+    static final int UNKNOWN_ACTION = 400;
+
+    static final String WRITE_BEHIND_ADDRESS = "ledger.write-behind";
+
+    private static final Logger LOGGER = LogManager.getLogger(Ledger.class);
+
+    private final Vertx vertx;
+    private final int shards;
+
+    public Ledger(Vertx vertx, int shards) {
+        this.vertx = vertx;
+        this.shards = shards;
+    }
+
+    /**
+     * Deploys the ledger shards and the write-behind sink.
+     *
+     * @param vertx the vertx instance
+     * @param config the application configuration
+     * @return future with a {@link Ledger} client bound to the deployed shards
+     */
+    public static Future<Ledger> deploy(Vertx vertx, JsonObject config) {
+        JsonObject ledgerConfig = config.getJsonObject("LEDGER", new JsonObject());
+        int shards = shards(config);
+
+        List<Future> deployments = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            JsonObject shardConfig = new JsonObject() //
+                    .put(SHARD, shard) //
+                    .put(SHARDS, shards) //
+                    .put(JDBC, config);
+            deployments.add(deploy(vertx, LedgerShardVerticle.class.getName(), shardConfig));
+        }
+        deployments.add(deploy(vertx, LedgerWriteBehindVerticle.class.getName(), ledgerConfig.copy().put(JDBC, config)));
+
+        return CompositeFuture.all(deployments).map(v -> new Ledger(vertx, shards));
+    }
+
+    /**
+     * Number of shards of the ledger: {@code LEDGER.SHARDS}, or one per core if it is not set.
+     *
+     * @param config the application configuration
+     * @return the number of shards
+     */
+    public static int shards(JsonObject config) {
+        int shards = config.getJsonObject("LEDGER", new JsonObject()).getInteger("SHARDS", 0);
+        return shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Deploys a single ledger verticle.
+     *
+     * @param vertx the vertx instance
+     * @param verticle the verticle class name
+     * @param config the verticle configuration
+     * @return future with the deployment id
+     */
+    private static Future<String> deploy(Vertx vertx, String verticle, JsonObject config) {
+        Future<String> future = Future.future();
+        vertx.deployVerticle(verticle, new DeploymentOptions().setConfig(config), future);
+        return future;
+    }
+
+    /**
+     * Finds the shard owning a given account.
+     *
+     * @param account the account id
+     * @param shards the number of shards
+     * @return the shard index
+     */
+    static int shardOf(UUID account, int shards) {
+        long bits = account.getMostSignificantBits() ^ account.getLeastSignificantBits();
+        int hash = (int) (bits ^ (bits >>> 32));
+        return Math.floorMod(hash ^ (hash >>> 16), shards);
+    }
+
+    /**
+     * Event bus address of a given shard.
+     *
+     * @param shard the shard index
+     * @return the address
+     */
+    static String address(int shard) {
+        return "ledger.shard." + shard;
+    }
+
+    /**
+     * Finds a single account by it's {@link UUID id}.
+     *
+     * @param id the account id
+     * @return the account with its current balance
+     */
+    public Future<Account> findAccount(UUID id) {
+        return send(id, GET, new JsonObject()) //
+                .map(reply -> new Account(id, reply.getLong("balance")));
+    }
+
+    /**
+     * Finds a page of accounts ordered by id across all the shards: the page of every shard is fetched and they are
+     * merged, so the balances are the ones of the shards rather than the ones written behind to the database.
+     *
+     * @param after id of the last account of the previous page, null for the first page
+     * @param limit maximum number of accounts
+     * @return future accounts of the page
+     */
+    public Future<List<Account>> findAccounts(UUID after, int limit) {
+        List<Future> pages = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            pages.add(send(shard, PAGE, new JsonObject().put("after", after == null ? null : after.toString()).put("limit", limit)));
+        }
+        return CompositeFuture.all(pages).map(all -> {
+            List<Account> merged = new ArrayList<>();
+            for (int i = 0; i < all.size(); i++) {
+                JsonArray accounts = all.<JsonObject>resultAt(i).getJsonArray("accounts");
+                for (int j = 0; j < accounts.size(); j++) {
+                    JsonObject account = accounts.getJsonObject(j);
+                    merged.add(new Account(UUID.fromString(account.getString("id")), account.getLong("balance")));
+                }
+            }
+            merged.sort(Comparator.comparing(Account::getId));
+            return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+        });
+    }
+
+    /**
+     * Executes a transfer between two accounts.
+     *
+     * @param incoming the requested transaction
+     * @return future transaction which might be completed or refused
+     */
+    public Future<Transaction> transfer(Transaction incoming) {
+        UUID from = incoming.getFrom().getId();
+        UUID to = incoming.getTo().getId();
+        long amount = incoming.getAmountUnits();
+        UUID id = incoming.getId() != null ? incoming.getId() : UUID.randomUUID();
+        Transaction transaction = new Transaction(id, new Account(from, 0L), new Account(to, 0L), amount);
+
+        Future<Transaction> future;
+        if (shardOf(from, shards) == shardOf(to, shards)) {
+            future = send(from, TRANSFER, new JsonObject().put("to", to.toString()).put("amount", amount))
+                    .map(reply -> {
+                        transaction.getFrom().setBalanceUnits(reply.getLong("balance"));
+                        transaction.getTo().setBalanceUnits(reply.getLong("toBalance"));
+                        return transaction;
+                    });
+        } else {
+            future = send(to, GET, new JsonObject()) //
+                    .compose(receiver -> send(from, DEBIT, new JsonObject().put("amount", amount))) //
+                    .compose(sender -> {
+                        transaction.getFrom().setBalanceUnits(sender.getLong("balance"));
+                        return creditOrRefund(from, to, amount);
+                    }).map(receiver -> {
+                        transaction.getTo().setBalanceUnits(receiver.getLong("balance"));
+                        return transaction;
+                    });
+        }
+
+        return future.map(committed -> {
+            committed.setCreatedAtMillis(System.currentTimeMillis());
+            vertx.eventBus().send(WRITE_BEHIND_ADDRESS, new JsonObject() //
+                    .put("id", committed.getId().toString()) //
+                    .put("from", from.toString()) //
+                    .put("to", to.toString()) //
+                    .put("amount", amount) //
+                    .put("createdAt", committed.getCreatedAtMillis()));
+            return committed;
+        });
+    }
+
+    /**
+     * Credits the receiver of a transfer the sender was already debited for, crediting the sender back if the
+     * receiver could not be credited.
+     *
+     * @param from the debited sender
+     * @param to the receiver to credit
+     * @param amount the amount in minor units
+     * @return future with the reply of the receiver shard, or failed with the cause of the failed credit
+     */
+    private Future<JsonObject> creditOrRefund(UUID from, UUID to, long amount) {
+        Future<JsonObject> future = Future.future();
+        send(to, CREDIT, new JsonObject().put("amount", amount)).setHandler(credited -> {
+            if (credited.succeeded()) {
+                future.complete(credited.result());
+                return;
+            }
+            send(from, CREDIT, new JsonObject().put("amount", amount)).setHandler(refunded -> {
+                if (refunded.failed()) {
+                    LOGGER.error("Could not credit {} back to account {} after a failed credit of account {}", amount,
+                            from, to, refunded.cause());
+                }
+                future.fail(credited.cause());
+            });
+        });
+        return future;
+    }
+
+    /**
+     * Sends an operation to the shard owning the given account.
+     *
+     * @param account the account id
+     * @param action the ledger action
+     * @param body the operation payload
+     * @return future with the shard reply
+     */
+    private Future<JsonObject> send(UUID account, String action, JsonObject body) {
+        return send(shardOf(account, shards), action, body.put("account", account.toString()));
+    }
+
+    /**
+     * Sends an operation to a shard.
+     *
+     * @param shard the shard index
+     * @param action the ledger action
+     * @param body the operation payload
+     * @return future with the shard reply
+     */
+    private Future<JsonObject> send(int shard, String action, JsonObject body) {
+        Future<JsonObject> future = Future.future();
+        vertx.eventBus().<JsonObject>send(address(shard), body, //
+                new DeliveryOptions().addHeader(ACTION, action), //
+                reply -> {
+                    if (reply.succeeded()) {
+                        future.complete(reply.result().body());
+                    } else {
+                        future.fail(translateReplyFailure(reply.cause()));
+                    }
+                });
+        return future;
+    }
+}
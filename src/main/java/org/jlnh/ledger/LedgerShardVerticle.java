@@ -0,0 +1,184 @@
+package org.jlnh.ledger;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jlnh.model.Account;
+import org.jlnh.model.Money;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.jlnh.util.ActionHelper.INSUFFICIENT_FUNDS;
+import static org.jlnh.util.ActionHelper.INVALID_TRANSFER;
+import static org.jlnh.util.ActionHelper.UNKNOWN_ACCOUNT;
+
+/**
+ * Owns the balances of one partition of the account space.
+ * <p>
+ * Every shard is deployed as its own verticle instance, so all of its state is only ever touched by the
+ * event loop thread bound to its context: no locks are needed and two operations on the same account can
+ * never interleave.
+ */
+public class LedgerShardVerticle extends AbstractVerticle {
+
+    private static final Logger LOGGER = LogManager.getLogger(LedgerShardVerticle.class);
+
+    /**
+     * Balances in {@link Money minor units}, each one held in a single element array updated in place.
+     */
+    private final Map<UUID, long[]> balances = new HashMap<>();
+
+    /**
+     * Ids of the accounts, sorted to page them. Accounts are only loaded on start, so they never change.
+     */
+    private UUID[] ids;
+
+    private int shard;
+    private int shards;
+
+    @Override
+    public void start(Future<Void> startFuture) {
+        shard = config().getInteger(Ledger.SHARD);
+        shards = config().getInteger(Ledger.SHARDS);
+
+        loadAccounts(JDBCClient.createShared(vertx, config().getJsonObject(Ledger.JDBC), "test")).setHandler(loaded -> {
+            if (loaded.succeeded()) {
+                vertx.eventBus().localConsumer(Ledger.address(shard), this::handle);
+                LOGGER.info("Ledger shard {} owns {} accounts", shard, balances.size());
+            }
+            startFuture.handle(loaded);
+        });
+    }
+
+    /**
+     * Loads the balances of the accounts this shard owns from the database.
+     *
+     * @param jdbcClient the shared database client
+     * @return future completed once the balances are in memory
+     */
+    private Future<Void> loadAccounts(JDBCClient jdbcClient) {
+        Future<Void> future = Future.future();
+        jdbcClient.query("SELECT " + Account.COLUMNS + " FROM account", result -> {
+            if (result.failed()) {
+                future.fail(result.cause());
+                return;
+            }
+            result.result().getRows().stream() //
+                    .map(Account::new) //
+                    .filter(account -> Ledger.shardOf(account.getId(), shards) == shard) //
+                    .forEach(account -> balances.put(account.getId(), new long[]{account.getBalanceUnits()}));
+            ids = balances.keySet().toArray(new UUID[0]);
+            Arrays.sort(ids);
+            future.complete();
+        });
+        return future;
+    }
+
+    /**
+     * Dispatches an incoming ledger operation.
+     *
+     * @param message the operation, its action is carried in the {@link Ledger#ACTION} header
+     */
+    private void handle(Message<JsonObject> message) {
+        JsonObject body = message.body();
+        String action = message.headers().get(Ledger.ACTION);
+        if (Ledger.PAGE.equals(action)) {
+            page(message);
+            return;
+        }
+        UUID account = UUID.fromString(body.getString("account"));
+
+        long[] balance = balances.get(account);
+        if (balance == null) {
+            message.fail(UNKNOWN_ACCOUNT, "Account " + account + " not found");
+            return;
+        }
+
+        switch (action) {
+            case Ledger.GET:
+                break;
+            case Ledger.TRANSFER:
+                transferWithinShard(message, account, balance);
+                return;
+            case Ledger.DEBIT:
+                long debit = body.getLong("amount");
+                if (debit <= 0) {
+                    message.fail(INVALID_TRANSFER, "The amount of a transfer must be positive");
+                    return;
+                }
+                if (balance[0] < debit) {
+                    message.fail(INSUFFICIENT_FUNDS, "Account " + account + " does not have enough money");
+                    return;
+                }
+                balance[0] = Money.subtract(balance[0], debit);
+                break;
+            case Ledger.CREDIT:
+                try {
+                    balance[0] = Money.add(balance[0], body.getLong("amount"));
+                } catch (ArithmeticException e) {
+                    message.fail(INVALID_TRANSFER, "Account " + account + " cannot hold that much money");
+                    return;
+                }
+                break;
+            default:
+                message.fail(Ledger.UNKNOWN_ACTION, "Unknown ledger action " + action);
+                return;
+        }
+        message.reply(new JsonObject().put("balance", balance[0]));
+    }
+
+    /**
+     * Replies with the accounts of this shard following a given id, in id order.
+     *
+     * @param message the page operation, with the id to start {@code after}, if any, and the {@code limit}
+     */
+    private void page(Message<JsonObject> message) {
+        String after = message.body().getString("after");
+        int limit = message.body().getInteger("limit");
+        int first = 0;
+        if (after != null) {
+            int found = Arrays.binarySearch(ids, UUID.fromString(after));
+            first = found >= 0 ? found + 1 : -found - 1;
+        }
+        JsonArray accounts = new JsonArray();
+        for (int i = first; i < ids.length && accounts.size() < limit; i++) {
+            accounts.add(new JsonObject().put("id", ids[i].toString()).put("balance", balances.get(ids[i])[0]));
+        }
+        message.reply(new JsonObject().put("accounts", accounts));
+    }
+
+    /**
+     * Moves money between two accounts both owned by this shard in a single step.
+     *
+     * @param message the transfer operation
+     * @param sender the sender account
+     * @param senderBalance the balance cell of the sender
+     */
+    private void transferWithinShard(Message<JsonObject> message, UUID sender, long[] senderBalance) {
+        UUID receiver = UUID.fromString(message.body().getString("to"));
+        long amount = message.body().getLong("amount");
+
+        long[] receiverBalance = balances.get(receiver);
+        if (amount <= 0) {
+            message.fail(INVALID_TRANSFER, "The amount of a transfer must be positive");
+        } else if (receiverBalance == null) {
+            message.fail(UNKNOWN_ACCOUNT, "Account " + receiver + " not found");
+        } else if (senderBalance[0] < amount) {
+            message.fail(INSUFFICIENT_FUNDS, "Account " + sender + " does not have enough money");
+        } else {
+            senderBalance[0] = Money.subtract(senderBalance[0], amount);
+            receiverBalance[0] = Money.add(receiverBalance[0], amount);
+            message.reply(new JsonObject() //
+                    .put("balance", senderBalance[0]) //
+                    .put("toBalance", receiverBalance[0]));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.jlnh.ledger;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jlnh.metrics.Metrics;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.jlnh.persistence.TransferBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Persists the transfers committed by the {@link Ledger} to the database.
+ * <p>
+ * Transfers are buffered and flushed periodically (or as soon as a batch is full) as a single
+ * {@link TransferBatch}. A batch that fails is retried alone on the next flushes; once it failed
+ * {@code WRITE_BEHIND_MAX_RETRIES} times in a row it is parked: its transfers are logged one by one, so they
+ * can be replayed by hand, and counted in {@link Metrics#getTransfersParked()}, and the transfers behind it
+ * are written again.
+ */
+public class LedgerWriteBehindVerticle extends AbstractVerticle {
+
+    private static final Logger LOGGER = LogManager.getLogger(LedgerWriteBehindVerticle.class);
+
+    private JDBCClient jdbcClient;
+    private Metrics metrics;
+    private List<JsonObject> pending = new ArrayList<>();
+    private List<JsonObject> failed;
+    private int failures;
+    private Future<Void> flushing = Future.succeededFuture();
+    private int batchSize;
+    private int maxRetries;
+
+    @Override
+    public void start() {
+        jdbcClient = JDBCClient.createShared(vertx, config().getJsonObject(Ledger.JDBC), "test");
+        metrics = Metrics.shared(vertx);
+        batchSize = config().getInteger("WRITE_BEHIND_BATCH_SIZE", 1000);
+        maxRetries = config().getInteger("WRITE_BEHIND_MAX_RETRIES", 20);
+
+        vertx.eventBus().<JsonObject>localConsumer(Ledger.WRITE_BEHIND_ADDRESS, message -> {
+            pending.add(message.body());
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        });
+        vertx.setPeriodic(config().getLong("WRITE_BEHIND_INTERVAL_MS", 50L), timer -> flush());
+    }
+
+    @Override
+    public void stop(Future<Void> stopFuture) {
+        // a first flush may only write the batch that failed last, a second one writes the pending transfers
+        flushing.setHandler(previous -> {
+            flush();
+            flushing.setHandler(retried -> {
+                flush();
+                flushing.setHandler(stopFuture);
+            });
+        });
+    }
+
+    /**
+     * Writes the batch that failed last, or else the pending transfers, if there is no other flush in progress.
+     */
+    private void flush() {
+        if (!flushing.isComplete() || (failed == null && pending.isEmpty())) {
+            return;
+        }
+        flushing = Future.future();
+        List<JsonObject> batch;
+        if (failed != null) {
+            batch = failed;
+            failed = null;
+        } else {
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+
+        List<Transaction> transactions = batch.stream() //
+                .map(transfer -> {
+                    Transaction transaction = new Transaction( //
+                            UUID.fromString(transfer.getString("id")), //
+                            new Account(UUID.fromString(transfer.getString("from")), 0L), //
+                            new Account(UUID.fromString(transfer.getString("to")), 0L), //
+                            transfer.getLong("amount"));
+                    transaction.setCreatedAtMillis(transfer.getLong("createdAt"));
+                    return transaction;
+                }) //
+                .collect(Collectors.toList());
+
+        TransferBatch.begin(jdbcClient) //
+                .compose(connection -> TransferBatch.end(connection, TransferBatch.write(connection, transactions))) //
+                .setHandler(written -> {
+                    if (written.failed()) {
+                        retry(batch, written.cause());
+                    } else {
+                        failures = 0;
+                        flushing.complete();
+                    }
+                });
+    }
+
+    /**
+     * Keeps the transfers of a failed flush to be written again ahead of the ones received meanwhile, or parks them
+     * once they failed too many times.
+     *
+     * @param batch the transfers of the failed flush
+     * @param cause the failure
+     */
+    private void retry(List<JsonObject> batch, Throwable cause) {
+        if (++failures <= maxRetries) {
+            LOGGER.error("Could not persist {} ledger transfers, retrying", batch.size(), cause);
+            failed = batch;
+        } else {
+            LOGGER.error("Could not persist {} ledger transfers after {} attempts, parking them", batch.size(), failures, cause);
+            batch.forEach(transfer -> LOGGER.error("Parked ledger transfer {}", transfer.encode()));
+            metrics.getTransfersParked().add(batch.size());
+            failures = 0;
+        }
+        flushing.complete();
+    }
+}
@@ -0,0 +1,388 @@
+package org.jlnh.load;
+
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jlnh.MoneyTransferLauncher;
+import org.jlnh.metrics.LatencyHistogram;
+import org.jlnh.model.Account;
+import org.jlnh.model.Money;
+import org.jlnh.model.Transaction;
+import org.jlnh.persistence.AccountSeed;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open-loop load generator: sends the requests of a {@link Workload} at a fixed {@code RATE} for {@code WARMUP_S}
+ * then {@code DURATION_S} seconds, to a {@link MoneyTransferLauncher} it deploys in process on {@code PORT} with
+ * {@code ACCOUNTS} {@link AccountSeed seeded accounts} of {@code BALANCE} (its configuration being {@code SERVER}),
+ * or, unless {@code DEPLOY}, to a server already listening on {@code HOST} and {@code PORT} with the same seed.
+ * <p>
+ * Request {@code i} is due {@code i / RATE} seconds after the start whether the previous ones were answered or not,
+ * and is sent as soon as one of the {@code CONNECTIONS} is free. Latencies are measured from when each request was
+ * due, so the time spent waiting behind a slow server is not omitted (corrected), and from when it was sent
+ * (uncorrected), as {@code wrk2} does. The sum of the balances of every account is read before and after the load:
+ * transfers must neither create nor destroy money, nor leave a negative balance.
+ */
+public class LoadGenerator {
+
+    private static final Logger LOGGER = LogManager.getLogger(LoadGenerator.class);
+
+    private static final String CONFIG_FILE = "conf/load.json";
+    private static final int PAGE_SIZE = 1000;
+
+    private static final String[] TYPES = {"read", "transfer"};
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p99.9", "max"};
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999, 1.0};
+
+    private final JsonObject config;
+    private final Workload workload;
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int accounts;
+    private final int rate;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+
+    private final LatencyHistogram[] corrected = {new LatencyHistogram(), new LatencyHistogram()};
+    private final LatencyHistogram[] uncorrected = {new LatencyHistogram(), new LatencyHistogram()};
+    private final Map<String, Long> outcomes = new TreeMap<>();
+
+    private Vertx vertx;
+    private HttpClient client;
+    private long total;
+    private long dispatched;
+    private long completed;
+    private int inFlight;
+
+    public LoadGenerator(JsonObject config) {
+        this.config = config;
+        this.workload = new Workload(config);
+        this.host = config.getString("HOST", "localhost");
+        this.port = config.getInteger("PORT", 8080);
+        this.connections = config.getInteger("CONNECTIONS", 64);
+        this.accounts = config.getInteger("ACCOUNTS", Workload.DEFAULT_ACCOUNTS);
+        this.rate = config.getInteger("RATE", 500);
+        this.warmupSeconds = config.getInteger("WARMUP_S", 0);
+        this.durationSeconds = config.getInteger("DURATION_S", 30);
+    }
+
+    /**
+     * Runs the load generator with {@code conf/load.json}, overridden by the configuration file given as argument,
+     * and prints its report. Exits with 1 if the balances were not conserved.
+     *
+     * @param args optional path of a configuration file
+     * @throws Exception if the load could not be generated
+     */
+    public static void main(String[] args) throws Exception {
+        JsonObject config = read(Paths.get(CONFIG_FILE));
+        if (args.length > 0) {
+            config.mergeIn(read(Paths.get(args[0])), true);
+        }
+        JsonObject report = new LoadGenerator(config).run();
+        System.out.println(render(report));
+        System.exit(report.getJsonObject("balance").getBoolean("conserved") ? 0 : 1);
+    }
+
+    /**
+     * Deploys the server if needed, checks the balances, generates the load, checks the balances again and stops the
+     * server. Blocks until done.
+     *
+     * @return the report, with the workload, the outcome of the requests, their latency and the balance check
+     * @throws Exception if the server could not be deployed or the balances could not be read
+     */
+    public JsonObject run() throws Exception {
+        Vertx server = config.getBoolean("DEPLOY", true) ? deploy() : null;
+        vertx = Vertx.vertx();
+        try {
+            Context context = vertx.getOrCreateContext();
+            CompletableFuture<JsonObject> done = new CompletableFuture<>();
+            context.runOnContext(v -> {
+                client = vertx.createHttpClient(new HttpClientOptions() //
+                        .setDefaultHost(host) //
+                        .setDefaultPort(port) //
+                        .setKeepAlive(true) //
+                        .setMaxPoolSize(connections));
+                checkSeed().compose(v2 -> sumBalances()).compose(before -> {
+                    LOGGER.info("Sending {} requests per second for {} s after {} s of warm-up", rate, durationSeconds,
+                            warmupSeconds);
+                    return generate().compose(v2 -> sumBalances()).map(after -> report(before, after));
+                }).setHandler(report -> {
+                    if (report.succeeded()) {
+                        done.complete(report.result());
+                    } else {
+                        done.completeExceptionally(report.cause());
+                    }
+                });
+            });
+            return done.get();
+        } finally {
+            close(vertx);
+            if (server != null) {
+                close(server);
+            }
+        }
+    }
+
+    /**
+     * Deploys the server in a vertx instance of its own, so it does not share event loops with the load generator.
+     */
+    private Vertx deploy() throws Exception {
+        JsonObject serverConfig = config.getJsonObject("SERVER", new JsonObject()).copy() //
+                .put("HTTP_PORT", port) //
+                .put("SEED", new JsonObject() //
+                        .put("ACCOUNTS", accounts) //
+                        .put("BALANCE", config.getValue("BALANCE", 1000)));
+        Vertx server = Vertx.vertx();
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        server.deployVerticle(MoneyTransferLauncher.class.getName(), new DeploymentOptions().setConfig(serverConfig), ar -> {
+            if (ar.succeeded()) {
+                deployed.complete(ar.result());
+            } else {
+                deployed.completeExceptionally(ar.cause());
+            }
+        });
+        try {
+            deployed.get();
+        } catch (Exception e) {
+            close(server);
+            throw e;
+        }
+        return server;
+    }
+
+    /**
+     * Checks that the last seeded account exists.
+     */
+    private Future<Void> checkSeed() {
+        Future<Void> future = Future.future();
+        String id = AccountSeed.id(accounts - 1L).toString();
+        onResponse(client.get("/api/accounts/" + id), response -> response.bodyHandler(body -> {
+            if (response.statusCode() == 200) {
+                future.complete();
+            } else {
+                future.fail(new IllegalStateException("The " + accounts + " seeded accounts were not found: the "
+                        + "server must be started with at least as many SEED.ACCOUNTS"));
+            }
+        })).exceptionHandler(future::tryFail).end();
+        return future;
+    }
+
+    /**
+     * Sums the balances of every account, page after page.
+     *
+     * @return future sum in minor units, and the number of accounts with a negative balance
+     */
+    private Future<long[]> sumBalances() {
+        Future<long[]> future = Future.future();
+        sumPage(null, new long[2], future);
+        return future;
+    }
+
+    private void sumPage(String after, long[] sum, Future<long[]> future) {
+        String uri = "/api/accounts?limit=" + PAGE_SIZE + (after == null ? "" : "&after=" + after);
+        onResponse(client.get(uri), response -> response.bodyHandler(body -> {
+            if (response.statusCode() != 200) {
+                future.fail(new IllegalStateException("Could not list the accounts: " + response.statusCode()));
+                return;
+            }
+            Account[] page = Json.decodeValue(body, Account[].class);
+            for (Account account : page) {
+                long balance = Money.fromBigDecimal(account.getBalance());
+                sum[0] += balance;
+                sum[1] += balance < 0 ? 1 : 0;
+            }
+            if (page.length < PAGE_SIZE) {
+                future.complete(sum);
+            } else {
+                sumPage(page[page.length - 1].getId().toString(), sum, future);
+            }
+        })).exceptionHandler(future::tryFail).end();
+    }
+
+    /**
+     * Sends every request of the workload, as soon as it is due and a connection is free.
+     *
+     * @return Future completed once every request was answered or failed
+     */
+    private Future<Void> generate() {
+        Future<Void> future = Future.future();
+        long warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+        total = (long) rate * (warmupSeconds + durationSeconds);
+        long start = System.nanoTime();
+        vertx.setPeriodic(1, timer -> {
+            long due = Math.min(total, (System.nanoTime() - start) * rate / TimeUnit.SECONDS.toNanos(1) + 1);
+            while (dispatched < due && inFlight < connections) {
+                long intended = start + dispatched * TimeUnit.SECONDS.toNanos(1) / rate;
+                dispatched++;
+                send(intended, intended - start >= warmupNanos);
+            }
+            if (completed == total) {
+                vertx.cancelTimer(timer);
+                future.complete();
+            }
+        });
+        return future;
+    }
+
+    private void send(long intended, boolean measured) {
+        inFlight++;
+        long sent = System.nanoTime();
+        int type;
+        HttpClientRequest request;
+        String body = null;
+        if (workload.nextIsRead()) {
+            type = 0;
+            request = client.get("/api/accounts/" + AccountSeed.id(workload.nextAccount()));
+        } else {
+            type = 1;
+            int from = workload.nextAccount();
+            int to = workload.nextAccountBut(from);
+            body = Json.encode(new Transaction(null, new Account(AccountSeed.id(from), 0L), new Account(AccountSeed.id(to), 0L),
+                    Money.toBigDecimal(workload.nextAmountUnits())));
+            request = client.post("/api/transfer").putHeader("Content-Type", "application/json");
+        }
+        onResponse(request.setTimeout(config.getLong("TIMEOUT_MS", 5000L)), response -> response.bodyHandler(ignored -> {
+            long now = System.nanoTime();
+            if (measured) {
+                corrected[type].record(now - intended);
+                uncorrected[type].record(now - sent);
+            }
+            done(measured, TYPES[type] + " " + response.statusCode());
+        })).exceptionHandler(failure -> done(measured, TYPES[type] + " " + failure.getClass().getSimpleName()));
+        if (body == null) {
+            request.end();
+        } else {
+            request.end(Buffer.buffer(body));
+        }
+    }
+
+    /**
+     * Sets the handler of the response of a request. Vert.x 3.7 deprecates every way of passing it to the request
+     * itself, so it is set through the request seen as the stream of its responses.
+     *
+     * @param request the request
+     * @param handler the response handler
+     * @return the request
+     */
+    private static HttpClientRequest onResponse(HttpClientRequest request, Handler<HttpClientResponse> handler) {
+        ReadStream<HttpClientResponse> responses = request;
+        responses.handler(handler);
+        return request;
+    }
+
+    private void done(boolean measured, String outcome) {
+        inFlight--;
+        completed++;
+        if (measured) {
+            outcomes.merge(outcome, 1L, Long::sum);
+        }
+    }
+
+    private JsonObject report(long[] before, long[] after) {
+        JsonObject latency = new JsonObject();
+        for (int type = 0; type < TYPES.length; type++) {
+            latency.put(TYPES[type], new JsonObject() //
+                    .put("corrected", quantiles(corrected[type])) //
+                    .put("uncorrected", quantiles(uncorrected[type])));
+        }
+        long measured = outcomes.values().stream().mapToLong(Long::longValue).sum();
+        return new JsonObject() //
+                .put("workload", new JsonObject() //
+                        .put("accounts", accounts) //
+                        .put("distribution", config.getString("DISTRIBUTION", "uniform")) //
+                        .put("zipfExponent", config.getDouble("ZIPF_EXPONENT", 0.99)) //
+                        .put("readRatio", config.getDouble("READ_RATIO", 0.5)) //
+                        .put("rate", rate) //
+                        .put("warmupSeconds", warmupSeconds) //
+                        .put("durationSeconds", durationSeconds)) //
+                .put("requests", total) //
+                .put("throughput", (double) measured / durationSeconds) //
+                .put("outcomes", new JsonObject(new TreeMap<String, Object>(outcomes))) //
+                .put("latency", latency) //
+                .put("balance", new JsonObject() //
+                        .put("before", Money.toPlainString(before[0])) //
+                        .put("after", Money.toPlainString(after[0])) //
+                        .put("negativeAccounts", after[1]) //
+                        .put("conserved", before[0] == after[0] && after[1] == 0));
+    }
+
+    private static JsonObject quantiles(LatencyHistogram histogram) {
+        JsonObject quantiles = new JsonObject().put("count", histogram.getCount());
+        for (int i = 0; i < QUANTILES.length; i++) {
+            quantiles.put(QUANTILE_NAMES[i], histogram.quantile(QUANTILES[i], TimeUnit.MILLISECONDS));
+        }
+        return quantiles;
+    }
+
+    /**
+     * Renders a report as text.
+     *
+     * @param report the report returned by {@link #run()}
+     * @return the text, latencies in milliseconds
+     */
+    static String render(JsonObject report) {
+        JsonObject workload = report.getJsonObject("workload");
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%d accounts, %s, %.0f%% reads, %d requests/s for %d s after %d s of warm-up%n",
+                workload.getInteger("accounts"), "zipf".equals(workload.getString("distribution")) //
+                        ? "zipf " + workload.getDouble("zipfExponent") : workload.getString("distribution"),
+                workload.getDouble("readRatio") * 100, workload.getInteger("rate"), workload.getInteger("durationSeconds"),
+                workload.getInteger("warmupSeconds")));
+        out.append(String.format("%.1f responses/s%n", report.getDouble("throughput")));
+        report.getJsonObject("outcomes").forEach(outcome -> out.append(String.format("  %-30s %d%n", outcome.getKey(), outcome.getValue())));
+        out.append(String.format("%-24s", "latency (ms)"));
+        for (String name : QUANTILE_NAMES) {
+            out.append(String.format("%10s", name));
+        }
+        out.append(String.format("%n"));
+        for (String type : TYPES) {
+            for (String measure : new String[]{"corrected", "uncorrected"}) {
+                JsonObject quantiles = report.getJsonObject("latency").getJsonObject(type).getJsonObject(measure);
+                out.append(String.format("%-24s", type + " " + measure));
+                for (String name : QUANTILE_NAMES) {
+                    out.append(String.format("%10.2f", quantiles.getDouble(name)));
+                }
+                out.append(String.format("%n"));
+            }
+        }
+        JsonObject balance = report.getJsonObject("balance");
+        out.append(String.format("Total balance %s before, %s after, %d negative: %s%n", balance.getString("before"),
+                balance.getString("after"), balance.getLong("negativeAccounts"),
+                balance.getBoolean("conserved") ? "conserved" : "NOT CONSERVED"));
+        return out.toString();
+    }
+
+    private static JsonObject read(Path file) throws IOException {
+        return Files.exists(file) //
+                ? new JsonObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)) //
+                : new JsonObject();
+    }
+
+    private static void close(Vertx vertx) throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(ar -> closed.complete(null));
+        closed.get();
+    }
+}
@@ -0,0 +1,98 @@
+package org.jlnh.load;
+
+import io.vertx.core.json.JsonObject;
+import org.jlnh.model.Money;
+import org.jlnh.persistence.AccountSeed;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic sequence of requests against the {@link AccountSeed seeded accounts}: a fraction
+ * {@code READ_RATIO} of account reads, the rest transfers of up to {@code MAX_AMOUNT} between two distinct accounts.
+ * <p>
+ * Accounts are picked uniformly or, with the {@code zipf} {@code DISTRIBUTION}, with a probability proportional to
+ * {@code 1 / (rank + 1)^ZIPF_EXPONENT}, the account 0 being the hottest: a few accounts take most of the transfers,
+ * which is where transfers contend for the same rows. The same {@code RANDOM_SEED} always yields the same sequence,
+ * so engines are compared on identical workloads.
+ */
+public class Workload {
+
+    static final int DEFAULT_ACCOUNTS = 10000;
+
+    private final int accounts;
+    private final double readRatio;
+    private final long maxAmountUnits;
+    private final double[] cumulativeWeights;
+    private final SplittableRandom random;
+
+    public Workload(JsonObject config) {
+        this.accounts = config.getInteger("ACCOUNTS", DEFAULT_ACCOUNTS);
+        if (accounts < 2) {
+            throw new IllegalArgumentException("A workload needs at least two accounts");
+        }
+        this.readRatio = config.getDouble("READ_RATIO", 0.5);
+        this.maxAmountUnits = Money.fromBigDecimal(new BigDecimal(String.valueOf(config.getValue("MAX_AMOUNT", 10))));
+        this.cumulativeWeights = "zipf".equals(config.getString("DISTRIBUTION", "uniform")) //
+                ? zipf(accounts, config.getDouble("ZIPF_EXPONENT", 0.99)) //
+                : null;
+        this.random = new SplittableRandom(config.getLong("RANDOM_SEED", 42L));
+    }
+
+    /**
+     * Whether the next request is an account read.
+     *
+     * @return true for a read, false for a transfer
+     */
+    public boolean nextIsRead() {
+        return random.nextDouble() < readRatio;
+    }
+
+    /**
+     * Picks an account.
+     *
+     * @return the index of the account
+     */
+    public int nextAccount() {
+        if (cumulativeWeights == null) {
+            return random.nextInt(accounts);
+        }
+        double point = random.nextDouble() * cumulativeWeights[accounts - 1];
+        int index = Arrays.binarySearch(cumulativeWeights, point);
+        return Math.min(index < 0 ? -index - 1 : index, accounts - 1);
+    }
+
+    /**
+     * Picks an account other than a given one.
+     *
+     * @param other the index of the account to avoid
+     * @return the index of the account
+     */
+    public int nextAccountBut(int other) {
+        int account = nextAccount();
+        while (account == other) {
+            account = nextAccount();
+        }
+        return account;
+    }
+
+    /**
+     * Picks the amount of a transfer.
+     *
+     * @return the amount in minor units, at least one
+     */
+    public long nextAmountUnits() {
+        return 1L + random.nextLong(maxAmountUnits);
+    }
+
+    private static double[] zipf(int accounts, double exponent) {
+        double[] cumulative = new double[accounts];
+        double sum = 0;
+        for (int rank = 0; rank < accounts; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        return cumulative;
+    }
+}
@@ -0,0 +1,123 @@
+package org.jlnh.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with HDR-style log-linear buckets: every power of two of nanoseconds is split into
+ * {@link #SUB_BUCKETS} linear buckets, which bounds the relative error of a recorded value to about 3%
+ * from one nanosecond up to {@link #MAX_VALUE_NANOS about a minute}.
+ * <p>
+ * Recording only increments preallocated counters, so it does not allocate and can be done concurrently from any
+ * thread; reading takes a consistent enough snapshot for monitoring purposes.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 36;
+
+    static final long MAX_VALUE_NANOS = (1L << MAX_VALUE_BITS) - 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(bucketOf(MAX_VALUE_NANOS) + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds, values above {@link #MAX_VALUE_NANOS} being clamped
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0L), MAX_VALUE_NANOS);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sumNanos.add(value);
+    }
+
+    /**
+     * Records the time elapsed since a given {@link System#nanoTime()}.
+     *
+     * @param startNanos the start time
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * Estimates a quantile of the recorded latencies.
+     *
+     * @param quantile the quantile, between 0 and 1
+     * @return the upper bound of the bucket holding the quantile, in nanoseconds, or 0 if nothing was recorded
+     */
+    public long quantileNanos(double quantile) {
+        long[] snapshot = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return MAX_VALUE_NANOS;
+    }
+
+    /**
+     * Estimates a quantile of the recorded latencies.
+     *
+     * @param quantile the quantile, between 0 and 1
+     * @param unit the unit of the result
+     * @return the quantile in the given unit, as a fraction
+     */
+    public double quantile(double quantile, TimeUnit unit) {
+        return (double) quantileNanos(quantile) / unit.toNanos(1);
+    }
+
+    /**
+     * Index of the bucket of a value: values below {@code 2 * SUB_BUCKETS} have a bucket each, above that every
+     * power of two is split in {@code SUB_BUCKETS} buckets.
+     *
+     * @param value the value
+     * @return the bucket index
+     */
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * Highest value falling in a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the upper bound of the bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket - (long) shift * SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
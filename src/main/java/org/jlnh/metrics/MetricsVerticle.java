@@ -0,0 +1,203 @@
+package org.jlnh.metrics;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jlnh.admission.AdmissionControl;
+import org.jlnh.admission.ConcurrencyLimiter;
+import org.jlnh.async.TransferQueue;
+import org.jlnh.cache.AccountCache;
+import org.jlnh.cache.IdempotencyStore;
+import org.jlnh.cache.TransactionHistoryCache;
+import org.jlnh.persistence.GroupCommit;
+import org.jlnh.persistence.OffHeapAccountTable;
+import org.jlnh.persistence.TransactionJournal;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves the {@link Metrics} in the Prometheus text format on {@code GET /metrics}, on the {@code METRICS.PORT}
+ * port so it is kept apart from the API.
+ * <p>
+ * Besides the hot path metrics, every scrape reads the state of the JDBC connection pools from their JMX beans, the
+ * admission control limiters, the account cache, history cache, idempotency store and transfer queue counters, the
+ * fill of the off-heap account table and of the transaction journal when they are used and, with the
+ * {@code group-commit} engine, the batching metrics of the writer.
+ */
+public class MetricsVerticle extends AbstractVerticle {
+
+    private static final Logger LOGGER = LogManager.getLogger(MetricsVerticle.class);
+
+    private static final String TEXT_FORMAT = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String POOLS = "com.mchange.v2.c3p0:type=PooledDataSource,*";
+
+    private Metrics metrics;
+    private AdmissionControl admission;
+    private AccountCache accountCache;
+    private TransactionHistoryCache historyCache;
+    private IdempotencyStore idempotencyStore;
+    private TransferQueue transferQueue;
+    private GroupCommit groupCommit;
+    private OffHeapAccountTable accountTable;
+    private TransactionJournal journal;
+
+    @Override
+    public void start(Future<Void> startFuture) {
+        metrics = Metrics.shared(vertx);
+        admission = AdmissionControl.shared(vertx, config().getJsonObject("ADMISSION", new JsonObject()), metrics);
+        JsonObject cacheConfig = config().getJsonObject("ACCOUNT_CACHE", new JsonObject());
+        if (cacheConfig.getInteger("MAX_SIZE", 0) > 0) {
+            accountCache = AccountCache.shared(vertx, cacheConfig);
+        }
+        JsonObject historyConfig = config().getJsonObject("HISTORY_CACHE", new JsonObject());
+        if (historyConfig.getInteger("MAX_ACCOUNTS", 0) > 0 && !TransactionJournal.selected(config())) {
+            historyCache = TransactionHistoryCache.shared(vertx, historyConfig);
+        }
+        JsonObject idempotencyConfig = config().getJsonObject("IDEMPOTENCY", new JsonObject());
+        if (idempotencyConfig.getInteger("MAX_ENTRIES", 0) > 0) {
+            idempotencyStore = IdempotencyStore.shared(vertx, idempotencyConfig);
+        }
+        if (TransferQueue.selected(config())) {
+            transferQueue = TransferQueue.shared(vertx, config().getJsonObject("ASYNC"));
+        }
+        if (OffHeapAccountTable.selected(config())) {
+            accountTable = OffHeapAccountTable.shared(vertx, config().getJsonObject("STORAGE"));
+        }
+        if (TransactionJournal.selected(config())) {
+            journal = TransactionJournal.shared(vertx, config().getJsonObject("JOURNAL"));
+        }
+        if ("group-commit".equals(config().getString("TRANSFER_ENGINE"))) {
+            groupCommit = new GroupCommit(vertx);
+        }
+
+        int port = config().getJsonObject("METRICS", new JsonObject()).getInteger("PORT", 9091);
+        vertx.createHttpServer() //
+                .requestHandler(this::scrape) //
+                .listen(port, res -> startFuture.handle(res.mapEmpty()));
+    }
+
+    /**
+     * Answers a scrape request.
+     *
+     * @param request the request
+     */
+    private void scrape(HttpServerRequest request) {
+        if (!"/metrics".equals(request.path())) {
+            request.response().setStatusCode(404).end();
+            return;
+        }
+        StringBuilder out = new StringBuilder(8192);
+        metrics.writeTo(out);
+        writePools(out);
+        writeAdmission(out);
+        if (accountCache != null) {
+            JsonObject stats = accountCache.stats();
+            Metrics.writeGauge(out, "account_cache_size", "Accounts in the cache", stats.getInteger("size"));
+            Metrics.writeGauge(out, "account_cache_hits", "Account reads answered by the cache", stats.getLong("hits"));
+            Metrics.writeGauge(out, "account_cache_misses", "Account reads missing the cache", stats.getLong("misses"));
+            Metrics.writeGauge(out, "account_cache_evictions", "Accounts evicted from the cache", stats.getLong("evictions"));
+        }
+        if (historyCache != null) {
+            JsonObject stats = historyCache.stats();
+            Metrics.writeGauge(out, "history_cache_size", "Account histories in the cache", stats.getInteger("size"));
+            Metrics.writeGauge(out, "history_cache_hits", "History pages answered by the cache", stats.getLong("hits"));
+            Metrics.writeGauge(out, "history_cache_misses", "History pages missing the cache", stats.getLong("misses"));
+            Metrics.writeGauge(out, "history_cache_evictions", "Account histories evicted from the cache", stats.getLong("evictions"));
+        }
+        if (idempotencyStore != null) {
+            JsonObject stats = idempotencyStore.stats();
+            Metrics.writeGauge(out, "idempotency_store_size", "Idempotency keys in memory", stats.getInteger("size"));
+            Metrics.writeGauge(out, "idempotency_store_bytes", "Estimated memory used by the idempotency keys", stats.getLong("bytes"));
+            Metrics.writeGauge(out, "idempotency_store_max_bytes", "Memory cap of the idempotency keys", stats.getLong("maxBytes"));
+            Metrics.writeGauge(out, "idempotency_store_replays", "Transfers replayed from the idempotency keys", stats.getLong("replays"));
+            Metrics.writeGauge(out, "idempotency_store_evictions", "Idempotency keys evicted from memory", stats.getLong("evictions"));
+        }
+        if (transferQueue != null) {
+            JsonObject stats = transferQueue.stats();
+            Metrics.writeGauge(out, "transfer_queue_pending", "Asynchronous transfers waiting or executing", stats.getInteger("pending"));
+            Metrics.writeGauge(out, "transfer_queue_statuses", "Statuses of asynchronous transfers in memory", stats.getInteger("statuses"));
+            Metrics.writeGauge(out, "transfer_queue_submitted", "Asynchronous transfers accepted", stats.getLong("submitted"));
+            Metrics.writeGauge(out, "transfer_queue_refused", "Asynchronous transfers refused as the queue was full", stats.getLong("refused"));
+        }
+        if (accountTable != null) {
+            Metrics.writeGauge(out, "account_table_size", "Accounts in the off-heap table", accountTable.size());
+            Metrics.writeGauge(out, "account_table_capacity", "Slots of the off-heap table", accountTable.getCapacity());
+        }
+        if (journal != null) {
+            JsonObject stats = journal.stats();
+            Metrics.writeGauge(out, "journal_appended", "Transfers appended to the journal since startup", stats.getLong("appended"));
+            Metrics.writeGauge(out, "journal_segment", "Number of the journal segment being written", stats.getInteger("segment"));
+            Metrics.writeGauge(out, "journal_waiting", "Journal appends waiting for a sync", stats.getInteger("waiting"));
+        }
+        Future<JsonObject> engine = groupCommit == null ? Future.succeededFuture() : groupCommit.metrics();
+        engine.setHandler(result -> {
+            if (result.succeeded() && result.result() != null) {
+                JsonObject batching = result.result();
+                Metrics.writeGauge(out, "group_commit_queued", "Transfers waiting for a batch", batching.getInteger("queued"));
+                Metrics.writeGauge(out, "group_commit_batches", "Batches committed", batching.getLong("batches"));
+                Metrics.writeGauge(out, "group_commit_mean_batch_size", "Mean transfers per batch", batching.getDouble("meanBatchSize"));
+                Metrics.writeGauge(out, "group_commit_max_commit_seconds", "Slowest batch commit", batching.getDouble("maxCommitMillis") / 1000);
+            }
+            request.response() //
+                    .putHeader("content-type", TEXT_FORMAT) //
+                    .end(out.toString());
+        });
+    }
+
+    /**
+     * Writes the state of the admission control limiters, labelled by limiter.
+     *
+     * @param out where to write the metrics
+     */
+    private void writeAdmission(StringBuilder out) {
+        Map<String, ConcurrencyLimiter> limiters = admission.getLimiters();
+        if (limiters.isEmpty()) {
+            return;
+        }
+        Map<String, JsonObject> stats = new LinkedHashMap<>();
+        limiters.forEach((name, limiter) -> stats.put(name, limiter.stats()));
+        String[][] gauges = {
+                {"limit", "admission_limit", "Requests admitted at once"},
+                {"inFlight", "admission_in_flight", "Requests admitted and not answered yet"},
+                {"queued", "admission_queued", "Requests waiting to be admitted"},
+                {"rejected", "admission_rejected", "Requests rejected as the queue was full"},
+                {"timedOut", "admission_timed_out", "Requests rejected after waiting too long"}};
+        for (String[] gauge : gauges) {
+            Map<String, Number> values = new LinkedHashMap<>();
+            stats.forEach((name, limiter) -> values.put(name, (Number) limiter.getValue(gauge[0])));
+            Metrics.writeGauges(out, gauge[1], gauge[2], "limiter", values);
+        }
+    }
+
+    /**
+     * Writes the saturation of the JDBC connection pools, as exposed by their JMX beans.
+     *
+     * @param out where to write the metrics
+     */
+    private void writePools(StringBuilder out) {
+        long busy = 0;
+        long max = 0;
+        long waiting = 0;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (ObjectName pool : server.queryNames(new ObjectName(POOLS), null)) {
+                busy += ((Number) server.getAttribute(pool, "numBusyConnectionsAllUsers")).longValue();
+                max += ((Number) server.getAttribute(pool, "maxPoolSize")).longValue();
+                waiting += ((Number) server.getAttribute(pool, "numThreadsAwaitingCheckoutDefaultUser")).longValue();
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Could not read the JDBC pool beans", e);
+            return;
+        }
+        Metrics.writeGauge(out, "jdbc_pool_busy_connections", "Connections checked out of the pools", busy);
+        Metrics.writeGauge(out, "jdbc_pool_max_connections", "Maximum size of the pools", max);
+        Metrics.writeGauge(out, "jdbc_pool_waiting_threads", "Threads blocked waiting for a connection", waiting);
+    }
+}
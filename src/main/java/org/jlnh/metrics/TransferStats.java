@@ -0,0 +1,312 @@
+package org.jlnh.metrics;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import org.jlnh.model.Money;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates of the money in the system and of the transfers, shared by every verticle instance of the JVM and
+ * maintained incrementally on every committed transfer, so that reading them costs the same whatever the number of
+ * accounts and transfers.
+ * <p>
+ * The totals start from a single recount of the database when the application starts. The total balance of that recount
+ * is served as the balance at startup: a transfer moves money without changing it, and the engines do not report the
+ * balances they commit, so it is not maintained, and comparing it with a sum of the balances tells whether money was
+ * created or destroyed since. The volume is kept per minute over the last {@code MINUTES} minutes, and the most active
+ * accounts are found with a count-min sketch of {@code SKETCH_DEPTH} rows of {@code SKETCH_WIDTH} counters, updated
+ * conservatively, that gives the estimated number of transfers of an account, the {@code TOP_ACCOUNTS} accounts with
+ * the highest estimates being kept aside. Estimates can only overcount, by about {@code e / SKETCH_WIDTH} of all the
+ * transfers at worst.
+ */
+public class TransferStats implements Shareable {
+
+    private static final String SHARED_MAP = "transfer-stats";
+    private static final String INSTANCE = "instance";
+
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+            0xD6E8FEB86659FD93L, 0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x94D049BB133111EBL, 0xBF58476D1CE4E5B9L};
+
+    private final AtomicLong accounts = new AtomicLong();
+    private final LongAdder balanceAtStartup = new LongAdder();
+    private final LongAdder transfers = new LongAdder();
+    private final LongAdder volume = new LongAdder();
+
+    private final long[] minutes;
+    private final long[] minuteTransfers;
+    private final long[] minuteVolume;
+
+    private final long[][] sketch;
+    private final int topAccounts;
+    private final Map<UUID, Long> top = new HashMap<>();
+    private long topMinimum;
+
+    public TransferStats(int minutes, int topAccounts, int sketchWidth, int sketchDepth) {
+        if (sketchDepth < 1 || sketchDepth > SEEDS.length || Integer.bitCount(sketchWidth) != 1) {
+            throw new IllegalArgumentException("The sketch needs 1 to " + SEEDS.length + " rows of a power of two counters");
+        }
+        this.minutes = new long[minutes];
+        this.minuteTransfers = new long[minutes];
+        this.minuteVolume = new long[minutes];
+        this.topAccounts = topAccounts;
+        this.sketch = new long[sketchDepth][sketchWidth];
+    }
+
+    /**
+     * Gets the stats shared by the whole vertx instance, creating them on first use.
+     *
+     * @param vertx the vertx instance
+     * @param config the {@code STATS} configuration
+     * @return the shared stats
+     */
+    public static TransferStats shared(Vertx vertx, JsonObject config) {
+        LocalMap<String, TransferStats> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+        TransferStats stats = map.get(INSTANCE);
+        if (stats == null) {
+            TransferStats created = new TransferStats(config.getInteger("MINUTES", 60),
+                    config.getInteger("TOP_ACCOUNTS", 10), config.getInteger("SKETCH_WIDTH", 2048),
+                    config.getInteger("SKETCH_DEPTH", 4));
+            stats = map.putIfAbsent(INSTANCE, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Adds what was counted in the database, before any transfer is committed.
+     *
+     * @param accountCount the number of accounts
+     * @param balance the total balance of the accounts, in minor units
+     * @param transferCount the number of recorded transfers
+     * @param transferVolume the total amount of the recorded transfers, in minor units
+     */
+    public void addRecount(long accountCount, long balance, long transferCount, long transferVolume) {
+        accounts.addAndGet(accountCount);
+        balanceAtStartup.add(balance);
+        transfers.add(transferCount);
+        volume.add(transferVolume);
+    }
+
+    /**
+     * Records a committed transfer.
+     *
+     * @param from id of the account that sent the amount
+     * @param to id of the account that received the amount
+     * @param amount the amount, in minor units
+     * @param timestamp when the transfer was committed, in milliseconds since the epoch
+     */
+    public void record(UUID from, UUID to, long amount, long timestamp) {
+        transfers.increment();
+        volume.add(amount);
+
+        long minute = timestamp / MINUTE_MILLIS;
+        int slot = (int) (minute % minutes.length);
+        synchronized (this) {
+            if (minutes[slot] < minute) {
+                minutes[slot] = minute;
+                minuteTransfers[slot] = 0;
+                minuteVolume[slot] = 0;
+            }
+            if (minutes[slot] == minute) {
+                minuteTransfers[slot]++;
+                minuteVolume[slot] += amount;
+            }
+            count(from);
+            if (!to.equals(from)) {
+                count(to);
+            }
+        }
+    }
+
+    /**
+     * Counts a transfer of an account in the sketch, raising only the counters that hold its estimate, and keeps it
+     * aside if it is now among the most active accounts.
+     */
+    private void count(UUID account) {
+        long hash = account.getMostSignificantBits() ^ account.getLeastSignificantBits();
+        long estimate = estimateOf(hash) + 1;
+        for (int row = 0; row < sketch.length; row++) {
+            int index = index(hash, row);
+            sketch[row][index] = Math.max(sketch[row][index], estimate);
+        }
+
+        if (top.containsKey(account) || top.size() < topAccounts) {
+            top.put(account, estimate);
+        } else if (estimate > topMinimum && topAccounts > 0) {
+            top.values().remove(topMinimum);
+            top.put(account, estimate);
+        } else {
+            return;
+        }
+        topMinimum = top.values().stream().mapToLong(Long::longValue).min().orElse(0L);
+    }
+
+    private long estimateOf(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < sketch.length; row++) {
+            estimate = Math.min(estimate, sketch[row][index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    private int index(long hash, int row) {
+        long mixed = (hash ^ SEEDS[row]) * 0xBF58476D1CE4E5B9L;
+        return (int) (mixed ^ mixed >>> 31) & (sketch[row].length - 1);
+    }
+
+    /**
+     * Estimated number of transfers sent or received by an account.
+     *
+     * @param account the account id
+     * @return the estimate, never lower than the actual count
+     */
+    public synchronized long estimate(UUID account) {
+        return estimateOf(account.getMostSignificantBits() ^ account.getLeastSignificantBits());
+    }
+
+    /**
+     * Snapshot of the aggregates.
+     *
+     * @param now the current time, in milliseconds since the epoch
+     * @return the aggregates
+     */
+    public Snapshot snapshot(long now) {
+        long currentMinute = now / MINUTE_MILLIS;
+        List<Minute> perMinute = new ArrayList<>();
+        List<Activity> mostActive = new ArrayList<>();
+        synchronized (this) {
+            for (long minute = currentMinute; minute > currentMinute - minutes.length && minute >= 0; minute--) {
+                int slot = (int) (minute % minutes.length);
+                if (minutes[slot] == minute && minuteTransfers[slot] > 0) {
+                    perMinute.add(new Minute(minute * MINUTE_MILLIS, minuteTransfers[slot], minuteVolume[slot]));
+                }
+            }
+            top.forEach((account, estimate) -> mostActive.add(new Activity(account, estimate)));
+        }
+        mostActive.sort(Comparator.comparingLong(Activity::getTransfers).reversed());
+        return new Snapshot(accounts.get(), balanceAtStartup.sum(), transfers.sum(),
+                volume.sum(), perMinute, mostActive);
+    }
+
+    /**
+     * The aggregates served by {@code GET /api/stats}.
+     */
+    public static class Snapshot {
+
+        private final long accounts;
+        private final long balanceAtStartup;
+        private final long transfers;
+        private final long volume;
+        private final List<Minute> volumePerMinute;
+        private final List<Activity> topAccounts;
+
+        Snapshot(long accounts, long balanceAtStartup, long transfers, long volume, List<Minute> volumePerMinute,
+                 List<Activity> topAccounts) {
+            this.accounts = accounts;
+            this.balanceAtStartup = balanceAtStartup;
+            this.transfers = transfers;
+            this.volume = volume;
+            this.volumePerMinute = volumePerMinute;
+            this.topAccounts = topAccounts;
+        }
+
+        public long getAccounts() {
+            return accounts;
+        }
+
+        /**
+         * @return the total balance of the accounts counted at startup
+         */
+        public BigDecimal getBalanceAtStartup() {
+            return Money.toBigDecimal(balanceAtStartup);
+        }
+
+        public long getTransfers() {
+            return transfers;
+        }
+
+        public BigDecimal getVolume() {
+            return Money.toBigDecimal(volume);
+        }
+
+        /**
+         * @return the minutes with transfers, newest first
+         */
+        public List<Minute> getVolumePerMinute() {
+            return volumePerMinute;
+        }
+
+        /**
+         * @return the most active accounts, most active first
+         */
+        public List<Activity> getTopAccounts() {
+            return topAccounts;
+        }
+    }
+
+    /**
+     * The transfers of a minute.
+     */
+    public static class Minute {
+
+        private final long start;
+        private final long transfers;
+        private final long volume;
+
+        Minute(long start, long transfers, long volume) {
+            this.start = start;
+            this.transfers = transfers;
+            this.volume = volume;
+        }
+
+        public String getMinute() {
+            return Instant.ofEpochMilli(start).toString();
+        }
+
+        public long getTransfers() {
+            return transfers;
+        }
+
+        public BigDecimal getVolume() {
+            return Money.toBigDecimal(volume);
+        }
+    }
+
+    /**
+     * The estimated number of transfers sent or received by an account.
+     */
+    public static class Activity {
+
+        private final UUID id;
+        private final long transfers;
+
+        Activity(UUID id, long transfers) {
+            this.id = id;
+            this.transfers = transfers;
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        public long getTransfers() {
+            return transfers;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.jlnh.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.vertx.core.json.JsonObject;
 
 import java.math.BigDecimal;
@@ -13,21 +14,35 @@ import java.util.UUID;
  */
 public class Account {
 
+    /**
+     * The columns to select for {@link #Account(JsonObject)}.
+     */
+    public static final String COLUMNS = "id, " + Money.UNITS_OF_BALANCE + " AS balance";
+
     private UUID id;
-    private BigDecimal balance;
+    private long balance;
 
     public Account() {
     }
 
-    public Account(UUID id, BigDecimal balance) {
+    public Account(UUID id, long balance) {
         this.id = id;
         this.balance = balance;
     }
 
+    public Account(UUID id, BigDecimal balance) {
+        this(id, Money.fromBigDecimal(balance));
+    }
+
+    /**
+     * Maps a database row, whose balance was selected as minor units with {@link #COLUMNS}.
+     *
+     * @param payload the row
+     */
     public Account(JsonObject payload) {
         this(
                 UUID.fromString(payload.getString("ID")),
-                BigDecimal.valueOf(payload.getDouble("BALANCE"))
+                payload.getLong("BALANCE")
         );
     }
 
@@ -41,10 +56,20 @@ public class Account {
     }
 
     public BigDecimal getBalance() {
-        return balance;
+        return Money.toBigDecimal(balance);
     }
 
     public void setBalance(BigDecimal balance) {
+        this.balance = Money.fromBigDecimal(balance);
+    }
+
+    @JsonIgnore
+    public long getBalanceUnits() {
+        return balance;
+    }
+
+    @JsonIgnore
+    public void setBalanceUnits(long balance) {
         this.balance = balance;
     }
 
@@ -65,7 +90,7 @@ public class Account {
     public String toString() {
         return "Account{" +
                 "id=" + id +
-                ", balance=" + balance +
+                ", balance=" + Money.toPlainString(balance) +
                 '}';
     }
 }
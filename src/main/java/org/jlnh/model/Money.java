@@ -0,0 +1,101 @@
+package org.jlnh.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Exact fixed-point representation of an amount of money: a {@code long} count of minor units at
+ * {@link #SCALE scale 4}, the scale of the {@code decimal(19,4)} database columns.
+ * <p>
+ * Amounts travel as plain {@code long} values so the arithmetic of a transfer never allocates; a {@link BigDecimal}
+ * is only built when an amount crosses the JSON boundary.
+ */
+public final class Money {
+
+    public static final int SCALE = 4;
+    public static final long UNIT = 10_000L;
+
+    /**
+     * SQL expression reading a {@code decimal(19,4)} column as minor units, without going through a double.
+     */
+    public static final String UNITS_OF_BALANCE = "CAST(balance * " + UNIT + " AS BIGINT)";
+
+    /**
+     * SQL expression reading the {@code decimal(19,4)} amount of a transaction as minor units.
+     */
+    public static final String UNITS_OF_AMOUNT = "CAST(amount * " + UNIT + " AS BIGINT)";
+
+    private Money() {
+    }
+
+    /**
+     * Converts a decimal amount into minor units.
+     *
+     * @param amount the amount, null meaning zero
+     * @return the amount in minor units
+     * @throws ArithmeticException if the amount has more than {@link #SCALE} decimals or does not fit a long
+     */
+    public static long fromBigDecimal(BigDecimal amount) {
+        if (amount == null) {
+            return 0L;
+        }
+        return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts minor units into a decimal amount, with the shortest scale (but at least one decimal) so that it
+     * renders the way the amounts always did, e.g. {@code 9.98} or {@code 10000.0}.
+     *
+     * @param units the amount in minor units
+     * @return the decimal amount
+     */
+    public static BigDecimal toBigDecimal(long units) {
+        BigDecimal amount = BigDecimal.valueOf(units, SCALE).stripTrailingZeros();
+        return amount.scale() < 1 ? amount.setScale(1) : amount;
+    }
+
+    /**
+     * Renders minor units as a plain decimal string at full scale, e.g. {@code 9.9800}, suitable as a JDBC parameter
+     * of a {@code decimal(19,4)} column.
+     *
+     * @param units the amount in minor units
+     * @return the decimal string
+     */
+    public static String toPlainString(long units) {
+        StringBuilder builder = new StringBuilder(24);
+        if (units < 0) {
+            builder.append('-');
+        }
+        long integral = Math.abs(units / UNIT);
+        long fraction = Math.abs(units % UNIT);
+        builder.append(integral).append('.');
+        for (long digit = UNIT / 10; digit > fraction && digit > 1; digit /= 10) {
+            builder.append('0');
+        }
+        return builder.append(fraction).toString();
+    }
+
+    /**
+     * Adds two amounts.
+     *
+     * @param units the first amount in minor units
+     * @param other the second amount in minor units
+     * @return the sum in minor units
+     * @throws ArithmeticException on overflow
+     */
+    public static long add(long units, long other) {
+        return Math.addExact(units, other);
+    }
+
+    /**
+     * Subtracts an amount from another.
+     *
+     * @param units the amount in minor units
+     * @param other the amount to subtract in minor units
+     * @return the difference in minor units
+     * @throws ArithmeticException on overflow
+     */
+    public static long subtract(long units, long other) {
+        return Math.subtractExact(units, other);
+    }
+}
@@ -1,6 +1,6 @@
 package org.jlnh.model;
 
-import io.vertx.core.json.JsonObject;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import java.math.BigDecimal;
 import java.util.Objects;
@@ -16,25 +16,21 @@ public class Transaction {
     private UUID id;
     private Account from;
     private Account to;
-    private BigDecimal amount;
+    private long amount;
+    private long createdAt;
 
     public Transaction() {
     }
 
-    public Transaction(UUID id, Account from, Account to, BigDecimal amount) {
+    public Transaction(UUID id, Account from, Account to, long amount) {
         this.id = id;
         this.from = from;
         this.to = to;
         this.amount = amount;
     }
 
-    public Transaction(JsonObject payload) {
-        this(
-                (UUID) payload.getValue("ID", UUID.class), //
-                (Account) payload.getValue("FROM", Account.class), //
-                (Account) payload.getValue("TO", Account.class), //
-                BigDecimal.valueOf(payload.getDouble("AMOUNT"))
-        );
+    public Transaction(UUID id, Account from, Account to, BigDecimal amount) {
+        this(id, from, to, Money.fromBigDecimal(amount));
     }
 
     public UUID getId() {
@@ -62,13 +58,37 @@ public class Transaction {
     }
 
     public BigDecimal getAmount() {
-        return amount;
+        return Money.toBigDecimal(amount);
     }
 
     public void setAmount(BigDecimal amount) {
+        this.amount = Money.fromBigDecimal(amount);
+    }
+
+    @JsonIgnore
+    public long getAmountUnits() {
+        return amount;
+    }
+
+    @JsonIgnore
+    public void setAmountUnits(long amount) {
         this.amount = amount;
     }
 
+    /**
+     * @return when the transaction was committed, in milliseconds since the epoch, as written to the database; 0 if
+     * it was not committed
+     */
+    @JsonIgnore
+    public long getCreatedAtMillis() {
+        return createdAt;
+    }
+
+    @JsonIgnore
+    public void setCreatedAtMillis(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -88,7 +108,7 @@ public class Transaction {
                 "id=" + id +
                 ", from=" + from +
                 ", to=" + to +
-                ", amount=" + amount +
+                ", amount=" + Money.toPlainString(amount) +
                 '}';
     }
 }
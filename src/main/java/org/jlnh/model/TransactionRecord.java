@@ -0,0 +1,117 @@
+package org.jlnh.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.vertx.core.json.JsonObject;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A committed transaction as listed in the history of an account: the ids of both accounts, the amount and when it
+ * was committed.
+ */
+public class TransactionRecord {
+
+    /**
+     * The columns to select for {@link #TransactionRecord(JsonObject)}.
+     */
+    public static final String COLUMNS = "id, \"from\" AS sender, to AS receiver, " + Money.UNITS_OF_AMOUNT
+            + " AS amount, created_at";
+
+    private final UUID id;
+    private final UUID from;
+    private final UUID to;
+    private final long amount;
+    private final long createdAt;
+
+    public TransactionRecord(UUID id, UUID from, UUID to, long amount, long createdAt) {
+        this.id = id;
+        this.from = from;
+        this.to = to;
+        this.amount = amount;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Maps a database row, selected with {@link #COLUMNS}.
+     *
+     * @param payload the row
+     */
+    public TransactionRecord(JsonObject payload) {
+        this(
+                UUID.fromString(payload.getString("ID")),
+                UUID.fromString(payload.getString("SENDER")),
+                UUID.fromString(payload.getString("RECEIVER")),
+                payload.getLong("AMOUNT"),
+                OffsetDateTime.parse(payload.getString("CREATED_AT")).toInstant().toEpochMilli()
+        );
+    }
+
+    /**
+     * Records a committed transaction, with the timestamp written to the database along with it.
+     *
+     * @param transaction the committed transaction
+     * @return the record
+     */
+    public static TransactionRecord committed(Transaction transaction) {
+        return new TransactionRecord(transaction.getId(), transaction.getFrom().getId(), transaction.getTo().getId(),
+                transaction.getAmountUnits(), transaction.getCreatedAtMillis());
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public UUID getFrom() {
+        return from;
+    }
+
+    public UUID getTo() {
+        return to;
+    }
+
+    public BigDecimal getAmount() {
+        return Money.toBigDecimal(amount);
+    }
+
+    @JsonIgnore
+    public long getAmountUnits() {
+        return amount;
+    }
+
+    public String getCreatedAt() {
+        return Instant.ofEpochMilli(createdAt).toString();
+    }
+
+    @JsonIgnore
+    public long getCreatedAtMillis() {
+        return createdAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TransactionRecord that = (TransactionRecord) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionRecord{" +
+                "id=" + id +
+                ", from=" + from +
+                ", to=" + to +
+                ", amount=" + Money.toPlainString(amount) +
+                ", createdAt=" + getCreatedAt() +
+                '}';
+    }
+}
@@ -0,0 +1,46 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.Future;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Where the {@code jdbc} transfer engine keeps the account balances, selected by {@code STORAGE.TYPE}.
+ * <p>
+ * Implementations are not expected to serialize the transfers touching the same account: callers go through the
+ * {@link AccountSequencer} for that.
+ */
+public interface AccountRepository {
+
+    /**
+     * Finds an account.
+     *
+     * @param id the account id
+     * @return future account, failed with a {@link java.util.NoSuchElementException} if it does not exist
+     */
+    Future<Account> findAccount(UUID id);
+
+    /**
+     * Finds a page of accounts ordered by id, using the last id of the previous page as cursor.
+     *
+     * @param after id of the last account of the previous page, null for the first page
+     * @param limit maximum number of accounts
+     * @return future accounts of the page
+     */
+    Future<List<Account>> findAccounts(UUID after, int limit);
+
+    /**
+     * Moves an amount from an account to another one and records the transaction.
+     *
+     * @param id id of the transaction, generated if null
+     * @param from id of the account that is sending the amount
+     * @param to id of the account that is receiving the amount
+     * @param amount the amount, in {@link org.jlnh.model.Money minor units}
+     * @return future transaction holding the new balances, failed with an {@link IllegalStateException} if the amount
+     * is greater than the sender's balance or a {@link java.util.NoSuchElementException} if an account does not exist
+     */
+    Future<Transaction> transfer(UUID id, UUID from, UUID to, long amount);
+}
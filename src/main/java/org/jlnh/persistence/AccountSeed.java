@@ -0,0 +1,78 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.SQLConnection;
+import org.jlnh.model.Money;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Helper code to create {@code SEED.ACCOUNTS} accounts of {@code SEED.BALANCE} each along with the tables, for load
+ * tests. Their ids are derived from their index, so a load generator knows them without listing the accounts: the
+ * account {@code i} is {@code 00000000-0000-4000-8000-} followed by {@code i} on twelve digits.
+ */
+public class AccountSeed {
+
+    private static final String ID_PREFIX = "00000000-0000-4000-8000-";
+    private static final int ID_DIGITS = 12;
+
+    private static final String INSERT = "INSERT INTO account (id, balance) SELECT CAST(CONCAT('" + ID_PREFIX
+            + "', LPAD(CAST(x - 1 AS VARCHAR), " + ID_DIGITS + ", '0')) AS UUID), ? FROM SYSTEM_RANGE(1, ?)";
+
+    private AccountSeed() {
+    }
+
+    /**
+     * Whether accounts are seeded: when {@code SEED.ACCOUNTS} is positive.
+     *
+     * @param config {@link JsonObject} with the application configuration
+     * @return true to create the seeded accounts along with the tables
+     */
+    public static boolean selected(JsonObject config) {
+        return config.getJsonObject("SEED", new JsonObject()).getInteger("ACCOUNTS", 0) > 0;
+    }
+
+    /**
+     * Id of a seeded account.
+     *
+     * @param index the account index, from 0 to {@code SEED.ACCOUNTS} excluded
+     * @return the account id
+     */
+    public static UUID id(long index) {
+        String digits = Long.toString(index);
+        StringBuilder id = new StringBuilder(ID_PREFIX);
+        for (int i = digits.length(); i < ID_DIGITS; i++) {
+            id.append('0');
+        }
+        return UUID.fromString(id.append(digits).toString());
+    }
+
+    /**
+     * Balance of every seeded account.
+     *
+     * @param config the {@code SEED} configuration
+     * @return the balance in minor units
+     */
+    public static long balance(JsonObject config) {
+        return Money.fromBigDecimal(new BigDecimal(String.valueOf(config.getValue("BALANCE", 1000))));
+    }
+
+    /**
+     * Inserts the seeded accounts in a single statement, generating them in the database.
+     *
+     * @param connection database connection, left open
+     * @param config the {@code SEED} configuration
+     * @return the connection itself
+     */
+    public static Future<SQLConnection> insert(SQLConnection connection, JsonObject config) {
+        Future<SQLConnection> future = Future.future();
+        connection.updateWithParams(INSERT, new JsonArray() //
+                        .add(Money.toPlainString(balance(config))) //
+                        .add(config.getInteger("ACCOUNTS")), //
+                result -> future.handle(result.map(connection)));
+        return future;
+    }
+}
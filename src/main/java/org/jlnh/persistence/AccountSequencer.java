@@ -0,0 +1,146 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Serializes the transfers touching the same accounts without blocking any thread, shared by every verticle
+ * instance of the JVM.
+ * <p>
+ * Accounts are hashed onto a fixed number of stripes. A transfer acquires the stripes of all its accounts in
+ * ascending order, which rules out deadlocks, runs once it holds them all, and releases them when it completes. A
+ * stripe already held queues its waiters, and hands itself over to the next one on that waiter's own context, so
+ * transfers on disjoint stripes run in parallel while the ones sharing an account run one after the other.
+ */
+public class AccountSequencer implements Shareable {
+
+    private static final String SHARED_MAP = "account-sequencer";
+    private static final String INSTANCE = "instance";
+
+    private final Stripe[] stripes;
+
+    public AccountSequencer(int stripes) {
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Gets the sequencer shared by the whole vertx instance, creating it on first use.
+     *
+     * @param vertx the vertx instance
+     * @param stripes the number of stripes
+     * @return the shared sequencer
+     */
+    public static AccountSequencer shared(Vertx vertx, int stripes) {
+        LocalMap<String, AccountSequencer> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+        AccountSequencer sequencer = map.get(INSTANCE);
+        if (sequencer == null) {
+            AccountSequencer created = new AccountSequencer(stripes);
+            sequencer = map.putIfAbsent(INSTANCE, created);
+            if (sequencer == null) {
+                sequencer = created;
+            }
+        }
+        return sequencer;
+    }
+
+    /**
+     * Executes a task once no other task touching the same accounts is running.
+     *
+     * @param accounts the ids of the accounts the task touches
+     * @param task the task
+     * @return future result of the task
+     */
+    public <T> Future<T> execute(Collection<UUID> accounts, Supplier<Future<T>> task) {
+        int[] held = accounts.stream().filter(id -> id != null).mapToInt(this::stripeOf).sorted().distinct().toArray();
+        Context context = Vertx.currentContext();
+
+        Future<Void> acquired = Future.succeededFuture();
+        for (int stripe : held) {
+            acquired = acquired.compose(v -> stripes[stripe].acquire(context));
+        }
+        Future<T> future = Future.future();
+        acquired.compose(v -> task.get()).setHandler(done -> {
+            for (int i = held.length - 1; i >= 0; i--) {
+                stripes[held[i]].release();
+            }
+            future.handle(done);
+        });
+        return future;
+    }
+
+    /**
+     * Finds the stripe of an account.
+     *
+     * @param account the account id
+     * @return the stripe index
+     */
+    int stripeOf(UUID account) {
+        long bits = account.getMostSignificantBits() ^ account.getLeastSignificantBits();
+        int hash = (int) (bits ^ (bits >>> 32));
+        return Math.floorMod(hash ^ (hash >>> 16), stripes.length);
+    }
+
+    /**
+     * A stripe, held by at most one task at a time, with the waiters queued behind it.
+     */
+    private static class Stripe {
+
+        private final Deque<Runnable> waiters = new ArrayDeque<>();
+        private boolean held;
+
+        /**
+         * Acquires the stripe.
+         *
+         * @param context context to complete the returned future on if the stripe has to be waited for
+         * @return future completed once the stripe is held
+         */
+        Future<Void> acquire(Context context) {
+            Future<Void> future = Future.future();
+            synchronized (this) {
+                if (held) {
+                    waiters.add(() -> handOver(context, future));
+                    return future;
+                }
+                held = true;
+            }
+            future.complete();
+            return future;
+        }
+
+        /**
+         * Releases the stripe, handing it over to the next waiter if there is one.
+         */
+        void release() {
+            Runnable next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    held = false;
+                }
+            }
+            if (next != null) {
+                next.run();
+            }
+        }
+
+        private static void handOver(Context context, Future<Void> future) {
+            if (context == null) {
+                future.complete();
+            } else {
+                context.runOnContext(v -> future.complete());
+            }
+        }
+    }
+}
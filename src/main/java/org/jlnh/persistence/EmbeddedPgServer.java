@@ -0,0 +1,45 @@
+package org.jlnh.persistence;
+
+import org.h2.message.DbException;
+import org.h2.server.pg.PgServer;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * The PostgreSQL server of H2, with {@code TCP_NODELAY} on its connections.
+ * <p>
+ * H2 writes every message of a response on its own, so with Nagle's algorithm the second one waits for the client to
+ * acknowledge the first, which it delays by up to 40 ms: every query would take that long. H2 has no option for it,
+ * so the server socket it binds is replaced by one setting {@code TCP_NODELAY} on the sockets it accepts, before it
+ * starts accepting them.
+ */
+class EmbeddedPgServer extends PgServer {
+
+    @Override
+    public void start() {
+        super.start();
+        try {
+            Field field = PgServer.class.getDeclaredField("serverSocket");
+            field.setAccessible(true);
+            ServerSocket bound = (ServerSocket) field.get(this);
+            InetSocketAddress address = (InetSocketAddress) bound.getLocalSocketAddress();
+            bound.close();
+            ServerSocket noDelay = new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+            noDelay.bind(address);
+            field.set(this, noDelay);
+        } catch (ReflectiveOperationException | IOException e) {
+            throw DbException.convert(e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+
+import java.util.UUID;
+
+import static org.jlnh.util.ActionHelper.translateReplyFailure;
+
+/**
+ * Group-commit transfer engine: transfers are handed to the single {@link GroupCommitVerticle} writer and
+ * complete once the batch they were executed in is committed.
+ */
+public class GroupCommit {
+
+    private final Vertx vertx;
+
+    public GroupCommit(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    /**
+     * Deploys the group-commit writer.
+     *
+     * @param vertx the vertx instance
+     * @param config the application configuration
+     * @return future with a {@link GroupCommit} client bound to the deployed writer
+     */
+    public static Future<GroupCommit> deploy(Vertx vertx, JsonObject config) {
+        JsonObject writerConfig = config.getJsonObject("GROUP_COMMIT", new JsonObject()).copy() //
+                .put(GroupCommitVerticle.JDBC, config);
+        Future<String> future = Future.future();
+        vertx.deployVerticle(GroupCommitVerticle.class.getName(), new DeploymentOptions().setConfig(writerConfig), future);
+        return future.map(id -> new GroupCommit(vertx));
+    }
+
+    /**
+     * Executes a transfer between two accounts, once {@link TransferBatch#validate(Transaction) validated}.
+     *
+     * @param incoming the requested transaction
+     * @return future transaction which might be completed or refused
+     */
+    public Future<Transaction> transfer(Transaction incoming) {
+        return transfer(incoming, null, null);
+    }
+
+    /**
+     * Executes a transfer between two accounts, once {@link TransferBatch#validate(Transaction) validated}, storing
+     * the response of the idempotency key of the request in the batch that commits it.
+     *
+     * @param incoming the requested transaction
+     * @param idempotencyKey the idempotency key of the request, null if it has none
+     * @param fingerprint what identifies the request
+     * @return future transaction which might be completed or refused
+     */
+    public Future<Transaction> transfer(Transaction incoming, String idempotencyKey, String fingerprint) {
+        return TransferBatch.validate(incoming).compose(valid -> send(valid, idempotencyKey, fingerprint));
+    }
+
+    private Future<Transaction> send(Transaction incoming, String idempotencyKey, String fingerprint) {
+        JsonObject request = new JsonObject() //
+                .put("id", incoming.getId() == null ? null : incoming.getId().toString()) //
+                .put("from", incoming.getFrom().getId().toString()) //
+                .put("to", incoming.getTo().getId().toString()) //
+                .put("amount", incoming.getAmountUnits());
+        if (idempotencyKey != null) {
+            request.put("idempotencyKey", idempotencyKey).put("fingerprint", fingerprint);
+        }
+
+        Future<Transaction> future = Future.future();
+        vertx.eventBus().<JsonObject>send(GroupCommitVerticle.ADDRESS, request, reply -> {
+            if (reply.failed()) {
+                future.fail(translateReplyFailure(reply.cause()));
+                return;
+            }
+            JsonObject committed = reply.result().body();
+            Transaction transaction = new Transaction(UUID.fromString(committed.getString("id")), //
+                    new Account(incoming.getFrom().getId(), committed.getLong("balance")), //
+                    new Account(incoming.getTo().getId(), committed.getLong("toBalance")), //
+                    incoming.getAmountUnits());
+            transaction.setCreatedAtMillis(committed.getLong("createdAt"));
+            future.complete(transaction);
+        });
+        return future;
+    }
+
+    /**
+     * Fetches the batching metrics of the writer: batch sizes and commit latencies.
+     *
+     * @return future with the metrics
+     */
+    public Future<JsonObject> metrics() {
+        Future<JsonObject> future = Future.future();
+        vertx.eventBus().<JsonObject>send(GroupCommitVerticle.METRICS_ADDRESS, null, reply ->
+                future.handle(reply.map(message -> message.body())));
+        return future;
+    }
+}
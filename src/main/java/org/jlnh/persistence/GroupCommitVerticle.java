@@ -0,0 +1,238 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.jlnh.util.ActionHelper;
+import org.jlnh.util.JsonHelper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.jlnh.util.ActionHelper.failureCode;
+
+/**
+ * Single writer executing the transfers in groups.
+ * <p>
+ * Incoming transfers wait in a bounded queue which is drained every {@code LINGER_MS} milliseconds, or as soon as
+ * {@code BATCH_SIZE} transfers are waiting. Each drain reads the balances of all the accounts involved with one
+ * query, decides every transfer in order, and persists the accepted ones as a single {@link TransferBatch}, along with
+ * the responses of their {@link IdempotencyKeys idempotency keys}: every transfer of the batch is answered only once
+ * that database transaction is committed.
+ */
+public class GroupCommitVerticle extends AbstractVerticle {
+
+    static final String ADDRESS = "group-commit.transfer";
+    static final String METRICS_ADDRESS = "group-commit.metrics";
+    static final String JDBC = "jdbc";
+
+    static final int QUEUE_FULL = ActionHelper.OVERLOADED;
+    static final int COMMIT_FAILED = 500;
+
+    private static final Logger LOGGER = LogManager.getLogger(GroupCommitVerticle.class);
+
+    private final Deque<PendingTransfer> queue = new ArrayDeque<>();
+
+    private JDBCClient jdbcClient;
+    private int batchSize;
+    private int queueCapacity;
+    private long lingerMs;
+
+    private boolean draining;
+    private long lingerTimer = -1;
+
+    private long batches;
+    private long transfers;
+    private int lastBatchSize;
+    private int maxBatchSize;
+    private long commitNanos;
+    private long maxCommitNanos;
+
+    @Override
+    public void start() {
+        jdbcClient = JDBCClient.createShared(vertx, config().getJsonObject(JDBC), "test");
+        batchSize = config().getInteger("BATCH_SIZE", 256);
+        queueCapacity = config().getInteger("QUEUE_CAPACITY", 10000);
+        lingerMs = config().getLong("LINGER_MS", 2L);
+
+        vertx.eventBus().<JsonObject>localConsumer(ADDRESS, message -> {
+            if (queue.size() >= queueCapacity) {
+                message.fail(QUEUE_FULL, "Transfer queue is full");
+                return;
+            }
+            queue.add(new PendingTransfer(message));
+            schedule();
+        });
+        vertx.eventBus().<JsonObject>localConsumer(METRICS_ADDRESS, message -> message.reply(metrics()));
+    }
+
+    /**
+     * Drains the queue right away if a batch is full, otherwise makes sure a drain happens after the linger time.
+     */
+    private void schedule() {
+        if (draining || queue.isEmpty()) {
+            return;
+        }
+        if (queue.size() >= batchSize) {
+            if (lingerTimer != -1) {
+                vertx.cancelTimer(lingerTimer);
+                lingerTimer = -1;
+            }
+            drain();
+        } else if (lingerTimer == -1) {
+            lingerTimer = vertx.setTimer(lingerMs, timer -> {
+                lingerTimer = -1;
+                drain();
+            });
+        }
+    }
+
+    /**
+     * Executes up to {@code BATCH_SIZE} queued transfers in a single database transaction.
+     */
+    private void drain() {
+        if (draining || queue.isEmpty()) {
+            return;
+        }
+        draining = true;
+        List<PendingTransfer> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+        while (batch.size() < batchSize && !queue.isEmpty()) {
+            batch.add(queue.poll());
+        }
+
+        long start = System.nanoTime();
+        TransferBatch.begin(jdbcClient) //
+                .compose(connection -> TransferBatch.end(connection, execute(connection, batch))) //
+                .setHandler(committed -> {
+                    record(batch.size(), System.nanoTime() - start);
+                    for (PendingTransfer pending : batch) {
+                        if (committed.failed()) {
+                            pending.message.fail(COMMIT_FAILED, String.valueOf(committed.cause().getMessage()));
+                        } else {
+                            pending.reply();
+                        }
+                    }
+                    if (committed.failed()) {
+                        LOGGER.error("Could not commit a batch of {} transfers", batch.size(), committed.cause());
+                    }
+                    draining = false;
+                    schedule();
+                });
+    }
+
+    /**
+     * Decides every transfer of the batch against the current balances and persists the accepted ones.
+     *
+     * @param connection database connection with an open transaction
+     * @param batch the transfers to execute
+     * @return future empty result
+     */
+    private Future<Void> execute(SQLConnection connection, List<PendingTransfer> batch) {
+        Set<UUID> ids = new LinkedHashSet<>();
+        batch.forEach(pending -> {
+            ids.add(pending.requested.getFrom().getId());
+            ids.add(pending.requested.getTo().getId());
+        });
+
+        return TransferBatch.findAccounts(connection, ids, false).compose(accounts -> {
+            List<Transaction> accepted = new ArrayList<>(batch.size());
+            List<JsonArray> keys = new ArrayList<>();
+            for (PendingTransfer pending : batch) {
+                pending.outcome = TransferBatch.apply(accounts, pending.requested);
+                if (pending.outcome.succeeded()) {
+                    accepted.add(pending.outcome.result());
+                    String key = pending.message.body().getString("idempotencyKey");
+                    if (key != null) {
+                        keys.add(IdempotencyKeys.paramsOf(key, pending.message.body().getString("fingerprint"),
+                                JsonHelper.encodeTransfer(pending.outcome.result())));
+                    }
+                }
+            }
+            return accepted.isEmpty() //
+                    ? Future.succeededFuture() //
+                    : TransferBatch.write(connection, accepted).compose(v -> IdempotencyKeys.insert(connection, keys));
+        });
+    }
+
+    /**
+     * Records the size and commit latency of a batch.
+     *
+     * @param size number of transfers in the batch
+     * @param nanos time spent executing and committing the batch
+     */
+    private void record(int size, long nanos) {
+        batches++;
+        transfers += size;
+        lastBatchSize = size;
+        maxBatchSize = Math.max(maxBatchSize, size);
+        commitNanos += nanos;
+        maxCommitNanos = Math.max(maxCommitNanos, nanos);
+        LOGGER.debug("Committed a batch of {} transfers in {} us", size, nanos / 1000);
+    }
+
+    /**
+     * Snapshot of the batching metrics.
+     *
+     * @return batch size and commit latency figures
+     */
+    private JsonObject metrics() {
+        return new JsonObject() //
+                .put("batches", batches) //
+                .put("transfers", transfers) //
+                .put("queued", queue.size()) //
+                .put("lastBatchSize", lastBatchSize) //
+                .put("maxBatchSize", maxBatchSize) //
+                .put("meanBatchSize", batches == 0 ? 0d : (double) transfers / batches) //
+                .put("meanCommitMillis", batches == 0 ? 0d : commitNanos / 1e6 / batches) //
+                .put("maxCommitMillis", maxCommitNanos / 1e6);
+    }
+
+    /**
+     * A transfer waiting in the queue, and its outcome once its batch has been executed.
+     */
+    private static class PendingTransfer {
+
+        private final Message<JsonObject> message;
+        private final Transaction requested;
+
+        private Future<Transaction> outcome;
+
+        PendingTransfer(Message<JsonObject> message) {
+            this.message = message;
+            String id = message.body().getString("id");
+            this.requested = new Transaction(id == null ? null : UUID.fromString(id), //
+                    new Account(UUID.fromString(message.body().getString("from")), 0L), //
+                    new Account(UUID.fromString(message.body().getString("to")), 0L), //
+                    message.body().getLong("amount"));
+        }
+
+        /**
+         * Answers the requester with the outcome of this transfer.
+         */
+        void reply() {
+            if (outcome.failed()) {
+                message.fail(failureCode(outcome.cause()), outcome.cause().getMessage());
+            } else {
+                Transaction transaction = outcome.result();
+                message.reply(new JsonObject() //
+                        .put("id", transaction.getId().toString()) //
+                        .put("balance", transaction.getFrom().getBalanceUnits()) //
+                        .put("toBalance", transaction.getTo().getBalanceUnits()) //
+                        .put("createdAt", transaction.getCreatedAtMillis()));
+            }
+        }
+    }
+}
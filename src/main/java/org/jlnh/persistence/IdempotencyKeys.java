@@ -0,0 +1,109 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.SQLConnection;
+import org.jlnh.cache.IdempotencyStore;
+
+import java.util.List;
+
+/**
+ * Helper code to persist the responses of the transfers requested with an {@code Idempotency-Key}, so they can
+ * still be replayed once they are gone from the {@link IdempotencyStore}, or after a restart.
+ * <p>
+ * A response replaces the one of an expired key that was not purged yet.
+ */
+public class IdempotencyKeys {
+
+    private static final String MERGE_KEY = "MERGE INTO idempotency_key (id, fingerprint, response, created_at) KEY (id) " //
+            + "VALUES (?, ?, ?, CURRENT_TIMESTAMP)";
+
+    private IdempotencyKeys() {
+    }
+
+    /**
+     * Finds the stored response of a key, and puts it back in the in-memory store.
+     *
+     * @param connection database connection, closed once done
+     * @param store the in-memory store
+     * @param key the idempotency key
+     * @return future entry, null if the key is unknown or has expired
+     */
+    public static Future<IdempotencyStore.Entry> find(SQLConnection connection, IdempotencyStore store, String key) {
+        Future<IdempotencyStore.Entry> future = Future.future();
+        String sql = "SELECT fingerprint, response FROM idempotency_key " //
+                + "WHERE id = ? AND created_at > DATEADD('MILLISECOND', ?, CURRENT_TIMESTAMP)";
+        connection.queryWithParams(sql, new JsonArray().add(key).add(-store.getTtlMillis()), result -> {
+            connection.close();
+            future.handle(result.map(resultSet -> resultSet.getResults().isEmpty() //
+                    ? null //
+                    : store.put(key, resultSet.getResults().get(0).getString(0), resultSet.getResults().get(0).getString(1))));
+        });
+        return future;
+    }
+
+    /**
+     * Stores the response of a key.
+     *
+     * @param connection database connection, closed once done
+     * @param key the idempotency key
+     * @param fingerprint what identifies the request
+     * @param response the response body
+     * @return future empty result
+     */
+    public static Future<Void> save(SQLConnection connection, String key, String fingerprint, String response) {
+        Future<Void> future = Future.future();
+        connection.updateWithParams(MERGE_KEY, paramsOf(key, fingerprint, response), result -> {
+            connection.close();
+            future.handle(result.mapEmpty());
+        });
+        return future;
+    }
+
+    /**
+     * Stores the responses of keys in the open transaction of the transfers they answer, so that they are committed
+     * together.
+     *
+     * @param connection database connection with an open transaction, left open
+     * @param keys the {@link #paramsOf(String, String, String) key, fingerprint and response} of every key
+     * @return future empty result
+     */
+    public static Future<Void> insert(SQLConnection connection, List<JsonArray> keys) {
+        Future<Void> future = Future.future();
+        if (keys.isEmpty()) {
+            future.complete();
+        } else {
+            connection.batchWithParams(MERGE_KEY, keys, result -> future.handle(result.mapEmpty()));
+        }
+        return future;
+    }
+
+    /**
+     * The statement parameters storing the response of a key.
+     *
+     * @param key the idempotency key
+     * @param fingerprint what identifies the request
+     * @param response the response body
+     * @return the parameters
+     */
+    public static JsonArray paramsOf(String key, String fingerprint, String response) {
+        return new JsonArray().add(key).add(fingerprint).add(response);
+    }
+
+    /**
+     * Deletes the responses which have expired.
+     *
+     * @param connection database connection, closed once done
+     * @param ttlMillis how long responses are kept
+     * @return future number of deleted responses
+     */
+    public static Future<Integer> purge(SQLConnection connection, long ttlMillis) {
+        Future<Integer> future = Future.future();
+        connection.updateWithParams("DELETE FROM idempotency_key WHERE created_at <= DATEADD('MILLISECOND', ?, CURRENT_TIMESTAMP)",
+                new JsonArray().add(-ttlMillis), result -> {
+                    connection.close();
+                    future.handle(result.map(updateResult -> updateResult.getUpdated()));
+                });
+        return future;
+    }
+}
@@ -0,0 +1,341 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.SQLOptions;
+import org.jlnh.metrics.LatencyHistogram;
+import org.jlnh.metrics.Metrics;
+import org.jlnh.model.Account;
+import org.jlnh.model.Money;
+import org.jlnh.model.Transaction;
+import org.jlnh.model.TransactionRecord;
+import org.jlnh.util.JsonHelper;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.jlnh.util.ActionHelper.COULD_NOT_TRANSFER_MONEY;
+
+/**
+ * Accounts and transactions kept in the {@code account} and {@code transaction} tables, through the JDBC client.
+ * Transfers record their transaction in the same database transaction as the balance changes.
+ */
+public class JdbcRepository implements AccountRepository, TransactionRepository {
+
+    static final String INSERT_TRANSACTION = "INSERT INTO transaction (id, \"from\", to, amount, created_at) VALUES(?, ?, ?, ?, ?)";
+
+    private static final String KEYSET = " AND created_at <= (SELECT created_at FROM transaction WHERE id = ?)"
+            + " AND (created_at < (SELECT created_at FROM transaction WHERE id = ?) OR id < ?)";
+
+    private final JDBCClient jdbcClient;
+    private final Metrics metrics;
+    private final LatencyHistogram selectAccountTimer;
+    private final LatencyHistogram selectAccountPageTimer;
+    private final LatencyHistogram insertTransactionTimer;
+    private final LatencyHistogram updateBalancesTimer;
+    private final LatencyHistogram selectBalancesTimer;
+    private final LatencyHistogram selectTransactionsTimer;
+
+    public JdbcRepository(JDBCClient jdbcClient, Metrics metrics) {
+        this.jdbcClient = jdbcClient;
+        this.metrics = metrics;
+        this.selectAccountTimer = metrics.statement("select_account");
+        this.selectAccountPageTimer = metrics.statement("select_account_page");
+        this.insertTransactionTimer = metrics.statement("insert_transaction");
+        this.updateBalancesTimer = metrics.statement("update_balances");
+        this.selectBalancesTimer = metrics.statement("select_balances");
+        this.selectTransactionsTimer = metrics.statement("select_transactions");
+    }
+
+    /**
+     * Fetches a database connection asynchronously.
+     *
+     * @return a future {@link SQLConnection} connection
+     */
+    public Future<SQLConnection> connect() {
+        Future<SQLConnection> future = Future.future();
+        long start = System.nanoTime();
+        metrics.getPendingCheckouts().incrementAndGet();
+        jdbcClient.getConnection(asyncResult -> {
+            metrics.getPendingCheckouts().decrementAndGet();
+            metrics.getConnectionCheckout().recordSince(start);
+            future.handle(asyncResult.map(connection -> //
+                    connection.setOptions(new SQLOptions().setAutoGeneratedKeys(true))));
+        });
+        return future;
+    }
+
+    @Override
+    public Future<Account> findAccount(UUID id) {
+        return connect().compose(sqlConnection -> this.findAccount(id.toString(), sqlConnection, true));
+    }
+
+    @Override
+    public Future<List<Account>> findAccounts(UUID after, int limit) {
+        return connect().compose(sqlConnection -> this.findAccountsPage(sqlConnection, after, limit));
+    }
+
+    @Override
+    public Future<Transaction> transfer(UUID id, UUID from, UUID to, long amount) {
+        return transfer(id, from, to, amount, null, null);
+    }
+
+    /**
+     * Moves an amount from an account to another one and records the transaction, along with the response of the
+     * idempotency key of the request in the same database transaction.
+     *
+     * @param id id of the transaction, generated if null
+     * @param from id of the account that is sending the amount
+     * @param to id of the account that is receiving the amount
+     * @param amount the amount, in {@link Money minor units}
+     * @param idempotencyKey the idempotency key of the request, null if it has none
+     * @param fingerprint what identifies the request
+     * @return future transaction, failed as {@link #transfer(UUID, UUID, UUID, long)}
+     */
+    public Future<Transaction> transfer(UUID id, UUID from, UUID to, long amount, String idempotencyKey, String fingerprint) {
+        return connect().compose(sqlConnection -> TransferBatch.begin(sqlConnection)).compose(connection -> {
+            Future<Transaction> transfer = this.transferMoney(id, from, to, amount, connection);
+            if (idempotencyKey != null) {
+                transfer = transfer.compose(transaction -> IdempotencyKeys.insert(connection, Collections.singletonList( //
+                        IdempotencyKeys.paramsOf(idempotencyKey, fingerprint, JsonHelper.encodeTransfer(transaction)))) //
+                        .map(transaction));
+            }
+            Future<Transaction> recorded = transfer;
+            return TransferBatch.end(connection, recorded).map(v -> recorded.result());
+        });
+    }
+
+    @Override
+    public Future<Void> save(Transaction transaction) {
+        return connect().compose(sqlConnection -> {
+            Future<Void> future = Future.future();
+            long start = System.nanoTime();
+            JsonArray params = paramsOf(transaction.getId(), transaction.getFrom().getId(), transaction.getTo().getId(),
+                    transaction.getAmountUnits(), transaction.getCreatedAtMillis());
+            sqlConnection.updateWithParams(INSERT_TRANSACTION, params, insert -> {
+                insertTransactionTimer.recordSince(start);
+                sqlConnection.close();
+                future.handle(insert.mapEmpty());
+            });
+            return future;
+        });
+    }
+
+    /**
+     * Counts the accounts and the recorded transactions with a full scan of both tables.
+     *
+     * @return the number of accounts, their total balance, the number of transactions and their total amount, the
+     * amounts in minor units
+     */
+    public Future<long[]> countTotals() {
+        String sql = "SELECT (SELECT COUNT(*) FROM account),"
+                + " (SELECT CAST(COALESCE(SUM(balance), 0) * " + Money.UNIT + " AS BIGINT) FROM account),"
+                + " (SELECT COUNT(*) FROM transaction),"
+                + " (SELECT CAST(COALESCE(SUM(amount), 0) * " + Money.UNIT + " AS BIGINT) FROM transaction)";
+        return connect().compose(connection -> {
+            Future<long[]> future = Future.future();
+            connection.querySingle(sql, result -> {
+                connection.close();
+                future.handle(result.map(row -> new long[] {((Number) row.getValue(0)).longValue(),
+                        ((Number) row.getValue(1)).longValue(), ((Number) row.getValue(2)).longValue(),
+                        ((Number) row.getValue(3)).longValue()}));
+            });
+            return future;
+        });
+    }
+
+    /**
+     * Finds a page of the transactions sent or received by an account, newest first, using the last transaction of
+     * the previous page as cursor.
+     * <p>
+     * The transactions sent and the ones received are each read from their {@code (account, created_at, id)} index,
+     * starting at the cursor, so a page reads at most twice its size of index entries whatever the length of the
+     * history; both are then merged by the database, which only sorts those rows again. Each side is ordered by the
+     * account column too, although it is constant, as H2 only reads an index in order when the sort columns are a prefix
+     * of it. The sides are concatenated with {@code UNION ALL}, as no transfer is both sent and received by the same
+     * account, which spares H2 from hashing every row to drop duplicates.
+     *
+     * @param account the account id
+     * @param before id of the last transaction of the previous page, null for the first page
+     * @param limit maximum number of transactions
+     * @return the transactions of the page, unknown accounts having none
+     */
+    public Future<List<TransactionRecord>> findTransactions(UUID account, UUID before, int limit) {
+        String keyset = before == null ? "" : KEYSET;
+        String sql = "SELECT " + TransactionRecord.COLUMNS + " FROM ("
+                + "(SELECT * FROM transaction WHERE \"from\" = ?" + keyset + " ORDER BY \"from\", created_at DESC, id DESC LIMIT ?)"
+                + " UNION ALL "
+                + "(SELECT * FROM transaction WHERE to = ?" + keyset + " ORDER BY to, created_at DESC, id DESC LIMIT ?)"
+                + ") ORDER BY created_at DESC, id DESC LIMIT ?";
+        JsonArray params = new JsonArray();
+        for (int side = 0; side < 2; side++) {
+            params.add(account.toString());
+            if (before != null) {
+                params.add(before.toString()).add(before.toString()).add(before.toString());
+            }
+            params.add(limit);
+        }
+        params.add(limit);
+
+        return connect().compose(connection -> {
+            Future<List<TransactionRecord>> future = Future.future();
+            long start = System.nanoTime();
+            connection.queryWithParams(sql, params, result -> {
+                selectTransactionsTimer.recordSince(start);
+                connection.close();
+                future.handle(result.map(resultSet -> resultSet.getRows()
+                        .stream()
+                        .map(TransactionRecord::new)
+                        .collect(Collectors.toList())));
+            });
+            return future;
+        });
+    }
+
+    /**
+     * Finds a single account by it's {@link UUID id} and maps the result into a {@link Account account}.
+     *
+     * @param sqlConnection database connection
+     * @param id account id
+     * @param closeConnection close or not database connection
+     * @return the account found
+     */
+    Future<Account> findAccount(String id, SQLConnection sqlConnection, boolean closeConnection) {
+        Future<Account> future = Future.future();
+        String sql = "SELECT " + Account.COLUMNS + " FROM account WHERE id = ?";
+        long start = System.nanoTime();
+        sqlConnection.queryWithParams(sql, new JsonArray().add(id), result -> {
+            selectAccountTimer.recordSince(start);
+            if (closeConnection) {
+                sqlConnection.close();
+            }
+            if (result.failed()) {
+                future.fail(result.cause());
+            } else if (result.result().getRows().isEmpty()) {
+                future.fail(new NoSuchElementException("Account " + id + " not found"));
+            } else {
+                future.complete(new Account(result.result().getRows().get(0)));
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Finds a page of accounts ordered by id, using the last id of the previous page as cursor.
+     *
+     * @param connection database connection, closed once done
+     * @param after id of the last account of the previous page, null for the first page
+     * @param limit maximum number of accounts
+     * @return the accounts of the page
+     */
+    private Future<List<Account>> findAccountsPage(SQLConnection connection, UUID after, int limit) {
+        Future<List<Account>> future = Future.future();
+        String sql = after == null //
+                ? "SELECT " + Account.COLUMNS + " FROM account ORDER BY id LIMIT ?" //
+                : "SELECT " + Account.COLUMNS + " FROM account WHERE id > ? ORDER BY id LIMIT ?";
+        JsonArray params = after == null ? new JsonArray().add(limit) : new JsonArray().add(after.toString()).add(limit);
+        long start = System.nanoTime();
+        connection.queryWithParams(sql, params, result -> {
+                    selectAccountPageTimer.recordSince(start);
+                    connection.close();
+                    future.handle(
+                            result.map(resultSet -> resultSet.getRows()
+                                    .stream()
+                                    .map(Account::new)
+                                    .collect(Collectors.toList()))
+                    );
+                }
+        );
+        return future;
+    }
+
+    /**
+     * Transfers a given amount from the sender account to the receiver account, without committing.
+     * <p>
+     * Both balances are changed by the same conditional relative update, sent as a single batch: the debit only
+     * applies if the sender has enough money, so its update count decides the transfer without reading the balances
+     * first. The transaction is then inserted and the new balances read back for the response, i.e. three round
+     * trips for a committed transfer.
+     *
+     * @param id id of the transaction, generated if null
+     * @param from id of the account that is sending the amount
+     * @param to id of the account that is receiving the amount
+     * @param amount the amount itself, in {@link Money minor units}
+     * @param sqlConnection database connection with an open transaction
+     * @return future transaction, failed with an {@link IllegalStateException} if the amount is greater than sender's
+     * account balance or a {@link NoSuchElementException} if an account does not exist
+     */
+    Future<Transaction> transferMoney(UUID id, UUID from, UUID to, long amount, SQLConnection sqlConnection) {
+        List<JsonArray> updates = Arrays.asList( //
+                new JsonArray().add(Money.toPlainString(-amount)).add(from.toString()).add(Money.toPlainString(-amount)), //
+                new JsonArray().add(Money.toPlainString(amount)).add(to.toString()).add(Money.toPlainString(amount)));
+        Future<List<Integer>> updated = Future.future();
+        long updateStart = System.nanoTime();
+        sqlConnection.batchWithParams("UPDATE account SET balance = balance + ? WHERE id = ? AND balance + ? >= 0", updates, result -> {
+            updateBalancesTimer.recordSince(updateStart);
+            updated.handle(result);
+        });
+
+        UUID transactionUuid = id != null ? id : UUID.randomUUID();
+        long createdAt = System.currentTimeMillis();
+        return updated.compose(counts -> {
+            if (counts.get(0) == 0) {
+                return this.findAccount(from.toString(), sqlConnection, false)
+                        .compose(sender -> Future.failedFuture(new IllegalStateException(COULD_NOT_TRANSFER_MONEY)));
+            } else if (counts.get(1) == 0) {
+                return Future.failedFuture(new NoSuchElementException("Account " + to + " not found"));
+            }
+            Future<Void> inserted = Future.future();
+            long insertStart = System.nanoTime();
+            JsonArray createNewTransactionParams = paramsOf(transactionUuid, from, to, amount, createdAt);
+            sqlConnection.updateWithParams(INSERT_TRANSACTION, createNewTransactionParams, insert -> {
+                insertTransactionTimer.recordSince(insertStart);
+                inserted.handle(insert.mapEmpty());
+            });
+            return inserted;
+        }).compose(v -> {
+            Future<Transaction> future = Future.future();
+            String sql = "SELECT " + Account.COLUMNS + " FROM account WHERE id IN (?, ?)";
+            long selectStart = System.nanoTime();
+            sqlConnection.queryWithParams(sql, new JsonArray().add(from.toString()).add(to.toString()), balances -> {
+                selectBalancesTimer.recordSince(selectStart);
+                if (balances.failed()) {
+                    future.fail(balances.cause());
+                    return;
+                }
+                Account sender = null;
+                Account receiver = null;
+                for (JsonObject row : balances.result().getRows()) {
+                    Account account = new Account(row);
+                    if (account.getId().equals(from)) {
+                        sender = account;
+                    } else {
+                        receiver = account;
+                    }
+                }
+                Transaction transaction = new Transaction(transactionUuid, sender, receiver, amount);
+                transaction.setCreatedAtMillis(createdAt);
+                future.complete(transaction);
+            });
+            return future;
+        });
+    }
+
+    private static JsonArray paramsOf(UUID id, UUID from, UUID to, long amount, long createdAt) {
+        return new JsonArray()
+                .add(id.toString())
+                .add(from.toString())
+                .add(to.toString())
+                .add(Money.toPlainString(amount))
+                .add(Instant.ofEpochMilli(createdAt));
+    }
+}
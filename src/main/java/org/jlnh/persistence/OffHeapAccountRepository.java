@@ -0,0 +1,133 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.Future;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static org.jlnh.util.ActionHelper.COULD_NOT_TRANSFER_MONEY;
+
+/**
+ * Accounts kept in an {@link OffHeapAccountTable}. Transfers are decided in memory and debited from the sender, then
+ * recorded by a {@link TransactionRepository}, and the receiver is only credited once recorded. A transfer which
+ * cannot be recorded is reverted by crediting the sender back, which the table cannot refuse the way it would refuse
+ * to take back money the receiver already spent.
+ * <p>
+ * Transfers recorded in a {@link TransactionJournal} are reserved on the sender instead, and settled in the table by
+ * the journal once their record is on the disk, so no crash can leave the table with half of a transfer or with one the
+ * journal lost; a transfer which cannot be recorded releases its reservation.
+ */
+public class OffHeapAccountRepository implements AccountRepository {
+
+    private final OffHeapAccountTable table;
+    private final TransactionRepository transactions;
+    private final TransactionJournal journal;
+
+    public OffHeapAccountRepository(OffHeapAccountTable table, TransactionRepository transactions) {
+        this.table = table;
+        this.transactions = transactions;
+        this.journal = null;
+    }
+
+    public OffHeapAccountRepository(OffHeapAccountTable table, TransactionJournal journal) {
+        this.table = table;
+        this.transactions = journal;
+        this.journal = journal;
+    }
+
+    @Override
+    public Future<Account> findAccount(UUID id) {
+        long balance = table.balance(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (balance == OffHeapAccountTable.NOT_FOUND) {
+            return Future.failedFuture(new NoSuchElementException("Account " + id + " not found"));
+        }
+        return Future.succeededFuture(new Account(id, balance));
+    }
+
+    @Override
+    public Future<List<Account>> findAccounts(UUID after, int limit) {
+        long[] page = new long[3 * limit];
+        int count = after == null //
+                ? table.page(0, 0, true, page) //
+                : table.page(after.getMostSignificantBits(), after.getLeastSignificantBits(), false, page);
+        List<Account> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            accounts.add(new Account(new UUID(page[3 * i], page[3 * i + 1]), page[3 * i + 2]));
+        }
+        return Future.succeededFuture(accounts);
+    }
+
+    @Override
+    public Future<Transaction> transfer(UUID id, UUID from, UUID to, long amount) {
+        if (journal != null) {
+            return journal(id, from, to, amount);
+        }
+        long fromMsb = from.getMostSignificantBits();
+        long fromLsb = from.getLeastSignificantBits();
+        long toMsb = to.getMostSignificantBits();
+        long toLsb = to.getLeastSignificantBits();
+        int outcome = table.debit(fromMsb, fromLsb, toMsb, toLsb, amount);
+        if (outcome != OffHeapAccountTable.TRANSFERRED) {
+            return refused(outcome, from, to);
+        }
+        Transaction transaction = new Transaction(id != null ? id : UUID.randomUUID(), //
+                new Account(from, table.balance(fromMsb, fromLsb)), //
+                new Account(to, table.balance(toMsb, toLsb)), //
+                amount);
+        transaction.setCreatedAtMillis(System.currentTimeMillis());
+        return transactions.save(transaction).map(saved -> {
+            transaction.getTo().setBalanceUnits(table.credit(toMsb, toLsb, amount));
+            return transaction;
+        }).recover(failure -> {
+            table.credit(fromMsb, fromLsb, amount);
+            return Future.failedFuture(failure);
+        });
+    }
+
+    private Future<Transaction> journal(UUID id, UUID from, UUID to, long amount) {
+        long fromMsb = from.getMostSignificantBits();
+        long fromLsb = from.getLeastSignificantBits();
+        long toMsb = to.getMostSignificantBits();
+        long toLsb = to.getLeastSignificantBits();
+        int outcome = table.reserve(fromMsb, fromLsb, toMsb, toLsb, amount);
+        if (outcome != OffHeapAccountTable.TRANSFERRED) {
+            return refused(outcome, from, to);
+        }
+        Transaction transaction = new Transaction(id != null ? id : UUID.randomUUID(), new Account(from, 0L),
+                new Account(to, 0L), amount);
+        transaction.setCreatedAtMillis(System.currentTimeMillis());
+        return journal.save(transaction, table).map(settled -> {
+            transaction.getFrom().setBalanceUnits(table.balance(fromMsb, fromLsb));
+            transaction.getTo().setBalanceUnits(table.balance(toMsb, toLsb));
+            return transaction;
+        }).recover(failure -> {
+            table.release(fromMsb, fromLsb, amount);
+            return Future.failedFuture(failure);
+        });
+    }
+
+    private static Future<Transaction> refused(int outcome, UUID from, UUID to) {
+        switch (outcome) {
+            case OffHeapAccountTable.UNKNOWN_SENDER:
+                return Future.failedFuture(new NoSuchElementException("Account " + from + " not found"));
+            case OffHeapAccountTable.UNKNOWN_RECEIVER:
+                return Future.failedFuture(new NoSuchElementException("Account " + to + " not found"));
+            default:
+                return Future.failedFuture(new IllegalStateException(COULD_NOT_TRANSFER_MONEY));
+        }
+    }
+
+    /**
+     * Loads an account, or sets its balance if it is already loaded.
+     *
+     * @param account the account
+     */
+    public void load(Account account) {
+        table.put(account.getId().getMostSignificantBits(), account.getId().getLeastSignificantBits(),
+                account.getBalanceUnits());
+    }
+}
@@ -0,0 +1,567 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Account balances held outside of the Java heap, in a fixed-width open-addressing hash table keyed by the two
+ * halves of the account {@link java.util.UUID}, shared by every verticle instance of the JVM.
+ * <p>
+ * Every account is a {@value #SLOT_BYTES} bytes slot (id, balance in minor units, state) of direct or memory-mapped
+ * buffers, so the table holds no account objects at all and tens of millions of accounts are invisible to the garbage
+ * collector. Lookups hash the id and probe linearly, which is a handful of memory reads. The capacity is fixed when
+ * the table is created, at twice the maximum number of accounts, so the probe sequences stay short.
+ * <p>
+ * Accounts are {@link #page paged} in id order through a direct buffer of their slot numbers sorted by id, four bytes
+ * per account. Accounts are never removed and never move, so the index only changes when an account is created: it is
+ * appended to, and sorted again on the next page only if the new id does not come last.
+ * <p>
+ * When a file is given, the slots are mapped from it and the balances survive restarts; the operating system writes
+ * them back, or {@link #flush()} forces it. The index is rebuilt from the slots on the first page.
+ * <p>
+ * Transfers recorded in a {@link TransactionJournal} are {@link #reserve reserved} on the sender while their record
+ * waits for the disk, kept aside in a small map of the accounts with pending transfers, and only {@link #settle
+ * settled} once it is there, so the table never holds a transfer the journal could lose. The state of a settled
+ * account is the position of the last record applied to it, which makes {@link #replay replaying} the journal over a
+ * mapped table idempotent: the table {@link #checkpoint records} the position it holds every record before when forced,
+ * and replays from there on startup whatever the operating system wrote back in the meantime.
+ */
+public class OffHeapAccountTable implements Shareable {
+
+    public static final long NOT_FOUND = Long.MIN_VALUE;
+
+    public static final int TRANSFERRED = 0;
+    public static final int UNKNOWN_SENDER = 1;
+    public static final int UNKNOWN_RECEIVER = 2;
+    public static final int INSUFFICIENT_FUNDS = 3;
+
+    static final int SLOT_BYTES = 32;
+    private static final int MSB = 0;
+    private static final int LSB = 8;
+    private static final int BALANCE = 16;
+    private static final int STATE = 24;
+    private static final long FREE = 0;
+    private static final long LOADED = 1;
+
+    private static final int SEGMENT_SHIFT = 20;
+    private static final int HEADER_BYTES = 64;
+    private static final int CHECKPOINT = 24;
+    private static final long MAGIC = 0x6A6C6E6861636374L;
+
+    private static final String SHARED_MAP = "off-heap-account-table";
+    private static final String INSTANCE = "instance";
+
+    private final int capacity;
+    private final int mask;
+    private final int segmentShift;
+    private final int segmentMask;
+    private final ByteBuffer header;
+    private final ByteBuffer[] segments;
+    private final IntBuffer index;
+    private final Map<Integer, Long> reserved = new HashMap<>();
+    private int size;
+    private boolean sorted;
+
+    private OffHeapAccountTable(int capacity, ByteBuffer header, ByteBuffer[] segments) {
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.segmentShift = Math.min(SEGMENT_SHIFT, Integer.numberOfTrailingZeros(capacity));
+        this.segmentMask = (1 << segmentShift) - 1;
+        this.header = header;
+        this.segments = segments;
+        this.size = (int) header.getLong(16);
+        this.index = ByteBuffer.allocateDirect(capacity / 2 * Integer.BYTES).asIntBuffer();
+        int indexed = 0;
+        for (int slot = 0; slot < capacity && indexed < size; slot++) {
+            if (segment(slot).getLong(offset(slot) + STATE) != FREE) {
+                index.put(indexed++, slot);
+            }
+        }
+        this.sorted = size == 0;
+    }
+
+    /**
+     * Allocates an empty table in direct memory.
+     *
+     * @param maxAccounts the maximum number of accounts
+     * @return the table
+     */
+    public static OffHeapAccountTable allocate(int maxAccounts) {
+        int capacity = capacityFor(maxAccounts);
+        ByteBuffer[] segments = new ByteBuffer[segmentCount(capacity)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocateDirect(segmentBytes(capacity));
+        }
+        return new OffHeapAccountTable(capacity, newHeader(ByteBuffer.allocateDirect(HEADER_BYTES), capacity), segments);
+    }
+
+    /**
+     * Maps a table from a file, creating the file if it does not exist yet.
+     *
+     * @param file the file holding the table
+     * @param maxAccounts the maximum number of accounts, which must be the one the file was created with
+     * @return the table
+     * @throws IOException if the file cannot be mapped
+     * @throws IllegalStateException if the file is not a table of that size
+     */
+    public static OffHeapAccountTable map(Path file, int maxAccounts) throws IOException {
+        int capacity = capacityFor(maxAccounts);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            boolean created = channel.size() == 0;
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            if (created) {
+                newHeader(header, capacity);
+            } else if (header.getLong(0) != MAGIC || header.getLong(8) != capacity) {
+                throw new IllegalStateException(file + " is not an account table of " + maxAccounts + " accounts");
+            }
+            ByteBuffer[] segments = new ByteBuffer[segmentCount(capacity)];
+            for (int i = 0; i < segments.length; i++) {
+                long offset = HEADER_BYTES + (long) i * segmentBytes(capacity);
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset, segmentBytes(capacity));
+            }
+            return new OffHeapAccountTable(capacity, header, segments);
+        }
+    }
+
+    /**
+     * Gets the table shared by the whole vertx instance, allocating or mapping it on first use.
+     *
+     * @param vertx the vertx instance
+     * @param config the {@code STORAGE} configuration
+     * @return the shared table
+     */
+    public static synchronized OffHeapAccountTable shared(Vertx vertx, JsonObject config) {
+        LocalMap<String, OffHeapAccountTable> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+        OffHeapAccountTable table = map.get(INSTANCE);
+        if (table == null) {
+            int maxAccounts = config.getInteger("MAX_ACCOUNTS", 1_000_000);
+            String file = config.getString("FILE", "");
+            try {
+                table = file.isEmpty() ? allocate(maxAccounts) : map(Paths.get(file), maxAccounts);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            map.put(INSTANCE, table);
+        }
+        return table;
+    }
+
+    /**
+     * Whether the {@code jdbc} engine keeps the balances in an off-heap table.
+     *
+     * @param config the application configuration
+     * @return true if {@code STORAGE.TYPE} is {@code off-heap}
+     */
+    public static boolean selected(JsonObject config) {
+        return "jdbc".equals(config.getString("TRANSFER_ENGINE", "jdbc"))
+                && "off-heap".equals(config.getJsonObject("STORAGE", new JsonObject()).getString("TYPE", "jdbc"));
+    }
+
+    private static int capacityFor(int maxAccounts) {
+        if (maxAccounts <= 0 || maxAccounts > 1 << 28) {
+            throw new IllegalArgumentException("An account table holds from 1 to 2^28 accounts");
+        }
+        return Integer.highestOneBit(Math.max(maxAccounts * 2 - 1, 1)) << 1;
+    }
+
+    private static int segmentCount(int capacity) {
+        return Math.max(capacity >>> SEGMENT_SHIFT, 1);
+    }
+
+    private static int segmentBytes(int capacity) {
+        return Math.min(capacity, 1 << SEGMENT_SHIFT) * SLOT_BYTES;
+    }
+
+    private static ByteBuffer newHeader(ByteBuffer header, int capacity) {
+        header.putLong(0, MAGIC).putLong(8, capacity).putLong(16, 0).putLong(CHECKPOINT, 0);
+        return header;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Reads the balance of an account.
+     *
+     * @param msb most significant bits of the account id
+     * @param lsb least significant bits of the account id
+     * @return the balance in minor units, or {@link #NOT_FOUND} if the account does not exist
+     */
+    public synchronized long balance(long msb, long lsb) {
+        int slot = find(msb, lsb);
+        return slot < 0 ? NOT_FOUND : segment(slot).getLong(offset(slot) + BALANCE);
+    }
+
+    /**
+     * Creates an account, or sets its balance if it already exists.
+     *
+     * @param msb most significant bits of the account id
+     * @param lsb least significant bits of the account id
+     * @param balance the balance in minor units
+     * @throws IllegalStateException if the table is full
+     */
+    public synchronized void put(long msb, long lsb, long balance) {
+        int slot = probe(msb, lsb);
+        ByteBuffer segment = segment(slot);
+        int offset = offset(slot);
+        if (segment.getLong(offset + STATE) == FREE) {
+            if (size >= capacity / 2) {
+                throw new IllegalStateException("The account table is full");
+            }
+            segment.putLong(offset + MSB, msb).putLong(offset + LSB, lsb).putLong(offset + STATE, LOADED);
+            if (size > 0 && compare(msb, lsb, index.get(size - 1)) < 0) {
+                sorted = false;
+            }
+            index.put(size, slot);
+            header.putLong(16, ++size);
+        }
+        segment.putLong(offset + BALANCE, balance);
+    }
+
+    /**
+     * Moves an amount from an account to another one, if both exist and the sender has enough money.
+     *
+     * @return {@link #TRANSFERRED}, {@link #UNKNOWN_SENDER}, {@link #UNKNOWN_RECEIVER} or {@link #INSUFFICIENT_FUNDS}
+     */
+    public synchronized int transfer(long fromMsb, long fromLsb, long toMsb, long toLsb, long amount) {
+        int from = find(fromMsb, fromLsb);
+        if (from < 0) {
+            return UNKNOWN_SENDER;
+        }
+        int to = find(toMsb, toLsb);
+        if (to < 0) {
+            return UNKNOWN_RECEIVER;
+        }
+        ByteBuffer sender = segment(from);
+        long senderBalance = sender.getLong(offset(from) + BALANCE);
+        if (senderBalance < amount) {
+            return INSUFFICIENT_FUNDS;
+        }
+        sender.putLong(offset(from) + BALANCE, senderBalance - amount);
+        ByteBuffer receiver = segment(to);
+        receiver.putLong(offset(to) + BALANCE, receiver.getLong(offset(to) + BALANCE) + amount);
+        return TRANSFERRED;
+    }
+
+    /**
+     * Takes an amount from an account to transfer it to another one, if both exist and the sender has enough money.
+     * The receiver is left unchanged until it is {@link #credit credited}.
+     *
+     * @return {@link #TRANSFERRED}, {@link #UNKNOWN_SENDER}, {@link #UNKNOWN_RECEIVER} or {@link #INSUFFICIENT_FUNDS}
+     */
+    public synchronized int debit(long fromMsb, long fromLsb, long toMsb, long toLsb, long amount) {
+        int from = find(fromMsb, fromLsb);
+        if (from < 0) {
+            return UNKNOWN_SENDER;
+        }
+        if (find(toMsb, toLsb) < 0) {
+            return UNKNOWN_RECEIVER;
+        }
+        ByteBuffer sender = segment(from);
+        long senderBalance = sender.getLong(offset(from) + BALANCE);
+        if (senderBalance < amount) {
+            return INSUFFICIENT_FUNDS;
+        }
+        sender.putLong(offset(from) + BALANCE, senderBalance - amount);
+        return TRANSFERRED;
+    }
+
+    /**
+     * Adds an amount to an account. Accounts are never removed, so an account found once can always be credited.
+     *
+     * @param msb most significant bits of the account id
+     * @param lsb least significant bits of the account id
+     * @param amount the amount in minor units
+     * @return the new balance, or {@link #NOT_FOUND} if the account does not exist
+     */
+    public synchronized long credit(long msb, long lsb, long amount) {
+        int slot = find(msb, lsb);
+        if (slot < 0) {
+            return NOT_FOUND;
+        }
+        ByteBuffer account = segment(slot);
+        long balance = account.getLong(offset(slot) + BALANCE) + amount;
+        account.putLong(offset(slot) + BALANCE, balance);
+        return balance;
+    }
+
+    /**
+     * Reserves an amount on an account to transfer it to another one, if both exist and the sender has enough money
+     * besides what is already reserved on it. Neither balance changes until the transfer is {@link #settle settled},
+     * or the amount {@link #release released}.
+     *
+     * @return {@link #TRANSFERRED}, {@link #UNKNOWN_SENDER}, {@link #UNKNOWN_RECEIVER} or {@link #INSUFFICIENT_FUNDS}
+     */
+    public synchronized int reserve(long fromMsb, long fromLsb, long toMsb, long toLsb, long amount) {
+        int from = find(fromMsb, fromLsb);
+        if (from < 0) {
+            return UNKNOWN_SENDER;
+        }
+        if (find(toMsb, toLsb) < 0) {
+            return UNKNOWN_RECEIVER;
+        }
+        long pending = reserved.getOrDefault(from, 0L);
+        if (segment(from).getLong(offset(from) + BALANCE) - pending < amount) {
+            return INSUFFICIENT_FUNDS;
+        }
+        reserved.put(from, pending + amount);
+        return TRANSFERRED;
+    }
+
+    /**
+     * Gives back an amount {@link #reserve reserved} for a transfer which did not happen.
+     *
+     * @param msb most significant bits of the sender id
+     * @param lsb least significant bits of the sender id
+     * @param amount the amount in minor units
+     */
+    public synchronized void release(long msb, long lsb, long amount) {
+        unreserve(find(msb, lsb), amount);
+    }
+
+    /**
+     * Moves an amount {@link #reserve reserved} for a transfer from the sender to the receiver, and stamps both
+     * accounts with the journal position of the transfer. Transfers are settled in the order of their positions.
+     *
+     * @param position the journal position of the transfer
+     */
+    public synchronized void settle(long fromMsb, long fromLsb, long toMsb, long toLsb, long amount, long position) {
+        int from = find(fromMsb, fromLsb);
+        int to = find(toMsb, toLsb);
+        unreserve(from, amount);
+        apply(from, -amount, position);
+        apply(to, amount, position);
+    }
+
+    /**
+     * Applies a journaled transfer again, to each account whose state shows it has not been applied to yet.
+     *
+     * @param position the journal position of the transfer
+     * @return {@link #TRANSFERRED}, {@link #UNKNOWN_SENDER}, {@link #UNKNOWN_RECEIVER} or {@link #INSUFFICIENT_FUNDS},
+     * in which case neither account changes
+     */
+    public synchronized int replay(long fromMsb, long fromLsb, long toMsb, long toLsb, long amount, long position) {
+        int from = find(fromMsb, fromLsb);
+        if (from < 0) {
+            return UNKNOWN_SENDER;
+        }
+        int to = find(toMsb, toLsb);
+        if (to < 0) {
+            return UNKNOWN_RECEIVER;
+        }
+        ByteBuffer sender = segment(from);
+        boolean debited = sender.getLong(offset(from) + STATE) >= position;
+        boolean credited = segment(to).getLong(offset(to) + STATE) >= position;
+        if (!debited && sender.getLong(offset(from) + BALANCE) < amount) {
+            return INSUFFICIENT_FUNDS;
+        }
+        if (!debited) {
+            apply(from, -amount, position);
+        }
+        if (!credited) {
+            apply(to, amount, position);
+        }
+        return TRANSFERRED;
+    }
+
+    private void unreserve(int slot, long amount) {
+        long pending = reserved.getOrDefault(slot, 0L) - amount;
+        if (pending > 0) {
+            reserved.put(slot, pending);
+        } else {
+            reserved.remove(slot);
+        }
+    }
+
+    private void apply(int slot, long amount, long position) {
+        ByteBuffer account = segment(slot);
+        int offset = offset(slot);
+        account.putLong(offset + BALANCE, account.getLong(offset + BALANCE) + amount).putLong(offset + STATE, position);
+    }
+
+    /**
+     * Copies the accounts following a given id, in {@link java.util.UUID#compareTo(java.util.UUID) id order}: a
+     * binary search of the index followed by a copy of the page, unless accounts were created out of order since the
+     * previous page, in which case the index is sorted first.
+     *
+     * @param afterMsb most significant bits of the id to start after
+     * @param afterLsb least significant bits of the id to start after
+     * @param first whether to start from the first account, ignoring the id to start after
+     * @param page where to copy the ids and balances of the accounts, three longs per account
+     * @return the number of accounts copied, at most a third of the page length
+     */
+    public synchronized int page(long afterMsb, long afterLsb, boolean first, long[] page) {
+        if (!sorted) {
+            sortIndex();
+        }
+        int low = 0;
+        int high = size;
+        while (!first && low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(afterMsb, afterLsb, index.get(middle)) < 0) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        int count = Math.min(page.length / 3, size - low);
+        for (int i = 0; i < count; i++) {
+            int slot = index.get(low + i);
+            ByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            page[3 * i] = segment.getLong(offset + MSB);
+            page[3 * i + 1] = segment.getLong(offset + LSB);
+            page[3 * i + 2] = segment.getLong(offset + BALANCE);
+        }
+        return count;
+    }
+
+    /**
+     * Sorts the index by id, in place with a heap sort, so sorting needs no memory besides the index itself.
+     */
+    private void sortIndex() {
+        for (int root = size / 2 - 1; root >= 0; root--) {
+            siftDown(root, size);
+        }
+        for (int end = size - 1; end > 0; end--) {
+            int largest = index.get(0);
+            index.put(0, index.get(end));
+            index.put(end, largest);
+            siftDown(0, end);
+        }
+        sorted = true;
+    }
+
+    private void siftDown(int root, int end) {
+        int slot = index.get(root);
+        while (2 * root + 1 < end) {
+            int child = 2 * root + 1;
+            if (child + 1 < end && compareSlots(index.get(child + 1), index.get(child)) > 0) {
+                child++;
+            }
+            if (compareSlots(index.get(child), slot) <= 0) {
+                break;
+            }
+            index.put(root, index.get(child));
+            root = child;
+        }
+        index.put(root, slot);
+    }
+
+    /**
+     * Forces the balances of a mapped table to its file.
+     */
+    public synchronized void flush() {
+        if (header instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) header).force();
+            for (ByteBuffer segment : segments) {
+                ((MappedByteBuffer) segment).force();
+            }
+        }
+    }
+
+    /**
+     * Forces the balances of a mapped table to its file, then records that they hold every journaled transfer before a
+     * position. The balances are forced without holding the table, so transfers following the position may be forced
+     * too: replaying them is idempotent.
+     *
+     * @param position the journal position every transfer before which is settled
+     */
+    public void checkpoint(long position) {
+        if (!(header instanceof MappedByteBuffer)) {
+            return;
+        }
+        for (ByteBuffer segment : segments) {
+            ((MappedByteBuffer) segment).force();
+        }
+        synchronized (this) {
+            header.putLong(CHECKPOINT, position);
+            ((MappedByteBuffer) header).force();
+        }
+    }
+
+    /**
+     * Gets the journal position of the last {@link #checkpoint checkpoint}, from which to replay the journal.
+     *
+     * @return the position, 0 if the table was never checkpointed
+     */
+    public synchronized long getCheckpoint() {
+        return header.getLong(CHECKPOINT);
+    }
+
+    /**
+     * Finds the slot of an account.
+     *
+     * @return the slot, or -1 if the account does not exist
+     */
+    private int find(long msb, long lsb) {
+        int slot = probe(msb, lsb);
+        return segment(slot).getLong(offset(slot) + STATE) != FREE ? slot : -1;
+    }
+
+    /**
+     * Probes for the slot of an account, which is either the slot holding it or the free slot it would go to.
+     */
+    private int probe(long msb, long lsb) {
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            ByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            if (segment.getLong(offset + STATE) == FREE
+                    || segment.getLong(offset + MSB) == msb && segment.getLong(offset + LSB) == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private ByteBuffer segment(int slot) {
+        return segments[slot >>> segmentShift];
+    }
+
+    private int offset(int slot) {
+        return (slot & segmentMask) * SLOT_BYTES;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int compare(long msb, long lsb, int slot) {
+        ByteBuffer segment = segment(slot);
+        int offset = offset(slot);
+        return compare(msb, lsb, segment.getLong(offset + MSB), segment.getLong(offset + LSB));
+    }
+
+    private int compareSlots(int slot, int otherSlot) {
+        ByteBuffer segment = segment(slot);
+        int offset = offset(slot);
+        return compare(segment.getLong(offset + MSB), segment.getLong(offset + LSB), otherSlot);
+    }
+
+    private static int compare(long msb, long lsb, long otherMsb, long otherLsb) {
+        int byMsb = Long.compare(msb, otherMsb);
+        return byMsb != 0 ? byMsb : Long.compare(lsb, otherLsb);
+    }
+}
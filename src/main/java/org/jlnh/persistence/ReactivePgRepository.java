@@ -0,0 +1,316 @@
+package org.jlnh.persistence;
+
+import io.reactiverse.pgclient.PgClient;
+import io.reactiverse.pgclient.PgConnection;
+import io.reactiverse.pgclient.PgPool;
+import io.reactiverse.pgclient.PgPoolOptions;
+import io.reactiverse.pgclient.PgPreparedQuery;
+import io.reactiverse.pgclient.PgRowSet;
+import io.reactiverse.pgclient.Row;
+import io.reactiverse.pgclient.Tuple;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.h2.tools.Server;
+import org.jlnh.metrics.LatencyHistogram;
+import org.jlnh.metrics.Metrics;
+import org.jlnh.model.Account;
+import org.jlnh.model.Money;
+import org.jlnh.model.Transaction;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static org.jlnh.util.ActionHelper.COULD_NOT_TRANSFER_MONEY;
+
+/**
+ * Accounts and transactions kept in the {@code account} and {@code transaction} tables, through the reactive
+ * PostgreSQL client instead of the JDBC one: queries are written to the database connection by the event loop and
+ * their results read back by it, so no thread is held while a query runs.
+ * <p>
+ * Each verticle instance has its own pool of {@code REACTIVE_PG.maxSize} connections, configured by the
+ * {@link PgPoolOptions} of {@code REACTIVE_PG}, and every statement is prepared once per connection. A transfer sends
+ * its statements without waiting for the previous ones to complete: the transaction start and both conditional
+ * balance updates, then once the updates are known to apply, the insert of the transaction and the read of the new
+ * balances, then once both succeeded the commit, i.e. three round trips where the JDBC client takes six. The commit
+ * waits for the insert because a server which does not abort a transaction on a failed statement, like the one of H2,
+ * would otherwise commit the balance updates of a transfer which could not be recorded.
+ * <p>
+ * The schema, the history and the idempotency keys stay on the JDBC client, so the pool is meant to reach the same
+ * database: with {@code REACTIVE_PG.EMBEDDED_SERVER} the PostgreSQL server of H2 is started on
+ * {@code REACTIVE_PG.port} in front of the JDBC database, which needs no PostgreSQL installation. Parameters are
+ * bound with the types H2 describes for them: text, except the amount of an inserted transaction.
+ */
+public class ReactivePgRepository implements AccountRepository, TransactionRepository {
+
+    private static final Logger LOGGER = LogManager.getLogger(ReactivePgRepository.class);
+
+    private static final String SELECT_ACCOUNT = "SELECT " + Account.COLUMNS + " FROM account WHERE id = $1";
+    private static final String SELECT_FIRST_PAGE = "SELECT " + Account.COLUMNS + " FROM account ORDER BY id LIMIT $1";
+    private static final String SELECT_PAGE = "SELECT " + Account.COLUMNS + " FROM account WHERE id > $1 ORDER BY id LIMIT $2";
+    private static final String UPDATE_BALANCE = "UPDATE account SET balance = balance + $1 WHERE id = $2 AND balance + $1 >= 0";
+    private static final String INSERT_TRANSACTION = "INSERT INTO transaction (id, \"from\", to, amount, created_at) VALUES($1, $2, $3, $4, CAST($5 AS TIMESTAMP))";
+    private static final String SELECT_BALANCES = "SELECT " + Account.COLUMNS + " FROM account WHERE id IN ($1, $2)";
+
+    private final PgPool pool;
+    private final Metrics metrics;
+    private final LatencyHistogram selectAccountTimer;
+    private final LatencyHistogram selectAccountPageTimer;
+    private final LatencyHistogram insertTransactionTimer;
+    private final LatencyHistogram updateBalancesTimer;
+    private final LatencyHistogram selectBalancesTimer;
+
+    /**
+     * Creates the repository and its pool, bound to the event loop of the calling verticle.
+     *
+     * @param vertx the vertx instance
+     * @param config the {@code REACTIVE_PG} configuration
+     * @param metrics the metrics, recording the statements as the JDBC repository does
+     */
+    public ReactivePgRepository(Vertx vertx, JsonObject config, Metrics metrics) {
+        this.pool = PgClient.pool(vertx, new PgPoolOptions(config));
+        this.metrics = metrics;
+        this.selectAccountTimer = metrics.statement("select_account");
+        this.selectAccountPageTimer = metrics.statement("select_account_page");
+        this.insertTransactionTimer = metrics.statement("insert_transaction");
+        this.updateBalancesTimer = metrics.statement("update_balances");
+        this.selectBalancesTimer = metrics.statement("select_balances");
+    }
+
+    /**
+     * Whether the configuration selects the reactive client: the {@code jdbc} transfer engine with the
+     * {@code reactive-pg} storage.
+     *
+     * @param config the application configuration
+     * @return true if transfers go through a {@link ReactivePgRepository}
+     */
+    public static boolean selected(JsonObject config) {
+        return "jdbc".equals(config.getString("TRANSFER_ENGINE", "jdbc"))
+                && "reactive-pg".equals(config.getJsonObject("STORAGE", new JsonObject()).getString("TYPE", "jdbc"));
+    }
+
+    /**
+     * Starts the {@link EmbeddedPgServer PostgreSQL server of H2} if {@code REACTIVE_PG.EMBEDDED_SERVER} is set,
+     * serving the databases of this JVM until the calling verticle is undeployed.
+     *
+     * @param vertx the vertx instance
+     * @param config the {@code REACTIVE_PG} configuration
+     * @return future empty result, completed once the server listens
+     */
+    public static Future<Void> startEmbeddedServer(Vertx vertx, JsonObject config) {
+        if (!config.getBoolean("EMBEDDED_SERVER", false)) {
+            return Future.succeededFuture();
+        }
+        Future<Server> started = Future.future();
+        vertx.executeBlocking(future -> {
+            try {
+                future.complete(new Server(new EmbeddedPgServer(), "-pgPort", String.valueOf(config.getInteger("port"))).start());
+            } catch (Exception e) {
+                future.fail(e);
+            }
+        }, started);
+        return started.map(server -> {
+            LOGGER.info("Embedded PostgreSQL server listening on port {}", server.getPort());
+            vertx.getOrCreateContext().addCloseHook(closed -> {
+                server.stop();
+                closed.handle(Future.succeededFuture());
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Closes the pool and its connections.
+     */
+    public void close() {
+        pool.close();
+    }
+
+    @Override
+    public Future<Account> findAccount(UUID id) {
+        return findAccount(pool, id);
+    }
+
+    @Override
+    public Future<List<Account>> findAccounts(UUID after, int limit) {
+        Future<PgRowSet> future = Future.future();
+        long start = System.nanoTime();
+        pool.preparedQuery(after == null ? SELECT_FIRST_PAGE : SELECT_PAGE, //
+                after == null ? Tuple.of(String.valueOf(limit)) : Tuple.of(after.toString(), String.valueOf(limit)), result -> {
+                    selectAccountPageTimer.recordSince(start);
+                    future.handle(result);
+                });
+        return future.map(rows -> {
+            List<Account> accounts = new ArrayList<>(rows.size());
+            rows.forEach(row -> accounts.add(accountOf(row)));
+            return accounts;
+        });
+    }
+
+    @Override
+    public Future<Transaction> transfer(UUID id, UUID from, UUID to, long amount) {
+        return connect().compose(connection -> {
+            Future<Transaction> future = Future.future();
+            prepareTransfer(connection) //
+                    .compose(statements -> transfer(connection, statements, id, from, to, amount)) //
+                    .recover(failure -> query(connection, "ROLLBACK").otherwiseEmpty().compose(v -> Future.failedFuture(failure))) //
+                    .setHandler(result -> {
+                        connection.close();
+                        future.handle(result);
+                    });
+            return future;
+        });
+    }
+
+    @Override
+    public Future<Void> save(Transaction transaction) {
+        Future<PgRowSet> future = Future.future();
+        long start = System.nanoTime();
+        pool.preparedQuery(INSERT_TRANSACTION, Tuple.of(transaction.getId().toString(),
+                transaction.getFrom().getId().toString(), transaction.getTo().getId().toString(),
+                Money.toBigDecimal(transaction.getAmountUnits()), timestamp(transaction.getCreatedAtMillis())), result -> {
+            insertTransactionTimer.recordSince(start);
+            future.handle(result);
+        });
+        return future.mapEmpty();
+    }
+
+    /**
+     * Transfers an amount on a connection, without rolling back if it fails.
+     *
+     * @param connection the connection
+     * @param statements the {@link #prepareTransfer(PgConnection) statements} prepared on the connection
+     * @param id id of the transaction, generated if null
+     * @param from id of the account that is sending the amount
+     * @param to id of the account that is receiving the amount
+     * @param amount the amount itself, in {@link Money minor units}
+     * @return future committed transaction, failed as {@link #transfer(UUID, UUID, UUID, long)}
+     */
+    private Future<Transaction> transfer(PgConnection connection, PgPreparedQuery[] statements, UUID id, UUID from,
+                                         UUID to, long amount) {
+        Future<Void> begun = query(connection, "BEGIN");
+        long updateStart = System.nanoTime();
+        Future<PgRowSet> debited = execute(statements[0], Tuple.of(Money.toPlainString(-amount), from.toString()), //
+                updateBalancesTimer, updateStart);
+        Future<PgRowSet> credited = execute(statements[0], Tuple.of(Money.toPlainString(amount), to.toString()), //
+                updateBalancesTimer, updateStart);
+
+        UUID transactionUuid = id != null ? id : UUID.randomUUID();
+        long createdAt = System.currentTimeMillis();
+        return CompositeFuture.all(begun, debited, credited).compose(updated -> {
+            if (debited.result().rowCount() == 0) {
+                return findAccount(connection, from)
+                        .compose(sender -> Future.failedFuture(new IllegalStateException(COULD_NOT_TRANSFER_MONEY)));
+            } else if (credited.result().rowCount() == 0) {
+                return Future.failedFuture(new NoSuchElementException("Account " + to + " not found"));
+            }
+            long insertStart = System.nanoTime();
+            Future<PgRowSet> inserted = execute(statements[1], //
+                    Tuple.of(transactionUuid.toString(), from.toString(), to.toString(), Money.toBigDecimal(amount),
+                            timestamp(createdAt)), //
+                    insertTransactionTimer, insertStart);
+            Future<PgRowSet> balances = execute(statements[2], Tuple.of(from.toString(), to.toString()), //
+                    selectBalancesTimer, insertStart);
+            return CompositeFuture.all(inserted, balances).compose(recorded -> query(connection, "COMMIT")).map(done -> {
+                Account sender = null;
+                Account receiver = null;
+                for (Row row : balances.result()) {
+                    Account account = accountOf(row);
+                    if (account.getId().equals(from)) {
+                        sender = account;
+                    } else {
+                        receiver = account;
+                    }
+                }
+                Transaction transaction = new Transaction(transactionUuid, sender, receiver, amount);
+                transaction.setCreatedAtMillis(createdAt);
+                return transaction;
+            });
+        });
+    }
+
+    private Future<Account> findAccount(PgClient client, UUID id) {
+        Future<PgRowSet> future = Future.future();
+        long start = System.nanoTime();
+        client.preparedQuery(SELECT_ACCOUNT, Tuple.of(id.toString()), result -> {
+            selectAccountTimer.recordSince(start);
+            future.handle(result);
+        });
+        return future.compose(rows -> rows.size() == 0 //
+                ? Future.failedFuture(new NoSuchElementException("Account " + id + " not found")) //
+                : Future.succeededFuture(accountOf(rows.iterator().next())));
+    }
+
+    /**
+     * Borrows a connection of the pool, recording the wait as the JDBC connection checkouts.
+     */
+    private Future<PgConnection> connect() {
+        Future<PgConnection> future = Future.future();
+        long start = System.nanoTime();
+        metrics.getPendingCheckouts().incrementAndGet();
+        pool.getConnection(result -> {
+            metrics.getPendingCheckouts().decrementAndGet();
+            metrics.getConnectionCheckout().recordSince(start);
+            future.handle(result);
+        });
+        return future;
+    }
+
+    /**
+     * Prepares the statements of a transfer on a connection, or gets them from its cache once they were: the
+     * statements of a transfer are only sent together once they are all prepared, as a statement still waiting to be
+     * prepared would be sent after the ones following it.
+     *
+     * @return the balance update, the transaction insert and the balances select
+     */
+    private Future<PgPreparedQuery[]> prepareTransfer(PgConnection connection) {
+        Future<PgPreparedQuery> update = prepare(connection, UPDATE_BALANCE);
+        Future<PgPreparedQuery> insert = prepare(connection, INSERT_TRANSACTION);
+        Future<PgPreparedQuery> select = prepare(connection, SELECT_BALANCES);
+        return CompositeFuture.all(update, insert, select) //
+                .map(prepared -> new PgPreparedQuery[] {update.result(), insert.result(), select.result()});
+    }
+
+    /**
+     * Formats a timestamp as the local date and time the JDBC driver writes for it, so that rows read back through
+     * either client agree.
+     */
+    private static String timestamp(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()).toString();
+    }
+
+    private static Future<PgPreparedQuery> prepare(PgConnection connection, String sql) {
+        Future<PgPreparedQuery> future = Future.future();
+        connection.prepare(sql, future);
+        return future;
+    }
+
+    private static Future<PgRowSet> execute(PgPreparedQuery statement, Tuple params, LatencyHistogram timer, long start) {
+        Future<PgRowSet> future = Future.future();
+        statement.execute(params, result -> {
+            timer.recordSince(start);
+            future.handle(result);
+        });
+        return future;
+    }
+
+    private static Future<Void> query(PgConnection connection, String sql) {
+        Future<PgRowSet> future = Future.future();
+        connection.query(sql, future);
+        return future.mapEmpty();
+    }
+
+    private static Account accountOf(Row row) {
+        Object id = row.getValue(0);
+        return new Account(id instanceof UUID ? (UUID) id : UUID.fromString(id.toString()),
+                ((Number) row.getValue(1)).longValue());
+    }
+}
@@ -0,0 +1,229 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.json.JsonObject;
+import org.jlnh.model.Money;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of the {@code account} and {@code transaction} tables, to start a node holding millions of accounts
+ * in seconds rather than replaying them as SQL.
+ * <p>
+ * A snapshot is a header (magic number and format version), the number of accounts followed by one fixed-width
+ * {@value #ACCOUNT_BYTES} bytes record per account (id, balance in minor units), the number of transactions followed
+ * by one {@value #TRANSACTION_BYTES} bytes record per transaction (id, sender, receiver, amount in minor units, commit
+ * timestamp), and the CRC32 of all of the above. Both tables are read in a single repeatable read transaction, so the
+ * snapshot is consistent, and written to a temporary file which then replaces the previous snapshot, so a crash while
+ * writing never leaves a torn one. Rows are written in primary key order, so restoring them with batched prepared
+ * inserts, once the checksum is verified, only ever appends to the primary key indexes.
+ */
+public class Snapshot {
+
+    static final int ACCOUNT_BYTES = 24;
+    static final int TRANSACTION_BYTES = 64;
+
+    private static final long MAGIC = 0x6A6C6E68736E6170L;
+    private static final int VERSION = 1;
+
+    private static final String INSERT_ACCOUNT = "INSERT INTO account (id, balance) VALUES (?, ?)";
+    private static final String INSERT_TRANSACTION = "INSERT INTO transaction (id, \"from\", to, amount, created_at) VALUES (?, ?, ?, ?, ?)";
+
+    private Snapshot() {
+    }
+
+    /**
+     * Whether snapshots are enabled: when {@code SNAPSHOT.FILE} is set.
+     *
+     * @param config {@link JsonObject} with the application configuration
+     * @return true to restore the snapshot on startup and write one periodically
+     */
+    public static boolean selected(JsonObject config) {
+        return !config.getJsonObject("SNAPSHOT", new JsonObject()).getString("FILE", "").isEmpty();
+    }
+
+    /**
+     * Writes a snapshot of the database, replacing the previous one. Blocks until it is written.
+     *
+     * @param connection database connection, left open
+     * @param file the snapshot file
+     * @return the number of accounts and the number of transactions written
+     * @throws SQLException if the tables cannot be read
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static long[] write(Connection connection, Path file) throws SQLException, IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        boolean autoCommit = connection.getAutoCommit();
+        int isolation = connection.getTransactionIsolation();
+        connection.setAutoCommit(false);
+        connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        long[] counts = new long[2];
+        CRC32 crc = new CRC32();
+        try (Statement statement = connection.createStatement();
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                     new CheckedOutputStream(Files.newOutputStream(temporary), crc), 1 << 16))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+
+            counts[0] = count(statement, "SELECT COUNT(*) FROM account");
+            out.writeLong(counts[0]);
+            try (ResultSet rows = statement.executeQuery("SELECT id, " + Money.UNITS_OF_BALANCE + " FROM account ORDER BY id")) {
+                for (long row = 0; row < counts[0] && rows.next(); row++) {
+                    writeUuid(out, rows.getObject(1, UUID.class));
+                    out.writeLong(rows.getLong(2));
+                }
+            }
+
+            counts[1] = count(statement, "SELECT COUNT(*) FROM transaction");
+            out.writeLong(counts[1]);
+            try (ResultSet rows = statement.executeQuery("SELECT id, \"from\", to, " + Money.UNITS_OF_AMOUNT
+                    + ", created_at FROM transaction ORDER BY id")) {
+                for (long row = 0; row < counts[1] && rows.next(); row++) {
+                    writeUuid(out, rows.getObject(1, UUID.class));
+                    writeUuid(out, rows.getObject(2, UUID.class));
+                    writeUuid(out, rows.getObject(3, UUID.class));
+                    out.writeLong(rows.getLong(4));
+                    out.writeLong(rows.getTimestamp(5).getTime());
+                }
+            }
+            out.flush();
+            out.writeInt((int) crc.getValue());
+        } finally {
+            connection.commit();
+            connection.setTransactionIsolation(isolation);
+            connection.setAutoCommit(autoCommit);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return counts;
+    }
+
+    /**
+     * Replaces the accounts and transactions of the database with the ones of a snapshot, committing every
+     * {@code batchSize} rows. Blocks until they are inserted.
+     *
+     * @param connection database connection, left open
+     * @param file the snapshot file
+     * @param batchSize the number of rows inserted per batch
+     * @return the number of accounts and the number of transactions restored
+     * @throws SQLException if the rows cannot be inserted
+     * @throws IOException if the snapshot cannot be read, or is not a valid snapshot
+     */
+    public static long[] restore(Connection connection, Path file, int batchSize) throws SQLException, IOException {
+        verify(file);
+        boolean autoCommit = connection.getAutoCommit();
+        long[] counts = new long[2];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+             Statement statement = connection.createStatement();
+             PreparedStatement insertAccount = connection.prepareStatement(INSERT_ACCOUNT);
+             PreparedStatement insertTransaction = connection.prepareStatement(INSERT_TRANSACTION)) {
+            connection.setAutoCommit(false);
+            in.readLong();
+            in.readInt();
+            statement.executeUpdate("DELETE FROM transaction");
+            statement.executeUpdate("DELETE FROM account");
+
+            counts[0] = in.readLong();
+            for (long row = 1; row <= counts[0]; row++) {
+                insertAccount.setObject(1, readUuid(in));
+                insertAccount.setBigDecimal(2, Money.toBigDecimal(in.readLong()));
+                insertAccount.addBatch();
+                if (row % batchSize == 0 || row == counts[0]) {
+                    insertAccount.executeBatch();
+                    connection.commit();
+                }
+            }
+
+            counts[1] = in.readLong();
+            for (long row = 1; row <= counts[1]; row++) {
+                insertTransaction.setObject(1, readUuid(in));
+                insertTransaction.setObject(2, readUuid(in));
+                insertTransaction.setObject(3, readUuid(in));
+                insertTransaction.setBigDecimal(4, Money.toBigDecimal(in.readLong()));
+                insertTransaction.setTimestamp(5, new Timestamp(in.readLong()));
+                insertTransaction.addBatch();
+                if (row % batchSize == 0 || row == counts[1]) {
+                    insertTransaction.executeBatch();
+                    connection.commit();
+                }
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return counts;
+    }
+
+    /**
+     * Checks the magic number, version, length and checksum of a snapshot before anything is deleted.
+     */
+    private static void verify(Path file) throws IOException {
+        long size = Files.size(file);
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16), crc))) {
+            if (size < 32 || in.readLong() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a snapshot");
+            }
+            long accounts = in.readLong();
+            skip(in, accounts * ACCOUNT_BYTES);
+            long transactions = in.readLong();
+            if (size != 32 + accounts * ACCOUNT_BYTES + transactions * TRANSACTION_BYTES) {
+                throw new IOException(file + " is truncated");
+            }
+            skip(in, transactions * TRANSACTION_BYTES);
+            int expected = (int) crc.getValue();
+            if (expected != in.readInt()) {
+                throw new IOException(file + " is corrupted");
+            }
+        }
+    }
+
+    private static void skip(InputStream in, long bytes) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        while (bytes > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, bytes));
+            if (read < 0) {
+                throw new IOException("Unexpected end of snapshot");
+            }
+            bytes -= read;
+        }
+    }
+
+    private static long count(Statement statement, String sql) throws SQLException {
+        try (ResultSet count = statement.executeQuery(sql)) {
+            count.next();
+            return count.getLong(1);
+        }
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+}
@@ -0,0 +1,578 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the committed transfers, written to memory-mapped segment files and shared by every
+ * verticle instance of the JVM.
+ * <p>
+ * Every transfer is a fixed-width {@value #RECORD_BYTES} bytes record (id, sender, receiver, amount in minor units,
+ * timestamp, checksum), copied into the mapped segment, so an append costs no system call and survives a crash of the
+ * process as soon as it returns. Surviving a crash of the machine takes forcing the segment to the disk: appends are
+ * only acknowledged once forced, by a sync every {@code FSYNC_INTERVAL_MS} or as soon as {@code FSYNC_BATCH} records
+ * are waiting, so one fsync covers a whole batch of transfers. With an interval of 0, appends are acknowledged right
+ * away and the operating system writes the pages back on its own.
+ * <p>
+ * If a sync fails, the appends it covered are failed rather than left waiting: their records are marked as cancelled
+ * first, and their segments are forced again by the next sync, so a transfer which was failed is never replayed.
+ * <p>
+ * A transfer between accounts of an {@link OffHeapAccountTable} is only {@link OffHeapAccountTable#settle settled}
+ * in the table once acknowledged, in the order of the records, so the table never holds a transfer the journal could
+ * lose. Every record has a position, growing with every append, up to which the table can be {@link
+ * OffHeapAccountTable#checkpoint checkpointed}; the segments before a checkpoint can then be {@link #discardBefore
+ * discarded}.
+ * <p>
+ * A segment is rolled once {@code SEGMENT_BYTES} are written. On startup, the segments are {@link #replay read back}
+ * up to the first torn or empty record of each, skipping the cancelled ones, and appends resume after the last valid
+ * record.
+ */
+public class TransactionJournal implements TransactionRepository, Shareable {
+
+    private static final Logger LOGGER = LogManager.getLogger(TransactionJournal.class);
+
+    static final int RECORD_BYTES = 72;
+    private static final int CHECKSUM = 64;
+    private static final int MARKER = 68;
+    private static final int RECORD_MARKER = 0x4A524E4C;
+    private static final int CANCELLED_MARKER = 0x4A524E43;
+
+    private static final int HEADER_BYTES = 16;
+    private static final long MAGIC = 0x6A6C6E686A726E6CL;
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    private static final String SHARED_MAP = "transaction-journal";
+    private static final String INSTANCE = "instance";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int fsyncBatch;
+    private final Consumer<MappedByteBuffer> force;
+    private final CRC32 crc = new CRC32();
+
+    private final List<MappedByteBuffer> unforced = new ArrayList<>();
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private final AtomicBoolean syncing = new AtomicBoolean();
+
+    private Vertx vertx;
+    private boolean acknowledgeOnSync;
+    private int segmentNumber;
+    private MappedByteBuffer segment;
+    private int position;
+    private long appended;
+    private long synced;
+
+    private TransactionJournal(Path directory, int segmentBytes, int fsyncBatch, Consumer<MappedByteBuffer> force) {
+        this.directory = directory;
+        this.segmentBytes = HEADER_BYTES + (segmentBytes - HEADER_BYTES) / RECORD_BYTES * RECORD_BYTES;
+        this.fsyncBatch = fsyncBatch;
+        this.force = force;
+    }
+
+    /**
+     * Opens the journal of a directory, creating the directory if needed, and positions it after its last valid
+     * record.
+     *
+     * @param directory the directory of the segment files
+     * @param segmentBytes the size of the new segments, rounded down to a whole number of records
+     * @param fsyncBatch the number of waiting appends which triggers a sync
+     * @return the journal, acknowledging appends right away until it is {@link #syncEvery synced} periodically
+     * @throws IOException if the segments cannot be read or mapped
+     */
+    public static TransactionJournal open(Path directory, int segmentBytes, int fsyncBatch) throws IOException {
+        return open(directory, segmentBytes, fsyncBatch, MappedByteBuffer::force);
+    }
+
+    /**
+     * Opens the journal of a directory, forcing its segments to the disk with a given function.
+     *
+     * @param directory the directory of the segment files
+     * @param segmentBytes the size of the new segments, rounded down to a whole number of records
+     * @param fsyncBatch the number of waiting appends which triggers a sync
+     * @param force forces a segment to the disk, throwing an {@link UncheckedIOException} if it cannot
+     * @return the journal, acknowledging appends right away until it is {@link #syncEvery synced} periodically
+     * @throws IOException if the segments cannot be read or mapped
+     */
+    public static TransactionJournal open(Path directory, int segmentBytes, int fsyncBatch,
+                                          Consumer<MappedByteBuffer> force) throws IOException {
+        if (segmentBytes < HEADER_BYTES + RECORD_BYTES) {
+            throw new IllegalArgumentException("A journal segment holds at least one record");
+        }
+        Files.createDirectories(directory);
+        TransactionJournal journal = new TransactionJournal(directory, segmentBytes, fsyncBatch, force);
+        List<Path> segments = journal.segments();
+        if (segments.isEmpty()) {
+            journal.roll(0);
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            journal.segmentNumber = numberOf(last);
+            journal.segment = mapSegment(last, Files.size(last));
+            journal.position = validBytes(journal.segment, journal.crc);
+            journal.truncate();
+            journal.unforced.add(journal.segment);
+        }
+        return journal;
+    }
+
+    /**
+     * Gets the journal shared by the whole vertx instance, opening it on first use.
+     *
+     * @param vertx the vertx instance
+     * @param config the {@code JOURNAL} configuration
+     * @return the shared journal
+     */
+    public static synchronized TransactionJournal shared(Vertx vertx, JsonObject config) {
+        LocalMap<String, TransactionJournal> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+        TransactionJournal journal = map.get(INSTANCE);
+        if (journal == null) {
+            try {
+                journal = open(Paths.get(config.getString("DIR")), config.getInteger("SEGMENT_BYTES", 64 * 1024 * 1024),
+                        config.getInteger("FSYNC_BATCH", 256));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            journal.syncEvery(vertx, config.getLong("FSYNC_INTERVAL_MS", 10L));
+            map.put(INSTANCE, journal);
+        }
+        return journal;
+    }
+
+    /**
+     * Whether the off-heap storage records its transfers in a journal rather than in the {@code transaction} table.
+     *
+     * @param config the application configuration
+     * @return true if the off-heap storage is selected and {@code JOURNAL.DIR} is set
+     */
+    public static boolean selected(JsonObject config) {
+        return OffHeapAccountTable.selected(config)
+                && !config.getJsonObject("JOURNAL", new JsonObject()).getString("DIR", "").isEmpty();
+    }
+
+    /**
+     * Starts forcing the journal to the disk periodically, and only acknowledges appends once forced from then on.
+     *
+     * @param vertx the vertx instance running the syncs
+     * @param intervalMs the sync interval, 0 to leave writing back the journal to the operating system
+     */
+    public void syncEvery(Vertx vertx, long intervalMs) {
+        if (intervalMs <= 0) {
+            return;
+        }
+        synchronized (this) {
+            this.vertx = vertx;
+            this.acknowledgeOnSync = true;
+        }
+        vertx.setPeriodic(intervalMs, timer -> requestSync());
+    }
+
+    @Override
+    public Future<Void> save(Transaction transaction) {
+        return save(transaction, null);
+    }
+
+    /**
+     * Appends the record of a transfer {@link OffHeapAccountTable#reserve reserved} in an account table, and settles
+     * it in the table once acknowledged. A transfer which is failed is left to release.
+     *
+     * @param transaction the transfer
+     * @param table the account table, or null if it has nothing to settle
+     * @return Future empty result, completed once the transfer is settled
+     */
+    public Future<Void> save(Transaction transaction, OffHeapAccountTable table) {
+        Future<Void> future = Future.future();
+        boolean full;
+        synchronized (this) {
+            try {
+                append(transaction, transaction.getCreatedAtMillis());
+            } catch (IOException e) {
+                return Future.failedFuture(e);
+            }
+            long at = position(segmentNumber, position - RECORD_BYTES);
+            if (!acknowledgeOnSync) {
+                settle(table, transaction, at);
+                future.complete();
+                return future;
+            }
+            waiters.add(new Waiter(appended, segment, position - RECORD_BYTES, at, transaction, table,
+                    Vertx.currentContext(), future));
+            full = waiters.size() >= fsyncBatch;
+        }
+        if (full) {
+            requestSync();
+        }
+        return future;
+    }
+
+    /**
+     * Copies a record at the end of the journal, rolling the segment if it is full.
+     *
+     * @param transaction the transfer
+     * @param timestamp when it was committed, in milliseconds since the epoch
+     * @throws IOException if the next segment cannot be created
+     */
+    private void append(Transaction transaction, long timestamp) throws IOException {
+        if (position + RECORD_BYTES > segment.capacity()) {
+            roll(segmentNumber + 1);
+        }
+        ByteBuffer record = segment;
+        int at = position;
+        record.putLong(at, transaction.getId().getMostSignificantBits());
+        record.putLong(at + 8, transaction.getId().getLeastSignificantBits());
+        record.putLong(at + 16, transaction.getFrom().getId().getMostSignificantBits());
+        record.putLong(at + 24, transaction.getFrom().getId().getLeastSignificantBits());
+        record.putLong(at + 32, transaction.getTo().getId().getMostSignificantBits());
+        record.putLong(at + 40, transaction.getTo().getId().getLeastSignificantBits());
+        record.putLong(at + 48, transaction.getAmountUnits());
+        record.putLong(at + 56, timestamp);
+        record.putInt(at + CHECKSUM, checksum(record, at, crc));
+        record.putInt(at + MARKER, RECORD_MARKER);
+        position += RECORD_BYTES;
+        appended++;
+    }
+
+    /**
+     * Creates and maps a new segment. The full one stays in the list of segments to force.
+     *
+     * @param number the number of the new segment
+     * @throws IOException if the segment cannot be created
+     */
+    private void roll(int number) throws IOException {
+        segmentNumber = number;
+        segment = mapSegment(directory.resolve(String.format("%s%010d%s", PREFIX, number, SUFFIX)), segmentBytes);
+        segment.putLong(0, MAGIC);
+        position = HEADER_BYTES;
+        unforced.add(segment);
+    }
+
+    /**
+     * Clears whatever follows the last valid record of the current segment, so that records left over from before a
+     * crash cannot be read back after the ones appended from now on.
+     */
+    private void truncate() {
+        segment.putLong(0, MAGIC);
+        byte[] zeros = new byte[RECORD_BYTES * 1024];
+        ByteBuffer tail = segment.duplicate();
+        tail.position(position);
+        while (tail.hasRemaining()) {
+            tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+        }
+    }
+
+    /**
+     * Forces the journal on a worker thread, unless a sync is already running.
+     */
+    private void requestSync() {
+        if (!syncing.compareAndSet(false, true)) {
+            return;
+        }
+        vertx.<Void>executeBlocking(sync -> {
+            sync();
+            sync.complete();
+        }, false, synced -> {
+            syncing.set(false);
+            if (synced.failed()) {
+                LOGGER.error("Could not force the transaction journal", synced.cause());
+            }
+        });
+    }
+
+    /**
+     * Forces the segments written since the last sync to the disk, then acknowledges the appends they hold, each on
+     * the context it was made from. If they cannot be forced, the records of the appends are marked as cancelled and
+     * the appends are failed instead, and the segments are kept for the next sync.
+     */
+    void sync() {
+        long target;
+        List<MappedByteBuffer> toForce;
+        synchronized (this) {
+            if (synced == appended) {
+                return;
+            }
+            target = appended;
+            toForce = new ArrayList<>(unforced);
+            unforced.clear();
+            unforced.add(segment);
+        }
+        try {
+            toForce.forEach(force);
+        } catch (RuntimeException e) {
+            List<Waiter> failed = new ArrayList<>();
+            synchronized (this) {
+                toForce.forEach(buffer -> {
+                    if (!unforced.contains(buffer)) {
+                        unforced.add(buffer);
+                    }
+                });
+                while (!waiters.isEmpty() && waiters.peek().sequence <= target) {
+                    Waiter waiter = waiters.poll();
+                    waiter.segment.putInt(waiter.offset + MARKER, CANCELLED_MARKER);
+                    failed.add(waiter);
+                }
+            }
+            failed.forEach(waiter -> waiter.fail(e));
+            throw e;
+        }
+
+        List<Waiter> acknowledged = new ArrayList<>();
+        synchronized (this) {
+            synced = target;
+            while (!waiters.isEmpty() && waiters.peek().sequence <= target) {
+                Waiter waiter = waiters.poll();
+                settle(waiter.table, waiter.transaction, waiter.position);
+                acknowledged.add(waiter);
+            }
+        }
+        acknowledged.forEach(Waiter::acknowledge);
+    }
+
+    private static void settle(OffHeapAccountTable table, Transaction transaction, long position) {
+        if (table != null) {
+            UUID from = transaction.getFrom().getId();
+            UUID to = transaction.getTo().getId();
+            table.settle(from.getMostSignificantBits(), from.getLeastSignificantBits(), to.getMostSignificantBits(),
+                    to.getLeastSignificantBits(), transaction.getAmountUnits(), position);
+        }
+    }
+
+    /**
+     * Gets the position every transfer before which is settled: the one of the oldest append waiting for a sync, or the
+     * one the next append will get if none waits.
+     *
+     * @return the position
+     */
+    public synchronized long settledPosition() {
+        return waiters.isEmpty() ? position(segmentNumber, position) : waiters.peek().position;
+    }
+
+    /**
+     * Deletes the segments holding only records before a position, once an account table holds all of them.
+     *
+     * @param checkpoint the position of the checkpoint of the table
+     * @throws IOException if a segment cannot be deleted
+     */
+    public synchronized void discardBefore(long checkpoint) throws IOException {
+        for (Path file : segments()) {
+            if (numberOf(file) < checkpoint >>> 32 && numberOf(file) < segmentNumber) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Reads back every valid record of the journal which was not cancelled, oldest first.
+     *
+     * @param handler what to do with each transfer: its accounts hold no balance
+     * @return the number of transfers read
+     * @throws IOException if a segment cannot be read
+     */
+    public long replay(RecordHandler handler) throws IOException {
+        return replay(0, handler);
+    }
+
+    /**
+     * Reads back every valid record of the journal from a position on which was not cancelled, oldest first.
+     *
+     * @param from the position of the first record to read, typically the checkpoint of an account table
+     * @param handler what to do with each transfer: its accounts hold no balance
+     * @return the number of transfers read
+     * @throws IOException if a segment cannot be read
+     * @throws IllegalStateException if the journal does not hold that position, because the segments holding it were
+     * discarded or lost
+     */
+    public synchronized long replay(long from, RecordHandler handler) throws IOException {
+        List<Path> segments = segments();
+        int first = (int) (from >>> 32);
+        if (numberOf(segments.get(0)) > first || position(segmentNumber, position) < from) {
+            throw new IllegalStateException("The journal holds segments " + numberOf(segments.get(0)) + " to "
+                    + segmentNumber + " and cannot be replayed from segment " + first + " at " + (int) from);
+        }
+        long records = 0;
+        for (Path file : segments) {
+            int number = numberOf(file);
+            if (number < first) {
+                continue;
+            }
+            ByteBuffer read = file.equals(currentFile()) ? segment : mapSegment(file, Files.size(file));
+            int end = read == segment ? position : validBytes(read, crc);
+            int start = number == first ? Math.max(HEADER_BYTES, (int) from) : HEADER_BYTES;
+            for (int at = start; at < end; at += RECORD_BYTES) {
+                if (read.getInt(at + MARKER) == CANCELLED_MARKER) {
+                    continue;
+                }
+                Transaction transaction = new Transaction( //
+                        new UUID(read.getLong(at), read.getLong(at + 8)), //
+                        new Account(new UUID(read.getLong(at + 16), read.getLong(at + 24)), 0L), //
+                        new Account(new UUID(read.getLong(at + 32), read.getLong(at + 40)), 0L), //
+                        read.getLong(at + 48));
+                handler.handle(transaction, read.getLong(at + 56), position(number, at));
+                records++;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Snapshot of the journal figures.
+     *
+     * @return the records appended since it was opened, the current segment and the appends waiting for a sync
+     */
+    public synchronized JsonObject stats() {
+        return new JsonObject() //
+                .put("appended", appended) //
+                .put("segment", segmentNumber) //
+                .put("waiting", waiters.size());
+    }
+
+    /**
+     * Gets the position of a record, which grows with every append: the number of its segment, then its offset.
+     */
+    private static long position(int segment, int offset) {
+        return (long) segment << 32 | offset;
+    }
+
+    private Path currentFile() {
+        return directory.resolve(String.format("%s%010d%s", PREFIX, segmentNumber, SUFFIX));
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            files.forEach(segments::add);
+        }
+        segments.sort((a, b) -> Integer.compare(numberOf(a), numberOf(b)));
+        return segments;
+    }
+
+    private static int numberOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static MappedByteBuffer mapSegment(Path file, long bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        }
+    }
+
+    /**
+     * Finds the end of the valid records of a segment: the first record which is empty, torn or corrupted ends it, while
+     * a cancelled record does not.
+     *
+     * @param segment the mapped segment
+     * @param crc the checksum to compute records with
+     * @return the offset following the last valid record
+     */
+    private static int validBytes(ByteBuffer segment, CRC32 crc) {
+        if (segment.capacity() < HEADER_BYTES || segment.getLong(0) != MAGIC) {
+            return HEADER_BYTES;
+        }
+        int at = HEADER_BYTES;
+        while (at + RECORD_BYTES <= segment.capacity() && isRecord(segment.getInt(at + MARKER))
+                && segment.getInt(at + CHECKSUM) == checksum(segment, at, crc)) {
+            at += RECORD_BYTES;
+        }
+        return at;
+    }
+
+    private static boolean isRecord(int marker) {
+        return marker == RECORD_MARKER || marker == CANCELLED_MARKER;
+    }
+
+    private static int checksum(ByteBuffer segment, int at, CRC32 crc) {
+        ByteBuffer fields = segment.duplicate();
+        fields.limit(at + CHECKSUM).position(at);
+        crc.reset();
+        crc.update(fields);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * What to do with a transfer read back from the journal.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+
+        /**
+         * Handles a transfer.
+         *
+         * @param transaction the transfer
+         * @param timestamp when it was committed, in milliseconds since the epoch
+         * @param position the position of its record
+         */
+        void handle(Transaction transaction, long timestamp, long position);
+    }
+
+    /**
+     * An append waiting for the sync which makes it durable, with where its record is to cancel it if the sync fails
+     * and the table to settle it in otherwise.
+     */
+    private static class Waiter {
+
+        private final long sequence;
+        private final ByteBuffer segment;
+        private final int offset;
+        private final long position;
+        private final Transaction transaction;
+        private final OffHeapAccountTable table;
+        private final Context context;
+        private final Future<Void> future;
+
+        Waiter(long sequence, ByteBuffer segment, int offset, long position, Transaction transaction,
+               OffHeapAccountTable table, Context context, Future<Void> future) {
+            this.sequence = sequence;
+            this.segment = segment;
+            this.offset = offset;
+            this.position = position;
+            this.transaction = transaction;
+            this.table = table;
+            this.context = context;
+            this.future = future;
+        }
+
+        void acknowledge() {
+            if (context == null) {
+                future.complete();
+            } else {
+                context.runOnContext(v -> future.complete());
+            }
+        }
+
+        void fail(Throwable cause) {
+            if (context == null) {
+                future.fail(cause);
+            } else {
+                context.runOnContext(v -> future.fail(cause));
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.Future;
+import org.jlnh.model.Transaction;
+
+/**
+ * Where the transactions decided by an {@link AccountRepository} that does not record them itself are kept.
+ */
+public interface TransactionRepository {
+
+    /**
+     * Records a committed transaction.
+     *
+     * @param transaction the transaction
+     * @return future empty result, completed once the transaction is recorded
+     */
+    Future<Void> save(Transaction transaction);
+}
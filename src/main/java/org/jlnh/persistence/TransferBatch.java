@@ -0,0 +1,330 @@
+package org.jlnh.persistence;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+import org.jlnh.model.Account;
+import org.jlnh.model.Money;
+import org.jlnh.model.Transaction;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.jlnh.util.ActionHelper.COULD_NOT_TRANSFER_MONEY;
+
+/**
+ * Helper code to persist many transfers in a single database transaction.
+ * <p>
+ * All the transactions go in one batched insert, and the balance changes are netted per account so each touched
+ * account gets a single relative update, whatever the number of transfers it took part in.
+ */
+public class TransferBatch {
+
+    private TransferBatch() {
+    }
+
+    /**
+     * Fetches a database connection and starts a transaction on it.
+     *
+     * @param jdbcClient the database client
+     * @return future connection with auto-commit disabled
+     */
+    public static Future<SQLConnection> begin(JDBCClient jdbcClient) {
+        Future<SQLConnection> future = Future.future();
+        jdbcClient.getConnection(connect -> {
+            if (connect.failed()) {
+                future.fail(connect.cause());
+            } else {
+                begin(connect.result()).setHandler(future);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Starts a transaction on a database connection, releasing the connection if that fails.
+     *
+     * @param connection the database connection
+     * @return future connection with auto-commit disabled
+     */
+    public static Future<SQLConnection> begin(SQLConnection connection) {
+        Future<SQLConnection> future = Future.future();
+        connection.setAutoCommit(false, tx -> {
+            if (tx.failed()) {
+                connection.close();
+                future.fail(tx.cause());
+            } else {
+                future.complete(connection);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Executes many transfers in a single database transaction: the accounts involved are read and locked with one
+     * query, every transfer is decided in order against their balances and the accepted ones are persisted.
+     *
+     * @param jdbcClient the database client
+     * @param requested the requested transfers
+     * @param atomic whether a single rejected transfer rolls back the whole batch
+     * @return future with the outcome of every requested transfer, in order. When an atomic batch is rolled back,
+     * the outcomes of the transfers that were accepted are still successful, although nothing was committed
+     */
+    public static Future<List<Future<Transaction>>> execute(JDBCClient jdbcClient, List<Transaction> requested, boolean atomic) {
+        Set<UUID> ids = accountsOf(requested);
+
+        return begin(jdbcClient).compose(connection -> {
+            List<Future<Transaction>> outcomes = new ArrayList<>(requested.size());
+            boolean[] aborted = {false};
+            Future<Void> work = findAccounts(connection, ids, true).compose(accounts -> {
+                List<Transaction> accepted = new ArrayList<>(requested.size());
+                for (Transaction transaction : requested) {
+                    Future<Transaction> outcome = apply(accounts, transaction);
+                    outcomes.add(outcome);
+                    if (outcome.succeeded()) {
+                        accepted.add(outcome.result());
+                    }
+                }
+                if (atomic && accepted.size() < requested.size()) {
+                    aborted[0] = true;
+                    return Future.failedFuture(new IllegalStateException(COULD_NOT_TRANSFER_MONEY));
+                }
+                return accepted.isEmpty() ? Future.succeededFuture() : write(connection, accepted);
+            });
+            return end(connection, work).map(v -> outcomes) //
+                    .recover(failure -> aborted[0] ? Future.succeededFuture(outcomes) : Future.failedFuture(failure));
+        });
+    }
+
+    /**
+     * Executes the transfers of a best-effort batch in chunks, one after the other: each chunk touches at most
+     * {@code maxAccounts} accounts and is executed in its own database transaction, once the sequencer let it hold the
+     * stripes of its accounts, so a large batch never holds more than that many stripes and the transfers queued
+     * behind it get in between two chunks. A chunk which cannot be executed rejects its transfers with the cause, and
+     * the next chunks are still executed.
+     *
+     * @param jdbcClient the database client
+     * @param sequencer the sequencer serializing the transfers touching the same accounts
+     * @param requested the requested transfers
+     * @param maxAccounts the number of accounts a chunk touches at most
+     * @return future with the outcome of every requested transfer, in order
+     */
+    public static Future<List<Future<Transaction>>> executeInChunks(JDBCClient jdbcClient, AccountSequencer sequencer,
+                                                                    List<Transaction> requested, int maxAccounts) {
+        List<Future<Transaction>> outcomes = new ArrayList<>(requested.size());
+        Future<Void> executed = Future.succeededFuture();
+        for (List<Transaction> chunk : chunks(requested, maxAccounts)) {
+            executed = executed.compose(v -> {
+                Future<Void> next = Future.future();
+                sequencer.execute(accountsOf(chunk), () -> execute(jdbcClient, chunk, false)).setHandler(done -> {
+                    if (done.succeeded()) {
+                        outcomes.addAll(done.result());
+                    } else {
+                        chunk.forEach(transaction -> outcomes.add(Future.failedFuture(done.cause())));
+                    }
+                    next.complete();
+                });
+                return next;
+            });
+        }
+        return executed.map(v -> outcomes);
+    }
+
+    /**
+     * Splits a batch of transfers, in order, into chunks touching at most a given number of accounts each.
+     *
+     * @param requested the requested transfers
+     * @param maxAccounts the number of accounts a chunk touches at most, from 2
+     * @return the chunks
+     */
+    static List<List<Transaction>> chunks(List<Transaction> requested, int maxAccounts) {
+        List<List<Transaction>> chunks = new ArrayList<>();
+        List<Transaction> chunk = new ArrayList<>();
+        Set<UUID> ids = new HashSet<>();
+        for (Transaction transaction : requested) {
+            Set<UUID> touched = accountsOf(Collections.singletonList(transaction));
+            touched.removeAll(ids);
+            if (ids.size() + touched.size() > maxAccounts && !chunk.isEmpty()) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                ids.clear();
+                touched = accountsOf(Collections.singletonList(transaction));
+            }
+            chunk.add(transaction);
+            ids.addAll(touched);
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Reads the given accounts with a single query.
+     *
+     * @param connection database connection
+     * @param ids the account ids
+     * @param lock whether to lock the accounts until the end of the transaction
+     * @return future with the accounts found, by id
+     */
+    public static Future<Map<UUID, Account>> findAccounts(SQLConnection connection, Collection<UUID> ids, boolean lock) {
+        if (ids.isEmpty()) {
+            return Future.succeededFuture(new HashMap<>());
+        }
+        Future<Map<UUID, Account>> future = Future.future();
+        String sql = "SELECT " + Account.COLUMNS + " FROM account WHERE id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")" //
+                + (lock ? " FOR UPDATE" : "");
+        JsonArray params = new JsonArray();
+        ids.forEach(id -> params.add(id.toString()));
+        connection.queryWithParams(sql, params, result -> future.handle(result.map(resultSet -> {
+            Map<UUID, Account> accounts = new HashMap<>();
+            resultSet.getRows().stream().map(Account::new).forEach(account -> accounts.put(account.getId(), account));
+            return accounts;
+        })));
+        return future;
+    }
+
+    /**
+     * Checks that a requested transfer is well formed.
+     *
+     * @param requested the requested transfer
+     * @return the transfer itself, or a failed future with an {@link IllegalArgumentException} if it has no sender,
+     * no receiver, a non positive amount or a sender that is also its receiver
+     */
+    public static Future<Transaction> validate(Transaction requested) {
+        if (requested.getFrom() == null || requested.getFrom().getId() == null
+                || requested.getTo() == null || requested.getTo().getId() == null
+                || requested.getAmountUnits() <= 0) {
+            return Future.failedFuture(new IllegalArgumentException("A transfer needs a sender, a receiver and a positive amount"));
+        }
+        if (requested.getFrom().getId().equals(requested.getTo().getId())) {
+            return Future.failedFuture(new IllegalArgumentException("A transfer needs a receiver other than its sender"));
+        }
+        return Future.succeededFuture(requested);
+    }
+
+    /**
+     * Collects the ids of the accounts a batch of transfers touches.
+     *
+     * @param requested the requested transfers
+     * @return the account ids, in the order they are first met
+     */
+    public static Set<UUID> accountsOf(List<Transaction> requested) {
+        Set<UUID> ids = new LinkedHashSet<>();
+        for (Transaction transaction : requested) {
+            if (transaction.getFrom() != null && transaction.getFrom().getId() != null) {
+                ids.add(transaction.getFrom().getId());
+            }
+            if (transaction.getTo() != null && transaction.getTo().getId() != null) {
+                ids.add(transaction.getTo().getId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Decides a transfer against in-memory balances, updating them when it is accepted.
+     *
+     * @param accounts the accounts involved, by id
+     * @param requested the requested transfer
+     * @return the transaction to persist, or a failed future with an {@link IllegalArgumentException} if the transfer
+     * is invalid, a {@link NoSuchElementException} if an account does not exist or an {@link IllegalStateException}
+     * if the sender does not have enough money
+     */
+    public static Future<Transaction> apply(Map<UUID, Account> accounts, Transaction requested) {
+        Future<Transaction> valid = validate(requested);
+        if (valid.failed()) {
+            return valid;
+        }
+        UUID from = requested.getFrom().getId();
+        UUID to = requested.getTo().getId();
+        Account sender = accounts.get(from);
+        Account receiver = accounts.get(to);
+        if (sender == null || receiver == null) {
+            return Future.failedFuture(new NoSuchElementException("Account " + (sender == null ? from : to) + " not found"));
+        }
+        long amount = requested.getAmountUnits();
+        if (sender.getBalanceUnits() < amount) {
+            return Future.failedFuture(new IllegalStateException(COULD_NOT_TRANSFER_MONEY));
+        }
+        sender.setBalanceUnits(Money.subtract(sender.getBalanceUnits(), amount));
+        receiver.setBalanceUnits(Money.add(receiver.getBalanceUnits(), amount));
+        Transaction transaction = new Transaction(requested.getId() != null ? requested.getId() : UUID.randomUUID(), //
+                new Account(from, sender.getBalanceUnits()), //
+                new Account(to, receiver.getBalanceUnits()), //
+                amount);
+        transaction.setCreatedAtMillis(System.currentTimeMillis());
+        return Future.succeededFuture(transaction);
+    }
+
+    /**
+     * Inserts the transactions and applies their net balance changes, without committing.
+     *
+     * @param connection database connection with an open transaction
+     * @param transactions the transfers to persist
+     * @return future empty result
+     */
+    public static Future<Void> write(SQLConnection connection, List<Transaction> transactions) {
+        List<JsonArray> inserts = new ArrayList<>(transactions.size());
+        Map<String, long[]> deltas = new LinkedHashMap<>();
+        for (Transaction transaction : transactions) {
+            String from = transaction.getFrom().getId().toString();
+            String to = transaction.getTo().getId().toString();
+            inserts.add(new JsonArray() //
+                    .add(transaction.getId().toString()) //
+                    .add(from) //
+                    .add(to) //
+                    .add(Money.toPlainString(transaction.getAmountUnits())) //
+                    .add(Instant.ofEpochMilli(transaction.getCreatedAtMillis())));
+            deltas.computeIfAbsent(from, account -> new long[1])[0] -= transaction.getAmountUnits();
+            deltas.computeIfAbsent(to, account -> new long[1])[0] += transaction.getAmountUnits();
+        }
+        List<JsonArray> updates = new ArrayList<>(deltas.size());
+        deltas.forEach((account, delta) -> updates.add(new JsonArray().add(Money.toPlainString(delta[0])).add(account)));
+
+        Future<List<Integer>> inserted = Future.future();
+        connection.batchWithParams(JdbcRepository.INSERT_TRANSACTION, inserts, inserted);
+        return inserted.compose(v -> {
+            Future<List<Integer>> updated = Future.future();
+            connection.batchWithParams("UPDATE account SET balance = balance + ? WHERE id = ?", updates, updated);
+            return updated;
+        }).mapEmpty();
+    }
+
+    /**
+     * Commits the transaction if the work done succeeded, rolls it back otherwise, and releases the connection.
+     *
+     * @param connection database connection with an open transaction
+     * @param work the outcome of the work done in the transaction
+     * @return future empty result, failed if either the work or the commit failed
+     */
+    public static Future<Void> end(SQLConnection connection, Future<?> work) {
+        Future<Void> future = Future.future();
+        work.setHandler(done -> {
+            if (done.failed()) {
+                connection.rollback(rollback -> {
+                    connection.close();
+                    future.fail(done.cause());
+                });
+            } else {
+                connection.commit(commit -> {
+                    connection.close();
+                    future.handle(commit);
+                });
+            }
+        });
+        return future;
+    }
+}
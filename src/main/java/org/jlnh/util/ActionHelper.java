@@ -1,14 +1,17 @@
 package org.jlnh.util;
 
-import com.fasterxml.jackson.annotation.JsonInclude;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
-import io.vertx.core.json.Json;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 import org.jlnh.model.Transaction;
 
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Helper code to handle async results.
@@ -18,6 +21,10 @@ public class ActionHelper {
     private static final String APPLICATION_JSON_CHARSET_UTF_8 = "application/json; charset=utf-8";
     private static final String CONTENT_TYPE = "content-type";
     public static final String COULD_NOT_TRANSFER_MONEY = "Could not transfer money!";
+    public static final int UNKNOWN_ACCOUNT = 404;
+    public static final int INSUFFICIENT_FUNDS = 409;
+    public static final int INVALID_TRANSFER = 400;
+    public static final int OVERLOADED = 503;
 
     private ActionHelper() {
     }
@@ -40,42 +47,197 @@ public class ActionHelper {
                 }
             } else {
                 context.response().setStatusCode(200) //
-                        .putHeader(CONTENT_TYPE, APPLICATION_JSON_CHARSET_UTF_8) //
-                        .end(Json.encodePrettily(ar.result()));
+                        .putHeader(CONTENT_TYPE, APPLICATION_JSON_CHARSET_UTF_8);
+                JsonHelper.end(context, ar.result());
             }
         };
     }
 
     /**
-     * Returns a handler to the transfer async result.
+     * Returns a handler to the transfer async result. A transfer the engine was too busy to take is answered with a
+     * {@code 503} and a {@code Retry-After} header, as the admission limiter does.
      *
      * @param context the routing context
+     * @param retryAfter the {@code Retry-After} delay in seconds
      * @return the handler
      */
-    public static Handler<AsyncResult<Transaction>> handleTransfer(RoutingContext context) {
+    public static Handler<AsyncResult<Transaction>> handleTransfer(RoutingContext context, String retryAfter) {
         return asyncResult -> {
             if (asyncResult.failed()) {
                 JsonObject failureJson = new JsonObject() //
                         .put("error", asyncResult.cause().getMessage()); //
-                if (asyncResult.cause() instanceof IllegalStateException) {
-                    failureJson.put("cause", "User does not have sufficient funds")
-                            .put("code", 400);
-                    context.response() //
-                            .setStatusCode(400) //
-                            .putHeader(CONTENT_TYPE, APPLICATION_JSON_CHARSET_UTF_8) //
-                            .end(Json.encodePrettily(failureJson));
-                } else {
+                int statusCode = statusCode(asyncResult.cause());
+                if (statusCode == 500) {
                     context.fail(asyncResult.cause());
+                    return;
                 }
+                if (asyncResult.cause() instanceof IllegalStateException) {
+                    failureJson.put("cause", "User does not have sufficient funds");
+                }
+                if (statusCode == OVERLOADED) {
+                    context.response().putHeader("Retry-After", retryAfter);
+                }
+                failureJson.put("code", statusCode);
+                context.response() //
+                        .setStatusCode(statusCode) //
+                        .putHeader(CONTENT_TYPE, APPLICATION_JSON_CHARSET_UTF_8);
+                JsonHelper.end(context, failureJson);
             } else {
-                Transaction transactionDone = asyncResult.result();
-                transactionDone.setTo(null); // Who transferred the money does not need to know his friend's balance, right?
-                Json.prettyMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
                 context.response() //
                         .setStatusCode(201) //
-                        .putHeader(CONTENT_TYPE, APPLICATION_JSON_CHARSET_UTF_8) //
-                        .end(Json.encodePrettily(transactionDone));
+                        .putHeader(CONTENT_TYPE, APPLICATION_JSON_CHARSET_UTF_8);
+                JsonHelper.endTransfer(context, asyncResult.result());
+            }
+        };
+    }
+
+    /**
+     * The HTTP status of a transfer failure: {@code 400} for insufficient funds or an invalid transfer, {@code 404} for
+     * an unknown account, {@code 503} when the engine is overloaded, {@code 500} for anything else.
+     *
+     * @param cause the failure
+     * @return the status code
+     */
+    private static int statusCode(Throwable cause) {
+        switch (failureCode(cause)) {
+            case INSUFFICIENT_FUNDS:
+            case INVALID_TRANSFER:
+                return 400;
+            case UNKNOWN_ACCOUNT:
+                return 404;
+            case OVERLOADED:
+                return 503;
+            default:
+                return 500;
+        }
+    }
+
+    /**
+     * Encodes the response body of a completed transfer, to be replayed as is.
+     *
+     * @param transactionDone the completed transfer
+     * @return the response body
+     */
+    public static String encodeTransfer(Transaction transactionDone) {
+        return JsonHelper.encodeTransfer(transactionDone);
+    }
+
+    /**
+     * Answers a completed transfer.
+     *
+     * @param context the routing context
+     * @param body the {@link #encodeTransfer(Transaction) encoded} transfer
+     */
+    public static void created(RoutingContext context, String body) {
+        context.response() //
+                .setStatusCode(201) //
+                .putHeader(CONTENT_TYPE, APPLICATION_JSON_CHARSET_UTF_8) //
+                .end(body);
+    }
+
+    /**
+     * Answers with a JSON body which is already encoded.
+     *
+     * @param context the routing context
+     * @param statusCode the status code
+     * @param body the JSON body
+     */
+    public static void endJson(RoutingContext context, int statusCode, String body) {
+        context.response() //
+                .setStatusCode(statusCode) //
+                .putHeader(CONTENT_TYPE, APPLICATION_JSON_CHARSET_UTF_8) //
+                .end(body);
+    }
+
+    /**
+     * Translates the failure of an event bus request into the exceptions understood by the handlers above.
+     *
+     * @param cause the failure
+     * @return the translated failure
+     */
+    public static Throwable translateReplyFailure(Throwable cause) {
+        if (cause instanceof ReplyException) {
+            switch (((ReplyException) cause).failureCode()) {
+                case INSUFFICIENT_FUNDS:
+                    return new IllegalStateException(COULD_NOT_TRANSFER_MONEY);
+                case UNKNOWN_ACCOUNT:
+                    return new NoSuchElementException(cause.getMessage());
+                case INVALID_TRANSFER:
+                    return new IllegalArgumentException(cause.getMessage());
+                case OVERLOADED:
+                    return new RejectedExecutionException(cause.getMessage());
+                default:
+                    break;
+            }
+        }
+        return cause;
+    }
+
+    /**
+     * The event bus failure code of a transfer failure, the reverse of {@link #translateReplyFailure(Throwable)}.
+     *
+     * @param cause the failure
+     * @return the failure code
+     */
+    public static int failureCode(Throwable cause) {
+        if (cause instanceof IllegalStateException) {
+            return INSUFFICIENT_FUNDS;
+        } else if (cause instanceof NoSuchElementException) {
+            return UNKNOWN_ACCOUNT;
+        } else if (cause instanceof IllegalArgumentException) {
+            return INVALID_TRANSFER;
+        } else if (cause instanceof RejectedExecutionException) {
+            return OVERLOADED;
+        }
+        return 500;
+    }
+
+    /**
+     * Returns a handler to the batch transfer async result, answering with the outcome of every transfer.
+     * When an all-or-nothing batch was rolled back, the transfers that would have been accepted are reported as
+     * aborted and the status code is 400.
+     *
+     * @param context the routing context
+     * @param atomic whether the batch was all-or-nothing
+     * @return the handler
+     */
+    public static Handler<AsyncResult<List<Future<Transaction>>>> handleBatchTransfer(RoutingContext context, boolean atomic) {
+        return asyncResult -> {
+            if (asyncResult.failed()) {
+                context.fail(asyncResult.cause());
+                return;
             }
+            List<Future<Transaction>> outcomes = asyncResult.result();
+            boolean aborted = atomic && outcomes.stream().anyMatch(Future::failed);
+
+            JsonArray results = new JsonArray();
+            int committed = 0;
+            for (int index = 0; index < outcomes.size(); index++) {
+                Future<Transaction> outcome = outcomes.get(index);
+                JsonObject result = new JsonObject().put("index", index);
+                if (outcome.failed()) {
+                    result.put("status", "rejected").put("error", outcome.cause().getMessage());
+                    if (outcome.cause() instanceof IllegalStateException) {
+                        result.put("cause", "User does not have sufficient funds");
+                    }
+                } else if (aborted) {
+                    result.put("status", "aborted");
+                } else {
+                    Transaction transactionDone = outcome.result();
+                    transactionDone.setTo(null);
+                    result.put("status", "committed").put("transaction", JsonObject.mapFrom(transactionDone));
+                    committed++;
+                }
+                results.add(result);
+            }
+
+            context.response() //
+                    .setStatusCode(aborted ? 400 : 200) //
+                    .putHeader(CONTENT_TYPE, APPLICATION_JSON_CHARSET_UTF_8);
+            JsonHelper.end(context, new JsonObject() //
+                    .put("committed", committed) //
+                    .put("rejected", outcomes.size() - committed) //
+                    .put("results", results));
         };
     }
 }
@@ -0,0 +1,85 @@
+package org.jlnh.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jlnh.model.Account;
+import org.jlnh.model.Money;
+import org.jlnh.model.Transaction;
+
+import java.util.UUID;
+
+/**
+ * Audit trail of the transfers: a single structured {@code key=value} record per transfer on the
+ * {@code org.jlnh.audit} logger, whatever its outcome.
+ * <p>
+ * Records are parameterized messages of immutable values only, so with the asynchronous loggers nothing is
+ * formatted on the event loop, and nothing at all is built when the logger is disabled.
+ */
+public class AuditLog {
+
+    private static final Logger AUDIT = LogManager.getLogger("org.jlnh.audit");
+
+    private static final String RECORD = "transfer status={} reason={} id={} from={} to={} amount={}";
+    private static final String NONE = "-";
+
+    private AuditLog() {
+    }
+
+    /**
+     * Records a committed transfer.
+     *
+     * @param transaction the committed transaction
+     */
+    public static void committed(Transaction transaction) {
+        record("committed", NONE, transaction.getId(), transaction);
+    }
+
+    /**
+     * Records a refused transfer.
+     *
+     * @param requested the requested transaction
+     * @param cause why it was refused
+     */
+    public static void rejected(Transaction requested, Throwable cause) {
+        record("rejected", reasonOf(cause), null, requested);
+    }
+
+    /**
+     * Records a transfer which would have been accepted, but was rolled back with the rest of its atomic batch.
+     *
+     * @param requested the requested transaction
+     */
+    public static void aborted(Transaction requested) {
+        record("aborted", "batch_rolled_back", null, requested);
+    }
+
+    private static void record(String status, String reason, UUID id, Transaction transaction) {
+        if (AUDIT.isInfoEnabled()) {
+            AUDIT.info(RECORD, status, reason, valueOf(id), idOf(transaction.getFrom()), idOf(transaction.getTo()),
+                    Money.toBigDecimal(transaction.getAmountUnits()));
+        }
+    }
+
+    private static String reasonOf(Throwable cause) {
+        switch (ActionHelper.failureCode(cause)) {
+            case ActionHelper.INSUFFICIENT_FUNDS:
+                return "insufficient_funds";
+            case ActionHelper.UNKNOWN_ACCOUNT:
+                return "unknown_account";
+            case ActionHelper.INVALID_TRANSFER:
+                return "invalid_transfer";
+            case ActionHelper.OVERLOADED:
+                return "overloaded";
+            default:
+                return "error";
+        }
+    }
+
+    private static Object idOf(Account account) {
+        return account == null ? NONE : valueOf(account.getId());
+    }
+
+    private static Object valueOf(UUID id) {
+        return id == null ? NONE : id;
+    }
+}
@@ -0,0 +1,39 @@
+package org.jlnh.util;
+
+import io.vertx.config.ConfigRetriever;
+import io.vertx.config.ConfigRetrieverOptions;
+import io.vertx.config.ConfigStoreOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Helper code to read the application configuration.
+ */
+public class ConfigHelper {
+
+    private static final String CONFIG_FILE = "conf/config.json";
+
+    private ConfigHelper() {
+    }
+
+    /**
+     * Reads the application configuration: the {@code conf/config.json} file, overridden by the deployment config.
+     *
+     * @param vertx the vertx instance
+     * @param deploymentConfig the configuration the verticle was deployed with
+     * @return future with the application configuration
+     */
+    public static Future<JsonObject> retrieve(Vertx vertx, JsonObject deploymentConfig) {
+        ConfigRetrieverOptions options = new ConfigRetrieverOptions() //
+                .setIncludeDefaultStores(false) //
+                .addStore(new ConfigStoreOptions().setType("file").setOptional(true) //
+                        .setConfig(new JsonObject().put("path", CONFIG_FILE))) //
+                .addStore(new ConfigStoreOptions().setType("json").setConfig(deploymentConfig));
+        ConfigRetriever retriever = ConfigRetriever.create(vertx, options);
+        return ConfigRetriever.getConfigAsFuture(retriever).map(config -> {
+            retriever.close();
+            return config;
+        });
+    }
+}
@@ -0,0 +1,537 @@
+package org.jlnh.util;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import org.jlnh.model.Account;
+import org.jlnh.model.Money;
+import org.jlnh.model.Transaction;
+import org.jlnh.model.TransactionRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Helper code to read and write the JSON payloads of the API.
+ * <p>
+ * Responses are compact unless the request has a {@code pretty} query parameter. {@link Account}, {@link Transaction}
+ * and {@link TransactionRecord} are written by hand, field by field, straight into a buffer taken from the Netty pool
+ * and given back once the response is written, producing the same JSON as Jackson without the intermediate
+ * {@code String}; anything else goes through the Jackson mapper, still without a {@code String}. Transfer requests are
+ * read from the request body with a streaming parser, without building a {@link JsonObject} first.
+ * <p>
+ * Response buffers are heap buffers unless {@link #setDirectBuffers(boolean) direct buffers} are enabled, which
+ * the socket writes without copying them first.
+ */
+public class JsonHelper {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Pretty printer of completed transfers, leaving out their null fields without touching {@link Json#prettyMapper},
+     * which is shared by every event loop.
+     */
+    private static final ObjectMapper PRETTY_NON_NULL = Json.prettyMapper.copy() //
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private static volatile boolean directBuffers;
+
+    private JsonHelper() {
+    }
+
+    /**
+     * Whether responses are written from pooled direct buffers rather than pooled heap buffers.
+     *
+     * @param direct true for direct buffers
+     */
+    public static void setDirectBuffers(boolean direct) {
+        directBuffers = direct;
+    }
+
+    /**
+     * Takes a response buffer from the Netty pool.
+     */
+    private static ByteBuf responseBuffer() {
+        return directBuffers //
+                ? PooledByteBufAllocator.DEFAULT.directBuffer(INITIAL_CAPACITY) //
+                : PooledByteBufAllocator.DEFAULT.heapBuffer(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Whether the response to a request is pretty printed: when it has a {@code pretty} query parameter other than
+     * {@code false}.
+     *
+     * @param context the routing context
+     * @return true to pretty print
+     */
+    public static boolean isPretty(RoutingContext context) {
+        if (context.request().query() == null) {
+            return false;
+        }
+        String pretty = context.request().getParam("pretty");
+        return pretty != null && !"false".equals(pretty);
+    }
+
+    /**
+     * Ends a response with the JSON of a value, pretty printed or not as the request asked.
+     *
+     * @param context the routing context
+     * @param value the value to write
+     */
+    public static void end(RoutingContext context, Object value) {
+        ByteBuf out = responseBuffer();
+        try {
+            if (isPretty(context)) {
+                Json.prettyMapper.writeValue((OutputStream) new ByteBufOutputStream(out), value);
+            } else {
+                write(out, value);
+            }
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            context.fail(e);
+            return;
+        }
+        end(context.response(), out);
+    }
+
+    /**
+     * Ends a response with a completed transfer, leaving out the receiving account and the null fields.
+     *
+     * @param context the routing context
+     * @param transaction the completed transfer
+     */
+    public static void endTransfer(RoutingContext context, Transaction transaction) {
+        ByteBuf out = responseBuffer();
+        try {
+            if (isPretty(context)) {
+                PRETTY_NON_NULL.writeValue((OutputStream) new ByteBufOutputStream(out),
+                        new Transaction(transaction.getId(), transaction.getFrom(), null, transaction.getAmountUnits()));
+            } else {
+                writeTransfer(out, transaction);
+            }
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            context.fail(e);
+            return;
+        }
+        end(context.response(), out);
+    }
+
+    /**
+     * Writes a pooled buffer as the end of the response, giving it back to the pool once it is written.
+     */
+    private static void end(HttpServerResponse response, ByteBuf out) {
+        try {
+            response.end(Buffer.buffer(out), written -> out.release());
+        } catch (RuntimeException e) {
+            out.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Encodes a completed transfer, as answered by {@link #endTransfer(RoutingContext, Transaction)}.
+     *
+     * @param transaction the completed transfer
+     * @return the compact JSON
+     */
+    public static String encodeTransfer(Transaction transaction) {
+        ByteBuf out = PooledByteBufAllocator.DEFAULT.heapBuffer(INITIAL_CAPACITY);
+        try {
+            writeTransfer(out, transaction);
+            return out.toString(StandardCharsets.UTF_8);
+        } finally {
+            out.release();
+        }
+    }
+
+    /**
+     * Writes the compact JSON of a value: accounts, transactions and collections of them by hand, anything else with
+     * the Jackson mapper.
+     *
+     * @param out the buffer to write to
+     * @param value the value to write
+     */
+    public static void write(ByteBuf out, Object value) {
+        if (value == null) {
+            out.writeBytes(NULL);
+        } else if (value instanceof Account) {
+            writeAccount(out, (Account) value);
+        } else if (value instanceof Transaction) {
+            writeTransaction(out, (Transaction) value);
+        } else if (value instanceof TransactionRecord) {
+            writeTransactionRecord(out, (TransactionRecord) value);
+        } else if (value instanceof Collection) {
+            out.writeByte('[');
+            boolean first = true;
+            for (Object item : (Collection<?>) value) {
+                if (!first) {
+                    out.writeByte(',');
+                }
+                first = false;
+                write(out, item);
+            }
+            out.writeByte(']');
+        } else {
+            try {
+                Json.mapper.writeValue((OutputStream) new ByteBufOutputStream(out), value);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to encode as JSON: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Writes an account as {@code {"id":...,"balance":...}}.
+     *
+     * @param out the buffer to write to
+     * @param account the account
+     */
+    public static void writeAccount(ByteBuf out, Account account) {
+        writeName(out, '{', "id");
+        writeUuid(out, account.getId());
+        writeName(out, ',', "balance");
+        writeMoney(out, account.getBalanceUnits());
+        out.writeByte('}');
+    }
+
+    /**
+     * Writes a transaction with both its accounts, null fields included.
+     *
+     * @param out the buffer to write to
+     * @param transaction the transaction
+     */
+    public static void writeTransaction(ByteBuf out, Transaction transaction) {
+        writeName(out, '{', "id");
+        writeUuid(out, transaction.getId());
+        writeName(out, ',', "from");
+        write(out, transaction.getFrom());
+        writeName(out, ',', "to");
+        write(out, transaction.getTo());
+        writeName(out, ',', "amount");
+        writeMoney(out, transaction.getAmountUnits());
+        out.writeByte('}');
+    }
+
+    /**
+     * Writes a completed transfer: the transaction without the receiving account, as the sender does not need to know
+     * the balance of the receiver, and without null fields.
+     *
+     * @param out the buffer to write to
+     * @param transaction the completed transfer
+     */
+    public static void writeTransfer(ByteBuf out, Transaction transaction) {
+        char separator = '{';
+        if (transaction.getId() != null) {
+            writeName(out, separator, "id");
+            writeUuid(out, transaction.getId());
+            separator = ',';
+        }
+        if (transaction.getFrom() != null) {
+            writeName(out, separator, "from");
+            writeAccount(out, transaction.getFrom());
+            separator = ',';
+        }
+        writeName(out, separator, "amount");
+        writeMoney(out, transaction.getAmountUnits());
+        out.writeByte('}');
+    }
+
+    /**
+     * Writes a transaction of the history of an account.
+     *
+     * @param out the buffer to write to
+     * @param transaction the transaction
+     */
+    public static void writeTransactionRecord(ByteBuf out, TransactionRecord transaction) {
+        writeName(out, '{', "id");
+        writeUuid(out, transaction.getId());
+        writeName(out, ',', "from");
+        writeUuid(out, transaction.getFrom());
+        writeName(out, ',', "to");
+        writeUuid(out, transaction.getTo());
+        writeName(out, ',', "amount");
+        writeMoney(out, transaction.getAmountUnits());
+        writeName(out, ',', "createdAt");
+        out.writeByte('"');
+        out.writeCharSequence(Instant.ofEpochMilli(transaction.getCreatedAtMillis()).toString(), StandardCharsets.US_ASCII);
+        out.writeByte('"');
+        out.writeByte('}');
+    }
+
+    private static void writeName(ByteBuf out, char separator, String name) {
+        out.writeByte(separator);
+        out.writeByte('"');
+        out.writeCharSequence(name, StandardCharsets.US_ASCII);
+        out.writeByte('"');
+        out.writeByte(':');
+    }
+
+    private static void writeUuid(ByteBuf out, UUID id) {
+        if (id == null) {
+            out.writeBytes(NULL);
+            return;
+        }
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        out.writeByte('"');
+        writeHex(out, msb >>> 32, 8);
+        out.writeByte('-');
+        writeHex(out, msb >>> 16, 4);
+        out.writeByte('-');
+        writeHex(out, msb, 4);
+        out.writeByte('-');
+        writeHex(out, lsb >>> 48, 4);
+        out.writeByte('-');
+        writeHex(out, lsb, 12);
+        out.writeByte('"');
+    }
+
+    private static void writeHex(ByteBuf out, long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            out.writeByte(HEX[(int) (value >>> shift) & 0xF]);
+        }
+    }
+
+    /**
+     * Writes an amount the way Jackson writes {@link Money#toBigDecimal(long)}: the shortest scale, but at least one
+     * decimal.
+     */
+    private static void writeMoney(ByteBuf out, long units) {
+        if (units < 0) {
+            out.writeByte('-');
+        }
+        writeDigits(out, Math.abs(units / Money.UNIT));
+        out.writeByte('.');
+        long fraction = Math.abs(units % Money.UNIT);
+        if (fraction == 0) {
+            out.writeByte('0');
+            return;
+        }
+        for (long digit = Money.UNIT / 10; fraction > 0; digit /= 10) {
+            out.writeByte('0' + (int) (fraction / digit));
+            fraction %= digit;
+        }
+    }
+
+    private static void writeDigits(ByteBuf out, long value) {
+        long digit = 1;
+        while (digit <= value / 10) {
+            digit *= 10;
+        }
+        for (; digit > 0; digit /= 10) {
+            out.writeByte('0' + (int) (value / digit % 10));
+        }
+    }
+
+    /**
+     * Reads a transfer request.
+     *
+     * @param body the request body, a JSON transaction
+     * @return the transaction
+     * @throws IllegalArgumentException if the body is not a valid transaction, or holds anything after it
+     */
+    public static Transaction readTransaction(Buffer body) {
+        try (JsonParser parser = parserOf(body)) {
+            Transaction transaction = readTransaction(parser, parser.nextToken());
+            expect(parser.nextToken(), null);
+            return transaction;
+        } catch (IOException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid transaction: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads many transfer requests, given as a JSON array or as a sequence of JSON transactions, such as newline
+     * delimited JSON.
+     *
+     * @param body the request body
+     * @param array whether the transactions are in a JSON array
+     * @return the transactions
+     * @throws IllegalArgumentException if the body does not hold valid transactions, or holds anything after the array
+     */
+    public static List<Transaction> readTransactions(Buffer body, boolean array) {
+        List<Transaction> transactions = new ArrayList<>();
+        try (JsonParser parser = parserOf(body)) {
+            if (array) {
+                expect(parser.nextToken(), JsonToken.START_ARRAY);
+                for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                    transactions.add(readTransaction(parser, token));
+                }
+                expect(parser.nextToken(), null);
+            } else {
+                for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                    transactions.add(readTransaction(parser, token));
+                }
+            }
+        } catch (IOException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid transactions: " + e.getMessage(), e);
+        }
+        return transactions;
+    }
+
+    private static JsonParser parserOf(Buffer body) throws IOException {
+        ByteBuf bytes = body.getByteBuf();
+        if (bytes.hasArray()) {
+            return Json.mapper.getFactory().createParser(bytes.array(), bytes.arrayOffset() + bytes.readerIndex(),
+                    bytes.readableBytes());
+        }
+        return Json.mapper.getFactory().createParser((InputStream) new ByteBufInputStream(bytes));
+    }
+
+    private static Transaction readTransaction(JsonParser parser, JsonToken token) throws IOException {
+        expect(token, JsonToken.START_OBJECT);
+        Transaction transaction = new Transaction();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id":
+                    transaction.setId(readUuid(parser, value));
+                    break;
+                case "from":
+                    transaction.setFrom(readAccount(parser, value));
+                    break;
+                case "to":
+                    transaction.setTo(readAccount(parser, value));
+                    break;
+                case "amount":
+                    transaction.setAmountUnits(readMoney(parser, value));
+                    break;
+                default:
+                    throw new IOException("Unrecognized field \"" + field + "\"");
+            }
+        }
+        expect(parser.currentToken(), JsonToken.END_OBJECT);
+        return transaction;
+    }
+
+    private static Account readAccount(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(token, JsonToken.START_OBJECT);
+        Account account = new Account();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id":
+                    account.setId(readUuid(parser, value));
+                    break;
+                case "balance":
+                    account.setBalanceUnits(readMoney(parser, value));
+                    break;
+                default:
+                    throw new IOException("Unrecognized field \"" + field + "\"");
+            }
+        }
+        expect(parser.currentToken(), JsonToken.END_OBJECT);
+        return account;
+    }
+
+    /**
+     * Reads a UUID from the characters of the token, without building a {@code String} for the canonical form.
+     */
+    private static UUID readUuid(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(token, JsonToken.VALUE_STRING);
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        if (parser.getTextLength() != 36) {
+            return UUID.fromString(parser.getText());
+        }
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = chars[offset + i];
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    throw new IOException("Invalid UUID");
+                }
+                continue;
+            }
+            int nibble = Character.digit(c, 16);
+            if (nibble < 0) {
+                throw new IOException("Invalid UUID");
+            }
+            if (i < 18) {
+                msb = msb << 4 | nibble;
+            } else {
+                lsb = lsb << 4 | nibble;
+            }
+        }
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * Reads an amount as minor units: plain decimals of at most {@link Money#SCALE} decimals are read from the
+     * characters of the token, anything else through a {@link BigDecimal}.
+     */
+    private static long readMoney(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return 0L;
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    return Money.fromBigDecimal(parser.getDecimalValue());
+                }
+                return Math.multiplyExact(parser.getLongValue(), Money.UNIT);
+            case VALUE_NUMBER_FLOAT:
+                char[] chars = parser.getTextCharacters();
+                int offset = parser.getTextOffset();
+                int length = parser.getTextLength();
+                boolean negative = chars[offset] == '-';
+                long units = 0;
+                long scale = -1;
+                int i = negative ? 1 : 0;
+                for (; i < length && length <= 19; i++) {
+                    char c = chars[offset + i];
+                    if (c == '.' && scale < 0) {
+                        scale = Money.UNIT;
+                    } else if (c >= '0' && c <= '9' && scale != 1) {
+                        units = units * 10 + (c - '0');
+                        scale = scale > 0 ? scale / 10 : scale;
+                    } else {
+                        break;
+                    }
+                }
+                if (i == length && scale > 0) {
+                    return Math.multiplyExact(negative ? -units : units, scale);
+                }
+                return Money.fromBigDecimal(parser.getDecimalValue());
+            case VALUE_STRING:
+                return Money.fromBigDecimal(new BigDecimal(parser.getText().trim()));
+            default:
+                throw new IOException("Unexpected " + token + " for an amount");
+        }
+    }
+
+    private static void expect(JsonToken token, JsonToken expected) throws IOException {
+        if (token != expected) {
+            throw new IOException("Expected " + expected + " but got " + token);
+        }
+    }
+}
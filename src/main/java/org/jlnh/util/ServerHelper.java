@@ -0,0 +1,84 @@
+package org.jlnh.util;
+
+import io.vertx.core.Handler;
+import io.vertx.core.http.Http2Settings;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.BodyHandler;
+
+/**
+ * Helper code to set up the HTTP server from the {@code HTTP_SERVER} configuration.
+ * <p>
+ * The server speaks HTTP/1.1 and HTTP/2 over clear text (h2c, upgraded or with prior knowledge), which multiplexes
+ * any number of requests over a single connection. The TCP options which only exist with the native transport are
+ * only set when it is in use. Request bodies are only read on the routes which need them, up to a hard limit.
+ */
+public class ServerHelper {
+
+    private static final String CONTENT_ENCODING = "content-encoding";
+    private static final String CONTENT_LENGTH = "content-length";
+
+    private ServerHelper() {
+    }
+
+    /**
+     * Options of the HTTP server.
+     *
+     * @param config the {@code HTTP_SERVER} configuration
+     * @param nativeTransport whether the vertx instance uses the native transport
+     * @return the server options, but the port
+     */
+    public static HttpServerOptions options(JsonObject config, boolean nativeTransport) {
+        HttpServerOptions options = new HttpServerOptions() //
+                .setTcpNoDelay(config.getBoolean("TCP_NO_DELAY", true)) //
+                .setCompressionSupported(config.getBoolean("COMPRESSION", false)) //
+                .setCompressionLevel(config.getInteger("COMPRESSION_LEVEL", 6)) //
+                .setInitialSettings(new Http2Settings() //
+                        .setMaxConcurrentStreams(config.getLong("HTTP2_MAX_CONCURRENT_STREAMS", 100L)));
+        if (config.getInteger("ACCEPT_BACKLOG", -1) > 0) {
+            options.setAcceptBacklog(config.getInteger("ACCEPT_BACKLOG"));
+        }
+        if (config.getInteger("HTTP2_CONNECTION_WINDOW_SIZE", -1) > 0) {
+            options.setHttp2ConnectionWindowSize(config.getInteger("HTTP2_CONNECTION_WINDOW_SIZE"));
+        }
+        if (nativeTransport) {
+            options.setTcpFastOpen(config.getBoolean("TCP_FAST_OPEN", false)) //
+                    .setTcpQuickAck(config.getBoolean("TCP_QUICK_ACK", false)) //
+                    .setReusePort(config.getBoolean("REUSE_PORT", false));
+        }
+        return options;
+    }
+
+    /**
+     * Returns a handler reading the request body, failing the request with a {@code 413} once it is larger than a
+     * limit. Uploads are not supported, so nothing is ever written to disk.
+     *
+     * @param maxBytes the maximum size of the body
+     * @return the body handler
+     */
+    public static BodyHandler bodyHandler(long maxBytes) {
+        return BodyHandler.create(false).setBodyLimit(maxBytes);
+    }
+
+    /**
+     * Returns a handler leaving the responses smaller than a threshold uncompressed: deflating a few hundred bytes
+     * costs more CPU than it saves on the wire. Streamed responses, whose length is unknown, are compressed.
+     *
+     * @param thresholdBytes the size from which responses are compressed
+     * @return the handler, to be registered before any other
+     */
+    public static Handler<RoutingContext> compressionThreshold(long thresholdBytes) {
+        return context -> {
+            HttpServerResponse response = context.response();
+            context.addHeadersEndHandler(v -> {
+                String length = response.headers().get(CONTENT_LENGTH);
+                if (length != null && Long.parseLong(length) < thresholdBytes && !response.headers().contains(CONTENT_ENCODING)) {
+                    response.putHeader(CONTENT_ENCODING, "identity");
+                }
+            });
+            context.next();
+        };
+    }
+}
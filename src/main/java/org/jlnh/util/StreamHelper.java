@@ -0,0 +1,171 @@
+package org.jlnh.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.SQLRowStream;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Helper code to stream query results straight into the HTTP response.
+ * <p>
+ * Rows are encoded as they are fetched and written in chunks of about {@link #CHUNK_SIZE} bytes; the row stream is
+ * paused whenever the response write queue is full, so the memory used does not depend on the size of the result.
+ * Results read page by page are streamed the same way, the next page being only read once the previous one is
+ * written.
+ */
+public class StreamHelper {
+
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private static final String APPLICATION_JSON_CHARSET_UTF_8 = "application/json; charset=utf-8";
+    private static final String CONTENT_TYPE = "content-type";
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private StreamHelper() {
+    }
+
+    /**
+     * Streams the rows of a query to the response, as a JSON array or as newline delimited JSON when the client
+     * accepts {@link #APPLICATION_NDJSON}. The connection is closed once the stream ends.
+     *
+     * @param context the routing context
+     * @param connection database connection
+     * @param sql the query
+     * @param params the query parameters
+     * @param mapper maps a row into the object written for it
+     */
+    public static void streamRows(RoutingContext context, SQLConnection connection, String sql, JsonArray params,
+                                  Function<JsonArray, Object> mapper) {
+        connection.queryStreamWithParams(sql, params, query -> {
+            if (query.failed()) {
+                connection.close();
+                context.fail(query.cause());
+                return;
+            }
+            String accept = context.request().getHeader("accept");
+            boolean ndjson = accept != null && accept.contains(APPLICATION_NDJSON);
+            HttpServerResponse response = context.response() //
+                    .setChunked(true) //
+                    .putHeader(CONTENT_TYPE, ndjson ? APPLICATION_NDJSON : APPLICATION_JSON_CHARSET_UTF_8);
+
+            SQLRowStream rows = query.result();
+            ByteBuf[] chunk = {Unpooled.buffer(CHUNK_SIZE)};
+            if (!ndjson) {
+                chunk[0].writeByte('[');
+            }
+            boolean[] first = {true};
+            boolean[] released = {false};
+            Runnable release = () -> {
+                if (!released[0]) {
+                    released[0] = true;
+                    rows.close(closed -> connection.close());
+                }
+            };
+            response.closeHandler(closed -> release.run());
+
+            rows.handler(row -> {
+                if (!ndjson && !first[0]) {
+                    chunk[0].writeByte(',');
+                }
+                first[0] = false;
+                JsonHelper.write(chunk[0], mapper.apply(row));
+                if (ndjson) {
+                    chunk[0].writeByte('\n');
+                }
+                if (chunk[0].readableBytes() >= CHUNK_SIZE) {
+                    response.write(Buffer.buffer(chunk[0]));
+                    chunk[0] = Unpooled.buffer(CHUNK_SIZE);
+                    if (response.writeQueueFull()) {
+                        rows.pause();
+                        response.drainHandler(drained -> rows.resume());
+                    }
+                }
+            });
+            rows.exceptionHandler(failure -> {
+                release.run();
+                if (response.headWritten()) {
+                    response.close();
+                } else {
+                    context.fail(failure);
+                }
+            });
+            rows.endHandler(end -> {
+                release.run();
+                if (!ndjson) {
+                    chunk[0].writeByte(']');
+                }
+                response.end(Buffer.buffer(chunk[0]));
+            });
+        });
+    }
+
+    /**
+     * Streams results read page by page to the response, as a JSON array or as newline delimited JSON when the
+     * client accepts {@link #APPLICATION_NDJSON}.
+     *
+     * @param context the routing context
+     * @param nextPage reads the page following an item, or the first page given null; an empty page ends the stream
+     */
+    public static <T> void streamPages(RoutingContext context, Function<T, Future<List<T>>> nextPage) {
+        String accept = context.request().getHeader("accept");
+        boolean ndjson = accept != null && accept.contains(APPLICATION_NDJSON);
+        context.response() //
+                .setChunked(true) //
+                .putHeader(CONTENT_TYPE, ndjson ? APPLICATION_NDJSON : APPLICATION_JSON_CHARSET_UTF_8);
+        streamPage(context, ndjson, new boolean[]{true}, null, nextPage);
+    }
+
+    private static <T> void streamPage(RoutingContext context, boolean ndjson, boolean[] first, T last,
+                                       Function<T, Future<List<T>>> nextPage) {
+        HttpServerResponse response = context.response();
+        nextPage.apply(last).setHandler(page -> {
+            if (response.closed()) {
+                return;
+            }
+            if (page.failed()) {
+                if (response.headWritten()) {
+                    response.close();
+                } else {
+                    context.fail(page.cause());
+                }
+                return;
+            }
+            ByteBuf chunk = Unpooled.buffer(CHUNK_SIZE);
+            if (first[0] && !ndjson) {
+                chunk.writeByte('[');
+            }
+            for (T item : page.result()) {
+                if (!ndjson && !first[0]) {
+                    chunk.writeByte(',');
+                }
+                first[0] = false;
+                JsonHelper.write(chunk, item);
+                if (ndjson) {
+                    chunk.writeByte('\n');
+                }
+            }
+            if (page.result().isEmpty()) {
+                if (!ndjson) {
+                    chunk.writeByte(']');
+                }
+                response.end(Buffer.buffer(chunk));
+                return;
+            }
+            response.write(Buffer.buffer(chunk));
+            T next = page.result().get(page.result().size() - 1);
+            if (response.writeQueueFull()) {
+                response.drainHandler(drained -> streamPage(context, ndjson, first, next, nextPage));
+            } else {
+                context.vertx().runOnContext(v -> streamPage(context, ndjson, first, next, nextPage));
+            }
+        });
+    }
+}
@@ -0,0 +1,14 @@
+/*
+* Responses of the transfers requested with an Idempotency-Key, replayed on retries
+*/
+create table idempotency_key
+(
+    id varchar(255) not null,
+    fingerprint varchar(255) not null,
+    response varchar(4096) not null,
+    created_at timestamp default current_timestamp not null,
+    constraint idempotency_key_pk
+        primary key (id)
+);
+
+create index idempotency_key_created_at_idx on idempotency_key (created_at);
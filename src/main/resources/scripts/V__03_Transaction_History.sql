@@ -0,0 +1,8 @@
+/*
+* Records when every transaction was committed, and indexes the transactions of each account from the newest
+*/
+alter table transaction add column created_at timestamp default current_timestamp not null;
+
+create index transaction_from_created_at_idx on transaction ("from", created_at desc, id desc);
+
+create index transaction_to_created_at_idx on transaction (to, created_at desc, id desc);
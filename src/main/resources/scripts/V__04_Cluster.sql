@@ -0,0 +1,20 @@
+/*
+* Only executed in clustered mode, where every node keeps the accounts it owns: the accounts of the other side of a
+* transfer are not in the database, and the credits of the transfers to them wait in an outbox until acknowledged
+*/
+alter table transaction drop constraint transaction_account_from__fk;
+
+alter table transaction drop constraint transaction_account_to_fk;
+
+create table credit_outbox
+(
+    id uuid,
+    "from" uuid not null,
+    to uuid not null,
+    amount decimal(19,4) not null,
+    created_at timestamp default current_timestamp not null,
+    constraint credit_outbox_pk
+        primary key (id)
+);
+
+create index credit_outbox_created_at_idx on credit_outbox (created_at);
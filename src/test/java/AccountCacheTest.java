@@ -0,0 +1,84 @@
+import org.jlnh.cache.AccountCache;
+import org.jlnh.model.Account;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Tests for the account cache.
+ */
+public class AccountCacheTest {
+
+    @Test
+    public void should_evict_least_recently_used_account() {
+        AccountCache cache = new AccountCache(2, 0);
+        Account first = new Account(UUID.randomUUID(), BigDecimal.ONE);
+        Account second = new Account(UUID.randomUUID(), BigDecimal.TEN);
+        Account third = new Account(UUID.randomUUID(), BigDecimal.ZERO);
+
+        cache.putIfUnchanged(first, cache.stamp());
+        cache.putIfUnchanged(second, cache.stamp());
+        Assert.assertNotNull(cache.get(first.getId()));
+        cache.putIfUnchanged(third, cache.stamp());
+
+        Assert.assertNotNull(cache.get(first.getId()));
+        Assert.assertNull(cache.get(second.getId()));
+        Assert.assertEquals(1L, (long) cache.stats().getLong("evictions"));
+    }
+
+    @Test
+    public void should_not_cache_account_loaded_before_invalidation() {
+        AccountCache cache = new AccountCache(10, 0);
+        Account account = new Account(UUID.randomUUID(), BigDecimal.ONE);
+
+        long stamp = cache.stamp();
+        cache.invalidate(account.getId());
+        cache.putIfUnchanged(account, stamp);
+
+        Assert.assertNull(cache.get(account.getId()));
+    }
+
+    @Test
+    public void should_cache_account_loaded_before_invalidation_of_another() {
+        AccountCache cache = new AccountCache(10, 0);
+        Account account = new Account(UUID.randomUUID(), BigDecimal.ONE);
+
+        long stamp = cache.stamp();
+        cache.invalidate(UUID.randomUUID(), UUID.randomUUID());
+        cache.putIfUnchanged(account, stamp);
+
+        Assert.assertNotNull(cache.get(account.getId()));
+    }
+
+    @Test
+    public void should_not_cache_account_whose_invalidation_was_forgotten() {
+        AccountCache cache = new AccountCache(1, 0);
+        Account account = new Account(UUID.randomUUID(), BigDecimal.ONE);
+
+        long stamp = cache.stamp();
+        cache.invalidate(account.getId());
+        cache.invalidate(UUID.randomUUID());
+        cache.putIfUnchanged(account, stamp);
+
+        Assert.assertNull(cache.get(account.getId()));
+    }
+
+    @Test
+    public void should_not_cache_stale_load_after_invalidations_were_looked_up() {
+        AccountCache cache = new AccountCache(2, 0);
+        Account looked = new Account(UUID.randomUUID(), BigDecimal.ONE);
+        Account stale = new Account(UUID.randomUUID(), BigDecimal.TEN);
+
+        cache.invalidate(looked.getId());
+        long stamp = cache.stamp();
+        cache.invalidate(stale.getId());
+        cache.putIfUnchanged(looked, cache.stamp());
+        cache.invalidate(UUID.randomUUID());
+        cache.invalidate(UUID.randomUUID());
+        cache.putIfUnchanged(stale, stamp);
+
+        Assert.assertNull(cache.get(stale.getId()));
+    }
+}
@@ -0,0 +1,63 @@
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.jlnh.persistence.AccountSequencer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Tests for the per-account sequencer of the jdbc engine.
+ */
+@RunWith(VertxUnitRunner.class)
+public class AccountSequencerTest {
+
+    @Rule
+    public RunTestOnContext runTestOnContext = new RunTestOnContext();
+
+    @Test
+    public void should_run_tasks_sharing_an_account_one_after_the_other(TestContext context) {
+        AccountSequencer sequencer = new AccountSequencer(1024);
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        UUID c = UUID.randomUUID();
+        Future<Void> first = Future.future();
+
+        Async async = context.async();
+        sequencer.execute(Arrays.asList(a, b), () -> first);
+        sequencer.execute(Arrays.asList(c, b), () -> {
+            context.assertTrue(first.isComplete());
+            return Future.succeededFuture();
+        }).setHandler(context.asyncAssertSuccess(v -> async.complete()));
+        first.complete();
+    }
+
+    @Test
+    public void should_run_tasks_on_disjoint_accounts_in_parallel(TestContext context) {
+        AccountSequencer sequencer = new AccountSequencer(1024);
+        Future<Void> blocked = Future.future();
+        // Hashed onto the stripes 1 and 2
+        sequencer.execute(Collections.singletonList(new UUID(0L, 1L)), () -> blocked);
+        sequencer.execute(Collections.singletonList(new UUID(0L, 2L)), Future::succeededFuture)
+                .setHandler(context.asyncAssertSuccess(v -> context.assertFalse(blocked.isComplete())));
+    }
+
+    @Test
+    public void should_release_accounts_of_failed_task(TestContext context) {
+        Vertx vertx = runTestOnContext.vertx();
+        AccountSequencer sequencer = AccountSequencer.shared(vertx, 1);
+        List<UUID> accounts = Collections.singletonList(UUID.randomUUID());
+        sequencer.execute(accounts, () -> {
+            throw new IllegalStateException("failed");
+        }).setHandler(context.asyncAssertFailure());
+        sequencer.execute(accounts, Future::succeededFuture).setHandler(context.asyncAssertSuccess());
+    }
+}
@@ -0,0 +1,252 @@
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.test.fakecluster.FakeClusterManager;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.cluster.ClusterNode;
+import org.jlnh.cluster.PartitionRing;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for two nodes of a cluster in the same JVM, each one with a vertx instance of its own and a database of its
+ * own, over a local cluster manager. The first seed account belongs to {@code node-b}, the other two to
+ * {@code node-a}.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ClusterNodeTest {
+
+    private static final List<String> NODES = Arrays.asList("node-a", "node-b");
+    private static final int[] PORTS = {18181, 18182};
+
+    private static final String RICH = "e6908ec0-1b70-4982-9362-8e9bdabbbd97";
+    private static final String SENDER = "f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2";
+    private static final String RECEIVER = "123e4567-e89b-12d3-a456-556642440000";
+
+    private final List<Vertx> nodes = new ArrayList<>();
+    private HttpClient client;
+
+    @Before
+    public void setUp(TestContext context) {
+        Async async = context.async();
+        List<Future> started = new ArrayList<>();
+        for (int i = 0; i < NODES.size(); i++) {
+            started.add(startNode(NODES.get(i), PORTS[i]));
+        }
+        CompositeFuture.all(started).setHandler(context.asyncAssertSuccess(all -> {
+            client = nodes.get(0).createHttpClient();
+            async.complete();
+        }));
+    }
+
+    private Future<Void> startNode(String node, int port) {
+        JsonObject config = new JsonObject() //
+                .put("HTTP_PORT", port) //
+                .put("url", "jdbc:h2:mem:" + node) //
+                .put("TRANSFER_ENGINE", "jdbc") //
+                .put("STORAGE", new JsonObject().put("TYPE", "jdbc")) //
+                .put("METRICS", new JsonObject().put("PORT", -1)) //
+                .put("CLUSTER", new JsonObject() //
+                        .put("NODE_ID", node) //
+                        .put("NODES", new JsonArray(NODES)) //
+                        .put("REDELIVERY_INTERVAL_MS", 100));
+        Future<Void> future = Future.future();
+        Vertx.clusteredVertx(new VertxOptions().setClusterManager(new FakeClusterManager()), clustered -> {
+            if (clustered.failed()) {
+                future.fail(clustered.cause());
+                return;
+            }
+            nodes.add(clustered.result());
+            clustered.result().deployVerticle(MoneyTransferVerticle.class.getName(),
+                    new DeploymentOptions().setConfig(config).setInstances(2), deployed -> future.handle(deployed.mapEmpty()));
+        });
+        return future;
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        Async async = context.async();
+        List<Future> closed = new ArrayList<>();
+        for (Vertx node : nodes) {
+            Future<Void> future = Future.future();
+            node.close(future);
+            closed.add(future);
+        }
+        CompositeFuture.join(closed).setHandler(done -> {
+            FakeClusterManager.reset();
+            async.complete();
+        });
+    }
+
+    @Test
+    public void should_partition_the_seed_accounts() {
+        PartitionRing ring = new PartitionRing(NODES, 128);
+        assertEquals("node-b", ring.ownerOf(UUID.fromString(RICH)));
+        assertEquals("node-a", ring.ownerOf(UUID.fromString(SENDER)));
+        assertEquals("node-a", ring.ownerOf(UUID.fromString(RECEIVER)));
+    }
+
+    @Test
+    public void should_spread_accounts_evenly_and_move_few_of_them_when_a_node_joins() {
+        PartitionRing three = new PartitionRing(Arrays.asList("node-1", "node-2", "node-3"), 128);
+        PartitionRing four = new PartitionRing(Arrays.asList("node-1", "node-2", "node-3", "node-4"), 128);
+        Map<String, Integer> owned = new HashMap<>();
+        int accounts = 30000;
+        int moved = 0;
+        for (int i = 0; i < accounts; i++) {
+            UUID account = UUID.randomUUID();
+            owned.merge(three.ownerOf(account), 1, Integer::sum);
+            if (!three.ownerOf(account).equals(four.ownerOf(account))) {
+                assertEquals("node-4", four.ownerOf(account));
+                moved++;
+            }
+        }
+        owned.values().forEach(count -> assertTrue(count > accounts / 3 * 0.8 && count < accounts / 3 * 1.2));
+        assertTrue(moved > accounts / 4 * 0.7 && moved < accounts / 4 * 1.3);
+    }
+
+    @Test
+    public void should_read_accounts_of_every_node_from_any_node(TestContext context) {
+        Async async = context.async();
+        TransferRequests.getBalance(client, PORTS[0], RICH, rich -> {
+            context.assertEquals(0, new BigDecimal("10000").compareTo(rich));
+            TransferRequests.getBalance(client, PORTS[1], SENDER, sender -> {
+                context.assertEquals(0, new BigDecimal("9.99").compareTo(sender));
+                client.getNow(PORTS[1], "localhost", "/api/accounts?limit=10", page -> page.bodyHandler(body -> {
+                    JsonArray accounts = new JsonArray(body.toString());
+                    context.assertEquals(3, accounts.size());
+                    context.assertEquals(RICH, accounts.getJsonObject(0).getString("id"));
+                    context.assertEquals(SENDER, accounts.getJsonObject(1).getString("id"));
+                    context.assertEquals(RECEIVER, accounts.getJsonObject(2).getString("id"));
+                    async.complete();
+                }));
+            });
+        });
+    }
+
+    @Test
+    public void should_transfer_between_partitions(TestContext context) {
+        Async async = context.async();
+        TransferRequests.postTransfer(client, PORTS[0], RICH, SENDER, BigDecimal.ONE, status -> {
+            context.assertEquals(201, status);
+            TransferRequests.getBalance(client, PORTS[0], RICH, rich -> {
+                context.assertEquals(0, new BigDecimal("9999").compareTo(rich));
+                TransferRequests.getBalance(client, PORTS[1], SENDER, sender -> {
+                    context.assertEquals(0, new BigDecimal("10.99").compareTo(sender));
+                    client.getNow(PORTS[1], "localhost", "/api/accounts/" + SENDER + "/transactions?limit=10",
+                            page -> page.bodyHandler(body -> {
+                                JsonArray transactions = new JsonArray(body.toString());
+                                context.assertEquals(1, transactions.size());
+                                context.assertEquals(RICH, transactions.getJsonObject(0).getString("from"));
+                                async.complete();
+                            }));
+                });
+            });
+        });
+    }
+
+    @Test
+    public void should_not_overdraw_under_concurrent_transfers_between_partitions(TestContext context) {
+        int transfers = 20;
+        Async async = context.async(transfers);
+        Async verified = context.async();
+        AtomicInteger committed = new AtomicInteger();
+
+        for (int i = 0; i < transfers; i++) {
+            TransferRequests.postTransfer(client, PORTS[i % 2], SENDER, RICH, BigDecimal.ONE, status -> {
+                if (status == 201) {
+                    committed.incrementAndGet();
+                } else {
+                    context.assertEquals(400, status);
+                }
+                async.countDown();
+            });
+        }
+        async.handler(done -> {
+            context.assertEquals(9, committed.get());
+            TransferRequests.getBalance(client, PORTS[1], SENDER, sender -> {
+                context.assertEquals(0, new BigDecimal("0.99").compareTo(sender));
+                TransferRequests.getBalance(client, PORTS[0], RICH, rich -> {
+                    context.assertEquals(0, new BigDecimal("10009").compareTo(rich));
+                    verified.complete();
+                });
+            });
+        });
+    }
+
+    @Test
+    public void should_apply_a_credit_delivered_twice_once(TestContext context) {
+        Async async = context.async();
+        JsonObject credit = new JsonObject() //
+                .put("id", UUID.randomUUID().toString()) //
+                .put("from", SENDER) //
+                .put("to", RICH) //
+                .put("amount", 500L);
+        DeliveryOptions options = new DeliveryOptions().addHeader(ClusterNode.ACTION, ClusterNode.CREDIT);
+        nodes.get(0).eventBus().send(ClusterNode.address("node-b"), credit, options, context.asyncAssertSuccess(first ->
+                nodes.get(0).eventBus().send(ClusterNode.address("node-b"), credit, options, context.asyncAssertSuccess(second ->
+                        TransferRequests.getBalance(client, PORTS[0], RICH, rich -> {
+                            context.assertEquals(0, new BigDecimal("10000.05").compareTo(rich));
+                            async.complete();
+                        })))));
+    }
+
+    @Test
+    public void should_deliver_pending_credits_again(TestContext context) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:node-a", "sa", "sa");
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO credit_outbox (id, \"from\", to, amount) VALUES ('" + UUID.randomUUID()
+                    + "', '" + SENDER + "', '" + RICH + "', 2.00)");
+        }
+        Async async = context.async();
+        nodes.get(0).setTimer(500, timer -> TransferRequests.getBalance(client, PORTS[0], RICH, rich -> {
+            context.assertEquals(0, new BigDecimal("10002").compareTo(rich));
+            async.complete();
+        }));
+    }
+
+    @Test
+    public void should_refuse_transfers_to_unknown_accounts_of_other_partitions(TestContext context) {
+        Async async = context.async();
+        Map<String, String> unknown = new HashMap<>();
+        PartitionRing ring = new PartitionRing(NODES, 128);
+        while (!unknown.containsKey("node-a")) {
+            UUID id = UUID.randomUUID();
+            unknown.put(ring.ownerOf(id), id.toString());
+        }
+        TransferRequests.postTransfer(client, PORTS[1], RICH, unknown.get("node-a"), BigDecimal.ONE, status -> {
+            context.assertNotEquals(201, status);
+            TransferRequests.getBalance(client, PORTS[1], RICH, rich -> {
+                context.assertEquals(0, new BigDecimal("10000").compareTo(rich));
+                async.complete();
+            });
+        });
+    }
+}
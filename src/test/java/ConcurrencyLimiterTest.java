@@ -0,0 +1,105 @@
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import org.jlnh.admission.ConcurrencyLimiter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the admission control limiter, in front of a route whose responses are ended by the tests.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ConcurrencyLimiterTest {
+
+    private static final int PORT = 8089;
+
+    private Vertx vertx;
+    private HttpClient client;
+    private ConcurrencyLimiter limiter;
+    private final List<RoutingContext> held = new ArrayList<>();
+    private Handler<RoutingContext> onHeld;
+
+    @Before
+    public void setUp(TestContext context) {
+        vertx = Vertx.vertx();
+        client = vertx.createHttpClient();
+        Router router = Router.router(vertx);
+        router.get("/").handler(routingContext -> limiter.handle(routingContext)).handler(routingContext -> {
+            held.add(routingContext);
+            onHeld.handle(routingContext);
+        });
+        vertx.createHttpServer().requestHandler(router).listen(PORT, context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void should_queue_then_reject_beyond_the_limit(TestContext context) {
+        limiter = new ConcurrencyLimiter(vertx, 1, 1, 10_000, 2);
+        Async async = context.async();
+        onHeld = first -> {
+            onHeld = second -> second.response().end("second");
+            get(queued -> {
+                context.assertEquals(200, queued.statusCode());
+                context.assertEquals(2L, limiter.stats().getLong("admitted"));
+                async.complete();
+            });
+            vertx.setTimer(50, waited -> get(rejected -> {
+                context.assertEquals(503, rejected.statusCode());
+                context.assertEquals("2", rejected.getHeader("Retry-After"));
+                context.assertEquals(1, limiter.stats().getInteger("queued"));
+                first.response().end("first");
+            }));
+        };
+        get(response -> context.assertEquals(200, response.statusCode()));
+    }
+
+    @Test
+    public void should_reject_requests_waiting_too_long(TestContext context) {
+        limiter = new ConcurrencyLimiter(vertx, 1, 10, 100, 1);
+        Async async = context.async();
+        onHeld = first -> get(timedOut -> {
+            context.assertEquals(503, timedOut.statusCode());
+            context.assertEquals(1L, limiter.stats().getLong("timedOut"));
+            context.assertEquals(0, limiter.stats().getInteger("queued"));
+            first.response().end();
+            async.complete();
+        });
+        get(response -> {
+        });
+    }
+
+    @Test
+    public void should_admit_waiting_requests_when_the_limit_grows(TestContext context) {
+        limiter = new ConcurrencyLimiter(vertx, 1, 10, 10_000, 1);
+        Async async = context.async(2);
+        onHeld = first -> {
+            onHeld = second -> {
+                context.assertEquals(2, limiter.stats().getInteger("inFlight"));
+                first.response().end();
+                second.response().end();
+            };
+            get(response -> async.countDown());
+            vertx.setTimer(50, waited -> limiter.setLimit(2));
+        };
+        get(response -> async.countDown());
+    }
+
+    private void get(Handler<HttpClientResponse> handler) {
+        client.getNow(PORT, "localhost", "/", handler);
+    }
+}
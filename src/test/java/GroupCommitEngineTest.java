@@ -0,0 +1,129 @@
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the Money Transfer verticle running on the group-commit engine.
+ */
+@RunWith(VertxUnitRunner.class)
+public class GroupCommitEngineTest {
+
+    private static final String SENDER = "f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2";
+    private static final String RECEIVER = "123e4567-e89b-12d3-a456-556642440000";
+
+    @Rule
+    public RunTestOnContext runTestOnContext = new RunTestOnContext();
+
+    private Vertx vertx;
+    private int port = 8080;
+
+    @Before
+    public void setUp(TestContext context) {
+        vertx = runTestOnContext.vertx();
+        JsonObject config = new JsonObject() //
+                .put("TRANSFER_ENGINE", "group-commit") //
+                .put("GROUP_COMMIT", new JsonObject().put("BATCH_SIZE", 8).put("LINGER_MS", 5));
+        vertx.deployVerticle(MoneyTransferVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void should_transfer_money(TestContext context) {
+        Async async = context.async();
+        TransferRequests.postTransfer(vertx.createHttpClient(), port, SENDER, RECEIVER, BigDecimal.valueOf(0.01), status -> {
+            context.assertEquals(201, status);
+            vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/" + SENDER,
+                    response -> response.bodyHandler(body -> {
+                        context.assertEquals(BigDecimal.valueOf(9.98), Json.decodeValue(body, Account.class).getBalance());
+                        async.complete();
+                    }));
+        });
+    }
+
+    @Test
+    public void should_not_overdraw_under_concurrent_transfers(TestContext context) {
+        int transfers = 20;
+        Async async = context.async(transfers);
+        Async verified = context.async();
+        AtomicInteger committed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        for (int i = 0; i < transfers; i++) {
+            TransferRequests.postTransfer(vertx.createHttpClient(), port, SENDER, RECEIVER, BigDecimal.ONE, status -> {
+                if (status == 201) {
+                    committed.incrementAndGet();
+                } else {
+                    context.assertEquals(400, status);
+                    rejected.incrementAndGet();
+                }
+                async.countDown();
+            });
+        }
+        async.handler(done -> {
+            context.assertEquals(9, committed.get());
+            context.assertEquals(11, rejected.get());
+            vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/" + SENDER,
+                    response -> response.bodyHandler(body -> {
+                        context.assertEquals(0.99, Json.decodeValue(body, Account.class).getBalance().doubleValue());
+                        verified.complete();
+                    }));
+        });
+    }
+
+    @Test
+    public void should_refuse_a_transfer_without_sender(TestContext context) {
+        Async async = context.async();
+        String json = Json.encode(new Transaction(null, null, new Account(UUID.fromString(RECEIVER), null), BigDecimal.ONE));
+        vertx.createHttpClient().post(port, "localhost", "/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .handler(response -> {
+                    context.assertEquals(400, response.statusCode());
+                    async.complete();
+                }) //
+                .end(json);
+    }
+
+    @Test
+    public void should_store_idempotency_key_in_the_batch_of_the_transfer(TestContext context) {
+        Async async = context.async();
+        String json = Json.encode(new Transaction(null, new Account(UUID.fromString(SENDER), null),
+                new Account(UUID.fromString(RECEIVER), null), BigDecimal.valueOf(0.01)));
+        vertx.createHttpClient().post(port, "localhost", "/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .putHeader("Idempotency-Key", "batched-key") //
+                .handler(response -> response.bodyHandler(body -> {
+                    context.assertEquals(201, response.statusCode());
+                    JDBCClient client = JDBCClient.createShared(vertx, new JsonObject(), "test");
+                    client.querySingleWithParams("SELECT response FROM idempotency_key WHERE id = ?",
+                            new JsonArray().add("batched-key"), context.asyncAssertSuccess(row -> {
+                                context.assertEquals(body.toString(), row.getString(0));
+                                client.close(closed -> async.complete());
+                            }));
+                })) //
+                .end(json);
+    }
+}
@@ -0,0 +1,74 @@
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.jlnh.MoneyTransferVerticle;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for the Money Transfer verticle served with the tuned HTTP server profile of {@code conf/http-tuned.json}.
+ */
+@RunWith(VertxUnitRunner.class)
+public class HttpServerProfileTest {
+
+    private static final int PORT = 18090;
+    private static final String ACCOUNT = "/api/accounts/f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2";
+
+    private Vertx vertx;
+
+    @Before
+    public void setUp(TestContext context) {
+        vertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(true));
+        JsonObject config = vertx.fileSystem().readFileBlocking("conf/http-tuned.json").toJsonObject() //
+                .put("HTTP_PORT", PORT) //
+                .put("METRICS", new JsonObject().put("PORT", -1));
+        vertx.deployVerticle(MoneyTransferVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void should_serve_http2_with_prior_knowledge(TestContext context) {
+        Async async = context.async();
+        HttpClient client = vertx.createHttpClient(new HttpClientOptions() //
+                .setProtocolVersion(HttpVersion.HTTP_2) //
+                .setHttp2ClearTextUpgrade(false));
+        client.getNow(PORT, "localhost", ACCOUNT, response -> response.bodyHandler(body -> {
+            context.assertEquals(HttpVersion.HTTP_2, response.version());
+            context.assertEquals(200, response.statusCode());
+            context.assertTrue(body.toString().contains("9.99"));
+            async.complete();
+        }));
+    }
+
+    @Test
+    public void should_only_compress_responses_over_the_threshold(TestContext context) {
+        Async async = context.async();
+        HttpClient client = vertx.createHttpClient();
+        client.get(PORT, "localhost", ACCOUNT, small -> {
+            context.assertNotEquals("gzip", small.getHeader("content-encoding"));
+            client.get(PORT, "localhost", "/api/accounts", all -> {
+                context.assertEquals("gzip", all.getHeader("content-encoding"));
+                async.complete();
+            }).putHeader("Accept-Encoding", "gzip").end();
+        }).putHeader("Accept-Encoding", "gzip").end();
+    }
+
+    @Test
+    public void should_use_the_native_transport(TestContext context) {
+        context.assertTrue(vertx.isNativeTransportEnabled());
+    }
+}
@@ -0,0 +1,60 @@
+import org.jlnh.cache.IdempotencyStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the idempotency key store.
+ */
+public class IdempotencyStoreTest {
+
+    @Test
+    public void should_reserve_key_once() {
+        IdempotencyStore store = new IdempotencyStore(10, 1 << 20, 60000);
+
+        Assert.assertNull(store.reserve("key", "a>b:1"));
+        IdempotencyStore.Entry pending = store.reserve("key", "a>b:1");
+        Assert.assertTrue(pending.isPending());
+
+        store.complete("key", "{}");
+        Assert.assertEquals("{}", store.get("key").getResponse());
+    }
+
+    @Test
+    public void should_free_key_of_failed_request() {
+        IdempotencyStore store = new IdempotencyStore(10, 1 << 20, 60000);
+
+        store.reserve("key", "a>b:1");
+        store.release("key");
+
+        Assert.assertNull(store.get("key"));
+        Assert.assertNull(store.reserve("key", "a>b:1"));
+    }
+
+    @Test
+    public void should_evict_oldest_keys_over_the_limits() {
+        IdempotencyStore store = new IdempotencyStore(2, 1 << 20, 60000);
+        store.put("first", "a>b:1", "{}");
+        store.put("second", "a>b:1", "{}");
+        store.put("third", "a>b:1", "{}");
+
+        Assert.assertNull(store.get("first"));
+        Assert.assertNotNull(store.get("third"));
+        Assert.assertEquals(1L, (long) store.stats().getLong("evictions"));
+
+        IdempotencyStore small = new IdempotencyStore(10, 300, 60000);
+        small.put("first", "a>b:1", "{}");
+        small.put("second", "a>b:1", "{}");
+        Assert.assertNull(small.get("first"));
+        Assert.assertTrue(small.stats().getLong("bytes") <= 300);
+    }
+
+    @Test
+    public void should_expire_keys() throws InterruptedException {
+        IdempotencyStore store = new IdempotencyStore(10, 1 << 20, 1);
+        store.put("key", "a>b:1", "{}");
+        Thread.sleep(5);
+
+        Assert.assertNull(store.get("key"));
+        Assert.assertEquals(0L, (long) store.stats().getLong("bytes"));
+    }
+}
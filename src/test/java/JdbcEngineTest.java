@@ -0,0 +1,151 @@
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.jlnh.MoneyTransferLauncher;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Tests for several instances of the Money Transfer verticle running on the jdbc engine.
+ */
+@RunWith(VertxUnitRunner.class)
+public class JdbcEngineTest {
+
+    private static final String RICH = "e6908ec0-1b70-4982-9362-8e9bdabbbd97";
+    private static final String SENDER = "f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2";
+    private static final String RECEIVER = "123e4567-e89b-12d3-a456-556642440000";
+
+    private static final int CLIENTS = 64;
+    private static final int TRANSFERS_PER_CLIENT = 4;
+
+    @Rule
+    public RunTestOnContext runTestOnContext = new RunTestOnContext();
+
+    private Vertx vertx;
+    private HttpClient client;
+    private int port = 8080;
+
+    @Before
+    public void setUp(TestContext context) {
+        vertx = runTestOnContext.vertx();
+        client = vertx.createHttpClient(new HttpClientOptions().setMaxPoolSize(CLIENTS));
+        JsonObject config = new JsonObject() //
+                .put("INSTANCES", 4) //
+                .put("TRANSFER_ENGINE", "jdbc") //
+                .put("BATCH_CHUNK_ACCOUNTS", 2);
+        vertx.deployVerticle(MoneyTransferLauncher.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void should_not_lose_updates_under_concurrent_clients(TestContext context) {
+        Async async = context.async(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            String receiver = i % 2 == 0 ? RECEIVER : SENDER;
+            transferRepeatedly(context, receiver, TRANSFERS_PER_CLIENT, async);
+        }
+
+        Async verified = context.async(3);
+        BigDecimal perReceiver = BigDecimal.valueOf(CLIENTS / 2 * TRANSFERS_PER_CLIENT);
+        async.handler(done -> {
+            assertBalance(context, RICH, BigDecimal.valueOf(10000).subtract(perReceiver.multiply(BigDecimal.valueOf(2))), verified);
+            assertBalance(context, RECEIVER, perReceiver, verified);
+            assertBalance(context, SENDER, BigDecimal.valueOf(9.99).add(perReceiver), verified);
+        });
+    }
+
+    @Test
+    public void should_release_accounts_of_failed_transfer(TestContext context) {
+        Async async = context.async();
+        TransferRequests.postTransfer(client, port, UUID.randomUUID().toString(), RECEIVER, BigDecimal.ONE, status -> {
+            context.assertNotEquals(201, status);
+            TransferRequests.postTransfer(client, port, RICH, RECEIVER, BigDecimal.ONE, retried -> {
+                context.assertEquals(201, retried);
+                async.complete();
+            });
+        });
+    }
+
+    @Test
+    public void should_roll_back_debit_of_transfer_to_unknown_account(TestContext context) {
+        Async async = context.async();
+        TransferRequests.postTransfer(client, port, RICH, UUID.randomUUID().toString(), BigDecimal.ONE, status -> {
+            context.assertNotEquals(201, status);
+            assertBalance(context, RICH, BigDecimal.valueOf(10000), async);
+        });
+    }
+
+    @Test
+    public void should_refuse_transfer_to_the_sender_itself(TestContext context) {
+        Async async = context.async();
+        TransferRequests.postTransfer(client, port, RICH, RICH, BigDecimal.ONE, status -> {
+            context.assertEquals(400, status);
+            assertBalance(context, RICH, BigDecimal.valueOf(10000), async);
+        });
+    }
+
+    @Test
+    public void should_execute_chunks_of_a_batch_in_order(TestContext context) {
+        Async async = context.async(3);
+        JsonArray batch = new JsonArray() //
+                .add(transfer(RICH, RECEIVER, 5)) //
+                .add(transfer(RECEIVER, SENDER, 5)) //
+                .add(transfer(SENDER, RICH, 14.99));
+        client.post(port, "localhost", "/api/transfers/batch") //
+                .putHeader("Content-Type", "application/json") //
+                .handler(response -> response.bodyHandler(body -> {
+                    context.assertEquals(200, response.statusCode());
+                    context.assertEquals(3, body.toJsonObject().getInteger("committed"));
+                    assertBalance(context, RICH, BigDecimal.valueOf(10009.99), async);
+                    assertBalance(context, RECEIVER, BigDecimal.ZERO, async);
+                    assertBalance(context, SENDER, BigDecimal.ZERO, async);
+                })) //
+                .end(batch.encode());
+    }
+
+    private static JsonObject transfer(String from, String to, double amount) {
+        return JsonObject.mapFrom(new Transaction(null, new Account(UUID.fromString(from), BigDecimal.ZERO),
+                new Account(UUID.fromString(to), BigDecimal.ZERO), BigDecimal.valueOf(amount)));
+    }
+
+    /**
+     * Transfers one unit from the rich account, one transfer after the other, like a single client would.
+     */
+    private void transferRepeatedly(TestContext context, String receiver, int remaining, Async async) {
+        if (remaining == 0) {
+            async.countDown();
+            return;
+        }
+        TransferRequests.postTransfer(client, port, RICH, receiver, BigDecimal.ONE, status -> {
+            context.assertEquals(201, status);
+            transferRepeatedly(context, receiver, remaining - 1, async);
+        });
+    }
+
+    private void assertBalance(TestContext context, String id, BigDecimal expected, Async verified) {
+        TransferRequests.getBalance(client, port, id, balance -> {
+            context.assertEquals(0, expected.compareTo(balance), "balance of " + id);
+            verified.countDown();
+        });
+    }
+}
@@ -0,0 +1,112 @@
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.jlnh.model.TransactionRecord;
+import org.jlnh.util.JsonHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Tests for the hand-written JSON serializers, checked against Jackson.
+ */
+public class JsonHelperTest {
+
+    private static final UUID SENDER = UUID.fromString("f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2");
+    private static final UUID RECEIVER = UUID.fromString("123e4567-e89b-12d3-a456-556642440000");
+
+    @Test
+    public void should_write_what_jackson_writes() {
+        for (long units : new long[] {0L, 1L, 99800L, 100000000L, -5000L, -123401L, Long.MAX_VALUE}) {
+            Account account = new Account(SENDER, units);
+            Transaction transaction = new Transaction(UUID.randomUUID(), account, new Account(RECEIVER, 10L), units);
+            TransactionRecord record = new TransactionRecord(UUID.randomUUID(), SENDER, RECEIVER, units, 1577836800123L);
+
+            Assert.assertEquals(Json.encode(account), write(account));
+            Assert.assertEquals(Json.encode(transaction), write(transaction));
+            Assert.assertEquals(Json.encode(record), write(record));
+        }
+        List<Object> values = Arrays.asList(new Account(null, 0L), new Transaction(), null);
+        Assert.assertEquals(Json.encode(values), write(values));
+    }
+
+    @Test
+    public void should_write_transfers_without_the_receiver() {
+        Transaction transaction = new Transaction(null, new Account(SENDER, 99800L), new Account(RECEIVER, 0L), 100L);
+
+        Assert.assertEquals("{\"from\":{\"id\":\"" + SENDER + "\",\"balance\":9.98},\"amount\":0.01}",
+                JsonHelper.encodeTransfer(transaction));
+        Assert.assertNotNull(transaction.getTo());
+    }
+
+    @Test
+    public void should_read_what_jackson_reads() {
+        for (String amount : new String[] {"0.01", "12", "-3.5", "1.23400", "1e2", "\"7.25\"", "9223372036854.7758"}) {
+            String json = "{\"id\":null,\"from\":{\"id\":\"" + SENDER + "\",\"balance\":1.5},\"to\":{\"id\":\""
+                    + RECEIVER.toString().toUpperCase() + "\"},\"amount\":" + amount + "}";
+            Transaction expected = Json.decodeValue(json, Transaction.class);
+
+            Transaction read = JsonHelper.readTransaction(Buffer.buffer(json));
+
+            Assert.assertEquals(expected.getFrom().getId(), read.getFrom().getId());
+            Assert.assertEquals(expected.getFrom().getBalanceUnits(), read.getFrom().getBalanceUnits());
+            Assert.assertEquals(expected.getTo().getId(), read.getTo().getId());
+            Assert.assertEquals(expected.getAmountUnits(), read.getAmountUnits());
+        }
+    }
+
+    @Test
+    public void should_read_arrays_and_sequences_of_transactions() {
+        String transaction = "{\"from\":{\"id\":\"" + SENDER + "\"},\"to\":{\"id\":\"" + RECEIVER + "\"},\"amount\":1}";
+
+        Assert.assertEquals(2, JsonHelper.readTransactions(Buffer.buffer("[" + transaction + "," + transaction + "]"), true).size());
+        Assert.assertEquals(2, JsonHelper.readTransactions(Buffer.buffer(transaction + "\n\n" + transaction + "\n"), false).size());
+    }
+
+    @Test
+    public void should_refuse_invalid_transactions() {
+        for (String json : new String[] {"", "[]", "{\"amount\":0.00001}", "{\"unknown\":1}", "{\"id\":\"not-a-uuid\"}",
+                "{\"from\":{\"id\":\"f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ceg\"}}"}) {
+            try {
+                JsonHelper.readTransaction(Buffer.buffer(json));
+                Assert.fail("Read " + json);
+            } catch (IllegalArgumentException expected) {
+                // refused
+            }
+        }
+    }
+
+    @Test
+    public void should_refuse_anything_after_the_transactions() {
+        String transaction = "{\"from\":{\"id\":\"" + SENDER + "\"},\"to\":{\"id\":\"" + RECEIVER + "\"},\"amount\":1}";
+        for (String trailing : new String[] {transaction, "{}", "[]", "1", "garbage"}) {
+            try {
+                JsonHelper.readTransaction(Buffer.buffer(transaction + " " + trailing));
+                Assert.fail("Read a transaction followed by " + trailing);
+            } catch (IllegalArgumentException expected) {
+                // refused
+            }
+            try {
+                JsonHelper.readTransactions(Buffer.buffer("[" + transaction + "] " + trailing), true);
+                Assert.fail("Read an array followed by " + trailing);
+            } catch (IllegalArgumentException expected) {
+                // refused
+            }
+        }
+        Assert.assertEquals(SENDER, JsonHelper.readTransaction(Buffer.buffer(transaction + "\n")).getFrom().getId());
+    }
+
+    private static String write(Object value) {
+        ByteBuf out = Unpooled.buffer();
+        JsonHelper.write(out, value);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,35 @@
+import org.jlnh.metrics.LatencyHistogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the log-linear latency histogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void should_estimate_quantiles_within_bucket_precision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(500.0, histogram.quantile(0.5, TimeUnit.MICROSECONDS), 500.0 * 0.04);
+        Assert.assertEquals(990.0, histogram.quantile(0.99, TimeUnit.MICROSECONDS), 990.0 * 0.04);
+        Assert.assertEquals(1000.0, histogram.quantile(1.0, TimeUnit.MICROSECONDS), 1000.0 * 0.04);
+    }
+
+    @Test
+    public void should_clamp_out_of_range_values() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+
+        Assert.assertEquals(2, histogram.getCount());
+        Assert.assertEquals(0L, histogram.quantileNanos(0.5));
+        Assert.assertTrue(histogram.quantile(1.0, TimeUnit.SECONDS) > 60);
+    }
+}
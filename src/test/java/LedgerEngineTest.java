@@ -0,0 +1,177 @@
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.model.Account;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Tests for the Money Transfer verticle running on the sharded in-memory ledger engine.
+ */
+@RunWith(VertxUnitRunner.class)
+public class LedgerEngineTest {
+
+    private static final String SENDER = "f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2";
+    private static final String RECEIVER = "123e4567-e89b-12d3-a456-556642440000";
+
+    @Rule
+    public RunTestOnContext runTestOnContext = new RunTestOnContext();
+
+    private Vertx vertx;
+    private int port = 8080;
+
+    @Before
+    public void setUp(TestContext context) {
+        vertx = runTestOnContext.vertx();
+        JsonObject config = new JsonObject() //
+                .put("TRANSFER_ENGINE", "ledger") //
+                .put("LEDGER", new JsonObject().put("SHARDS", 4));
+        vertx.deployVerticle(MoneyTransferVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void should_transfer_money(TestContext context) {
+        Async async = context.async();
+        TransferRequests.postTransfer(vertx.createHttpClient(), port, SENDER, RECEIVER, BigDecimal.valueOf(0.01), status -> {
+            context.assertEquals(201, status);
+            vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/" + SENDER,
+                    response -> response.bodyHandler(body -> {
+                        context.assertEquals(BigDecimal.valueOf(9.98), Json.decodeValue(body, Account.class).getBalance());
+                        async.complete();
+                    }));
+        });
+    }
+
+    @Test
+    public void should_not_overdraw_under_concurrent_transfers(TestContext context) {
+        int transfers = 20;
+        Async async = context.async(transfers);
+        AtomicInteger committed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        for (int i = 0; i < transfers; i++) {
+            TransferRequests.postTransfer(vertx.createHttpClient(), port, SENDER, RECEIVER, BigDecimal.ONE, status -> {
+                if (status == 201) {
+                    committed.incrementAndGet();
+                } else {
+                    context.assertEquals(400, status);
+                    rejected.incrementAndGet();
+                }
+                async.countDown();
+            });
+        }
+        async.handler(done -> {
+            context.assertEquals(9, committed.get());
+            context.assertEquals(11, rejected.get());
+        });
+    }
+
+    @Test
+    public void should_list_balances_of_the_shards(TestContext context) {
+        Async async = context.async();
+        HttpClient client = vertx.createHttpClient();
+        TransferRequests.postTransfer(client, port, SENDER, RECEIVER, BigDecimal.valueOf(0.01), status -> {
+            context.assertEquals(201, status);
+            client.getNow(port, "localhost", "/api/accounts?limit=2", firstPage -> {
+                String link = firstPage.getHeader("Link");
+                context.assertNotNull(link);
+                firstPage.bodyHandler(firstBody -> client.getNow(port, "localhost", link.substring(1, link.indexOf('>')),
+                        lastPage -> lastPage.bodyHandler(lastBody -> {
+                            JsonArray accounts = new JsonArray(firstBody).addAll(new JsonArray(lastBody));
+                            context.assertEquals(3, accounts.size());
+                            for (int i = 0; i < accounts.size(); i++) {
+                                JsonObject account = accounts.getJsonObject(i);
+                                if (SENDER.equals(account.getString("id"))) {
+                                    context.assertEquals(0, BigDecimal.valueOf(9.98)
+                                            .compareTo(new BigDecimal(account.getValue("balance").toString())));
+                                }
+                            }
+                            async.complete();
+                        })));
+            });
+        });
+    }
+
+    @Test
+    public void should_refuse_the_transaction_history(TestContext context) {
+        Async async = context.async();
+        vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/" + SENDER + "/transactions", response -> {
+            context.assertEquals(400, response.statusCode());
+            async.complete();
+        });
+    }
+
+    @Test
+    public void should_refuse_a_negative_amount(TestContext context) {
+        Async async = context.async();
+        TransferRequests.postTransfer(vertx.createHttpClient(), port, SENDER, RECEIVER, BigDecimal.valueOf(-500), status -> {
+            context.assertEquals(400, status);
+            vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/" + SENDER,
+                    response -> response.bodyHandler(body -> {
+                        context.assertEquals(BigDecimal.valueOf(9.99), Json.decodeValue(body, Account.class).getBalance());
+                        async.complete();
+                    }));
+        });
+    }
+
+    @Test
+    public void should_refuse_a_transfer_without_sender(TestContext context) {
+        Async async = context.async();
+        vertx.createHttpClient().post(port, "localhost", "/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .handler(response -> {
+                    context.assertEquals(400, response.statusCode());
+                    async.complete();
+                }) //
+                .end(new JsonObject().put("to", new JsonObject().put("id", RECEIVER)).put("amount", 1).encode());
+    }
+
+    @Test
+    public void should_neither_create_nor_destroy_money(TestContext context) {
+        Async async = context.async();
+        HttpClient client = vertx.createHttpClient();
+        String unknown = UUID.randomUUID().toString();
+        sumBalances(client, before -> TransferRequests.postTransfer(client, port, SENDER, RECEIVER, BigDecimal.valueOf(1.5), first ->
+                TransferRequests.postTransfer(client, port, RECEIVER, SENDER, BigDecimal.valueOf(0.25), second ->
+                        TransferRequests.postTransfer(client, port, SENDER, RECEIVER, BigDecimal.valueOf(-500), negative ->
+                                TransferRequests.postTransfer(client, port, SENDER, RECEIVER, BigDecimal.valueOf(1000), overdraw ->
+                                        TransferRequests.postTransfer(client, port, SENDER, unknown, BigDecimal.ONE, lost -> {
+                                            context.assertEquals(201, first);
+                                            context.assertEquals(201, second);
+                                            context.assertEquals(400, negative);
+                                            context.assertEquals(400, overdraw);
+                                            context.assertEquals(404, lost);
+                                            sumBalances(client, after -> {
+                                                context.assertEquals(0, before.compareTo(after));
+                                                async.complete();
+                                            });
+                                        }))))));
+    }
+
+    private void sumBalances(HttpClient client, Consumer<BigDecimal> sumHandler) {
+        TransferRequests.getBalance(client, port, SENDER, sender ->
+                TransferRequests.getBalance(client, port, RECEIVER, receiver -> sumHandler.accept(sender.add(receiver))));
+    }
+}
@@ -0,0 +1,42 @@
+import io.vertx.core.json.JsonObject;
+import org.jlnh.load.LoadGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the load generator, against a server it deploys with seeded accounts.
+ */
+public class LoadGeneratorTest {
+
+    private static final int PORT = 18095;
+
+    @Test
+    public void should_send_every_request_and_conserve_the_balances() throws Exception {
+        JsonObject report = new LoadGenerator(new JsonObject() //
+                .put("PORT", PORT) //
+                .put("SERVER", new JsonObject().put("TRANSFER_ENGINE", "jdbc").put("INSTANCES", 1) //
+                        .put("METRICS", new JsonObject().put("PORT", -1))) //
+                .put("ACCOUNTS", 100) //
+                .put("BALANCE", 1) //
+                .put("DISTRIBUTION", "zipf") //
+                .put("READ_RATIO", 0.25) //
+                .put("MAX_AMOUNT", 0.5) //
+                .put("RATE", 200) //
+                .put("WARMUP_S", 0) //
+                .put("DURATION_S", 1) //
+                .put("CONNECTIONS", 8)).run();
+
+        Assert.assertEquals(200L, (long) report.getLong("requests"));
+        JsonObject outcomes = report.getJsonObject("outcomes");
+        long answered = outcomes.getLong("read 200", 0L) + outcomes.getLong("transfer 201", 0L)
+                + outcomes.getLong("transfer 400", 0L);
+        Assert.assertEquals(outcomes.toString(), 200L, answered);
+        Assert.assertTrue(outcomes.getLong("transfer 201", 0L) > 0);
+        Assert.assertTrue(report.getJsonObject("latency").getJsonObject("transfer").getJsonObject("corrected").getDouble("p99") > 0);
+
+        JsonObject balance = report.getJsonObject("balance");
+        Assert.assertEquals("10109.9900", balance.getString("before"));
+        Assert.assertEquals(balance.getString("before"), balance.getString("after"));
+        Assert.assertTrue(balance.getBoolean("conserved"));
+    }
+}
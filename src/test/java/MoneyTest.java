@@ -0,0 +1,33 @@
+import org.jlnh.model.Money;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+/**
+ * Tests for the fixed-point money representation.
+ */
+public class MoneyTest {
+
+    @Test
+    public void should_convert_decimals_exactly() {
+        Assert.assertEquals(99800L, Money.fromBigDecimal(new BigDecimal("9.98")));
+        Assert.assertEquals(1L, Money.fromBigDecimal(new BigDecimal("0.0001")));
+        Assert.assertEquals(BigDecimal.valueOf(9.98), Money.toBigDecimal(99800L));
+        Assert.assertEquals(BigDecimal.valueOf(10000.0), Money.toBigDecimal(100000000L));
+        Assert.assertEquals(BigDecimal.valueOf(0.0), Money.toBigDecimal(0L));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void should_refuse_more_decimals_than_the_scale() {
+        Money.fromBigDecimal(new BigDecimal("0.00001"));
+    }
+
+    @Test
+    public void should_render_plain_strings_at_full_scale() {
+        Assert.assertEquals("9.9800", Money.toPlainString(99800L));
+        Assert.assertEquals("0.0005", Money.toPlainString(5L));
+        Assert.assertEquals("-0.0005", Money.toPlainString(-5L));
+        Assert.assertEquals("-12.3400", Money.toPlainString(-123400L));
+    }
+}
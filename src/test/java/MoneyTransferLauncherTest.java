@@ -0,0 +1,88 @@
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.jlnh.MoneyTransferLauncher;
+import org.jlnh.model.Account;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the launcher deploying several instances of the Money Transfer verticle.
+ */
+@RunWith(VertxUnitRunner.class)
+public class MoneyTransferLauncherTest {
+
+    private static final String SENDER = "f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2";
+    private static final String RECEIVER = "123e4567-e89b-12d3-a456-556642440000";
+
+    @Rule
+    public RunTestOnContext runTestOnContext = new RunTestOnContext();
+
+    private Vertx vertx;
+    private int port = 8080;
+
+    @Before
+    public void setUp(TestContext context) {
+        vertx = runTestOnContext.vertx();
+        JsonObject config = new JsonObject() //
+                .put("INSTANCES", 4) //
+                .put("TRANSFER_ENGINE", "ledger") //
+                .put("LEDGER", new JsonObject().put("SHARDS", 2));
+        vertx.deployVerticle(MoneyTransferLauncher.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void should_create_schema_once(TestContext context) {
+        Async async = context.async();
+        vertx.createHttpClient().getNow(port, "localhost", "/api/accounts", response -> response.bodyHandler(body -> {
+            context.assertEquals(200, response.statusCode());
+            context.assertEquals(3, new JsonArray(body.toString()).size());
+            async.complete();
+        }));
+    }
+
+    @Test
+    public void should_share_the_transfer_engine_between_instances(TestContext context) {
+        int transfers = 20;
+        Async async = context.async(transfers);
+        Async verified = context.async();
+        AtomicInteger committed = new AtomicInteger();
+
+        for (int i = 0; i < transfers; i++) {
+            TransferRequests.postTransfer(vertx.createHttpClient(), port, SENDER, RECEIVER, BigDecimal.ONE, status -> {
+                if (status == 201) {
+                    committed.incrementAndGet();
+                } else {
+                    context.assertEquals(400, status);
+                }
+                async.countDown();
+            });
+        }
+        async.handler(done -> {
+            context.assertEquals(9, committed.get());
+            vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/" + SENDER,
+                    response -> response.bodyHandler(body -> {
+                        context.assertEquals(0.99, Json.decodeValue(body, Account.class).getBalance().doubleValue());
+                        verified.complete();
+                    }));
+        });
+    }
+}
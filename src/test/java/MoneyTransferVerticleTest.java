@@ -1,5 +1,10 @@
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientResponse;
 import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.JDBCClient;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.RunTestOnContext;
@@ -75,6 +80,29 @@ public class MoneyTransferVerticleTest {
                         }));
     }
 
+    @Test
+    public void should_refuse_malformed_account_id(TestContext context) {
+        final Async async = context.async();
+        vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/not-a-uuid", response -> {
+            context.assertEquals(400, response.statusCode());
+            async.complete();
+        });
+    }
+
+    @Test
+    public void should_pretty_print_only_on_request(TestContext context) {
+        final Async async = context.async();
+        String account = "/api/accounts/f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2";
+        vertx.createHttpClient().getNow(port, "localhost", account, compact -> compact.bodyHandler(compactBody -> {
+            context.assertEquals("{\"id\":\"f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2\",\"balance\":9.99}", compactBody.toString());
+            vertx.createHttpClient().getNow(port, "localhost", account + "?pretty", pretty -> pretty.bodyHandler(prettyBody -> {
+                context.assertEquals(compactBody.toJsonObject(), prettyBody.toJsonObject());
+                context.assertTrue(prettyBody.toString().contains("\n"));
+                async.complete();
+            }));
+        }));
+    }
+
     @Test
     public void should_transfer_money(TestContext context) {
         Async async = context.async();
@@ -122,4 +150,408 @@ public class MoneyTransferVerticleTest {
                 .write(json)
                 .end();
     }
+
+    @Test
+    public void should_refuse_invalid_transfer(TestContext context) {
+        Async async = context.async();
+        postTransfer(BigDecimal.valueOf(-1), response -> {
+            context.assertEquals(400, response.statusCode());
+            response.bodyHandler(body -> {
+                context.assertEquals(400, new JsonObject(body).getInteger("code"));
+                async.complete();
+            });
+        });
+    }
+
+    @Test
+    public void should_refuse_malformed_transfer(TestContext context) {
+        Async async = context.async();
+        vertx.createHttpClient().post(port, "localhost", "/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .handler(response -> {
+                    context.assertEquals(400, response.statusCode());
+                    async.complete();
+                }) //
+                .end("{\"from\": {\"id\": \"not-a-uuid\"}, \"amount\": ");
+    }
+
+    @Test
+    public void should_not_transfer_money_to_unknown_account(TestContext context) {
+        Async async = context.async();
+        Transaction transaction = new Transaction(null, sampleTransaction.getFrom(), new Account(UUID.randomUUID(), null),
+                BigDecimal.ONE);
+        vertx.createHttpClient().post(port, "localhost", "/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .handler(response -> {
+                    context.assertEquals(404, response.statusCode());
+                    async.complete();
+                }) //
+                .end(Json.encode(transaction));
+    }
+
+    @Test
+    public void should_not_serve_cached_balance_after_transfer(TestContext context) {
+        Async async = context.async();
+        String accountUri = "/api/accounts/f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2";
+        final String json = Json.encodePrettily(sampleTransaction);
+
+        vertx.createHttpClient().getNow(port, "localhost", accountUri, warmUp -> warmUp.bodyHandler(cached ->
+                vertx.createHttpClient().post(port, "localhost", "/api/transfer") //
+                        .putHeader("Content-Type", "application/json") //
+                        .handler(transfer -> {
+                            context.assertEquals(transfer.statusCode(), 201);
+                            vertx.createHttpClient().getNow(port, "localhost", accountUri, response ->
+                                    response.bodyHandler(body -> {
+                                        Account account = Json.decodeValue(body.toString(), Account.class);
+                                        context.assertEquals(account.getBalance(), BigDecimal.valueOf(9.98));
+                                        async.complete();
+                                    }));
+                        })
+                        .end(json)));
+    }
+
+    @Test
+    public void should_replay_transfer_with_same_idempotency_key(TestContext context) {
+        Async async = context.async();
+        String accountUri = "/api/accounts/f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2";
+        final String json = Json.encodePrettily(sampleTransaction);
+
+        postIdempotent("retried-transfer", json, first -> first.bodyHandler(firstBody -> {
+            context.assertEquals(first.statusCode(), 201);
+            postIdempotent("retried-transfer", json, retry -> retry.bodyHandler(retryBody -> {
+                context.assertEquals(retry.statusCode(), 201);
+                context.assertEquals(retry.getHeader("Idempotent-Replayed"), "true");
+                context.assertEquals(retryBody.toString(), firstBody.toString());
+                vertx.createHttpClient().getNow(port, "localhost", accountUri, response -> response.bodyHandler(body -> {
+                    Account account = Json.decodeValue(body.toString(), Account.class);
+                    context.assertEquals(account.getBalance(), BigDecimal.valueOf(9.98));
+                    async.complete();
+                }));
+            }));
+        }));
+    }
+
+    @Test
+    public void should_store_idempotency_key_with_the_transfer(TestContext context) {
+        Async async = context.async();
+        postIdempotent("stored-key", Json.encode(sampleTransaction), response -> response.bodyHandler(body -> {
+            context.assertEquals(201, response.statusCode());
+            JDBCClient client = JDBCClient.createShared(vertx, new JsonObject(), "test");
+            client.querySingleWithParams("SELECT response FROM idempotency_key WHERE id = ?", new JsonArray().add("stored-key"),
+                    context.asyncAssertSuccess(row -> {
+                        context.assertEquals(body.toString(), row.getString(0));
+                        client.close(closed -> async.complete());
+                    }));
+        }));
+    }
+
+    @Test
+    public void should_refuse_idempotency_key_reused_by_other_transfer(TestContext context) {
+        Async async = context.async();
+        final String json = Json.encodePrettily(sampleTransaction);
+        sampleTransaction.setAmount(BigDecimal.valueOf(0.02));
+        final String otherJson = Json.encodePrettily(sampleTransaction);
+
+        postIdempotent("reused-key", json, first -> first.bodyHandler(firstBody -> {
+            context.assertEquals(first.statusCode(), 201);
+            postIdempotent("reused-key", otherJson, other -> {
+                context.assertEquals(other.statusCode(), 422);
+                async.complete();
+            });
+        }));
+    }
+
+    @Test
+    public void should_expose_prometheus_metrics(TestContext context) {
+        Async async = context.async();
+        final String json = Json.encodePrettily(sampleTransaction);
+
+        vertx.createHttpClient().post(port, "localhost", "/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .handler(transfer -> transfer.bodyHandler(ignored ->
+                        vertx.createHttpClient().getNow(9091, "localhost", "/metrics", response ->
+                                response.bodyHandler(body -> {
+                                    String metrics = body.toString();
+                                    context.assertEquals(response.statusCode(), 200);
+                                    context.assertTrue(metrics.contains("transfers_committed_total 1"));
+                                    context.assertTrue(metrics.contains("http_request_duration_seconds_count{method=\"POST\",route=\"/api/transfer\"} 1"));
+                                    context.assertTrue(metrics.contains("jdbc_statement_duration_seconds_count{statement=\"update_balances\"} 1"));
+                                    context.assertTrue(metrics.contains("jdbc_statement_duration_seconds_count{statement=\"insert_transaction\"} 1"));
+                                    context.assertTrue(metrics.contains("jdbc_statement_duration_seconds_count{statement=\"select_balances\"} 1"));
+                                    context.assertTrue(metrics.contains("jdbc_statement_duration_seconds_count{statement=\"select_account\"} 0"));
+                                    context.assertTrue(metrics.contains("jdbc_pool_busy_connections"));
+                                    context.assertTrue(metrics.contains("startup_phase_seconds{phase=\"schema\"}"));
+                                    context.assertTrue(metrics.contains("startup_ready_seconds "));
+                                    async.complete();
+                                }))))
+                .end(json);
+    }
+
+    @Test
+    public void should_page_accounts_with_keyset_cursor(TestContext context) {
+        Async async = context.async();
+        vertx.createHttpClient().getNow(port, "localhost", "/api/accounts?limit=2", firstPage -> {
+            String link = firstPage.getHeader("Link");
+            context.assertNotNull(link);
+            firstPage.bodyHandler(firstBody -> {
+                context.assertEquals(new JsonArray(firstBody).size(), 2);
+                String next = link.substring(1, link.indexOf('>'));
+                vertx.createHttpClient().getNow(port, "localhost", next, lastPage -> {
+                    context.assertNull(lastPage.getHeader("Link"));
+                    lastPage.bodyHandler(lastBody -> {
+                        context.assertEquals(new JsonArray(lastBody).size(), 1);
+                        async.complete();
+                    });
+                });
+            });
+        });
+    }
+
+    @Test
+    public void should_page_accounts_one_by_one_below_the_minimum_limit(TestContext context) {
+        Async async = context.async(2);
+        for (String limit : new String[] {"0", "-3"}) {
+            vertx.createHttpClient().getNow(port, "localhost", "/api/accounts?limit=" + limit, page -> {
+                String link = page.getHeader("Link");
+                context.assertNotNull(link);
+                context.assertTrue(link.contains("&limit=1>"));
+                page.bodyHandler(body -> {
+                    context.assertEquals(new JsonArray(body).size(), 1);
+                    async.countDown();
+                });
+            });
+        }
+    }
+
+    @Test
+    public void should_stream_accounts_as_ndjson(TestContext context) {
+        Async async = context.async();
+        vertx.createHttpClient().get(port, "localhost", "/api/accounts", response -> {
+            context.assertTrue(response.headers().get("content-type").contains("application/x-ndjson"));
+            response.bodyHandler(body -> {
+                context.assertEquals(body.toString().trim().split("\n").length, 3);
+                async.complete();
+            });
+        }).putHeader("Accept", "application/x-ndjson").end();
+    }
+
+    @Test
+    public void should_transfer_batch_best_effort(TestContext context) {
+        Async async = context.async();
+        postBatch("/api/transfers/batch", response -> {
+            context.assertEquals(response.statusCode(), 200);
+            response.bodyHandler(body -> {
+                JsonObject result = body.toJsonObject();
+                context.assertEquals(result.getInteger("committed"), 2);
+                context.assertEquals(result.getInteger("rejected"), 1);
+                JsonArray results = result.getJsonArray("results");
+                context.assertEquals(results.getJsonObject(1).getString("status"), "rejected");
+                Transaction last = results.getJsonObject(2).getJsonObject("transaction").mapTo(Transaction.class);
+                context.assertEquals(last.getFrom().getBalance().doubleValue(), 4.98);
+                async.complete();
+            });
+        });
+    }
+
+    @Test
+    public void should_abort_atomic_batch(TestContext context) {
+        Async async = context.async();
+        postBatch("/api/transfers/batch?atomic=true", response -> {
+            context.assertEquals(response.statusCode(), 400);
+            vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2",
+                    account -> account.bodyHandler(body -> {
+                        context.assertEquals(Json.decodeValue(body, Account.class).getBalance(), BigDecimal.valueOf(9.99));
+                        async.complete();
+                    }));
+        });
+    }
+
+    @Test
+    public void should_page_account_transactions_newest_first(TestContext context) {
+        Async async = context.async();
+        String history = "/api/accounts/123e4567-e89b-12d3-a456-556642440000/transactions";
+        postTransfer(BigDecimal.valueOf(0.01), first -> postTransfer(BigDecimal.valueOf(0.02), second ->
+                vertx.createHttpClient().getNow(port, "localhost", history + "?limit=1", firstPage -> {
+                    String link = firstPage.getHeader("Link");
+                    context.assertNotNull(link);
+                    firstPage.bodyHandler(firstBody -> {
+                        JsonObject newest = new JsonArray(firstBody).getJsonObject(0);
+                        context.assertEquals(newest.getDouble("amount"), 0.02);
+                        context.assertEquals(newest.getString("from"), "f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2");
+                        context.assertNotNull(newest.getString("createdAt"));
+                        String next = link.substring(1, link.indexOf('>'));
+                        vertx.createHttpClient().getNow(port, "localhost", next, secondPage -> secondPage.bodyHandler(secondBody -> {
+                            context.assertEquals(new JsonArray(secondBody).getJsonObject(0).getDouble("amount"), 0.01);
+                            vertx.createHttpClient().getNow(port, "localhost", history, all -> all.bodyHandler(allBody -> {
+                                context.assertEquals(new JsonArray(allBody).size(), 2);
+                                async.complete();
+                            }));
+                        }));
+                    });
+                })));
+    }
+
+    @Test
+    public void should_serve_cached_transactions_as_committed(TestContext context) {
+        Async async = context.async();
+        String history = "/api/accounts/f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2/transactions?limit=";
+        vertx.createHttpClient().getNow(port, "localhost", history + 10, warmUp -> warmUp.bodyHandler(empty ->
+                postTransfer(BigDecimal.valueOf(0.01), transfer ->
+                        vertx.createHttpClient().getNow(port, "localhost", history + 10, cached -> cached.bodyHandler(fromCache ->
+                                vertx.createHttpClient().getNow(port, "localhost", history + 100, stored -> stored.bodyHandler(fromDatabase -> {
+                                    context.assertEquals(new JsonArray(fromDatabase).getJsonObject(0),
+                                            new JsonArray(fromCache).getJsonObject(0));
+                                    async.complete();
+                                })))))));
+    }
+
+    @Test
+    public void should_serve_latest_transactions_from_history_cache(TestContext context) {
+        Async async = context.async();
+        String history = "/api/accounts/f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2/transactions?limit=10";
+        vertx.createHttpClient().getNow(port, "localhost", history, warmUp -> warmUp.bodyHandler(empty -> {
+            context.assertEquals(new JsonArray(empty).size(), 0);
+            postTransfer(BigDecimal.valueOf(0.01), transfer ->
+                    vertx.createHttpClient().getNow(port, "localhost", history, response -> response.bodyHandler(body -> {
+                        context.assertEquals(new JsonArray(body).size(), 1);
+                        vertx.createHttpClient().getNow(9091, "localhost", "/metrics", scrape -> scrape.bodyHandler(metrics -> {
+                            context.assertTrue(metrics.toString()
+                                    .contains("jdbc_statement_duration_seconds_count{statement=\"select_transactions\"} 1"));
+                            async.complete();
+                        }));
+                    })));
+        }));
+    }
+
+    @Test
+    public void should_keep_stats_equal_to_a_recount(TestContext context) {
+        Async async = context.async();
+        postTransfer(BigDecimal.valueOf(0.01), transfer -> postBatch("/api/transfers/batch", batch ->
+                vertx.createHttpClient().getNow(port, "localhost", "/api/stats", response -> response.bodyHandler(body -> {
+                    JsonObject stats = body.toJsonObject();
+                    String recount = "SELECT (SELECT COUNT(*) FROM account), (SELECT CAST(SUM(balance) AS VARCHAR) FROM account),"
+                            + " (SELECT COUNT(*) FROM transaction), (SELECT CAST(SUM(amount) AS VARCHAR) FROM transaction)";
+                    JDBCClient client = JDBCClient.createShared(vertx, new JsonObject(), "test");
+                    client.querySingle(recount, context.asyncAssertSuccess(row -> {
+                        context.assertEquals(row.getLong(0), stats.getLong("accounts"));
+                        context.assertEquals(0, new BigDecimal(row.getString(1)).compareTo(new BigDecimal(stats.getValue("balanceAtStartup").toString())));
+                        context.assertEquals(row.getLong(2), stats.getLong("transfers"));
+                        context.assertEquals(3L, stats.getLong("transfers"));
+                        context.assertEquals(0, new BigDecimal(row.getString(3)).compareTo(new BigDecimal(stats.getValue("volume").toString())));
+                        context.assertEquals(3L, stats.getJsonArray("volumePerMinute").getJsonObject(0).getLong("transfers"));
+                        context.assertEquals("f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2",
+                                stats.getJsonArray("topAccounts").getJsonObject(0).getString("id"));
+                        client.close(closed -> async.complete());
+                    }));
+                }))));
+    }
+
+    @Test
+    public void should_accept_async_transfer_and_stream_its_status(TestContext context) {
+        Async async = context.async();
+        StringBuilder events = new StringBuilder();
+        vertx.createHttpClient().getNow(port, "localhost", "/api/transfers/events", stream -> {
+            context.assertEquals("text/event-stream", stream.getHeader("content-type"));
+            stream.handler(chunk -> {
+                events.append(chunk);
+                if (chunk.toString().startsWith(":")) {
+                    postAsync(BigDecimal.valueOf(0.01), accepted -> accepted.bodyHandler(body -> {
+                        context.assertEquals(202, accepted.statusCode());
+                        String id = body.toJsonObject().getString("id");
+                        context.assertEquals("/api/transfers/" + id, accepted.getHeader("Location"));
+                        context.assertEquals("pending", body.toJsonObject().getString("status"));
+                    }));
+                } else if (events.toString().contains("committed")) {
+                    String event = events.substring(events.indexOf("data: ") + 6, events.indexOf("\n\n", events.indexOf("data: ")));
+                    JsonObject status = new JsonObject(event);
+                    vertx.createHttpClient().getNow(port, "localhost", "/api/transfers/" + status.getString("id"),
+                            response -> response.bodyHandler(body -> {
+                                context.assertEquals(200, response.statusCode());
+                                context.assertEquals(status, body.toJsonObject());
+                                context.assertEquals(9.98, body.toJsonObject().getJsonObject("transaction")
+                                        .getJsonObject("from").getDouble("balance"));
+                                context.assertEquals(status.getString("id"),
+                                        body.toJsonObject().getJsonObject("transaction").getString("id"));
+                                async.complete();
+                            }));
+                }
+            });
+        });
+    }
+
+    @Test
+    public void should_stream_rejected_async_transfer_over_websocket(TestContext context) {
+        Async async = context.async();
+        vertx.createHttpClient().websocket(port, "localhost", "/api/transfers/events", webSocket -> {
+            webSocket.textMessageHandler(message -> {
+                JsonObject status = new JsonObject(message);
+                context.assertEquals("rejected", status.getString("status"));
+                context.assertEquals("User does not have sufficient funds", status.getString("cause"));
+                webSocket.close();
+                async.complete();
+            });
+            postAsync(BigDecimal.valueOf(20), accepted -> context.assertEquals(202, accepted.statusCode()));
+        });
+    }
+
+    @Test
+    public void should_not_find_status_of_unknown_transfer(TestContext context) {
+        Async async = context.async();
+        vertx.createHttpClient().getNow(port, "localhost", "/api/transfers/" + UUID.randomUUID(), response -> {
+            context.assertEquals(404, response.statusCode());
+            async.complete();
+        });
+    }
+
+    @Test
+    public void should_refuse_transfer_body_over_the_limit(TestContext context) {
+        Async async = context.async();
+        StringBuilder padding = new StringBuilder();
+        while (padding.length() <= 4096) {
+            padding.append(' ');
+        }
+        vertx.createHttpClient().post(port, "localhost", "/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .handler(response -> {
+                    context.assertEquals(413, response.statusCode());
+                    async.complete();
+                }) //
+                .end(padding + Json.encode(sampleTransaction));
+    }
+
+    private void postTransfer(BigDecimal amount, Handler<HttpClientResponse> handler) {
+        sampleTransaction.setAmount(amount);
+        vertx.createHttpClient().post(port, "localhost", "/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .handler(handler) //
+                .end(Json.encode(sampleTransaction));
+    }
+
+    private void postAsync(BigDecimal amount, Handler<HttpClientResponse> handler) {
+        sampleTransaction.setAmount(amount);
+        vertx.createHttpClient().post(port, "localhost", "/api/transfer?async=true") //
+                .putHeader("Content-Type", "application/json") //
+                .handler(handler) //
+                .end(Json.encode(sampleTransaction));
+    }
+
+    private void postIdempotent(String key, String json, Handler<HttpClientResponse> handler) {
+        vertx.createHttpClient().post(port, "localhost", "/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .putHeader("Idempotency-Key", key) //
+                .handler(handler) //
+                .end(json);
+    }
+
+    private void postBatch(String uri, Handler<HttpClientResponse> handler) {
+        JsonArray batch = new JsonArray();
+        for (double amount : new double[]{5, 5, 0.01}) {
+            sampleTransaction.setAmount(BigDecimal.valueOf(amount));
+            batch.add(JsonObject.mapFrom(sampleTransaction));
+        }
+        vertx.createHttpClient().post(port, "localhost", uri) //
+                .putHeader("Content-Type", "application/json") //
+                .handler(handler) //
+                .end(batch.encode());
+    }
 }
@@ -0,0 +1,188 @@
+import org.jlnh.persistence.OffHeapAccountTable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Tests for the off-heap account table.
+ */
+public class OffHeapAccountTableTest {
+
+    @Test
+    public void should_find_accounts_put() {
+        OffHeapAccountTable table = OffHeapAccountTable.allocate(1000);
+        for (long i = 1; i <= 1000; i++) {
+            table.put(i, -i, i * 100);
+        }
+
+        Assert.assertEquals(1000, table.size());
+        Assert.assertEquals(50000, table.balance(500, -500));
+        Assert.assertEquals(OffHeapAccountTable.NOT_FOUND, table.balance(500, 500));
+    }
+
+    @Test
+    public void should_transfer_only_between_known_accounts_with_enough_money() {
+        OffHeapAccountTable table = OffHeapAccountTable.allocate(10);
+        table.put(1, 1, 100);
+        table.put(2, 2, 0);
+
+        Assert.assertEquals(OffHeapAccountTable.INSUFFICIENT_FUNDS, table.transfer(1, 1, 2, 2, 101));
+        Assert.assertEquals(OffHeapAccountTable.UNKNOWN_SENDER, table.transfer(3, 3, 2, 2, 1));
+        Assert.assertEquals(OffHeapAccountTable.UNKNOWN_RECEIVER, table.transfer(1, 1, 3, 3, 1));
+        Assert.assertEquals(OffHeapAccountTable.TRANSFERRED, table.transfer(1, 1, 2, 2, 100));
+
+        Assert.assertEquals(0, table.balance(1, 1));
+        Assert.assertEquals(100, table.balance(2, 2));
+    }
+
+    @Test
+    public void should_credit_the_receiver_only_once_asked() {
+        OffHeapAccountTable table = OffHeapAccountTable.allocate(10);
+        table.put(1, 1, 100);
+        table.put(2, 2, 0);
+
+        Assert.assertEquals(OffHeapAccountTable.UNKNOWN_RECEIVER, table.debit(1, 1, 3, 3, 1));
+        Assert.assertEquals(OffHeapAccountTable.TRANSFERRED, table.debit(1, 1, 2, 2, 60));
+        Assert.assertEquals(40, table.balance(1, 1));
+        Assert.assertEquals(0, table.balance(2, 2));
+
+        Assert.assertEquals(60, table.credit(2, 2, 60));
+        Assert.assertEquals(OffHeapAccountTable.NOT_FOUND, table.credit(3, 3, 60));
+    }
+
+    @Test
+    public void should_settle_reserved_transfers_only() {
+        OffHeapAccountTable table = OffHeapAccountTable.allocate(10);
+        table.put(1, 1, 100);
+        table.put(2, 2, 0);
+
+        Assert.assertEquals(OffHeapAccountTable.TRANSFERRED, table.reserve(1, 1, 2, 2, 60));
+        Assert.assertEquals(OffHeapAccountTable.INSUFFICIENT_FUNDS, table.reserve(1, 1, 2, 2, 41));
+        Assert.assertEquals(OffHeapAccountTable.TRANSFERRED, table.reserve(1, 1, 2, 2, 40));
+        Assert.assertEquals(100, table.balance(1, 1));
+        Assert.assertEquals(0, table.balance(2, 2));
+
+        table.settle(1, 1, 2, 2, 60, 16);
+        table.release(1, 1, 40);
+        Assert.assertEquals(40, table.balance(1, 1));
+        Assert.assertEquals(60, table.balance(2, 2));
+        Assert.assertEquals(OffHeapAccountTable.TRANSFERRED, table.reserve(1, 1, 2, 2, 40));
+    }
+
+    @Test
+    public void should_replay_journaled_transfers_once() {
+        OffHeapAccountTable table = OffHeapAccountTable.allocate(10);
+        table.put(1, 1, 100);
+        table.put(2, 2, 0);
+        table.put(3, 3, 0);
+        table.reserve(1, 1, 2, 2, 60);
+        table.settle(1, 1, 2, 2, 60, 16);
+
+        Assert.assertEquals(OffHeapAccountTable.TRANSFERRED, table.replay(1, 1, 2, 2, 60, 16));
+        Assert.assertEquals(OffHeapAccountTable.TRANSFERRED, table.replay(2, 2, 3, 3, 10, 88));
+        Assert.assertEquals(OffHeapAccountTable.TRANSFERRED, table.replay(2, 2, 3, 3, 10, 88));
+        Assert.assertEquals(OffHeapAccountTable.INSUFFICIENT_FUNDS, table.replay(1, 1, 3, 3, 41, 160));
+
+        Assert.assertEquals(40, table.balance(1, 1));
+        Assert.assertEquals(50, table.balance(2, 2));
+        Assert.assertEquals(10, table.balance(3, 3));
+    }
+
+    @Test
+    public void should_page_accounts_in_id_order() {
+        OffHeapAccountTable table = OffHeapAccountTable.allocate(100);
+        UUID[] ids = new UUID[100];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = UUID.randomUUID();
+            table.put(ids[i].getMostSignificantBits(), ids[i].getLeastSignificantBits(), i);
+        }
+        Arrays.sort(ids);
+
+        long[] page = new long[3 * 30];
+        int count = table.page(0, 0, true, page);
+        Assert.assertEquals(30, count);
+        Assert.assertEquals(ids[29], new UUID(page[3 * 29], page[3 * 29 + 1]));
+
+        count = table.page(ids[89].getMostSignificantBits(), ids[89].getLeastSignificantBits(), false, page);
+        Assert.assertEquals(10, count);
+        Assert.assertEquals(ids[90], new UUID(page[0], page[1]));
+    }
+
+    @Test
+    public void should_page_accounts_created_after_a_page() {
+        OffHeapAccountTable table = OffHeapAccountTable.allocate(10);
+        table.put(0, 5, 5);
+        table.put(0, 7, 7);
+        long[] page = new long[3 * 10];
+        Assert.assertEquals(2, table.page(0, 0, true, page));
+
+        table.put(0, 9, 9);
+        table.put(0, 1, 1);
+        table.put(0, 5, 50);
+        Assert.assertEquals(3, table.page(0, 1, false, page));
+        Assert.assertArrayEquals(new long[] {0, 5, 50, 0, 7, 7, 0, 9, 9}, Arrays.copyOf(page, 9));
+    }
+
+    @Test
+    public void should_keep_balances_of_mapped_table() throws Exception {
+        Path file = Files.createTempFile("accounts", ".table");
+        Files.delete(file);
+        try {
+            OffHeapAccountTable table = OffHeapAccountTable.map(file, 10);
+            table.put(1, 1, 100);
+            table.put(2, 2, 0);
+            table.transfer(1, 1, 2, 2, 40);
+            table.flush();
+
+            OffHeapAccountTable reopened = OffHeapAccountTable.map(file, 10);
+            Assert.assertEquals(2, reopened.size());
+            Assert.assertEquals(60, reopened.balance(1, 1));
+            Assert.assertEquals(40, reopened.balance(2, 2));
+            long[] page = new long[3 * 10];
+            Assert.assertEquals(1, reopened.page(1, 1, false, page));
+            Assert.assertEquals(2, page[0]);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void should_keep_the_checkpoint_of_mapped_table() throws Exception {
+        Path file = Files.createTempFile("accounts", ".table");
+        Files.delete(file);
+        try {
+            OffHeapAccountTable table = OffHeapAccountTable.map(file, 10);
+            Assert.assertEquals(0, table.getCheckpoint());
+            table.put(1, 1, 100);
+            table.put(2, 2, 0);
+            table.reserve(1, 1, 2, 2, 40);
+            table.settle(1, 1, 2, 2, 40, 16);
+            table.checkpoint(88);
+
+            OffHeapAccountTable reopened = OffHeapAccountTable.map(file, 10);
+            Assert.assertEquals(88, reopened.getCheckpoint());
+            Assert.assertEquals(OffHeapAccountTable.TRANSFERRED, reopened.replay(1, 1, 2, 2, 40, 16));
+            Assert.assertEquals(60, reopened.balance(1, 1));
+            Assert.assertEquals(40, reopened.balance(2, 2));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_refuse_more_accounts_than_the_index_can_address() {
+        OffHeapAccountTable.allocate((1 << 28) + 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void should_refuse_accounts_over_capacity() {
+        OffHeapAccountTable table = OffHeapAccountTable.allocate(2);
+        for (long i = 1; i <= 5; i++) {
+            table.put(i, i, 0);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.model.Account;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the Money Transfer verticle keeping the balances in the off-heap account table.
+ */
+@RunWith(VertxUnitRunner.class)
+public class OffHeapStorageTest {
+
+    private static final String SENDER = "f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2";
+    private static final String RECEIVER = "123e4567-e89b-12d3-a456-556642440000";
+
+    @Rule
+    public RunTestOnContext runTestOnContext = new RunTestOnContext();
+
+    private Vertx vertx;
+    private int port = 8080;
+
+    @Before
+    public void setUp(TestContext context) {
+        vertx = runTestOnContext.vertx();
+        JsonObject config = new JsonObject() //
+                .put("TRANSFER_ENGINE", "jdbc") //
+                .put("STORAGE", new JsonObject().put("TYPE", "off-heap").put("MAX_ACCOUNTS", 1000));
+        vertx.deployVerticle(MoneyTransferVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void should_transfer_money(TestContext context) {
+        Async async = context.async();
+        TransferRequests.postTransfer(vertx.createHttpClient(), port, SENDER, RECEIVER, BigDecimal.valueOf(0.01), status -> {
+            context.assertEquals(201, status);
+            vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/" + RECEIVER,
+                    response -> response.bodyHandler(body -> {
+                        context.assertEquals(0, BigDecimal.valueOf(0.01).compareTo(Json.decodeValue(body, Account.class).getBalance()));
+                        async.complete();
+                    }));
+        });
+    }
+
+    @Test
+    public void should_not_overdraw_under_concurrent_transfers(TestContext context) {
+        int transfers = 20;
+        Async async = context.async(transfers);
+        Async verified = context.async();
+        AtomicInteger committed = new AtomicInteger();
+
+        for (int i = 0; i < transfers; i++) {
+            TransferRequests.postTransfer(vertx.createHttpClient(), port, SENDER, RECEIVER, BigDecimal.ONE, status -> {
+                if (status == 201) {
+                    committed.incrementAndGet();
+                } else {
+                    context.assertEquals(400, status);
+                }
+                async.countDown();
+            });
+        }
+        async.handler(done -> {
+            context.assertEquals(9, committed.get());
+            vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/" + SENDER,
+                    response -> response.bodyHandler(body -> {
+                        context.assertEquals(0.99, Json.decodeValue(body, Account.class).getBalance().doubleValue());
+                        verified.complete();
+                    }));
+        });
+    }
+
+    @Test
+    public void should_list_accounts(TestContext context) {
+        Async async = context.async();
+        HttpClient client = vertx.createHttpClient();
+        client.getNow(port, "localhost", "/api/accounts", all -> all.bodyHandler(allBody -> {
+            JsonArray accounts = new JsonArray(allBody.toString());
+            context.assertEquals(3, accounts.size());
+            String second = accounts.getJsonObject(1).getString("id");
+            client.getNow(port, "localhost", "/api/accounts?limit=2", page -> page.bodyHandler(pageBody -> {
+                context.assertEquals(2, new JsonArray(pageBody.toString()).size());
+                context.assertTrue(page.getHeader("Link").contains("after=" + second));
+                async.complete();
+            }));
+        }));
+    }
+}
@@ -0,0 +1,140 @@
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.RunTestOnContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.metrics.Metrics;
+import org.jlnh.model.Account;
+import org.jlnh.persistence.ReactivePgRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the Money Transfer verticle going through the reactive PostgreSQL client, to the embedded server of H2.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ReactivePgStorageTest {
+
+    private static final String SENDER = "f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2";
+    private static final String RECEIVER = "123e4567-e89b-12d3-a456-556642440000";
+
+    @Rule
+    public RunTestOnContext runTestOnContext = new RunTestOnContext();
+
+    private Vertx vertx;
+    private JsonObject reactivePgConfig;
+    private int port = 8080;
+
+    @Before
+    public void setUp(TestContext context) {
+        vertx = runTestOnContext.vertx();
+        reactivePgConfig = new JsonObject() //
+                .put("port", 5436) //
+                .put("database", "mem:test") //
+                .put("user", "sa") //
+                .put("password", "sa") //
+                .put("maxSize", 4) //
+                .put("cachePreparedStatements", true) //
+                .put("EMBEDDED_SERVER", true);
+        JsonObject config = new JsonObject() //
+                .put("TRANSFER_ENGINE", "jdbc") //
+                .put("STORAGE", new JsonObject().put("TYPE", "reactive-pg")) //
+                .put("REACTIVE_PG", reactivePgConfig);
+        vertx.deployVerticle(MoneyTransferVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void should_transfer_money(TestContext context) {
+        Async async = context.async();
+        TransferRequests.postTransfer(vertx.createHttpClient(), port, SENDER, RECEIVER, BigDecimal.valueOf(0.01), status -> {
+            context.assertEquals(201, status);
+            vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/" + RECEIVER,
+                    response -> response.bodyHandler(body -> {
+                        context.assertEquals(0, BigDecimal.valueOf(0.01).compareTo(Json.decodeValue(body, Account.class).getBalance()));
+                        async.complete();
+                    }));
+        });
+    }
+
+    @Test
+    public void should_not_overdraw_under_concurrent_transfers(TestContext context) {
+        int transfers = 20;
+        Async async = context.async(transfers);
+        Async verified = context.async();
+        AtomicInteger committed = new AtomicInteger();
+
+        for (int i = 0; i < transfers; i++) {
+            TransferRequests.postTransfer(vertx.createHttpClient(), port, SENDER, RECEIVER, BigDecimal.ONE, status -> {
+                if (status == 201) {
+                    committed.incrementAndGet();
+                } else {
+                    context.assertEquals(400, status);
+                }
+                async.countDown();
+            });
+        }
+        async.handler(done -> {
+            context.assertEquals(9, committed.get());
+            vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/" + SENDER,
+                    response -> response.bodyHandler(body -> {
+                        context.assertEquals(0.99, Json.decodeValue(body, Account.class).getBalance().doubleValue());
+                        verified.complete();
+                    }));
+        });
+    }
+
+    @Test
+    public void should_roll_back_transfers_which_cannot_be_recorded(TestContext context) {
+        ReactivePgRepository repository = new ReactivePgRepository(vertx, reactivePgConfig, Metrics.shared(vertx));
+        UUID id = UUID.randomUUID();
+        UUID sender = UUID.fromString(SENDER);
+        UUID receiver = UUID.fromString(RECEIVER);
+        Async async = context.async();
+        repository.transfer(id, sender, receiver, 1).setHandler(context.asyncAssertSuccess(first -> repository
+                .transfer(id, sender, receiver, 1).setHandler(context.asyncAssertFailure(duplicate -> repository
+                        .findAccount(sender).setHandler(context.asyncAssertSuccess(account -> {
+                            context.assertEquals(99899L, account.getBalanceUnits());
+                            repository.findAccount(receiver).setHandler(context.asyncAssertSuccess(other -> {
+                                context.assertEquals(1L, other.getBalanceUnits());
+                                repository.close();
+                                async.complete();
+                            }));
+                        }))))));
+    }
+
+    @Test
+    public void should_roll_back_transfers_to_unknown_accounts(TestContext context) {
+        Async async = context.async();
+        HttpClient client = vertx.createHttpClient();
+        TransferRequests.postTransfer(vertx.createHttpClient(), port, SENDER, UUID.randomUUID().toString(), BigDecimal.ONE, status -> {
+            context.assertNotEquals(201, status);
+            client.getNow(port, "localhost", "/api/accounts?limit=2", page -> page.bodyHandler(pageBody -> {
+                JsonArray accounts = new JsonArray(pageBody.toString());
+                context.assertEquals(2, accounts.size());
+                client.getNow(port, "localhost", "/api/accounts/" + SENDER, response -> response.bodyHandler(body -> {
+                    context.assertEquals(9.99, Json.decodeValue(body, Account.class).getBalance().doubleValue());
+                    async.complete();
+                }));
+            }));
+        });
+    }
+}
@@ -0,0 +1,113 @@
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Tests for the Money Transfer verticle writing snapshots of the database and restoring them on startup.
+ */
+@RunWith(VertxUnitRunner.class)
+public class SnapshotTest {
+
+    private static final String SENDER = "f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2";
+    private static final String RECEIVER = "123e4567-e89b-12d3-a456-556642440000";
+
+    /**
+     * Size of a snapshot of the three accounts of the schema scripts and one transaction.
+     */
+    private static final long ONE_TRANSFER_SNAPSHOT_BYTES = 32 + 3 * 24 + 64;
+
+    private Vertx vertx;
+    private Path file;
+    private int port = 8080;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempDirectory("snapshot").resolve("accounts.snapshot");
+    }
+
+    @After
+    public void tearDown(TestContext context) throws IOException {
+        vertx.close(context.asyncAssertSuccess());
+        Files.deleteIfExists(file);
+        Files.delete(file.getParent());
+    }
+
+    @Test
+    public void should_restore_the_accounts_and_transactions_of_the_last_snapshot(TestContext context) {
+        Async async = context.async();
+        vertx = Vertx.vertx();
+        vertx.deployVerticle(MoneyTransferVerticle.class.getName(), options(), context.asyncAssertSuccess(first -> {
+            Transaction transaction = new Transaction(null, new Account(UUID.fromString(SENDER), null),
+                    new Account(UUID.fromString(RECEIVER), null), BigDecimal.valueOf(0.01));
+            vertx.createHttpClient().post(port, "localhost", "/api/transfer") //
+                    .putHeader("Content-Type", "application/json") //
+                    .handler(response -> {
+                        context.assertEquals(201, response.statusCode());
+                        vertx.setPeriodic(50, timer -> {
+                            if (sizeOf(file) == ONE_TRANSFER_SNAPSHOT_BYTES) {
+                                vertx.cancelTimer(timer);
+                                vertx.close(context.asyncAssertSuccess(closed -> restart(context, async)));
+                            }
+                        });
+                    }).end(Json.encode(transaction));
+        }));
+    }
+
+    @Test
+    public void should_not_start_from_a_corrupted_snapshot(TestContext context) throws IOException {
+        Files.write(file, new byte[(int) ONE_TRANSFER_SNAPSHOT_BYTES]);
+        vertx = Vertx.vertx();
+        vertx.deployVerticle(MoneyTransferVerticle.class.getName(), options(), context.asyncAssertFailure());
+    }
+
+    private void restart(TestContext context, Async async) {
+        vertx = Vertx.vertx();
+        vertx.deployVerticle(MoneyTransferVerticle.class.getName(), options(), context.asyncAssertSuccess(second ->
+                vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/" + RECEIVER,
+                        account -> account.bodyHandler(accountBody -> {
+                            context.assertEquals(0, BigDecimal.valueOf(0.01).compareTo(
+                                    Json.decodeValue(accountBody, Account.class).getBalance()));
+                            vertx.createHttpClient().getNow(port, "localhost", "/api/accounts/" + RECEIVER + "/transactions",
+                                    history -> history.bodyHandler(historyBody -> {
+                                        JsonArray transactions = new JsonArray(historyBody);
+                                        context.assertEquals(1, transactions.size());
+                                        context.assertEquals(SENDER, transactions.getJsonObject(0).getString("from"));
+                                        context.assertNotNull(transactions.getJsonObject(0).getString("createdAt"));
+                                        async.complete();
+                                    }));
+                        }))));
+    }
+
+    private DeploymentOptions options() {
+        return new DeploymentOptions().setConfig(new JsonObject() //
+                .put("TRANSFER_ENGINE", "jdbc") //
+                .put("METRICS", new JsonObject().put("PORT", -1)) //
+                .put("SNAPSHOT", new JsonObject().put("FILE", file.toString()).put("INTERVAL_MS", 50)));
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.exists(file) ? Files.size(file) : -1L;
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import org.jlnh.cache.TransactionHistoryCache;
+import org.jlnh.model.TransactionRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Tests for the transaction history cache.
+ */
+public class TransactionHistoryCacheTest {
+
+    @Test
+    public void should_keep_latest_transactions_of_cached_accounts() {
+        TransactionHistoryCache cache = new TransactionHistoryCache(10, 2);
+        UUID account = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        TransactionRecord oldest = record(account, other, 1000);
+        cache.putIfUnchanged(account, Collections.singletonList(oldest), cache.stamp());
+
+        TransactionRecord newest = record(other, account, 3000);
+        TransactionRecord middle = record(account, other, 2000);
+        cache.record(newest);
+        cache.record(middle);
+
+        Assert.assertEquals(Arrays.asList(newest, middle), cache.recent(account, 10));
+        Assert.assertNull(cache.recent(other, 10));
+    }
+
+    @Test
+    public void should_not_cache_history_loaded_before_a_transfer() {
+        TransactionHistoryCache cache = new TransactionHistoryCache(10, 50);
+        UUID account = UUID.randomUUID();
+
+        long stamp = cache.stamp();
+        cache.record(record(account, UUID.randomUUID(), 1000));
+        cache.putIfUnchanged(account, Collections.emptyList(), stamp);
+
+        Assert.assertNull(cache.recent(account, 10));
+    }
+
+    @Test
+    public void should_cache_history_loaded_during_a_transfer_of_another_account() {
+        TransactionHistoryCache cache = new TransactionHistoryCache(10, 50);
+        UUID account = UUID.randomUUID();
+
+        long stamp = cache.stamp();
+        cache.record(record(UUID.randomUUID(), UUID.randomUUID(), 1000));
+        cache.putIfUnchanged(account, Collections.emptyList(), stamp);
+
+        Assert.assertEquals(Collections.emptyList(), cache.recent(account, 10));
+    }
+
+    @Test
+    public void should_not_cache_history_loaded_before_a_forgotten_transfer() {
+        TransactionHistoryCache cache = new TransactionHistoryCache(1, 50);
+        UUID account = UUID.randomUUID();
+
+        long stamp = cache.stamp();
+        cache.record(record(account, account, 1000));
+        cache.record(record(UUID.randomUUID(), UUID.randomUUID(), 2000));
+        cache.putIfUnchanged(account, Collections.emptyList(), stamp);
+
+        Assert.assertNull(cache.recent(account, 10));
+    }
+
+    @Test
+    public void should_order_transactions_of_the_same_millisecond_by_id() {
+        TransactionHistoryCache cache = new TransactionHistoryCache(10, 50);
+        UUID account = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        TransactionRecord high = record(new UUID(2L, 0L), account, other, 1000);
+        TransactionRecord low = record(new UUID(-1L, 0L), account, other, 1000);
+        cache.putIfUnchanged(account, Collections.singletonList(low), cache.stamp());
+
+        TransactionRecord middle = record(new UUID(1L, 0L), other, account, 1000);
+        cache.record(middle);
+        cache.record(high);
+
+        Assert.assertEquals(Arrays.asList(high, middle, low), cache.recent(account, 10));
+    }
+
+    @Test
+    public void should_evict_least_recently_used_history() {
+        TransactionHistoryCache cache = new TransactionHistoryCache(1, 50);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        List<TransactionRecord> none = Collections.emptyList();
+
+        cache.putIfUnchanged(first, none, cache.stamp());
+        cache.putIfUnchanged(second, none, cache.stamp());
+
+        Assert.assertNull(cache.recent(first, 10));
+        Assert.assertNotNull(cache.recent(second, 10));
+        Assert.assertEquals(1L, (long) cache.stats().getLong("evictions"));
+    }
+
+    private static TransactionRecord record(UUID from, UUID to, long createdAt) {
+        return record(UUID.randomUUID(), from, to, createdAt);
+    }
+
+    private static TransactionRecord record(UUID id, UUID from, UUID to, long createdAt) {
+        return new TransactionRecord(id, from, to, 1L, createdAt);
+    }
+}
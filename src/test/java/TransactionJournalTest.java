@@ -0,0 +1,304 @@
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.jlnh.MoneyTransferVerticle;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.jlnh.persistence.OffHeapAccountTable;
+import org.jlnh.persistence.TransactionJournal;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tests for the transaction journal.
+ */
+@RunWith(VertxUnitRunner.class)
+public class TransactionJournalTest {
+
+    private static final String SENDER = "f4e05ee5-12eb-4ae0-92c7-2cb4b6cd8ce2";
+    private static final String RECEIVER = "123e4567-e89b-12d3-a456-556642440000";
+
+    private static final int RECORD_BYTES = 72;
+    private static final int HEADER_BYTES = 16;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void should_replay_records_of_rolled_segments() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, HEADER_BYTES + 3 * RECORD_BYTES, 1);
+        List<Transaction> saved = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            Transaction transaction = transaction(i);
+            journal.save(transaction);
+            saved.add(transaction);
+        }
+
+        Assert.assertEquals(4, Files.list(directory).count());
+        Assert.assertEquals(saved, replay(TransactionJournal.open(directory, HEADER_BYTES + 3 * RECORD_BYTES, 1)));
+    }
+
+    @Test
+    public void should_resume_after_the_last_valid_record() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, 1024, 1);
+        journal.save(transaction(1));
+        journal.save(transaction(2));
+        journal.save(transaction(3));
+
+        Path segment = Files.list(directory).findFirst().get();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {42}), HEADER_BYTES + RECORD_BYTES + 20);
+        }
+
+        TransactionJournal reopened = TransactionJournal.open(directory, 1024, 1);
+        Assert.assertEquals(1, replay(reopened).size());
+        reopened.save(transaction(4));
+        Assert.assertEquals(4, replay(TransactionJournal.open(directory, 1024, 1)).get(1).getAmountUnits());
+    }
+
+    @Test
+    public void should_acknowledge_appends_once_synced(TestContext context) throws IOException {
+        Vertx vertx = Vertx.vertx();
+        TransactionJournal journal = TransactionJournal.open(directory, 1024, 2);
+        journal.syncEvery(vertx, 3_600_000);
+
+        Future<Void> first = journal.save(transaction(1));
+        context.assertFalse(first.isComplete());
+        Future<Void> second = journal.save(transaction(2));
+
+        Async async = context.async();
+        second.setHandler(context.asyncAssertSuccess(v -> {
+            context.assertTrue(first.succeeded());
+            vertx.close(closed -> async.complete());
+        }));
+    }
+
+    @Test
+    public void should_fail_appends_when_the_sync_fails(TestContext context) throws IOException {
+        Vertx vertx = Vertx.vertx();
+        TransactionJournal journal = TransactionJournal.open(directory, 1024, 2, segment -> {
+            throw new UncheckedIOException(new IOException("Disk full"));
+        });
+        journal.syncEvery(vertx, 3_600_000);
+
+        Future<Void> first = journal.save(transaction(1));
+        Future<Void> second = journal.save(transaction(2));
+
+        Async async = context.async();
+        second.setHandler(context.asyncAssertFailure(cause -> {
+            context.assertEquals("Disk full", cause.getCause().getMessage());
+            context.assertTrue(first.failed());
+            context.assertEquals(0, journal.stats().getInteger("waiting"));
+            vertx.close(closed -> async.complete());
+        }));
+    }
+
+    @Test
+    public void should_not_replay_appends_failed_by_the_sync(TestContext context) throws IOException {
+        Vertx vertx = Vertx.vertx();
+        TransactionJournal journal = TransactionJournal.open(directory, 1024, 2, segment -> {
+            throw new UncheckedIOException(new IOException("Disk full"));
+        });
+        journal.syncEvery(vertx, 3_600_000);
+
+        journal.save(transaction(1));
+        Async async = context.async();
+        journal.save(transaction(2)).setHandler(context.asyncAssertFailure(cause -> vertx.close(closed -> {
+            try {
+                TransactionJournal reopened = TransactionJournal.open(directory, 1024, 2);
+                context.assertTrue(replay(reopened).isEmpty());
+                reopened.save(transaction(3));
+                List<Transaction> replayed = replay(TransactionJournal.open(directory, 1024, 2));
+                context.assertEquals(1, replayed.size());
+                context.assertEquals(3L, replayed.get(0).getAmountUnits());
+            } catch (IOException e) {
+                context.fail(e);
+            }
+            async.complete();
+        })));
+    }
+
+    @Test
+    public void should_settle_transfers_in_the_table_once_synced(TestContext context) throws IOException {
+        Vertx vertx = Vertx.vertx();
+        TransactionJournal journal = TransactionJournal.open(directory, 1024, 2);
+        journal.syncEvery(vertx, 3_600_000);
+        OffHeapAccountTable table = OffHeapAccountTable.allocate(10);
+        UUID sender = UUID.fromString(SENDER);
+        UUID receiver = UUID.fromString(RECEIVER);
+        table.put(sender.getMostSignificantBits(), sender.getLeastSignificantBits(), 100);
+        table.put(receiver.getMostSignificantBits(), receiver.getLeastSignificantBits(), 0);
+        table.reserve(sender.getMostSignificantBits(), sender.getLeastSignificantBits(),
+                receiver.getMostSignificantBits(), receiver.getLeastSignificantBits(), 60);
+
+        Future<Void> first = journal.save(new Transaction(UUID.randomUUID(), new Account(sender, 0L),
+                new Account(receiver, 0L), 60), table);
+        context.assertEquals(100L, table.balance(sender.getMostSignificantBits(), sender.getLeastSignificantBits()));
+        context.assertEquals((long) HEADER_BYTES, journal.settledPosition());
+
+        Async async = context.async();
+        journal.save(transaction(1)).setHandler(context.asyncAssertSuccess(v -> {
+            context.assertTrue(first.succeeded());
+            context.assertEquals(40L, table.balance(sender.getMostSignificantBits(), sender.getLeastSignificantBits()));
+            context.assertEquals(60L, table.balance(receiver.getMostSignificantBits(), receiver.getLeastSignificantBits()));
+            context.assertEquals((long) HEADER_BYTES + 2 * RECORD_BYTES, journal.settledPosition());
+            vertx.close(closed -> async.complete());
+        }));
+    }
+
+    @Test
+    public void should_replay_from_a_checkpoint_and_discard_older_segments() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, HEADER_BYTES + 3 * RECORD_BYTES, 1);
+        for (int i = 1; i <= 7; i++) {
+            journal.save(transaction(i));
+        }
+        long checkpoint = journal.settledPosition();
+        journal.save(transaction(8));
+        journal.discardBefore(checkpoint);
+
+        Assert.assertEquals(1, Files.list(directory).count());
+        List<Long> replayed = new ArrayList<>();
+        journal.replay(checkpoint, (transaction, timestamp, position) -> replayed.add(transaction.getAmountUnits()));
+        Assert.assertEquals(Collections.singletonList(8L), replayed);
+        try {
+            replay(journal);
+            Assert.fail("Replayed discarded segments");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().startsWith("The journal holds segments 2 to 2"));
+        }
+    }
+
+    @Test
+    public void should_rebuild_balances_on_restart(TestContext context) {
+        JsonObject config = new JsonObject() //
+                .put("TRANSFER_ENGINE", "jdbc") //
+                .put("STORAGE", new JsonObject().put("TYPE", "off-heap").put("MAX_ACCOUNTS", 1000)) //
+                .put("JOURNAL", new JsonObject().put("DIR", directory.toString()).put("FSYNC_INTERVAL_MS", 5));
+        Async async = context.async();
+
+        Vertx first = Vertx.vertx();
+        first.deployVerticle(MoneyTransferVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess(deployed -> {
+                    Transaction transaction = new Transaction(null, new Account(UUID.fromString(SENDER), null),
+                            new Account(UUID.fromString(RECEIVER), null), BigDecimal.ONE);
+                    first.createHttpClient().post(8080, "localhost", "/api/transfer") //
+                            .putHeader("Content-Type", "application/json") //
+                            .handler(response -> {
+                                context.assertEquals(201, response.statusCode());
+                                first.close(context.asyncAssertSuccess(closed -> restart(context, config, async)));
+                            }) //
+                            .end(Json.encode(transaction));
+                }));
+    }
+
+    @Test
+    public void should_rebuild_mapped_balances_on_restart(TestContext context) throws IOException {
+        Path file = Files.createTempFile(directory, "accounts", ".table");
+        Files.delete(file);
+        JsonObject config = new JsonObject() //
+                .put("TRANSFER_ENGINE", "jdbc") //
+                .put("STORAGE", new JsonObject().put("TYPE", "off-heap").put("MAX_ACCOUNTS", 1000)
+                        .put("FILE", file.toString()).put("FLUSH_INTERVAL_MS", 20)) //
+                .put("JOURNAL", new JsonObject().put("DIR", directory.resolve("journal").toString())
+                        .put("SEGMENT_BYTES", HEADER_BYTES + RECORD_BYTES).put("FSYNC_INTERVAL_MS", 5));
+        Async async = context.async();
+
+        Vertx first = Vertx.vertx();
+        first.deployVerticle(MoneyTransferVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess(deployed -> transfer(context, first, () -> transfer(context, first,
+                        () -> first.setTimer(100, timer -> first.close(context.asyncAssertSuccess(closed -> {
+                            try {
+                                context.assertEquals(1L, Files.list(directory.resolve("journal")).count());
+                            } catch (IOException e) {
+                                context.fail(e);
+                            }
+                            restart(context, config, async);
+                        })))))));
+    }
+
+    private static void transfer(TestContext context, Vertx vertx, Runnable next) {
+        Transaction transaction = new Transaction(null, new Account(UUID.fromString(SENDER), null),
+                new Account(UUID.fromString(RECEIVER), null), new BigDecimal("0.50"));
+        vertx.createHttpClient().post(8080, "localhost", "/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .handler(response -> {
+                    context.assertEquals(201, response.statusCode());
+                    next.run();
+                }) //
+                .end(Json.encode(transaction));
+    }
+
+    @Test
+    public void should_refuse_a_mapped_table_without_journal(TestContext context) {
+        JsonObject config = new JsonObject() //
+                .put("TRANSFER_ENGINE", "jdbc") //
+                .put("STORAGE", new JsonObject().put("TYPE", "off-heap").put("MAX_ACCOUNTS", 1000)
+                        .put("FILE", directory.resolve("accounts.table").toString()));
+        Vertx vertx = Vertx.vertx();
+        Async async = context.async();
+        vertx.deployVerticle(MoneyTransferVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertFailure(cause -> {
+                    context.assertTrue(cause.getMessage().contains("JOURNAL.DIR"));
+                    vertx.close(closed -> async.complete());
+                }));
+    }
+
+    private void restart(TestContext context, JsonObject config, Async async) {
+        Vertx second = Vertx.vertx();
+        second.deployVerticle(MoneyTransferVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+                context.asyncAssertSuccess(deployed -> second.createHttpClient().getNow(8080, "localhost",
+                        "/api/accounts/" + SENDER, response -> response.bodyHandler(body -> {
+                            context.assertEquals(0, BigDecimal.valueOf(8.99)
+                                    .compareTo(Json.decodeValue(body, Account.class).getBalance()));
+                            second.close(closed -> async.complete());
+                        }))));
+    }
+
+    private static Transaction transaction(long amount) {
+        return new Transaction(UUID.randomUUID(), new Account(UUID.randomUUID(), 0L), new Account(UUID.randomUUID(), 0L),
+                amount);
+    }
+
+    private static List<Transaction> replay(TransactionJournal journal) throws IOException {
+        List<Transaction> replayed = new ArrayList<>();
+        journal.replay((transaction, timestamp, position) -> replayed.add(transaction));
+        return replayed;
+    }
+}
@@ -0,0 +1,63 @@
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import org.jlnh.async.TransferQueue;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.UUID;
+
+/**
+ * Tests for the queue of the transfers submitted asynchronously.
+ */
+public class TransferQueueTest {
+
+    @Test
+    public void should_refuse_transfers_while_too_many_are_pending() {
+        TransferQueue queue = new TransferQueue(2, 1, 10);
+        UUID first = UUID.randomUUID();
+
+        Assert.assertNotNull(queue.accept(first));
+        Assert.assertNotNull(queue.accept(UUID.randomUUID()));
+        Assert.assertNull(queue.accept(UUID.randomUUID()));
+
+        queue.complete(first, Future.failedFuture(new IllegalStateException("Could not transfer money!")));
+        Assert.assertNotNull(queue.accept(UUID.randomUUID()));
+        Assert.assertEquals(1L, (long) queue.stats().getLong("refused"));
+    }
+
+    @Test
+    public void should_keep_the_outcome_of_transfers() {
+        TransferQueue queue = new TransferQueue(10, 1, 10);
+        UUID committed = UUID.randomUUID();
+        UUID rejected = UUID.randomUUID();
+        queue.accept(committed);
+        queue.accept(rejected);
+        Assert.assertEquals("pending", new JsonObject(queue.get(committed)).getString("status"));
+
+        Transaction transaction = new Transaction(UUID.randomUUID(), new Account(UUID.randomUUID(), 100L),
+                new Account(UUID.randomUUID(), 0L), 100L);
+        queue.complete(committed, Future.succeededFuture(transaction));
+        queue.complete(rejected, Future.failedFuture(new IllegalStateException("Could not transfer money!")));
+
+        JsonObject status = new JsonObject(queue.get(committed));
+        Assert.assertEquals("committed", status.getString("status"));
+        Assert.assertEquals(transaction.getId().toString(), status.getJsonObject("transaction").getString("id"));
+        Assert.assertEquals("User does not have sufficient funds", new JsonObject(queue.get(rejected)).getString("cause"));
+    }
+
+    @Test
+    public void should_drop_the_oldest_statuses_over_the_limit() {
+        TransferQueue queue = new TransferQueue(10, 1, 2);
+        UUID[] ids = {UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()};
+        for (UUID id : ids) {
+            queue.accept(id);
+            queue.complete(id, Future.failedFuture(new IllegalArgumentException("Invalid transfer")));
+        }
+
+        Assert.assertNull(queue.get(ids[0]));
+        Assert.assertNotNull(queue.get(ids[1]));
+        Assert.assertNotNull(queue.get(ids[2]));
+    }
+}
@@ -0,0 +1,50 @@
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.json.Json;
+import org.jlnh.model.Account;
+import org.jlnh.model.Transaction;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * HTTP requests shared by the tests of the transfer engines and storages.
+ */
+final class TransferRequests {
+
+    private TransferRequests() {
+    }
+
+    /**
+     * Requests a transfer and hands its status code over once the response is read.
+     *
+     * @param client the HTTP client
+     * @param port the port of the server
+     * @param from id of the sender
+     * @param to id of the receiver
+     * @param amount the amount
+     * @param statusHandler what to do with the status code
+     */
+    static void postTransfer(HttpClient client, int port, String from, String to, BigDecimal amount, IntConsumer statusHandler) {
+        Transaction transaction = new Transaction(null, new Account(UUID.fromString(from), null),
+                new Account(UUID.fromString(to), null), amount);
+        client.post(port, "localhost", "/api/transfer") //
+                .putHeader("Content-Type", "application/json") //
+                .handler(response -> response.bodyHandler(body -> statusHandler.accept(response.statusCode()))) //
+                .end(Json.encode(transaction));
+    }
+
+    /**
+     * Reads the balance of an account.
+     *
+     * @param client the HTTP client
+     * @param port the port of the server
+     * @param account id of the account
+     * @param balanceHandler what to do with the balance
+     */
+    static void getBalance(HttpClient client, int port, String account, Consumer<BigDecimal> balanceHandler) {
+        client.getNow(port, "localhost", "/api/accounts/" + account,
+                response -> response.bodyHandler(body -> balanceHandler.accept(Json.decodeValue(body, Account.class).getBalance())));
+    }
+}
@@ -0,0 +1,95 @@
+import org.jlnh.metrics.TransferStats;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for the incrementally maintained transfer aggregates.
+ */
+public class TransferStatsTest {
+
+    private static final long NOW = TimeUnit.DAYS.toMillis(20000);
+
+    @Test
+    public void should_match_a_recount() {
+        TransferStats stats = new TransferStats(60, 10, 1024, 4);
+        stats.addRecount(1000, 5_000_000L, 3, 300L);
+        UUID[] accounts = accounts(1000);
+        Random random = new Random(1);
+        Map<UUID, Long> actual = new HashMap<>();
+        long volume = 300L;
+        for (int i = 0; i < 50_000; i++) {
+            UUID from = accounts[random.nextInt(accounts.length)];
+            UUID to = accounts[random.nextInt(accounts.length)];
+            long amount = 1 + random.nextInt(10_000);
+            stats.record(from, to, amount, NOW);
+            volume += amount;
+            actual.merge(from, 1L, Long::sum);
+            if (!to.equals(from)) {
+                actual.merge(to, 1L, Long::sum);
+            }
+        }
+
+        TransferStats.Snapshot snapshot = stats.snapshot(NOW);
+        Assert.assertEquals(1000, snapshot.getAccounts());
+        Assert.assertEquals(0, new BigDecimal("500").compareTo(snapshot.getBalanceAtStartup()));
+        Assert.assertEquals(50_003, snapshot.getTransfers());
+        Assert.assertEquals(0, BigDecimal.valueOf(volume, 4).compareTo(snapshot.getVolume()));
+        for (UUID account : accounts) {
+            Assert.assertTrue(stats.estimate(account) >= actual.getOrDefault(account, 0L));
+        }
+    }
+
+    @Test
+    public void should_find_the_most_active_accounts() {
+        TransferStats stats = new TransferStats(60, 3, 256, 4);
+        UUID[] accounts = accounts(10_000);
+        Random random = new Random(2);
+        for (int i = 0; i < 100_000; i++) {
+            UUID from = i % 10 == 0 ? accounts[i / 10 % 3] : accounts[3 + random.nextInt(accounts.length - 3)];
+            stats.record(from, accounts[3 + random.nextInt(accounts.length - 3)], 1, NOW);
+        }
+
+        List<UUID> top = stats.snapshot(NOW).getTopAccounts().stream().map(TransferStats.Activity::getId)
+                .collect(Collectors.toList());
+        Assert.assertEquals(3, top.size());
+        Assert.assertTrue(top.containsAll(Arrays.asList(accounts[0], accounts[1], accounts[2])));
+    }
+
+    @Test
+    public void should_keep_the_volume_of_the_last_minutes() {
+        TransferStats stats = new TransferStats(3, 10, 64, 2);
+        UUID from = UUID.randomUUID();
+        UUID to = UUID.randomUUID();
+        long minute = TimeUnit.MINUTES.toMillis(1);
+        stats.record(from, to, 10_000, NOW - 5 * minute);
+        stats.record(from, to, 20_000, NOW - minute);
+        stats.record(from, to, 30_000, NOW);
+        stats.record(from, to, 40_000, NOW + 1);
+        stats.record(from, to, 50_000, NOW - 4 * minute);
+
+        List<TransferStats.Minute> minutes = stats.snapshot(NOW).getVolumePerMinute();
+        Assert.assertEquals(2, minutes.size());
+        Assert.assertEquals(2, minutes.get(0).getTransfers());
+        Assert.assertEquals(0, new BigDecimal("7").compareTo(minutes.get(0).getVolume()));
+        Assert.assertEquals(0, new BigDecimal("2").compareTo(minutes.get(1).getVolume()));
+        Assert.assertEquals(5, stats.snapshot(NOW).getTransfers());
+    }
+
+    private static UUID[] accounts(int count) {
+        UUID[] accounts = new UUID[count];
+        for (int i = 0; i < count; i++) {
+            accounts[i] = UUID.randomUUID();
+        }
+        return accounts;
+    }
+}
@@ -0,0 +1,56 @@
+import io.vertx.core.json.JsonObject;
+import org.jlnh.load.Workload;
+import org.jlnh.persistence.AccountSeed;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.UUID;
+
+/**
+ * Tests for the workloads of the load generator and the ids of the seeded accounts.
+ */
+public class WorkloadTest {
+
+    @Test
+    public void should_generate_the_same_requests_from_the_same_seed() {
+        JsonObject config = new JsonObject().put("ACCOUNTS", 1000).put("DISTRIBUTION", "zipf").put("RANDOM_SEED", 7L);
+        Workload first = new Workload(config);
+        Workload second = new Workload(config);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(first.nextIsRead(), second.nextIsRead());
+            int from = first.nextAccount();
+            Assert.assertEquals(from, second.nextAccount());
+            Assert.assertEquals(first.nextAccountBut(from), second.nextAccountBut(from));
+            Assert.assertEquals(first.nextAmountUnits(), second.nextAmountUnits());
+        }
+    }
+
+    @Test
+    public void should_pick_hot_accounts_with_a_zipf_distribution() {
+        Workload uniform = new Workload(new JsonObject().put("ACCOUNTS", 1000));
+        Workload zipf = new Workload(new JsonObject().put("ACCOUNTS", 1000).put("DISTRIBUTION", "zipf").put("ZIPF_EXPONENT", 1.0));
+        int uniformHot = 0;
+        int zipfHot = 0;
+        for (int i = 0; i < 10000; i++) {
+            uniformHot += uniform.nextAccount() < 10 ? 1 : 0;
+            zipfHot += zipf.nextAccount() < 10 ? 1 : 0;
+        }
+        // The 10 hottest of 1000 accounts take 1% of the picks uniformly, about 39% with an exponent of 1
+        Assert.assertTrue(uniformHot < 200);
+        Assert.assertTrue(zipfHot > 3000);
+    }
+
+    @Test
+    public void should_never_transfer_to_the_sender() {
+        Workload workload = new Workload(new JsonObject().put("ACCOUNTS", 2).put("DISTRIBUTION", "zipf"));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(1, workload.nextAccountBut(0));
+        }
+    }
+
+    @Test
+    public void should_derive_the_ids_of_the_seeded_accounts_from_their_index() {
+        Assert.assertEquals(UUID.fromString("00000000-0000-4000-8000-000000000000"), AccountSeed.id(0));
+        Assert.assertEquals(UUID.fromString("00000000-0000-4000-8000-000000012345"), AccountSeed.id(12345));
+    }
+}